@@ -32,4 +32,12 @@ vec3 unpack3(float value) {
     color.b = floor(value / (c_precisionp1 * c_precisionp1)) / c_precision;
     return color;
 }
+// Decodes an IEEE 754 half-precision float, given its 16 bits as an unsigned integer in a float
+float unpackHalf(float bits) {
+    float s = bits >= 32768.0 ? -1.0 : 1.0;
+    bits = bits >= 32768.0 ? bits - 32768.0 : bits;
+    float e = floor(bits / 1024.0);
+    float m = bits - e * 1024.0;
+    return s * (e == 0.0 ? m * exp2(-24.0) : exp2(e - 15.0) * (1.0 + m / 1024.0));
+}
 #endif
\ No newline at end of file
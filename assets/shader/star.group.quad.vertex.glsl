@@ -4,6 +4,7 @@
 #include <shader/lib/geometry.glsl>
 #include <shader/lib/doublefloat.glsl>
 #include <shader/lib/angles.glsl>
+#include <shader/lib/pack.glsl>
 
 // UNIFORMS
 // time in julian days since epoch, as a 64-bit double encoded with two floats
@@ -29,13 +30,22 @@ uniform float u_fixedAngularSize;
 // Arbitrary affine transformation(s)
 uniform bool u_transformFlag = false;
 uniform mat4 u_transform;
+// Compact layout: quantised positions, half-float proper motions and sizes
+uniform bool u_compact = false;
+uniform vec3 u_posOffset;
+// Size of a quantisation step of the positions
+uniform vec3 u_posScale;
+// x - proper motion scale
+// y - size scale
+uniform vec2 u_pmSizeScale;
 
 // INPUT
 // Regular attributes
 layout (location=0) in vec4 a_position;
 layout (location=1) in vec2 a_texCoord0;
 // Instanced attributes
-layout (location=2) in vec3 a_starPos;
+// In the compact layout, a_starPos holds (pos.x, pm.x, pos.y, pm.y), a_pm holds (pos.z, pm.z)
+layout (location=2) in vec4 a_starPos;
 layout (location=3) in vec3 a_pm;
 layout (location=4) in vec4 a_color;
 layout (location=5) in float a_size;
@@ -60,7 +70,18 @@ void main() {
 	float l0 = LEN0 * u_vrScale;
 	float l1 = l0 * 1e3;
 
-    vec3 particlePos = a_starPos.xyz;
+    vec3 particlePos;
+    vec3 pm;
+    float size;
+    if (u_compact) {
+        particlePos = u_posOffset + vec3(a_starPos.x, a_starPos.z, a_pm.x) * u_posScale;
+        pm = vec3(unpackHalf(a_starPos.y), unpackHalf(a_starPos.w), unpackHalf(a_pm.y)) * u_pmSizeScale.x;
+        size = unpackHalf(a_size) * u_pmSizeScale.y;
+    } else {
+        particlePos = a_starPos.xyz;
+        pm = a_pm;
+        size = a_size;
+    }
     if (u_transformFlag) {
         vec4 aux = u_transform * vec4(particlePos, 1.0);
         particlePos.xyz = aux.xyz;
@@ -68,12 +89,12 @@ void main() {
     vec3 pos = particlePos - u_camPos;
 
     // Proper motion using 64-bit emulated arithmetics:
-    // pm = a_pm * t * DAY_TO_YEAR
+    // pm = pm * t * DAY_TO_YEAR
     // pos = pos + pm
     vec2 t_yr = ds_mul(u_t, ds_set(DAY_TO_YEAR));
-    vec2 pmx = ds_mul(ds_set(a_pm.x), t_yr);
-    vec2 pmy = ds_mul(ds_set(a_pm.y), t_yr);
-    vec2 pmz = ds_mul(ds_set(a_pm.z), t_yr);
+    vec2 pmx = ds_mul(ds_set(pm.x), t_yr);
+    vec2 pmy = ds_mul(ds_set(pm.y), t_yr);
+    vec2 pmz = ds_mul(ds_set(pm.z), t_yr);
     pos.x = ds_add(ds_set(pos.x), pmx).x;
     pos.y = ds_add(ds_set(pos.y), pmy).x;
     pos.z = ds_add(ds_set(pos.z), pmz).x;
@@ -94,7 +115,7 @@ void main() {
     float quadSize;
     if (u_fixedAngularSize <= 0.0) {
         // We omit the arctangent and tangent, as per the small-angle approximation.
-        solidAngle = a_size / dist;
+        solidAngle = size / dist;
         opacity = lint(solidAngle, u_solidAngleMap.x, u_solidAngleMap.y, u_opacityLimits.x, u_opacityLimits.y);
         // Clamp solid angle, and back to physical quad size.
         solidAngle = clamp(radians12(pow(degrees12(solidAngle), u_brightnessPower)), u_minQuadSolidAngle, 3.0e-8);
@@ -115,8 +136,8 @@ void main() {
     v_col = vec4(a_color.rgb * u_alphaSizeBr.z, clamp(opacity * u_alphaSizeBr.x * boundaryFade * fadeFactor, 0.0, 1.0));
 
     // Performance trick: If the star is not seen, set it very small so that there is only one fragment, and
-    // set the color to 0 to discard it in the fragment shader.
-    if (v_col.a <= 1.0e-3 || dist < l0) {
+    // set the color to 0 to discard it in the fragment shader. Hidden stars have a negative size.
+    if (size < 0.0 || v_col.a <= 1.0e-3 || dist < l0) {
         // Set size very small.
         quadSize = 0.0;
         // The pixels of this star will be discarded in the fragment shader
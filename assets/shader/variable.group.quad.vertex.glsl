@@ -125,7 +125,9 @@ void main() {
     times[4] = a_vtimes5;
 
     // Linear interpolation of time in light curve
-    int nVari = int(a_nVari);
+    // Hidden stars have a negative number of points, -1 - nVari.
+    bool hidden = a_nVari < 0.0;
+    int nVari = hidden ? int(-a_nVari) - 1 : int(a_nVari);
     float t0 = idx(times, 0);
     float t1 = idx(times, nVari - 1);
     float period = t1 - t0;
@@ -169,7 +171,7 @@ void main() {
 
     // Performance trick: If the star is not seen, set it very small so that there is only one fragment, and
     // set the color to 0 to discard it in the fragment shader.
-    if (v_col.a <= 1.0e-3 || dist < l0) {
+    if (hidden || v_col.a <= 1.0e-3 || dist < l0) {
         // Set size very small.
         quadSize = 0.0;
         // The pixels of this star will be discarded in the fragment shader
@@ -64,6 +64,7 @@ import gaiasky.util.Logger;
 import gaiasky.util.GaiaSkyLoader.GaiaSkyLoaderParameters;
 import gaiasky.util.Logger.Log;
 import gaiasky.util.camera.rec.Camcorder;
+import gaiasky.util.coord.EphemerisService;
 import gaiasky.util.coord.vsop87.VSOP87Binary;
 import gaiasky.util.coord.vsop87.VSOP87Loader;
 import gaiasky.util.ds.GaiaSkyExecutorService;
@@ -1276,6 +1277,8 @@ public class GaiaSky implements ApplicationListener, IObserver {
 
         // Update clock.
         time.update(dtGs);
+        // New frame for the ephemeris cache.
+        EphemerisService.instance().nextFrame();
 
         // Update delayed events.
         EventManager.instance.dispatchDelayedMessages();
@@ -141,6 +141,8 @@ public class OctreeLoader extends AbstractSceneLoader implements IObserver, IOct
      * Epoch of stars loaded through this
      */
     private double epoch = AstroUtils.JD_J2015_5;
+    /** Pack the instances of the loaded star sets in the compact layout. **/
+    private boolean compactInstances = false;
 
     public OctreeLoader() {
         instance = this;
@@ -290,6 +292,16 @@ public class OctreeLoader extends AbstractSceneLoader implements IObserver, IOct
         this.epoch = AstroUtils.getJulianDate(epoch);
     }
 
+    /**
+     * Sets whether the star sets of the octants are packed in the compact instance layout. See
+     * {@link gaiasky.scene.component.StarSet#compactInstances}.
+     *
+     * @param compactInstances Whether to use the compact layout.
+     */
+    public void setCompactInstances(Boolean compactInstances) {
+        this.compactInstances = compactInstances;
+    }
+
     @Override
     public Array<Entity> loadData() {
         Array<Entity> loadedEntities = new Array<>();
@@ -539,6 +551,7 @@ public class OctreeLoader extends AbstractSceneLoader implements IObserver, IOct
 
         var set = Mapper.starSet.get(sg);
         set.setEpoch(epoch);
+        set.compactInstances = compactInstances;
 
         var sgDatasetDesc = Mapper.datasetDescription.get(sg);
         sgDatasetDesc.setCatalogInfoBare(datasetDesc.catalogInfo);
@@ -54,7 +54,7 @@ public class OrbitRefresher implements IObserver {
         EventManager.instance.subscribe(this, Event.DISPOSE, Event.ORBIT_REFRESH_CMD);
     }
 
-    public void queue(OrbitDataLoaderParameters params) {
+    public synchronized void queue(OrbitDataLoaderParameters params) {
         boolean loadingPaused = false;
         if (!loadingPaused && toLoadQueue.size() < LOAD_QUEUE_MAX_SIZE - 1) {
             toLoadQueue.remove(params);
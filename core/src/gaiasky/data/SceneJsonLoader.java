@@ -130,6 +130,9 @@ public class SceneJsonLoader {
                         } else if (curr.isNumber()) {
                             val = curr.asLong();
                             valueClass = Long.class;
+                        } else if (curr.isBoolean()) {
+                            val = curr.asBoolean();
+                            valueClass = Boolean.class;
                         }
                         if (val != null) {
                             String methodName = "set" + TextUtils.propertyToMethodName(nameAttr);
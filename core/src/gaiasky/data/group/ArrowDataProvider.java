@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2023 Gaia Sky - All rights reserved.
+ *  This file is part of Gaia Sky, which is released under the Mozilla Public License 2.0.
+ *  You may use, distribute and modify this code under the terms of MPL2.
+ *  See the file LICENSE.md in the project root for full license details.
+ */
+
+package gaiasky.data.group;
+
+import com.badlogic.gdx.utils.Array;
+import gaiasky.util.ucd.UCD;
+import gaiasky.util.ucd.UCDParser;
+import uk.ac.starlink.table.ColumnInfo;
+import uk.ac.starlink.table.StarTable;
+import uk.ac.starlink.util.DataSource;
+import uk.ac.starlink.util.FileDataSource;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Loads catalogs in the Arrow IPC file format (Feather V2) with {@link ArrowFileReader}. The schema is parsed first
+ * to find the columns that the conversion uses (identifiers, names, positions, proper motions, magnitudes, colors,
+ * sizes, temperatures and light curves), and only these columns are read from the file. All the rest of the load,
+ * the {@link DatasetOptions} included, is done by {@link STILDataProvider}.
+ * <p>
+ * The other columns go to the extra attributes of the records. As they are not read by default, they must be
+ * listed in the provider parameter <code>extraColumns</code>, which is a comma-separated list of column names, or
+ * <code>*</code> to read all of them.
+ */
+public class ArrowDataProvider extends STILDataProvider {
+    /** File name extensions of Arrow files. **/
+    private static final String[] EXTENSIONS = { ".arrow", ".feather" };
+
+    /** Names of the extra columns to read, in lower case. Null to read all of them. **/
+    private Set<String> extraColumns = Collections.emptySet();
+
+    /**
+     * Checks whether the given data source is an Arrow file, by its name or by its first bytes.
+     *
+     * @param ds The data source.
+     *
+     * @return Whether it is an Arrow file.
+     */
+    public static boolean isArrow(DataSource ds) {
+        final String name = ds.getName() != null ? ds.getName().toLowerCase(Locale.ROOT) : "";
+        for (String extension : EXTENSIONS) {
+            if (name.endsWith(extension)) {
+                return true;
+            }
+        }
+        try {
+            return ArrowFileReader.isMagic(ds.getIntro());
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Sets the columns that are read in addition to the ones used in the conversion, and go to the extra attributes
+     * of the records.
+     *
+     * @param columns A comma-separated list of column names, <code>*</code> for all the columns, or null for none.
+     */
+    public void setExtraColumns(String columns) {
+        if (columns == null || columns.isBlank()) {
+            extraColumns = Collections.emptySet();
+        } else if (columns.strip().equals("*")) {
+            extraColumns = null;
+        } else {
+            extraColumns = new TreeSet<>();
+            for (String column : columns.split(",")) {
+                if (!column.isBlank()) {
+                    extraColumns.add(column.strip().toLowerCase(Locale.ROOT));
+                }
+            }
+        }
+    }
+
+    @Override
+    public void setProviderParams(Map<String, Object> params) {
+        super.setProviderParams(params);
+        if (params != null && params.containsKey("extraColumns")) {
+            final Object columns = params.get("extraColumns");
+            if (columns instanceof String[] array) {
+                setExtraColumns(String.join(",", array));
+            } else if (columns instanceof Collection<?> collection) {
+                final StringJoiner joiner = new StringJoiner(",");
+                collection.forEach(column -> joiner.add(String.valueOf(column)));
+                setExtraColumns(joiner.toString());
+            } else {
+                setExtraColumns(columns != null ? columns.toString() : null);
+            }
+        }
+    }
+
+    @Override
+    protected StarTable makeTable(DataSource ds) throws IOException {
+        if (!(ds instanceof FileDataSource fds)) {
+            throw new IOException("Arrow catalogs can only be loaded from local files: " + ds.getName());
+        }
+        try (ArrowFileReader reader = new ArrowFileReader(fds.getFile().toPath())) {
+            final List<ColumnInfo> columns = reader.getColumns();
+            final int[] projection = projection(columns);
+            logger.info("Reading " + projection.length + " of " + columns.size() + " columns and " + reader.getRowCount() + " rows: " + ds.getName());
+            return reader.read(projection);
+        }
+    }
+
+    @Override
+    protected String cacheOptions() {
+        return ";extraColumns=" + (extraColumns != null ? String.join(",", extraColumns) : "*");
+    }
+
+    /**
+     * Gets the indices of the columns to read, in file order.
+     */
+    private int[] projection(List<ColumnInfo> columns) {
+        final UCDParser ucdParser = new UCDParser();
+        ucdParser.parse(columns);
+
+        final BitSet selected = new BitSet(columns.size());
+        for (Array<UCD> ucds : List.of(ucdParser.ID, ucdParser.NAME, ucdParser.POS1, ucdParser.POS2, ucdParser.POS3, ucdParser.PMRA, ucdParser.PMDEC,
+                ucdParser.RADVEL, ucdParser.MAG, ucdParser.COL, ucdParser.SIZE, ucdParser.TEFF, ucdParser.VARI_TIMES, ucdParser.VARI_MAGS,
+                ucdParser.VARI_PERIOD)) {
+            for (UCD ucd : ucds) {
+                selected.set(ucd.index);
+            }
+        }
+        for (int i = 0; i < columns.size(); i++) {
+            final String name = columns.get(i).getName();
+            // Hipparcos numbers are looked up by column name.
+            if (name.equals(ColId.hip.name()) || extraColumns == null || extraColumns.contains(name.toLowerCase(Locale.ROOT))) {
+                selected.set(i);
+            }
+        }
+        return selected.stream().toArray();
+    }
+}
@@ -0,0 +1,780 @@
+/*
+ * Copyright (c) 2023 Gaia Sky - All rights reserved.
+ *  This file is part of Gaia Sky, which is released under the Mozilla Public License 2.0.
+ *  You may use, distribute and modify this code under the terms of MPL2.
+ *  See the file LICENSE.md in the project root for full license details.
+ */
+
+package gaiasky.data.group;
+
+import com.badlogic.gdx.utils.IntArray;
+import uk.ac.starlink.table.ColumnData;
+import uk.ac.starlink.table.ColumnInfo;
+import uk.ac.starlink.table.ColumnStarTable;
+import uk.ac.starlink.table.StarTable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Reads tables in the Arrow IPC file format (also known as Feather V2) column by column. Only the requested columns
+ * are read: the record batches are memory-mapped, and the buffers of each requested column are copied straight into
+ * primitive arrays, so that the pages of the other columns are never touched.
+ * <p>
+ * This is a self-contained reader for the subset of the format used by catalogs: uncompressed, little-endian files
+ * with columns of integers, floating point numbers, booleans, strings, and lists of numbers, which are read as
+ * <code>double[]</code>. Columns of other types, and dictionary-encoded columns, are left out of the table. The
+ * UCD, unit and description of each column are taken from the keys <code>ucd</code>, <code>unit</code> and
+ * <code>description</code> of the field metadata, if present.
+ * <p>
+ * Blank floating point values are read as NaN. Blank values of other types are read as null.
+ *
+ * @see <a href="https://arrow.apache.org/docs/format/Columnar.html">Arrow columnar format</a>
+ */
+public class ArrowFileReader implements Closeable {
+    private static final byte[] MAGIC = "ARROW1".getBytes(StandardCharsets.US_ASCII);
+
+    // Type identifiers of the Type union.
+    private static final byte TYPE_NULL = 1, TYPE_INT = 2, TYPE_FLOAT = 3, TYPE_BINARY = 4, TYPE_UTF8 = 5, TYPE_BOOL = 6, TYPE_LIST = 12,
+            TYPE_STRUCT = 13, TYPE_UNION = 14, TYPE_FIXED_SIZE_LIST = 16, TYPE_MAP = 17, TYPE_LARGE_BINARY = 19, TYPE_LARGE_UTF8 = 20,
+            TYPE_LARGE_LIST = 21, TYPE_RUN_END_ENCODED = 22;
+    /** Record batch identifier of the MessageHeader union. **/
+    private static final byte MESSAGE_RECORD_BATCH = 3;
+    private static final short PRECISION_SINGLE = 1, PRECISION_DOUBLE = 2;
+
+    private final Path file;
+    private final FileChannel channel;
+    /** Top-level fields of the schema. **/
+    private final List<Field> fields = new ArrayList<>();
+    /** The columns that can be read, and the index of the field of each one. **/
+    private final List<ColumnInfo> columns = new ArrayList<>();
+    private final IntArray columnFields = new IntArray();
+    /** The record batches, in file order. **/
+    private final List<Batch> batches = new ArrayList<>();
+    private final long rowCount;
+
+    /**
+     * Opens the given file, and reads its schema and the layout of its record batches.
+     *
+     * @param file The file.
+     *
+     * @throws IOException If the file can't be read, or it is not an Arrow file that this reader supports.
+     */
+    public ArrowFileReader(Path file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            final Table footer = readFooter();
+            final Table schema = footer.getTable(1);
+            if (schema == null) {
+                throw new IOException("Arrow file without schema: " + file);
+            }
+            if (schema.getShort(0, (short) 0) != 0) {
+                throw new IOException("Big-endian Arrow files are not supported: " + file);
+            }
+            final int numFields = schema.getVectorLength(1);
+            for (int i = 0; i < numFields; i++) {
+                fields.add(new Field(schema.getTable(1, i)));
+            }
+            for (int i = 0; i < numFields; i++) {
+                final Field field = fields.get(i);
+                final Class<?> contentClass = field.contentClass();
+                if (contentClass != null) {
+                    final ColumnInfo info = new ColumnInfo(field.name, contentClass, field.metadata.get("description"));
+                    info.setUCD(field.metadata.get("ucd"));
+                    info.setUnitString(field.metadata.get("unit"));
+                    info.setNullable(field.nullable);
+                    columns.add(info);
+                    columnFields.add(i);
+                }
+            }
+
+            long rows = 0;
+            final int numBatches = footer.getVectorLength(3);
+            final int blocks = footer.getVector(3);
+            for (int i = 0; i < numBatches; i++) {
+                // Block struct: offset (long), metaDataLength (int), padding, bodyLength (long).
+                final int block = blocks + i * 24;
+                final Batch batch = readBatch(footer.bb.getLong(block), footer.bb.getInt(block + 8));
+                batch.firstRow = rows;
+                rows += batch.length;
+                batches.add(batch);
+            }
+            this.rowCount = rows;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e instanceof IOException ioe ? ioe : new IOException("Malformed Arrow file: " + file, e);
+        }
+    }
+
+    /**
+     * Checks whether the given bytes are the start of an Arrow file.
+     *
+     * @param intro The first bytes of the file.
+     *
+     * @return Whether the bytes start with the Arrow magic string.
+     */
+    public static boolean isMagic(byte[] intro) {
+        return intro != null && intro.length >= MAGIC.length && Arrays.equals(intro, 0, MAGIC.length, MAGIC, 0, MAGIC.length);
+    }
+
+    /**
+     * Gets the columns that can be read, in file order. The index of each column in this list is the index to use in
+     * {@link #read(int[])}.
+     *
+     * @return The column descriptions.
+     */
+    public List<ColumnInfo> getColumns() {
+        return Collections.unmodifiableList(columns);
+    }
+
+    /**
+     * Gets the number of rows of the table.
+     *
+     * @return The number of rows.
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Reads the given columns into a random-access table held in memory. Only these columns are read.
+     *
+     * @param projection The indices of the columns to read, in {@link #getColumns()}, in the order they go in the
+     *                   table.
+     *
+     * @return The table.
+     *
+     * @throws IOException If the columns can't be read.
+     */
+    public StarTable read(int[] projection) throws IOException {
+        if (rowCount > Integer.MAX_VALUE) {
+            throw new IOException("Too many rows: " + rowCount);
+        }
+        final int n = (int) rowCount;
+        final ArrowColumn[] result = new ArrowColumn[projection.length];
+        for (int c = 0; c < projection.length; c++) {
+            final Field field = fields.get(columnFields.get(projection[c]));
+            result[c] = new ArrowColumn(columns.get(projection[c]), field, n);
+        }
+
+        for (Batch batch : batches) {
+            if (batch.length == 0) {
+                continue;
+            }
+            // Map the range of the body that holds the requested buffers, once per batch.
+            long start = Long.MAX_VALUE, end = 0;
+            for (int c = 0; c < projection.length; c++) {
+                final int f = columnFields.get(projection[c]);
+                final int buffers = fields.get(f).bufferCount();
+                for (int b = batch.bufferIndex[f]; b < batch.bufferIndex[f] + buffers; b++) {
+                    if (batch.bufferLength(b) > 0) {
+                        start = Math.min(start, batch.bufferOffset(b));
+                        end = Math.max(end, batch.bufferOffset(b) + batch.bufferLength(b));
+                    }
+                }
+            }
+            if (start >= end) {
+                // Only empty buffers.
+                start = end = 0;
+            }
+            if (end - start > Integer.MAX_VALUE) {
+                throw new IOException("Record batch too large: " + (end - start) + " bytes");
+            }
+            final ByteBuffer body = channel.map(FileChannel.MapMode.READ_ONLY, batch.bodyOffset + start, end - start);
+            for (int c = 0; c < projection.length; c++) {
+                final int f = columnFields.get(projection[c]);
+                result[c].read(batch, batch.nodeIndex[f], batch.bufferIndex[f], body, start);
+            }
+        }
+
+        final ColumnStarTable table = ColumnStarTable.makeTableWithRows(rowCount);
+        table.setName(file.getFileName().toString());
+        for (ArrowColumn column : result) {
+            table.addColumn(column);
+        }
+        return table;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private Table readFooter() throws IOException {
+        final long size = channel.size();
+        final int tail = Integer.BYTES + MAGIC.length;
+        if (size < MAGIC.length * 2L + tail) {
+            throw new IOException("Not an Arrow file: " + file);
+        }
+        final ByteBuffer head = read(0, MAGIC.length);
+        final ByteBuffer end = read(size - tail, tail);
+        final byte[] magic = new byte[MAGIC.length];
+        head.get(0, magic);
+        final byte[] endMagic = new byte[MAGIC.length];
+        end.get(Integer.BYTES, endMagic);
+        if (!Arrays.equals(magic, MAGIC) || !Arrays.equals(endMagic, MAGIC)) {
+            throw new IOException("Not an Arrow file: " + file);
+        }
+        final int footerLength = end.getInt(0);
+        if (footerLength <= 0 || footerLength > size - tail) {
+            throw new IOException("Malformed Arrow file: " + file);
+        }
+        return Table.root(read(size - tail - footerLength, footerLength));
+    }
+
+    private Batch readBatch(long offset,
+                            int metadataLength) throws IOException {
+        final ByteBuffer metadata = read(offset, metadataLength);
+        // Messages start with a continuation marker, except in files written before Arrow 0.15.
+        final int prefix = metadata.getInt(0) == -1 ? 8 : 4;
+        final Table message = Table.root(metadata.position(prefix).slice().order(ByteOrder.LITTLE_ENDIAN));
+        if (message.getByte(1, (byte) 0) != MESSAGE_RECORD_BATCH) {
+            throw new IOException("Unexpected message in record batch block: " + file);
+        }
+        final Table recordBatch = message.getTable(2);
+        if (recordBatch.getTable(3) != null) {
+            throw new IOException("Compressed Arrow files are not supported: " + file);
+        }
+        final Batch batch = new Batch(recordBatch, offset + metadataLength);
+        int node = 0, buffer = 0;
+        batch.nodeIndex = new int[fields.size()];
+        batch.bufferIndex = new int[fields.size()];
+        for (int f = 0; f < fields.size(); f++) {
+            batch.nodeIndex[f] = node;
+            batch.bufferIndex[f] = buffer;
+            node += fields.get(f).nodeCount();
+            buffer += fields.get(f).bufferCount();
+        }
+        return batch;
+    }
+
+    private ByteBuffer read(long position,
+                            int length) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file: " + file);
+            }
+        }
+        return buffer.clear();
+    }
+
+    /**
+     * A record batch: the number of rows, and the field nodes and buffers of its body.
+     */
+    private static class Batch {
+        private final Table recordBatch;
+        private final long bodyOffset;
+        private final long length;
+        private final int nodes, buffers;
+        private long firstRow;
+        /** Index of the first node and the first buffer of each top-level field. **/
+        private int[] nodeIndex, bufferIndex;
+
+        private Batch(Table recordBatch,
+                      long bodyOffset) {
+            this.recordBatch = recordBatch;
+            this.bodyOffset = bodyOffset;
+            this.length = recordBatch.getLong(0, 0);
+            this.nodes = recordBatch.getVector(1);
+            this.buffers = recordBatch.getVector(2);
+        }
+
+        // FieldNode struct: length (long), null count (long).
+        private long nodeLength(int i) {
+            return recordBatch.bb.getLong(nodes + i * 16);
+        }
+
+        private long nullCount(int i) {
+            return recordBatch.bb.getLong(nodes + i * 16 + 8);
+        }
+
+        // Buffer struct: offset (long), length (long).
+        private long bufferOffset(int i) {
+            return recordBatch.bb.getLong(buffers + i * 16);
+        }
+
+        private long bufferLength(int i) {
+            return recordBatch.bb.getLong(buffers + i * 16 + 8);
+        }
+    }
+
+    /**
+     * A field of the schema, with the properties of its type that the reader needs.
+     */
+    private static class Field {
+        private final String name;
+        private final boolean nullable;
+        private final byte type;
+        private final Table typeTable;
+        private final boolean dictionary;
+        private final List<Field> children = new ArrayList<>();
+        private final Map<String, String> metadata = new HashMap<>();
+
+        private Field(Table table) {
+            this.name = table.getString(0);
+            this.nullable = table.getByte(1, (byte) 0) != 0;
+            this.type = table.getByte(2, (byte) 0);
+            this.typeTable = table.getTable(3);
+            this.dictionary = table.getTable(4) != null;
+            for (int i = 0; i < table.getVectorLength(5); i++) {
+                children.add(new Field(table.getTable(5, i)));
+            }
+            for (int i = 0; i < table.getVectorLength(6); i++) {
+                final Table keyValue = table.getTable(6, i);
+                final String key = keyValue.getString(0);
+                if (key != null) {
+                    metadata.put(key, keyValue.getString(1));
+                }
+            }
+        }
+
+        /** Number of field nodes of this field in a record batch. **/
+        private int nodeCount() {
+            int count = 1;
+            if (!dictionary) {
+                for (Field child : children) {
+                    count += child.nodeCount();
+                }
+            }
+            return count;
+        }
+
+        /** Number of buffers of this field in a record batch. **/
+        private int bufferCount() {
+            if (dictionary) {
+                // The indices.
+                return 2;
+            }
+            int count = switch (type) {
+                case TYPE_NULL, TYPE_RUN_END_ENCODED -> 0;
+                case TYPE_STRUCT, TYPE_FIXED_SIZE_LIST -> 1;
+                case TYPE_BINARY, TYPE_UTF8, TYPE_LARGE_BINARY, TYPE_LARGE_UTF8 -> 3;
+                // Sparse unions only have the type identifiers, dense unions also have the offsets.
+                case TYPE_UNION -> typeTable != null && typeTable.getShort(0, (short) 0) == 1 ? 2 : 1;
+                case TYPE_LIST, TYPE_LARGE_LIST, TYPE_MAP -> 2;
+                default -> {
+                    if (type > TYPE_RUN_END_ENCODED) {
+                        // View types have a variable number of buffers.
+                        throw new IllegalStateException("Unsupported type in field " + name + ": " + type);
+                    }
+                    yield 2;
+                }
+            };
+            for (Field child : children) {
+                count += child.bufferCount();
+            }
+            return count;
+        }
+
+        private boolean isNumber() {
+            return !dictionary && (type == TYPE_INT && intWidth() > 0 || type == TYPE_FLOAT && floatPrecision() > 0);
+        }
+
+        private int intWidth() {
+            final int width = typeTable != null ? typeTable.getInt(0, 0) : 0;
+            return width == 8 || width == 16 || width == 32 || width == 64 ? width : 0;
+        }
+
+        private boolean isSigned() {
+            return typeTable != null && typeTable.getByte(1, (byte) 0) != 0;
+        }
+
+        private short floatPrecision() {
+            final short precision = typeTable != null ? typeTable.getShort(0, (short) 0) : 0;
+            return precision == PRECISION_SINGLE || precision == PRECISION_DOUBLE ? precision : 0;
+        }
+
+        /** The content class of the column, or null if the field can't be read. **/
+        private Class<?> contentClass() {
+            if (dictionary) {
+                return null;
+            }
+            return switch (type) {
+                case TYPE_INT -> switch (intWidth()) {
+                    case 8 -> isSigned() ? Byte.class : Short.class;
+                    case 16 -> isSigned() ? Short.class : Integer.class;
+                    case 32 -> isSigned() ? Integer.class : Long.class;
+                    case 64 -> Long.class;
+                    default -> null;
+                };
+                case TYPE_FLOAT -> switch (floatPrecision()) {
+                    case PRECISION_SINGLE -> Float.class;
+                    case PRECISION_DOUBLE -> Double.class;
+                    default -> null;
+                };
+                case TYPE_BOOL -> Boolean.class;
+                case TYPE_UTF8, TYPE_LARGE_UTF8 -> String.class;
+                case TYPE_LIST, TYPE_LARGE_LIST, TYPE_FIXED_SIZE_LIST -> children.size() == 1 && children.get(0).isNumber() ? double[].class : null;
+                default -> null;
+            };
+        }
+    }
+
+    /**
+     * The values of a column, in a primitive array for numbers and booleans.
+     */
+    private static class ArrowColumn extends ColumnData {
+        private final Field field;
+        private final Class<?> contentClass;
+        private final Object data;
+        /** Rows with blank values, for the types that have no blank value. May be null. **/
+        private BitSet nulls;
+
+        private ArrowColumn(ColumnInfo info,
+                            Field field,
+                            int rows) {
+            super(info);
+            this.field = field;
+            this.contentClass = info.getContentClass();
+            if (contentClass == Byte.class) {
+                data = new byte[rows];
+            } else if (contentClass == Short.class) {
+                data = new short[rows];
+            } else if (contentClass == Integer.class) {
+                data = new int[rows];
+            } else if (contentClass == Long.class) {
+                data = new long[rows];
+            } else if (contentClass == Float.class) {
+                data = new float[rows];
+            } else if (contentClass == Double.class) {
+                data = new double[rows];
+            } else if (contentClass == Boolean.class) {
+                data = new boolean[rows];
+            } else if (contentClass == String.class) {
+                data = new String[rows];
+            } else {
+                data = new double[rows][];
+            }
+        }
+
+        @Override
+        public Object readValue(long irow) {
+            final int i = (int) irow;
+            if (nulls != null && nulls.get(i)) {
+                return null;
+            }
+            if (contentClass == Byte.class) {
+                return ((byte[]) data)[i];
+            } else if (contentClass == Short.class) {
+                return ((short[]) data)[i];
+            } else if (contentClass == Integer.class) {
+                return ((int[]) data)[i];
+            } else if (contentClass == Long.class) {
+                return ((long[]) data)[i];
+            } else if (contentClass == Float.class) {
+                return ((float[]) data)[i];
+            } else if (contentClass == Double.class) {
+                return ((double[]) data)[i];
+            } else if (contentClass == Boolean.class) {
+                return ((boolean[]) data)[i];
+            } else {
+                return ((Object[]) data)[i];
+            }
+        }
+
+        /**
+         * Reads the values of this column in the given batch.
+         *
+         * @param batch  The batch.
+         * @param node   The index of the node of the field in the batch.
+         * @param buffer The index of the first buffer of the field in the batch.
+         * @param body   The mapped range of the batch body.
+         * @param start  The offset of the mapped range in the batch body.
+         */
+        private void read(Batch batch,
+                          int node,
+                          int buffer,
+                          ByteBuffer body,
+                          long start) {
+            final int n = (int) batch.nodeLength(node);
+            final int row = (int) batch.firstRow;
+            final ByteBuffer validity = batch.nullCount(node) > 0 ? slice(batch, buffer, body, start) : null;
+
+            if (contentClass == Boolean.class) {
+                final ByteBuffer bits = slice(batch, buffer + 1, body, start);
+                final boolean[] values = (boolean[]) data;
+                for (int i = 0; i < n; i++) {
+                    values[row + i] = isSet(bits, i);
+                }
+            } else if (contentClass == String.class) {
+                readStrings(n, row, batch, buffer, body, start);
+            } else if (contentClass == double[].class) {
+                readLists(n, row, batch, node, buffer, body, start);
+            } else {
+                readNumbers(field, slice(batch, buffer + 1, body, start), n, data, row);
+            }
+
+            if (validity != null) {
+                for (int i = 0; i < n; i++) {
+                    if (!isSet(validity, i)) {
+                        setNull(row + i);
+                    }
+                }
+            }
+        }
+
+        private void setNull(int i) {
+            if (contentClass == Float.class) {
+                ((float[]) data)[i] = Float.NaN;
+            } else if (contentClass == Double.class) {
+                ((double[]) data)[i] = Double.NaN;
+            } else if (data instanceof Object[] objects) {
+                objects[i] = null;
+            } else {
+                if (nulls == null) {
+                    nulls = new BitSet();
+                }
+                nulls.set(i);
+            }
+        }
+
+        private void readStrings(int n,
+                                 int row,
+                                 Batch batch,
+                                 int buffer,
+                                 ByteBuffer body,
+                                 long start) {
+            final boolean large = field.type == TYPE_LARGE_UTF8;
+            final ByteBuffer offsets = slice(batch, buffer + 1, body, start);
+            final ByteBuffer chars = slice(batch, buffer + 2, body, start);
+            final String[] values = (String[]) data;
+            byte[] bytes = new byte[0];
+            for (int i = 0; i < n; i++) {
+                final int from = offset(offsets, i, large);
+                final int length = offset(offsets, i + 1, large) - from;
+                if (length > bytes.length) {
+                    bytes = new byte[Math.max(length, bytes.length * 2)];
+                }
+                chars.get(from, bytes, 0, length);
+                values[row + i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+            }
+        }
+
+        private void readLists(int n,
+                               int row,
+                               Batch batch,
+                               int node,
+                               int buffer,
+                               ByteBuffer body,
+                               long start) {
+            final boolean fixed = field.type == TYPE_FIXED_SIZE_LIST;
+            final boolean large = field.type == TYPE_LARGE_LIST;
+            final ByteBuffer offsets = fixed ? null : slice(batch, buffer + 1, body, start);
+            final int childBuffer = buffer + (fixed ? 1 : 2);
+            final int size = fixed ? field.typeTable.getInt(0, 0) : 0;
+
+            // The values of all the lists of the batch, as doubles.
+            final Field child = field.children.get(0);
+            final int numValues = (int) batch.nodeLength(node + 1);
+            final double[] values = new double[numValues];
+            readNumbers(child, slice(batch, childBuffer + 1, body, start), numValues, values, 0);
+            if (batch.nullCount(node + 1) > 0) {
+                final ByteBuffer childValidity = slice(batch, childBuffer, body, start);
+                for (int i = 0; i < numValues; i++) {
+                    if (!isSet(childValidity, i)) {
+                        values[i] = Double.NaN;
+                    }
+                }
+            }
+
+            final double[][] lists = (double[][]) data;
+            for (int i = 0; i < n; i++) {
+                final int from = fixed ? i * size : offset(offsets, i, large);
+                final int to = fixed ? from + size : offset(offsets, i + 1, large);
+                lists[row + i] = Arrays.copyOfRange(values, from, to);
+            }
+        }
+
+        /**
+         * Copies the numbers of the given buffer to the array, starting at the given index. Signed numbers are copied
+         * in bulk, unsigned numbers are widened, and all numbers are converted if the array is a double array of a
+         * different type.
+         */
+        private static void readNumbers(Field field,
+                                        ByteBuffer values,
+                                        int n,
+                                        Object array,
+                                        int index) {
+            final boolean toDouble = array instanceof double[] && !(field.type == TYPE_FLOAT && field.floatPrecision() == PRECISION_DOUBLE);
+            if (toDouble) {
+                final double[] out = (double[]) array;
+                for (int i = 0; i < n; i++) {
+                    out[index + i] = number(field, values, i);
+                }
+            } else if (field.type == TYPE_FLOAT) {
+                if (array instanceof double[] out) {
+                    values.asDoubleBuffer().get(out, index, n);
+                } else {
+                    values.asFloatBuffer().get((float[]) array, index, n);
+                }
+            } else if (field.isSigned() || field.intWidth() == 64) {
+                switch (field.intWidth()) {
+                    case 8 -> values.get(0, (byte[]) array, index, n);
+                    case 16 -> values.asShortBuffer().get((short[]) array, index, n);
+                    case 32 -> values.asIntBuffer().get((int[]) array, index, n);
+                    default -> values.asLongBuffer().get((long[]) array, index, n);
+                }
+            } else {
+                switch (field.intWidth()) {
+                    case 8 -> {
+                        final short[] out = (short[]) array;
+                        for (int i = 0; i < n; i++) {
+                            out[index + i] = (short) (values.get(i) & 0xFF);
+                        }
+                    }
+                    case 16 -> {
+                        final int[] out = (int[]) array;
+                        for (int i = 0; i < n; i++) {
+                            out[index + i] = values.getShort(i * 2) & 0xFFFF;
+                        }
+                    }
+                    default -> {
+                        final long[] out = (long[]) array;
+                        for (int i = 0; i < n; i++) {
+                            out[index + i] = values.getInt(i * 4) & 0xFFFFFFFFL;
+                        }
+                    }
+                }
+            }
+        }
+
+        private static double number(Field field,
+                                     ByteBuffer values,
+                                     int i) {
+            if (field.type == TYPE_FLOAT) {
+                return field.floatPrecision() == PRECISION_DOUBLE ? values.getDouble(i * 8) : values.getFloat(i * 4);
+            }
+            final boolean signed = field.isSigned();
+            return switch (field.intWidth()) {
+                case 8 -> signed ? values.get(i) : values.get(i) & 0xFF;
+                case 16 -> signed ? values.getShort(i * 2) : values.getShort(i * 2) & 0xFFFF;
+                case 32 -> signed ? values.getInt(i * 4) : values.getInt(i * 4) & 0xFFFFFFFFL;
+                default -> values.getLong(i * 8);
+            };
+        }
+
+        private static ByteBuffer slice(Batch batch,
+                                        int buffer,
+                                        ByteBuffer body,
+                                        long start) {
+            final long length = batch.bufferLength(buffer);
+            if (length == 0) {
+                return ByteBuffer.allocate(0).order(ByteOrder.LITTLE_ENDIAN);
+            }
+            return body.slice((int) (batch.bufferOffset(buffer) - start), (int) length).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        private static boolean isSet(ByteBuffer bits,
+                                     int i) {
+            return (bits.get(i >> 3) >> (i & 7) & 1) != 0;
+        }
+
+        private static int offset(ByteBuffer offsets,
+                                  int i,
+                                  boolean large) {
+            return large ? (int) offsets.getLong(i * 8) : offsets.getInt(i * 4);
+        }
+    }
+
+    /**
+     * A table of a flatbuffer, which is the serialization format of the Arrow metadata. Only the operations
+     * needed to read the Arrow schema, footer and messages are implemented.
+     */
+    private static class Table {
+        private final ByteBuffer bb;
+        private final int position;
+
+        private Table(ByteBuffer bb,
+                      int position) {
+            this.bb = bb;
+            this.position = position;
+        }
+
+        private static Table root(ByteBuffer bb) {
+            return new Table(bb, bb.getInt(0));
+        }
+
+        /** Offset of the given field in the table, or zero if it is absent. **/
+        private int offset(int field) {
+            final int vtable = position - bb.getInt(position);
+            final int entry = 4 + field * 2;
+            return entry < (bb.getShort(vtable) & 0xFFFF) ? bb.getShort(vtable + entry) & 0xFFFF : 0;
+        }
+
+        private byte getByte(int field,
+                             byte defaultValue) {
+            final int o = offset(field);
+            return o != 0 ? bb.get(position + o) : defaultValue;
+        }
+
+        private short getShort(int field,
+                               short defaultValue) {
+            final int o = offset(field);
+            return o != 0 ? bb.getShort(position + o) : defaultValue;
+        }
+
+        private int getInt(int field,
+                           int defaultValue) {
+            final int o = offset(field);
+            return o != 0 ? bb.getInt(position + o) : defaultValue;
+        }
+
+        private long getLong(int field,
+                             long defaultValue) {
+            final int o = offset(field);
+            return o != 0 ? bb.getLong(position + o) : defaultValue;
+        }
+
+        /** Position of the object referenced by the given field, or -1 if it is absent. **/
+        private int indirect(int field) {
+            final int o = offset(field);
+            if (o == 0) {
+                return -1;
+            }
+            final int p = position + o;
+            return p + bb.getInt(p);
+        }
+
+        private Table getTable(int field) {
+            final int p = indirect(field);
+            return p >= 0 ? new Table(bb, p) : null;
+        }
+
+        private String getString(int field) {
+            final int p = indirect(field);
+            if (p < 0) {
+                return null;
+            }
+            final byte[] bytes = new byte[bb.getInt(p)];
+            bb.get(p + 4, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private int getVectorLength(int field) {
+            final int p = indirect(field);
+            return p >= 0 ? bb.getInt(p) : 0;
+        }
+
+        /** Position of the first element of the vector in the given field, or -1 if it is absent. **/
+        private int getVector(int field) {
+            final int p = indirect(field);
+            return p >= 0 ? p + 4 : -1;
+        }
+
+        /** Gets the table at the given index of the vector of tables in the given field. **/
+        private Table getTable(int field,
+                               int i) {
+            final int element = getVector(field) + i * 4;
+            return new Table(bb, element + bb.getInt(element));
+        }
+    }
+}
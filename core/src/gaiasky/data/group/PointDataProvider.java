@@ -22,9 +22,17 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.zip.GZIPInputStream;
 
 /**
@@ -33,6 +41,8 @@ import java.util.zip.GZIPInputStream;
  */
 public class PointDataProvider implements IParticleGroupDataProvider {
     private static final Log logger = Logger.getLogger(PointDataProvider.class);
+    /** Approximate size of the chunks of the file that are parsed in parallel. **/
+    private static final long CHUNK_SIZE = 4L << 20;
 
     private Matrix4d transform;
     private final Vector3d aux = new Vector3d();
@@ -43,6 +53,15 @@ public class PointDataProvider implements IParticleGroupDataProvider {
 
     public List<IParticleRecord> loadData(String file,
                                           double factor) {
+        if (!file.endsWith(".gz")) {
+            // Plain text, use the mapped parser.
+            List<IParticleRecord> pointData = loadDataMapped(file, factor);
+            if (pointData != null) {
+                logger.info(I18n.msg("notif.nodeloader", pointData.size(), file));
+            }
+            return pointData;
+        }
+
         InputStream is = Settings.settings.data.dataFileHandle(file).read();
 
         if (file.endsWith(".gz")) {
@@ -122,9 +141,170 @@ public class PointDataProvider implements IParticleGroupDataProvider {
         this.transform = matrix;
     }
 
+    /**
+     * Loads the given plain text file by memory-mapping it and parsing line-aligned chunks in parallel. Numbers are
+     * parsed straight from the mapped bytes into flat primitive arrays, one per chunk, and the chunks are merged in
+     * file order. The results are the same as those of {@link #loadData(InputStream, double)}.
+     *
+     * @param file   The file.
+     * @param factor The factor to apply to all values.
+     *
+     * @return The list of point records, or null if the file can't be read.
+     */
     @Override
     public List<IParticleRecord> loadDataMapped(String file,
                                                 double factor) {
-        return null;
+        final long start = System.nanoTime();
+        try (FileChannel fc = FileChannel.open(Settings.settings.data.dataPath(file), StandardOpenOption.READ)) {
+            final long size = fc.size();
+            final long[] bounds = chunkBounds(fc, size);
+            final List<Callable<PointChunk>> tasks = new ArrayList<>(bounds.length - 1);
+            for (int i = 0; i < bounds.length - 1; i++) {
+                final long from = bounds[i];
+                final long to = bounds[i + 1];
+                tasks.add(() -> parseChunk(fc.map(MapMode.READ_ONLY, from, to - from), factor));
+            }
+            final List<Future<PointChunk>> futures = ForkJoinPool.commonPool().invokeAll(tasks);
+
+            int total = 0;
+            final List<PointChunk> chunks = new ArrayList<>(futures.size());
+            for (var future : futures) {
+                final var chunk = future.get();
+                chunks.add(chunk);
+                total += chunk.count;
+            }
+            final List<IParticleRecord> pointData = new ArrayList<>(total);
+            for (var chunk : chunks) {
+                int offset = 0;
+                for (int i = 0; i < chunk.count; i++) {
+                    final int n = chunk.sizes[i];
+                    pointData.add(new PointParticleRecord(Arrays.copyOfRange(chunk.values, offset, offset + n)));
+                    offset += n;
+                }
+            }
+
+            final double seconds = (System.nanoTime() - start) * 1e-9;
+            final double mb = size / (1024.0 * 1024.0);
+            logger.info(String.format("Parsed %.2f MB in %.3f s (%.1f MB/s, %d chunks): %s", mb, seconds, mb / Math.max(seconds, 1e-9), chunks.size(), file));
+            return pointData;
+        } catch (Exception e) {
+            logger.error(e);
+            return null;
+        }
+    }
+
+    /**
+     * Computes the bounds of the chunks of the file. All chunks but the first start right after a new line.
+     */
+    private static long[] chunkBounds(FileChannel fc,
+                                      long size) throws IOException {
+        final int nChunks = (int) Math.max(1, (size + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        final long[] bounds = new long[nChunks + 1];
+        final ByteBuffer buffer = ByteBuffer.allocate(4096);
+        int n = 1;
+        for (int i = 1; i < nChunks; i++) {
+            long p = Math.max(i * CHUNK_SIZE, bounds[n - 1]);
+            long bound = size;
+            search:
+            while (p < size) {
+                buffer.clear();
+                final int read = fc.read(buffer, p);
+                if (read <= 0) {
+                    break;
+                }
+                for (int k = 0; k < read; k++) {
+                    if (buffer.get(k) == '\n') {
+                        bound = p + k + 1;
+                        break search;
+                    }
+                }
+                p += read;
+            }
+            if (bound > bounds[n - 1] && bound < size) {
+                bounds[n++] = bound;
+            }
+        }
+        bounds[n++] = size;
+        return Arrays.copyOf(bounds, n);
+    }
+
+    /**
+     * Parses the lines of the given buffer. Lines starting with '#' and empty lines are skipped. Values are
+     * separated by white space.
+     */
+    private PointChunk parseChunk(ByteBuffer buffer,
+                                  double factor) {
+        final PointChunk chunk = new PointChunk();
+        final Vector3d v = transform != null ? new Vector3d() : null;
+        final CharSequence chars = Parser.asciiView(buffer);
+        final int limit = buffer.limit();
+        double[] line = new double[8];
+        int p = 0;
+        while (p < limit) {
+            int eol = p;
+            while (eol < limit && buffer.get(eol) != '\n') {
+                eol++;
+            }
+            if (eol > p && buffer.get(p) != '#') {
+                int count = 0;
+                int t = p;
+                while (t < eol) {
+                    while (t < eol && isSpace(buffer.get(t))) {
+                        t++;
+                    }
+                    if (t >= eol) {
+                        break;
+                    }
+                    int te = t;
+                    while (te < eol && !isSpace(buffer.get(te))) {
+                        te++;
+                    }
+                    if (count == line.length) {
+                        line = Arrays.copyOf(line, count * 2);
+                    }
+                    line[count++] = Parser.parseDouble(chars, t, te) * factor;
+                    t = te;
+                }
+                if (count > 0) {
+                    if (v != null && count >= 3) {
+                        v.set(line[0], line[1], line[2]);
+                        v.mul(transform);
+                        line[0] = v.x;
+                        line[1] = v.y;
+                        line[2] = v.z;
+                    }
+                    chunk.add(line, count);
+                }
+            }
+            p = eol + 1;
+        }
+        return chunk;
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\f' || b == 0x0B;
+    }
+
+    /**
+     * The points of a chunk of the file, stored in a flat array.
+     */
+    private static class PointChunk {
+        private double[] values = new double[1024];
+        private int[] sizes = new int[256];
+        private int count;
+        private int length;
+
+        private void add(double[] point,
+                         int n) {
+            if (length + n > values.length) {
+                values = Arrays.copyOf(values, Math.max(values.length * 2, length + n));
+            }
+            if (count == sizes.length) {
+                sizes = Arrays.copyOf(sizes, count * 2);
+            }
+            System.arraycopy(point, 0, values, length, n);
+            length += n;
+            sizes[count++] = n;
+        }
     }
 }
@@ -0,0 +1,380 @@
+/*
+ * Copyright (c) 2023 Gaia Sky - All rights reserved.
+ *  This file is part of Gaia Sky, which is released under the Mozilla Public License 2.0.
+ *  You may use, distribute and modify this code under the terms of MPL2.
+ *  See the file LICENSE.md in the project root for full license details.
+ */
+
+package gaiasky.data.group;
+
+import com.badlogic.gdx.utils.Array;
+import gaiasky.util.TextUtils;
+import gaiasky.util.coord.Coordinates;
+import gaiasky.util.math.Vector3d;
+import gaiasky.util.parse.Parser;
+import gaiasky.util.ucd.UCD;
+import gaiasky.util.ucd.UCDParser;
+import gaiasky.util.units.Position.PositionType;
+import gaiasky.util.units.Quantity.Angle;
+import gaiasky.util.units.Quantity.Angle.AngleUnit;
+import gaiasky.util.units.Quantity.Length;
+import gaiasky.util.units.Quantity.Length.LengthUnit;
+import net.jafama.FastMath;
+
+/**
+ * Column plan for the {@link STILDataProvider}, compiled once per table from the results of the {@link UCDParser}.
+ * For each quantity, it holds the candidate columns in order of preference, together with their unit conversion
+ * factors, and it resolves the position type of every combination of position columns up front. Rows are then read
+ * into a {@link Values} object with primitive values, without boxing or parsing units. The plan is immutable, so it
+ * can be shared by several threads, each with its own {@link Values}.
+ */
+public class STILColumnPlan {
+    public static final int POS1 = 0;
+    public static final int POS2 = 1;
+    public static final int POS3 = 2;
+    public static final int PMRA = 3;
+    public static final int PMDEC = 4;
+    public static final int RADVEL = 5;
+    public static final int MAG = 6;
+    public static final int COL = 7;
+    public static final int TEFF = 8;
+    public static final int SIZE = 9;
+    public static final int PERIOD = 10;
+    private static final int N_QUANTITIES = 11;
+
+    /** Column indices of the candidates, per quantity. **/
+    private final int[][] indices;
+    /** The candidate UCDs, per quantity. **/
+    private final UCD[][] ucds;
+    /** Factor to convert each candidate to radians, NaN if it is not an angle. **/
+    private final double[][] toRad;
+    /** Factor to convert each candidate to milliarcseconds, NaN if it is not an angle. **/
+    private final double[][] toMas;
+    /** Factor to convert each candidate to parsecs, NaN if it is not a length. **/
+    private final double[][] toPc;
+    /** Whether each size candidate is a radius. **/
+    private final boolean[] sizeIsRadius;
+    /** Position types, indexed by {@link #positionIndex(int, int, int)}. **/
+    private final PositionType[] positionTypes;
+
+    public STILColumnPlan(UCDParser ucdParser) {
+        indices = new int[N_QUANTITIES][];
+        ucds = new UCD[N_QUANTITIES][];
+        toRad = new double[N_QUANTITIES][];
+        toMas = new double[N_QUANTITIES][];
+        toPc = new double[N_QUANTITIES][];
+        add(POS1, ucdParser.POS1);
+        add(POS2, ucdParser.POS2);
+        add(POS3, ucdParser.POS3);
+        add(PMRA, ucdParser.PMRA);
+        add(PMDEC, ucdParser.PMDEC);
+        add(RADVEL, ucdParser.RADVEL);
+        add(MAG, ucdParser.MAG);
+        add(COL, ucdParser.COL);
+        add(TEFF, ucdParser.TEFF);
+        add(SIZE, ucdParser.SIZE);
+        add(PERIOD, ucdParser.VARI_PERIOD);
+
+        sizeIsRadius = new boolean[ucds[SIZE].length];
+        for (int k = 0; k < sizeIsRadius.length; k++) {
+            sizeIsRadius[k] = TextUtils.containsOrMatches(UCDParser.radiusColNames, ucds[SIZE][k].colName, true);
+        }
+
+        // Position type of every combination of position columns. The third one may be missing.
+        final int n1 = ucds[POS1].length, n2 = ucds[POS2].length, n3 = ucds[POS3].length;
+        positionTypes = new PositionType[n1 * n2 * (n3 + 1)];
+        for (int i1 = 0; i1 < n1; i1++) {
+            for (int i2 = 0; i2 < n2; i2++) {
+                for (int i3 = -1; i3 < n3; i3++) {
+                    PositionType type;
+                    try {
+                        type = ucdParser.getPositionType(ucds[POS1][i1], ucds[POS2][i2], i3 >= 0 ? ucds[POS3][i3] : null);
+                    } catch (Exception e) {
+                        type = null;
+                    }
+                    positionTypes[positionIndex(i1, i2, i3)] = type;
+                }
+            }
+        }
+    }
+
+    private void add(int quantity,
+                     Array<UCD> candidates) {
+        final int n = candidates == null ? 0 : candidates.size;
+        indices[quantity] = new int[n];
+        ucds[quantity] = new UCD[n];
+        toRad[quantity] = new double[n];
+        toMas[quantity] = new double[n];
+        toPc[quantity] = new double[n];
+        for (int k = 0; k < n; k++) {
+            final UCD ucd = candidates.get(k);
+            indices[quantity][k] = ucd.index;
+            ucds[quantity][k] = ucd;
+            toRad[quantity][k] = angleFactor(ucd.unit, AngleUnit.RAD);
+            toMas[quantity][k] = angleFactor(ucd.unit, AngleUnit.MAS);
+            toPc[quantity][k] = lengthFactor(ucd.unit);
+        }
+    }
+
+    private static double angleFactor(String unit,
+                                      AngleUnit to) {
+        if (unit == null || !Angle.isAngle(unit)) {
+            return Double.NaN;
+        }
+        return new Angle(1.0, unit).get(to);
+    }
+
+    private static double lengthFactor(String unit) {
+        if (unit == null || !Length.isLength(unit)) {
+            return Double.NaN;
+        }
+        return new Length(1.0, unit).get(LengthUnit.PC);
+    }
+
+    private int positionIndex(int i1,
+                              int i2,
+                              int i3) {
+        return (i1 * ucds[POS2].length + i2) * (ucds[POS3].length + 1) + (i3 + 1);
+    }
+
+    /**
+     * Checks whether the given quantity has any candidate columns.
+     *
+     * @param quantity The quantity.
+     *
+     * @return Whether the quantity is in the table.
+     */
+    public boolean has(int quantity) {
+        return ucds[quantity].length > 0;
+    }
+
+    /**
+     * Gets the UCD of the column the given quantity was read from.
+     *
+     * @param quantity The quantity.
+     * @param values   The values of the row.
+     *
+     * @return The UCD, or null if the quantity was not found in the row.
+     */
+    public UCD ucd(int quantity,
+                   Values values) {
+        final int hit = values.hits[quantity];
+        return hit >= 0 ? ucds[quantity][hit] : null;
+    }
+
+    /**
+     * Reads all quantities of the given row. Each quantity takes the value of the first candidate column with a
+     * valid number. Quantities not found in the row are NaN.
+     *
+     * @param row The row objects.
+     * @param out The values to fill.
+     */
+    public void read(Object[] row,
+                     Values out) {
+        for (int q = 0; q < N_QUANTITIES; q++) {
+            final int[] idx = indices[q];
+            out.hits[q] = -1;
+            out.values[q] = Double.NaN;
+            for (int k = 0; k < idx.length; k++) {
+                final double v = toDouble(row[idx[k]]);
+                if (!Double.isNaN(v)) {
+                    out.hits[q] = k;
+                    out.values[q] = v;
+                    break;
+                }
+            }
+        }
+    }
+
+    private static double toDouble(Object cell) {
+        if (cell instanceof Number n) {
+            return n.doubleValue();
+        } else if (cell instanceof String s) {
+            try {
+                return Parser.parseDouble(s);
+            } catch (Exception e) {
+                return Double.NaN;
+            }
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * Gets the position type of the row, from the position columns its values were read from.
+     *
+     * @param values        The values of the row.
+     * @param defaultPos3   Whether the third position value is missing, and is replaced by the default parallax.
+     *
+     * @return The position type.
+     *
+     * @throws IllegalStateException If the position type can't be resolved.
+     */
+    public PositionType positionType(Values values,
+                                     boolean defaultPos3) {
+        final int i1 = values.hits[POS1], i2 = values.hits[POS2];
+        if (i1 < 0 || i2 < 0) {
+            throw new IllegalStateException("Position not found in row");
+        }
+        final var type = positionTypes[positionIndex(i1, i2, defaultPos3 ? -1 : values.hits[POS3])];
+        if (type == null) {
+            throw new IllegalStateException("Could not resolve position type");
+        }
+        return type;
+    }
+
+    /**
+     * Converts the position of the row to equatorial cartesian coordinates, in parsecs. The third position value
+     * in {@link Values#pos3} is used, which may hold the default parallax.
+     *
+     * @param values The values of the row.
+     * @param type   The position type.
+     * @param out    The vector to put the result in.
+     *
+     * @return The out vector.
+     *
+     * @throws IllegalStateException If some units are not valid, or the distance is not positive.
+     */
+    public Vector3d position(Values values,
+                             PositionType type,
+                             Vector3d out) {
+        final int i1 = values.hits[POS1], i2 = values.hits[POS2], i3 = values.hits[POS3];
+        final double a = values.values[POS1], b = values.values[POS2];
+        final double c = Double.isNaN(values.pos3) ? 0.04 : values.pos3;
+        switch (type) {
+            case EQ_SPH_DIST, GAL_SPH_DIST, ECL_SPH_DIST, EQ_SPH_PLX, GAL_SPH_PLX, ECL_SPH_PLX -> {
+                final double lon = a * factor(toRad, POS1, i1);
+                final double lat = b * factor(toRad, POS2, i2);
+                final double distPc;
+                if (type.isParallax()) {
+                    // The default parallax is in mas.
+                    final double mas = values.pos3Default ? c : c * factor(toMas, POS3, i3);
+                    distPc = mas <= 0 ? -1 : 1000.0 / mas;
+                } else {
+                    distPc = c * factor(toPc, POS3, i3);
+                }
+                if (distPc <= 0) {
+                    throw new IllegalStateException("Negative distance found: " + distPc + " pc");
+                }
+                Coordinates.sphericalToCartesian(lon, lat, distPc, out);
+            }
+            case EQ_XYZ, GAL_XYZ, ECL_XYZ -> out.set(a * factor(toPc, POS1, i1), b * factor(toPc, POS2, i2), c * factor(toPc, POS3, i3));
+        }
+        switch (type) {
+            case GAL_SPH_DIST, GAL_SPH_PLX, GAL_XYZ -> out.mul(Coordinates.galToEq());
+            case ECL_SPH_DIST, ECL_SPH_PLX, ECL_XYZ -> out.mul(Coordinates.eclToEq());
+            default -> {
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Gets the value of the given quantity in radians.
+     *
+     * @throws IllegalStateException If the quantity was not found in the row, or its unit is not an angle.
+     */
+    public double radians(int quantity,
+                          Values values) {
+        return values.values[quantity] * factor(toRad, quantity, values.hits[quantity]);
+    }
+
+    /**
+     * Converts the size of the row to a diameter in parsecs. Sizes given as angles are converted with the given
+     * distance, and sizes without units are assumed to be in parsecs already.
+     *
+     * @param values   The values of the row.
+     * @param distance The distance used to convert angular sizes.
+     * @param fallback The size to use if the unit of the size column is not known.
+     *
+     * @return The diameter in parsecs.
+     *
+     * @throws IllegalStateException If there is no size in the row.
+     */
+    public double sizePc(Values values,
+                         double distance,
+                         double fallback) {
+        final int k = values.hits[SIZE];
+        if (k < 0) {
+            throw new IllegalStateException("Size not found in row");
+        }
+        final double v = values.values[SIZE];
+        double sizePc = fallback;
+        if (ucds[SIZE][k].unit != null) {
+            if (!Double.isNaN(toRad[SIZE][k])) {
+                // Size in parsecs = tan(sa) * distPc
+                sizePc = FastMath.tan(v * toRad[SIZE][k]) * distance;
+            } else if (!Double.isNaN(toPc[SIZE][k])) {
+                // Size in parsecs, directly.
+                sizePc = v * toPc[SIZE][k];
+            }
+        } else {
+            // We hope size is already in parsecs.
+            sizePc = (float) v;
+        }
+        if (sizeIsRadius[k]) {
+            // Radius, need to multiply by 2 to get diameter.
+            sizePc *= 2.0;
+        }
+        return sizePc;
+    }
+
+    private static double factor(double[][] factors,
+                                 int quantity,
+                                 int hit) {
+        if (hit < 0 || Double.isNaN(factors[quantity][hit])) {
+            throw new IllegalStateException("Quantity " + quantity + " not found, or has an invalid unit");
+        }
+        return factors[quantity][hit];
+    }
+
+    /**
+     * Holds the primitive values of a row, and the candidate column each one was read from. Not thread-safe, each
+     * thread must use its own instance.
+     */
+    public static class Values {
+        private final double[] values = new double[N_QUANTITIES];
+        private final int[] hits = new int[N_QUANTITIES];
+        /** Third position value actually used, possibly the default parallax. **/
+        private double pos3;
+        private boolean pos3Default;
+
+        // Auxiliary vectors.
+        public final Vector3d position = new Vector3d();
+        public final Vector3d spherical = new Vector3d();
+        public final Vector3d velocity = new Vector3d();
+
+        /**
+         * Gets the value of the given quantity.
+         *
+         * @param quantity The quantity.
+         *
+         * @return The value, or NaN if the quantity was not found in the row.
+         */
+        public double get(int quantity) {
+            return values[quantity];
+        }
+
+        /**
+         * Checks whether the given quantity was found in the row.
+         *
+         * @param quantity The quantity.
+         *
+         * @return Whether the quantity has a value.
+         */
+        public boolean found(int quantity) {
+            return hits[quantity] >= 0;
+        }
+
+        /**
+         * Sets the third position value to use, which may be the default parallax, in milliarcseconds.
+         *
+         * @param pos3      The value.
+         * @param isDefault Whether this is the default parallax.
+         */
+        public void setPos3(double pos3,
+                            boolean isDefault) {
+            this.pos3 = pos3;
+            this.pos3Default = isDefault;
+        }
+    }
+}
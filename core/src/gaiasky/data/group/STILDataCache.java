@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 2023 Gaia Sky - All rights reserved.
+ *  This file is part of Gaia Sky, which is released under the Mozilla Public License 2.0.
+ *  You may use, distribute and modify this code under the terms of MPL2.
+ *  See the file LICENSE.md in the project root for full license details.
+ */
+
+package gaiasky.data.group;
+
+import com.badlogic.gdx.utils.ObjectMap;
+import gaiasky.scene.api.IParticleRecord;
+import gaiasky.scene.record.ParticleRecord.ParticleRecordType;
+import gaiasky.scene.record.VariableRecord;
+import gaiasky.util.Constants;
+import gaiasky.util.Logger;
+import gaiasky.util.Logger.Log;
+import gaiasky.util.SysUtils;
+import gaiasky.util.ucd.UCD;
+import uk.ac.starlink.table.ColumnInfo;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Cache of catalogues loaded with the {@link STILDataProvider}. The converted records are written to a Gaia Sky binary
+ * file (see {@link BinaryDataProvider}) in the cache directory, next to a small metadata file with the table columns.
+ * Entries are keyed by a hash of the size, modification time and sampled contents of the source file, together with
+ * the load options, so changed files or options never hit stale entries. The Hipparcos numbers of the records are
+ * kept in the metadata file, as the binary format only derives them from the names. The binary format holds plain
+ * star records only, so catalogues with extra columns, light curves or particles are not cached.
+ */
+public class STILDataCache {
+    private static final Log logger = Logger.getLogger(STILDataCache.class);
+
+    private static final int MAGIC = 0x53544c43;
+    private static final int VERSION = 2;
+    /** Size of each of the blocks of the source file included in the hash. **/
+    private static final int SAMPLE_SIZE = 1 << 20;
+    /** Maximum number of cached catalogues. The oldest ones are deleted. **/
+    private static final int MAX_ENTRIES = 8;
+
+    private final Path dir;
+
+    public STILDataCache() {
+        this(SysUtils.getCacheDir().resolve("catalogs"));
+    }
+
+    public STILDataCache(Path dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Computes the cache key of the given file with the given load options. Only the first, middle and last
+     * megabytes of the file are hashed, together with its size and modification time.
+     *
+     * @param file    The source file.
+     * @param options A string with the load options that affect the conversion.
+     *
+     * @return The key, as a hexadecimal string.
+     *
+     * @throws IOException If the file can't be read.
+     */
+    public static String key(Path file,
+                             String options) throws IOException {
+        try {
+            final MessageDigest md = MessageDigest.getInstance("SHA-256");
+            final long size = Files.size(file);
+            final ByteBuffer header = ByteBuffer.allocate(Long.BYTES * 2 + Integer.BYTES);
+            header.putInt(VERSION).putLong(size).putLong(Files.getLastModifiedTime(file).toMillis());
+            md.update(header.array());
+            md.update(options.getBytes(StandardCharsets.UTF_8));
+
+            try (FileChannel fc = FileChannel.open(file, StandardOpenOption.READ)) {
+                final ByteBuffer buffer = ByteBuffer.allocate(SAMPLE_SIZE);
+                for (long position : new long[] { 0, size / 2 - SAMPLE_SIZE / 2, size - SAMPLE_SIZE }) {
+                    buffer.clear();
+                    long p = Math.max(0, position);
+                    while (buffer.hasRemaining() && fc.read(buffer, p) > 0) {
+                        p = Math.max(0, position) + buffer.position();
+                    }
+                    buffer.flip();
+                    md.update(buffer);
+                }
+            }
+
+            final byte[] digest = md.digest();
+            final StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (java.security.NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Checks whether the given records can be stored in the cache without losing information.
+     *
+     * @param data       The records.
+     * @param extraCount The number of extra columns of the table.
+     *
+     * @return Whether the records can be cached.
+     */
+    public static boolean isCacheable(List<IParticleRecord> data,
+                                      int extraCount) {
+        if (data == null || data.isEmpty() || extraCount > 0) {
+            return false;
+        }
+        for (var record : data) {
+            if (record.getType() != ParticleRecordType.STAR || record instanceof VariableRecord) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the catalogue with the given key.
+     *
+     * @param key     The key.
+     * @param columns List to put the table columns in.
+     *
+     * @return The records, or null if the key is not in the cache or the entry can't be read.
+     */
+    public List<IParticleRecord> read(String key,
+                                      List<ColumnInfo> columns) {
+        final Path meta = dir.resolve(key + ".meta");
+        final Path bin = dir.resolve(key + ".bin");
+        if (!Files.exists(meta) || !Files.exists(bin)) {
+            return null;
+        }
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(meta)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            final UCD tEffUcd = new UCD(readString(in), readString(in), readString(in), in.readInt());
+            final int nColumns = in.readInt();
+            final List<ColumnInfo> infos = new ArrayList<>(nColumns);
+            for (int i = 0; i < nColumns; i++) {
+                final var name = readString(in);
+                final var contentClass = Class.forName(in.readUTF());
+                final var info = new ColumnInfo(name, contentClass, readString(in));
+                info.setUnitString(readString(in));
+                infos.add(info);
+            }
+            // Hipparcos numbers, as (record index, number) pairs in index order.
+            final int nHip = in.readInt();
+            final int[] hipIndices = new int[nHip];
+            final int[] hips = new int[nHip];
+            for (int i = 0; i < nHip; i++) {
+                hipIndices[i] = in.readInt();
+                hips[i] = in.readInt();
+            }
+
+            // Positions are already in internal units, undo the scaling applied by the binary reader.
+            final double scale = Constants.DISTANCE_SCALE_FACTOR;
+            final var data = new BinaryDataProvider().loadDataMapped(bin.toString(), 1.0 / scale);
+            if (data == null) {
+                return null;
+            }
+            int h = 0;
+            for (int k = 0; k < data.size(); k++) {
+                final var record = data.get(k);
+                // Restore the original number, not the one the binary reader takes from the names.
+                if (h < nHip && hipIndices[h] == k) {
+                    record.setHip(hips[h++]);
+                } else {
+                    record.setHip(0);
+                }
+                if (scale != 1) {
+                    record.setSize((float) (record.size() / scale));
+                }
+                final ObjectMap<UCD, Object> extra = new ObjectMap<>(5);
+                extra.put(tEffUcd, record.teff());
+                record.setExtraAttributes(extra);
+            }
+            columns.clear();
+            columns.addAll(infos);
+            // Touch, so that recently used entries are kept.
+            Files.setLastModifiedTime(meta, java.nio.file.attribute.FileTime.fromMillis(System.currentTimeMillis()));
+            return data;
+        } catch (Exception e) {
+            logger.warn("Could not read cached catalog " + key + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes the given catalogue to the cache, and deletes the oldest entries if there are too many.
+     *
+     * @param key     The key.
+     * @param data    The records. Must be cacheable, see {@link #isCacheable(List, int)}.
+     * @param columns The table columns.
+     * @param tEffUcd The UCD of the effective temperature attribute of the records.
+     */
+    public void write(String key,
+                      List<IParticleRecord> data,
+                      List<ColumnInfo> columns,
+                      UCD tEffUcd) {
+        try {
+            Files.createDirectories(dir);
+            final Path bin = dir.resolve(key + ".bin");
+            final Path meta = dir.resolve(key + ".meta");
+
+            final var binTmp = Files.createTempFile(dir, key, ".tmp");
+            new BinaryDataProvider().writeData(data, new BufferedOutputStream(Files.newOutputStream(binTmp)), 3);
+
+            final var metaTmp = Files.createTempFile(dir, key, ".tmp");
+            try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(metaTmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                writeString(out, tEffUcd.originalUCD);
+                writeString(out, tEffUcd.colName);
+                writeString(out, tEffUcd.unit);
+                out.writeInt(tEffUcd.index);
+                out.writeInt(columns.size());
+                for (var info : columns) {
+                    writeString(out, info.getName());
+                    out.writeUTF(info.getContentClass().getName());
+                    writeString(out, info.getDescription());
+                    writeString(out, info.getUnitString());
+                }
+                int nHip = 0;
+                for (var record : data) {
+                    if (record.hip() > 0) {
+                        nHip++;
+                    }
+                }
+                out.writeInt(nHip);
+                for (int k = 0; k < data.size(); k++) {
+                    final int hip = data.get(k).hip();
+                    if (hip > 0) {
+                        out.writeInt(k);
+                        out.writeInt(hip);
+                    }
+                }
+            }
+            // The metadata goes last, it marks the entry as complete.
+            Files.move(binTmp, bin, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(metaTmp, meta, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.info("Catalog cached: " + bin);
+
+            prune();
+        } catch (Exception e) {
+            logger.warn("Could not cache catalog " + key + ": " + e);
+        }
+    }
+
+    private void prune() throws IOException {
+        final List<Path> metas;
+        try (Stream<Path> files = Files.list(dir)) {
+            metas = new ArrayList<>(files.filter(p -> p.getFileName().toString().endsWith(".meta")).toList());
+        }
+        if (metas.size() <= MAX_ENTRIES) {
+            return;
+        }
+        metas.sort(Comparator.comparingLong(p -> p.toFile().lastModified()));
+        for (int i = 0; i < metas.size() - MAX_ENTRIES; i++) {
+            final var meta = metas.get(i);
+            final var name = meta.getFileName().toString();
+            Files.deleteIfExists(meta);
+            Files.deleteIfExists(meta.resolveSibling(name.substring(0, name.length() - 5) + ".bin"));
+        }
+    }
+
+    private static void writeString(DataOutputStream out,
+                                    String str) throws IOException {
+        out.writeBoolean(str != null);
+        if (str != null) {
+            out.writeUTF(str);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
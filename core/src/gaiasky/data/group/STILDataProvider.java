@@ -11,6 +11,8 @@ import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.LongMap;
 import com.badlogic.gdx.utils.ObjectMap;
+import com.badlogic.gdx.utils.TimeUtils;
+import gaiasky.GaiaSky;
 import gaiasky.data.group.DatasetOptions.DatasetLoadType;
 import gaiasky.scene.api.IParticleRecord;
 import gaiasky.scene.record.ParticleRecord;
@@ -30,12 +32,7 @@ import gaiasky.util.math.Vector3d;
 import gaiasky.util.parse.Parser;
 import gaiasky.util.ucd.UCD;
 import gaiasky.util.ucd.UCDParser;
-import gaiasky.util.units.Position;
 import gaiasky.util.units.Position.PositionType;
-import gaiasky.util.units.Quantity.Angle;
-import gaiasky.util.units.Quantity.Angle.AngleUnit;
-import gaiasky.util.units.Quantity.Length;
-import gaiasky.util.units.Quantity.Length.LengthUnit;
 import net.jafama.FastMath;
 import uk.ac.starlink.table.*;
 import uk.ac.starlink.table.formats.AsciiTableBuilder;
@@ -48,6 +45,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 
 /**
@@ -72,6 +72,29 @@ public class STILDataProvider extends AbstractStarGroupDataProvider {
     private DatasetOptions datasetOptions;
     /** The list of {@link ColumnInfo} objects of the last table loaded by this provider. **/
     private List<ColumnInfo> columnInfoList;
+    /** Number of rows per chunk in parallel loading. **/
+    private static final int CHUNK_ROWS = 16384;
+    /** Tables with fewer rows than this are always loaded serially. **/
+    private static final long PARALLEL_MIN_ROWS = 50000;
+    /** Whether to convert large tables in parallel. **/
+    private boolean parallelLoading = true;
+    /** Whether to use the catalog cache, if it is enabled in the settings. **/
+    private boolean useCache = true;
+    private final STILDataCache catalogCache = new STILDataCache();
+    /** Minimum time between two consecutive batches handed to the batch consumer, in milliseconds. **/
+    private static final long BATCH_INTERVAL_MS = 500;
+    /**
+     * Minimum size of a batch, as a fraction of the records already handed out. Each batch makes the consumer copy
+     * the whole set, so batches grow with it to keep the total work linear.
+     **/
+    private static final double BATCH_GROWTH = 0.5;
+    /** Receives the records in batches, as they are loaded. May be null. **/
+    private Consumer<List<IParticleRecord>> batchConsumer;
+    /** Index of the first record of the next batch, and time at which the last batch was handed out. **/
+    private int batchStart;
+    private long lastBatchTime;
+    /** Set to stop loading. **/
+    private volatile boolean cancelled = false;
 
     public STILDataProvider() {
         super();
@@ -94,6 +117,55 @@ public class STILDataProvider extends AbstractStarGroupDataProvider {
         this.datasetOptions = datasetOptions;
     }
 
+    /**
+     * Sets whether large tables are converted in parallel. Records are always added in row order.
+     *
+     * @param parallelLoading Whether to use parallel loading.
+     */
+    public void setParallelLoading(boolean parallelLoading) {
+        this.parallelLoading = parallelLoading;
+    }
+
+    /**
+     * Sets whether this provider uses the catalog cache (see {@link STILDataCache}). The cache is only used for star
+     * datasets loaded from files, and only if it is enabled in the settings.
+     *
+     * @param useCache Whether to use the cache.
+     */
+    public void setUseCache(boolean useCache) {
+        this.useCache = useCache;
+    }
+
+    /**
+     * Sets a consumer that gets the records in batches, in order, while the table is being loaded, so that they
+     * can be displayed before loading finishes. The first batch is handed out as soon as the first records are
+     * converted, and the next ones at most every {@link #BATCH_INTERVAL_MS} milliseconds, and only when they hold at
+     * least {@link #BATCH_GROWTH} times the records handed out before. The consumer runs in the loading thread, and
+     * each batch is a new list that it may keep.
+     *
+     * @param batchConsumer The batch consumer, or null.
+     */
+    public void setBatchConsumer(Consumer<List<IParticleRecord>> batchConsumer) {
+        this.batchConsumer = batchConsumer;
+    }
+
+    /**
+     * Stops the current load as soon as possible. The records loaded so far are kept, and handed to the batch
+     * consumer, if any. Partial loads are never cached. Can be called from any thread.
+     */
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    /**
+     * Checks whether the load has been cancelled with {@link #cancel()}.
+     *
+     * @return Whether the load is cancelled.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
     @Override
     public List<IParticleRecord> loadData(String file,
                                           double factor) {
@@ -113,39 +185,6 @@ public class STILDataProvider extends AbstractStarGroupDataProvider {
         return list;
     }
 
-    /**
-     * Gets the first ucd that can be translated to a double from the set.
-     *
-     * @param UCDs The array of UCDs. The UCDs which coincide with the names should be first.
-     * @param row  The row objects.
-     *
-     * @return Pair of <UCD,Double>.
-     */
-    private Pair<UCD, Double> getDoubleUcd(Array<UCD> UCDs,
-                                           Object[] row) {
-        for (UCD ucd : UCDs) {
-            try {
-                double num = ((Number) row[ucd.index]).doubleValue();
-                if (Double.isNaN(num)) {
-                    throw new Exception();
-                }
-                return new Pair<>(ucd, num);
-            } catch (Exception e0) {
-                // not working, try String
-                try {
-                    double num = Parser.parseDouble((String) row[ucd.index]);
-                    if (Double.isNaN(num)) {
-                        throw new Exception();
-                    }
-                    return new Pair<>(ucd, num);
-                } catch (Exception e1) {
-                    // Out of ideas
-                }
-            }
-        }
-        return null;
-    }
-
     /**
      * Gets the first ucd that can be translated to a double[] from the set.
      *
@@ -247,12 +286,34 @@ public class STILDataProvider extends AbstractStarGroupDataProvider {
 
                 if (preCallback != null)
                     preCallback.run();
+                batchStart = 0;
+                lastBatchTime = 0;
+
+                // Try the catalog cache first.
+                final String cacheKey = cacheKey(ds);
+                if (cacheKey != null) {
+                    final List<ColumnInfo> columns = new ArrayList<>();
+                    final var cached = catalogCache.read(cacheKey, columns);
+                    if (cached != null) {
+                        logger.info("Catalog loaded from cache: " + ds.getName());
+                        list = cached;
+                        columnInfoList = columns;
+                        for (var pr : cached) {
+                            countsPerMag[(int) MathUtilsDouble.clamp(pr.appMag(), 0, 21)] += 1;
+                        }
+                        if (updateCallback != null) {
+                            updateCallback.run(cached.size(), cached.size());
+                        }
+                        return list;
+                    }
+                }
 
                 // Try to load
-                StarTable table = factory.makeStarTable(ds);
+                StarTable table = makeTable(ds);
 
+                // The row count is -1 if it is not known in advance.
                 long count = table.getRowCount();
-                initLists((int) count);
+                initLists(count < 0 ? 1000 : (int) FastMath.min(Integer.MAX_VALUE, count));
 
                 UCDParser ucdParser = new UCDParser();
                 ucdParser.parse(table);
@@ -277,452 +338,682 @@ public class STILDataProvider extends AbstractStarGroupDataProvider {
                 }
                 boolean isStars = datasetOptions == null || isAnyType(DatasetLoadType.VARIABLES, DatasetLoadType.STARS);
 
-                int resampledLightCurves = 0;
-                int noPeriods = 0;
-
                 if (ucdParser.hasPos) {
-                    BVToTeff_ballesteros bvToTEff = new BVToTeff_ballesteros();
-
-                    int nInvalidParallaxes = 0;
-                    long i = 0L;
-                    long step = FastMath.max(1L, FastMath.round(count / 100d));
-
-                    RowSequence rs = table.getRowSequence();
-                    while (rs.next()) {
-                        Object[] row = rs.getRow();
-                        try {
-                            // POSITION
-                            Pair<UCD, Double> a = getDoubleUcd(ucdParser.POS1, row);
-                            Pair<UCD, Double> b = getDoubleUcd(ucdParser.POS2, row);
-                            Pair<UCD, Double> c;
-                            String unitC;
-
-                            Pair<UCD, Double> pos3 = getDoubleUcd(ucdParser.POS3, row);
-                            // Check missing pos3 -> Use default parallax
-                            if (ucdParser.POS3.isEmpty() || pos3 == null || pos3.getSecond() == null || !Double.isFinite(pos3.getSecond())) {
-                                c = new Pair<>(null, Constants.DEFAULT_PARALLAX);
-                                unitC = "mas";
-                                nInvalidParallaxes++;
-                            } else {
-                                c = getDoubleUcd(ucdParser.POS3, row);
-                                assert c != null;
-                                unitC = c.getFirst().unit;
-                            }
+                    final var ctx = new LoadContext(ucdParser, isStars);
+                    if (parallelLoading && parallelism > 1 && (count < 0 || count >= PARALLEL_MIN_ROWS)) {
+                        loadParallel(table, count, ctx, updateCallback);
+                    } else {
+                        loadSerial(table, count, ctx, updateCallback);
+                    }
 
-                            assert a != null;
-                            assert b != null;
-                            PositionType pt = ucdParser.getPositionType(a.getFirst(), b.getFirst(), c.getFirst());
-                            // Check negative parallaxes -> Use default for consistency
-                            if (pt.isParallax() && (c.getSecond() == null || c.getSecond().isNaN() || c.getSecond() <= 0)) {
-                                c.setSecond(Constants.DEFAULT_PARALLAX);
-                                unitC = "mas";
-                                nInvalidParallaxes++;
-                            }
+                    if (ctx.nInvalidParallaxes > 0) {
+                        logger.warn(I18n.msg("warn.star.parallax", ctx.nInvalidParallaxes, Constants.DEFAULT_PARALLAX));
+                    }
+                    if (ctx.resampledLightCurves > 0) {
+                        logger.warn(I18n.msg("warn.star.vari.resample", ctx.resampledLightCurves, VariableSetInstancedRenderer.MAX_VARI));
+                    }
+                    if (ctx.noPeriods > 0) {
+                        logger.warn(I18n.msg("warn.star.vari.noperiod", ctx.noPeriods));
+                    }
+
+                    if (cancelled) {
+                        logger.info("Loading cancelled: " + ds.getName() + " (" + list.size() + " objects loaded)");
+                    } else if (cacheKey != null && STILDataCache.isCacheable(list, ucdParser.extra.size)) {
+                        writeCache(cacheKey, ucdParser.TEFF.isEmpty() ? ctx.tEffUcd : ucdParser.TEFF.first());
+                    }
+                } else {
+                    logger.error(I18n.msg("error.star.noposition"));
+                }
+            }
+        } catch (Exception e) {
+            logger.error(e);
+        } finally {
+            // Hand out the remaining records, also after errors.
+            nextBatch(true);
+            if (postCallback != null)
+                postCallback.run();
+        }
 
-                            Position p = new Position(a.getSecond(), a.getFirst().unit, b.getSecond(), b.getFirst().unit, c.getSecond(), unitC, pt);
+        return list;
+    }
 
-                            double distPc = p.realPosition.len();
-                            if ((pt.isParallax() && c.getSecond() <= 0) || !Double.isFinite(distPc) || distPc < 0) {
-                                // Next
-                                break;
-                            }
+    /**
+     * Writes the loaded records to the catalog cache in the background, so that the load is not held up by it.
+     */
+    private void writeCache(String key,
+                            UCD tEffUcd) {
+        // Snapshots, the lists are handed out and may change.
+        final List<IParticleRecord> records = new ArrayList<>(list);
+        final List<ColumnInfo> columns = new ArrayList<>(columnInfoList);
+        final Runnable writer = () -> catalogCache.write(key, records, columns, tEffUcd);
+        if (GaiaSky.instance == null || !GaiaSky.instance.getExecutorService().execute(writer)) {
+            writer.run();
+        }
+    }
 
-                            p.realPosition.scl(Constants.PC_TO_U);
-                            // Transform if necessary
-                            if (transform != null) {
-                                p.realPosition.mul(transform);
-                            }
+    /**
+     * Creates the table of the given data source. The table may be random-access, in which case it is loaded in
+     * parallel. Subclasses may override this to read formats that STIL does not support, or to read only some of the
+     * columns.
+     *
+     * @param ds The data source.
+     *
+     * @return The table.
+     *
+     * @throws IOException If the table can't be read.
+     */
+    protected StarTable makeTable(DataSource ds) throws IOException {
+        return factory.makeStarTable(ds);
+    }
 
-                            // Find out RA/DEC/Dist
-                            Vector3d sph = new Vector3d();
-                            Coordinates.cartesianToSpherical(p.realPosition, sph);
-
-                            // PROPER MOTION
-                            Vector3d pm;
-                            double muAlphaStar = 0, muDelta = 0, radVel = 0;
-                            // Only supported if position is equatorial spherical coordinates (ra/dec)
-                            if (pt == PositionType.EQ_SPH_DIST || pt == PositionType.EQ_SPH_PLX) {
-                                Pair<UCD, Double> pma = getDoubleUcd(ucdParser.PMRA, row);
-                                Pair<UCD, Double> pmb = getDoubleUcd(ucdParser.PMDEC, row);
-                                Pair<UCD, Double> pmc = getDoubleUcd(ucdParser.RADVEL, row);
-
-                                muAlphaStar = pma != null ? pma.getSecond() : 0;
-                                muDelta = pmb != null ? pmb.getSecond() : 0;
-                                radVel = pmc != null ? pmc.getSecond() : Float.NaN;
-
-                                double radVelValue = Double.isFinite(radVel) ? radVel : 0;
-
-                                double raRad = new Angle(a.getSecond(), a.getFirst().unit).get(AngleUnit.RAD);
-                                double decRad = new Angle(b.getSecond(), b.getFirst().unit).get(AngleUnit.RAD);
-                                pm = AstroUtils.properMotionsToCartesian(muAlphaStar, muDelta, radVelValue, raRad, decRad, distPc, new Vector3d());
-                            } else {
-                                pm = new Vector3d(Vector3d.Zero);
-                            }
+    /**
+     * Gets the options of this provider that change the records obtained from a table, other than the dataset options
+     * and the transform. They go in the key of the catalog cache.
+     *
+     * @return The options, as a string.
+     */
+    protected String cacheOptions() {
+        return "";
+    }
+
+    /**
+     * Gets the key of the given data source in the catalog cache.
+     *
+     * @param ds The data source.
+     *
+     * @return The key, or null if the data source must not be cached.
+     */
+    private String cacheKey(DataSource ds) {
+        if (!useCache || Settings.settings == null || !Settings.settings.data.catalogCache || !(ds instanceof FileDataSource fds)) {
+            return null;
+        }
+        // Only star records fit in the binary format.
+        if (datasetOptions != null && datasetOptions.type != DatasetLoadType.STARS) {
+            return null;
+        }
+        try {
+            final String options = (datasetOptions != null ? datasetOptions.magnitudeScale : 0) + ";" + Constants.DISTANCE_SCALE_FACTOR + ";"
+                    + (transform != null ? Arrays.toString(transform.val) : "-") + cacheOptions();
+            return STILDataCache.key(fds.getFile().toPath(), options);
+        } catch (IOException e) {
+            logger.debug(e);
+            return null;
+        }
+    }
+
+    /**
+     * Loads the rows of the table in the calling thread.
+     */
+    private void loadSerial(StarTable table,
+                            long count,
+                            LoadContext ctx,
+                            RunnableLongLong updateCallback) throws IOException {
+        final long step = FastMath.max(1L, FastMath.round(count / 100d));
+        final Chunk chunk = new Chunk();
+        long i = 0L;
+        try (RowSequence rs = table.getRowSequence()) {
+            while (!cancelled && rs.next()) {
+                chunk.rows++;
+                if (!convertRow(rs.getRow(), i, ctx, chunk)) {
+                    break;
+                }
+                i++;
+                if (chunk.size() >= CHUNK_ROWS) {
+                    merge(chunk, ctx);
+                    chunk.clear();
+                }
+                if (updateCallback != null && i % step == 0) {
+                    updateCallback.run(i, count);
+                }
+            }
+        }
+        merge(chunk, ctx);
+    }
 
-                            // MAGNITUDE
-                            double appMag;
-                            if (!ucdParser.MAG.isEmpty()) {
-                                Pair<UCD, Double> appMagPair = getDoubleUcd(ucdParser.MAG, row);
-                                if (appMagPair == null) {
-                                    // Default magnitude.
-                                    appMag = Constants.DEFAULT_MAG;
-                                } else {
-                                    appMag = appMagPair.getSecond();
+    /**
+     * Loads the rows of the table in chunks of {@link #CHUNK_ROWS} rows, which are converted concurrently in a
+     * dedicated pool and merged in row order, with a bounded number of chunks in flight. Random-access tables are
+     * split in row ranges, and each worker reads its own range. Otherwise, the calling thread reads the row sequence
+     * and hands the chunks to the workers.
+     */
+    private void loadParallel(StarTable table,
+                              long count,
+                              LoadContext ctx,
+                              RunnableLongLong updateCallback) throws Exception {
+        // Initialize lazy static tables before the workers race for them.
+        ColorUtils.tEffToRGB_harre(5800);
+
+        final AtomicInteger threadNumber = new AtomicInteger(0);
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(parallelism, parallelism, 0L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "gaiasky-stil-loader-" + threadNumber.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+        final Deque<Future<Chunk>> inFlight = new ArrayDeque<>();
+        final int maxInFlight = parallelism * 2;
+        boolean stop = false;
+        try {
+            if (table.isRandom() && count > 0) {
+                for (long start = 0; !stop && !cancelled && start < count; start += CHUNK_ROWS) {
+                    final long from = start;
+                    final long to = FastMath.min(count, start + CHUNK_ROWS);
+                    inFlight.add(pool.submit(() -> {
+                        final Chunk chunk = new Chunk();
+                        try (RowAccess access = table.getRowAccess()) {
+                            for (long r = from; r < to; r++) {
+                                access.setRowIndex(r);
+                                chunk.rows++;
+                                if (!convertRow(access.getRow(), r, ctx, chunk)) {
+                                    chunk.stopped = true;
+                                    break;
                                 }
-                            } else {
-                                // Default magnitude.
-                                appMag = Constants.DEFAULT_MAG;
                             }
-                            // Scale magnitude if needed.
-                            double magScl = isStars && datasetOptions != null ? datasetOptions.magnitudeScale : 0f;
-                            appMag = appMag - magScl;
-
-                            // Absolute magnitude to pseudo-size.
-                            final double absMag = AstroUtils.apparentToAbsoluteMagnitude(distPc, appMag);
-                            double sizePc = AstroUtils.absoluteMagnitudeToPseudoSize(absMag);
-
-                            // SIZE (DIAMETER, not RADIUS!)
-                            if (!ucdParser.SIZE.isEmpty()) {
-                                // We have a size in the dataset.
-                                if (!isStars) {
-                                    // Only particles, star datasets do not have a size.
-                                    Pair<UCD, Double> sizePair = getDoubleUcd(ucdParser.SIZE, row);
-                                    UCD sizeUcd = sizePair.getFirst();
-                                    if (sizeUcd != null && sizeUcd.unit != null) {
-                                        if (Angle.isAngle(sizeUcd.unit)) {
-                                            // Solid angle in radians.
-                                            double sa = new Angle(sizePair.getSecond(), sizePair.getFirst().unit).get(AngleUnit.RAD);
-                                            // Size in parsecs = tan(sa) * distPc
-                                            sizePc = FastMath.tan(sa) * p.realPosition.len();
-                                        } else if (Length.isLength(sizeUcd.unit)) {
-                                            // Size in parsecs, directly.
-                                            sizePc = new Length(sizePair.getSecond(), sizePair.getFirst().unit).get(LengthUnit.PC);
-                                        }
-                                    } else {
-                                        // We hope size is already in parsecs.
-                                        sizePc = sizePair.getSecond().floatValue();
-                                    }
-                                    if (TextUtils.containsOrMatches(UCDParser.radiusColNames, sizeUcd.colName, true)) {
-                                        // Radius, need to multiply by 2 to get diameter.
-                                        sizePc *= 2.0;
-                                    }
-                                }
-                            } else {
-                                if (!isStars) {
-                                    // We have particles without a size. We just clamp what we have.
-                                    double maxSizePc = 3.0;
-                                    if (params != null && params.containsKey("maxSizePc")) {
-                                        var value = params.get("maxSizePc");
-                                        if (value instanceof Number n) {
-                                            maxSizePc = n.doubleValue();
-                                        }
-                                    }
-                                    sizePc = MathUtilsDouble.clamp(sizePc, 1e-8, maxSizePc);
-                                }
+                        }
+                        return chunk;
+                    }));
+                    while (!stop && inFlight.size() >= maxInFlight) {
+                        stop = !mergeNext(inFlight, ctx, count, updateCallback);
+                    }
+                }
+            } else {
+                try (RowSequence rs = table.getRowSequence()) {
+                    long index = 0L;
+                    Object[][] rows = new Object[CHUNK_ROWS][];
+                    int n = 0;
+                    while (!stop && !cancelled && rs.next()) {
+                        // Rows may be reused by the sequence.
+                        rows[n++] = rs.getRow().clone();
+                        if (n == CHUNK_ROWS) {
+                            inFlight.add(submitRows(pool, rows, n, index, ctx));
+                            index += n;
+                            rows = new Object[CHUNK_ROWS][];
+                            n = 0;
+                            while (!stop && inFlight.size() >= maxInFlight) {
+                                stop = !mergeNext(inFlight, ctx, count, updateCallback);
                             }
+                        }
+                    }
+                    if (!stop && n > 0) {
+                        inFlight.add(submitRows(pool, rows, n, index, ctx));
+                    }
+                }
+            }
+            while (!stop && !inFlight.isEmpty()) {
+                stop = !mergeNext(inFlight, ctx, count, updateCallback);
+            }
+        } finally {
+            for (var future : inFlight) {
+                future.cancel(true);
+            }
+            pool.shutdownNow();
+        }
+    }
 
-                            // COLOR INDEX
-                            float colorIndex;
-                            if (!ucdParser.COL.isEmpty()) {
-                                Pair<UCD, Double> colPair = getDoubleUcd(ucdParser.COL, row);
-                                if (colPair == null) {
-                                    colorIndex = (float) Constants.DEFAULT_COLOR;
-                                } else {
-                                    colorIndex = colPair.getSecond().floatValue();
-                                }
-                            } else {
-                                // Default color index for stars, NaN for others.
-                                colorIndex = isStars ? (float) Constants.DEFAULT_COLOR : Float.NaN;
-                            }
+    private Future<Chunk> submitRows(ExecutorService pool,
+                                     Object[][] rows,
+                                     int n,
+                                     long index,
+                                     LoadContext ctx) {
+        return pool.submit(() -> {
+            final Chunk chunk = new Chunk();
+            for (int k = 0; k < n; k++) {
+                chunk.rows++;
+                if (!convertRow(rows[k], index + k, ctx, chunk)) {
+                    chunk.stopped = true;
+                    break;
+                }
+            }
+            return chunk;
+        });
+    }
 
-                            // VARIABILITY
-                            float[] variMags = null;
-                            double[] variTimes = null;
-                            double pf = 0.0;
-                            int nVari = 0;
-                            if (ucdParser.hasVariability) {
-                                Pair<UCD, Double> period = getDoubleUcd(ucdParser.VARI_PERIOD, row);
-                                if (!ucdParser.hasPeriod || period == null || !Double.isFinite(period.getSecond())) {
-                                    // Skip stars without period
-                                    noPeriods++;
-                                    continue;
-                                } else {
-                                    pf = period.getSecond();
-                                }
-                                Pair<UCD, double[]> variMagsPair = getDoubleArrayUcd(ucdParser.VARI_MAGS, row);
-                                assert variMagsPair != null;
-                                double[] variMagsDouble = variMagsPair.getSecond();
-                                nVari = variMagsDouble.length;
-                                variMags = new float[nVari];
-
-                                Pair<UCD, double[]> variTimesPair = getDoubleArrayUcd(ucdParser.VARI_TIMES, row);
-                                assert variTimesPair != null;
-                                variTimes = variTimesPair.getSecond();
-
-                                double[] auxMags = variMagsDouble;
-                                double[] auxTimes = variTimes;
-
-                                // SANITIZE (no NaNs)
-                                List<Double> magnitudesList = new ArrayList<>();
-                                List<Double> timesList = new ArrayList<>();
-                                int idx = 0;
-                                for (double mag : auxMags) {
-                                    if (Double.isFinite(mag)) {
-                                        magnitudesList.add(mag - magScl);
-                                        timesList.add(auxTimes[idx]);
-                                    }
-                                    idx++;
-                                }
-                                variMagsDouble = magnitudesList.stream().mapToDouble(Double::doubleValue).toArray();
-                                variTimes = timesList.stream().mapToDouble(Double::doubleValue).toArray();
-                                nVari = variMagsDouble.length;
-
-                                // FOLD
-                                List<Vector2d> list = new ArrayList<>(nVari);
-                                for (int k = 0; k < nVari; k++) {
-                                    double phase = ((variTimes[k] - variTimes[0]) % pf);
-                                    list.add(new Vector2d(phase, variMagsDouble[k]));
-                                }
-                                list.sort(Comparator.comparingDouble(o -> o.x));
+    /**
+     * Waits for the oldest chunk in flight and merges it.
+     *
+     * @return False if loading must stop after this chunk, true otherwise.
+     */
+    private boolean mergeNext(Deque<Future<Chunk>> inFlight,
+                              LoadContext ctx,
+                              long count,
+                              RunnableLongLong updateCallback) throws Exception {
+        final Chunk chunk = inFlight.poll().get();
+        merge(chunk, ctx);
+        if (updateCallback != null) {
+            updateCallback.run(ctx.rows, count);
+        }
+        return !chunk.stopped && !cancelled;
+    }
 
-                                for (int k = 0; k < nVari; k++) {
-                                    Vector2d point = list.get(k);
-                                    variTimes[k] = point.x + variTimes[0];
-                                    variMagsDouble[k] = point.y;
-                                }
+    /**
+     * Adds the records of a converted chunk to the provider lists, in order. IDs are generated here, so that they
+     * do not depend on the order in which chunks are converted.
+     */
+    private void merge(Chunk chunk,
+                       LoadContext ctx) {
+        final int n = chunk.size();
+        for (int k = 0; k < n; k++) {
+            final IParticleRecord pr = chunk.records.get(k);
+            if (chunk.generatedIds.get(k)) {
+                final long id = ++objectId;
+                pr.setId(id);
+                if (chunk.namesFromIds.get(k)) {
+                    pr.setNames(Long.toString(id));
+                }
+            }
+            final float[] rgb = chunk.colors.get(k);
+            if (rgb != null) {
+                colors.put(pr.id(), rgb);
+            }
+            sphericalPositions.put(pr.id(), chunk.sphericalPositions.get(k));
+            list.add(pr);
+        }
+        for (int m = 0; m < countsPerMag.length; m++) {
+            countsPerMag[m] += chunk.countsPerMag[m];
+        }
+        ctx.rows += chunk.rows;
+        ctx.nInvalidParallaxes += chunk.nInvalidParallaxes;
+        ctx.resampledLightCurves += chunk.resampledLightCurves;
+        ctx.noPeriods += chunk.noPeriods;
+        nextBatch(false);
+    }
 
-                                // RESAMPLE (only if too many samples)
-                                final int MAX_VARI = VariableSetInstancedRenderer.MAX_VARI;
-                                if (variMagsDouble.length > MAX_VARI) {
-                                    nVari = MAX_VARI;
-                                    double t0 = variTimes[0];
-                                    double tn = variTimes[variTimes.length - 1];
-                                    double tStep = (tn - t0) / (nVari - 1);
-
-                                    var linearInterpolator = new LinearInterpolator(variTimes, variMagsDouble);
-
-                                    variMagsDouble = new double[nVari];
-                                    variTimes = new double[nVari];
-
-                                    for (idx = 0; idx < nVari; idx++) {
-                                        double t = t0 + tStep * idx;
-                                        variTimes[idx] = t;
-                                        variMagsDouble[idx] = linearInterpolator.value(t);
-                                    }
-                                    resampledLightCurves++;
-                                }
+    /**
+     * Hands the records merged since the last batch to the batch consumer, if there is one.
+     *
+     * @param last Whether this is the last batch. If false, the batch is only handed out if enough time has passed
+     *             since the previous one, and it is large enough.
+     */
+    private void nextBatch(boolean last) {
+        if (batchConsumer == null || list == null || list.size() <= batchStart) {
+            return;
+        }
+        final long now = TimeUtils.millis();
+        if (last || (now - lastBatchTime >= BATCH_INTERVAL_MS && list.size() - batchStart >= batchStart * BATCH_GROWTH)) {
+            final List<IParticleRecord> batch = new ArrayList<>(list.subList(batchStart, list.size()));
+            batchStart = list.size();
+            lastBatchTime = now;
+            batchConsumer.accept(batch);
+        }
+    }
 
-                                // Convert magnitudes to sizes
-                                assert variMags.length == variTimes.length;
-                                for (int j = 0; j < variMagsDouble.length; j++) {
-                                    double variAbsoluteMag = AstroUtils.apparentToAbsoluteMagnitude(distPc, variMagsDouble[j]);
-                                    variMags[j] = (float) AstroUtils.absoluteMagnitudeToPseudoSize(variAbsoluteMag);
-                                }
-                            }
+    /**
+     * Converts a table row to a particle record, and adds it to the given chunk. Only reads the state of this
+     * provider, so that chunks can be converted concurrently.
+     *
+     * @param row   The row objects.
+     * @param index The index of the row, for logging.
+     * @param ctx   The load context.
+     * @param out   The chunk to add the record to.
+     *
+     * @return False if loading must stop at this row, true otherwise.
+     */
+    private boolean convertRow(Object[] row,
+                               long index,
+                               LoadContext ctx,
+                               Chunk out) {
+        final UCDParser ucdParser = ctx.ucdParser;
+        final boolean isStars = ctx.isStars;
+        final BVToTeff_ballesteros bvToTEff = ctx.bvToTEff;
+        try {
+            final STILColumnPlan plan = ctx.plan;
+            final STILColumnPlan.Values values = out.values;
+            plan.read(row, values);
+
+            // POSITION
+            // Check missing pos3 -> Use default parallax
+            boolean defaultPos3 = !values.found(STILColumnPlan.POS3) || !Double.isFinite(values.get(STILColumnPlan.POS3));
+            double pos3 = defaultPos3 ? Constants.DEFAULT_PARALLAX : values.get(STILColumnPlan.POS3);
+            if (defaultPos3) {
+                out.nInvalidParallaxes++;
+            }
+            PositionType pt = plan.positionType(values, defaultPos3);
+            // Check negative parallaxes -> Use default for consistency
+            if (pt.isParallax() && pos3 <= 0) {
+                pos3 = Constants.DEFAULT_PARALLAX;
+                defaultPos3 = true;
+                out.nInvalidParallaxes++;
+            }
+            values.setPos3(pos3, defaultPos3);
 
-                            // EFFECTIVE TEMPERATURE
-                            float tEff;
-                            if (!ucdParser.TEFF.isEmpty()) {
-                                Pair<UCD, Double> tEffPair = getDoubleUcd(ucdParser.TEFF, row);
-                                if (tEffPair != null) {
-                                    // Use value from table.
-                                    tEff = tEffPair.getSecond().floatValue();
-                                } else {
-                                    // Use color index.
-                                    tEff = (float) bvToTEff.bvToTeff(colorIndex);
-                                }
-                            } else {
-                                // Convert B-V to T_eff using Ballesteros 2012
-                                tEff = (float) bvToTEff.bvToTeff(colorIndex);
-                            }
+            final Vector3d pos = plan.position(values, pt, values.position);
+            double distPc = pos.len();
+            if ((pt.isParallax() && pos3 <= 0) || !Double.isFinite(distPc) || distPc < 0) {
+                // Stop.
+                return false;
+            }
 
-                            // RGB COLOR (PACKED) from COLOR INDEX or effective temperature.
-                            float colorPacked;
-                            float[] rgb = null;
-                            if (Float.isFinite(colorIndex)) {
-                                // Convert color index to RGB.
-                                rgb = ColorUtils.BVtoRGB(colorIndex);
-                                colorPacked = Color.toFloatBits(rgb[0], rgb[1], rgb[2], 1.0f);
-                            } else if (Float.isFinite(tEff)) {
-                                rgb = ColorUtils.tEffToRGB_harre(tEff);
-                                colorPacked = Color.toFloatBits(rgb[0], rgb[1], rgb[2], 1.0f);
-                            } else {
-                                colorPacked = Float.NaN;
-                            }
+            pos.scl(Constants.PC_TO_U);
+            // Transform if necessary
+            if (transform != null) {
+                pos.mul(transform);
+            }
 
-                            // IDENTIFIER
-                            long id;
-                            boolean idIsNotNumber = false;
-                            int hip = -1;
-                            if (!ucdParser.ID.isEmpty()) {
-                                // We have ID
-                                Pair<UCD, String> idPair = getStringUcd(ucdParser.ID, row);
-                                assert idPair != null;
-                                try {
-                                    id = Parser.parseLongException(idPair.getSecond());
-                                    if (isStars && idPair.getFirst().colName.equalsIgnoreCase("hip")) {
-                                        hip = (int) id;
-                                    }
-                                } catch (NumberFormatException e) {
-                                    // ID is not an integer.
-                                    id = ++objectId;
-                                    idIsNotNumber = true;
-                                }
-                            } else {
-                                // Empty ID
-                                id = ++objectId;
-                            }
-                            // Add hip numbers if present.
-                            if (hip < 0 && hasCol(ColId.hip)) {
-                                int hipIndex = idx(ColId.hip);
-                                var hipNum = row[hipIndex];
-                                if(hipNum instanceof Integer hn) {
-                                    hip = hn;
-                                }
-                            }
+            // Find out RA/DEC/Dist
+            final Vector3d sph = Coordinates.cartesianToSpherical(pos, values.spherical);
+
+            // PROPER MOTION
+            final Vector3d pm = values.velocity;
+            double muAlphaStar = 0, muDelta = 0, radVel = 0;
+            // Only supported if position is equatorial spherical coordinates (ra/dec)
+            if (pt == PositionType.EQ_SPH_DIST || pt == PositionType.EQ_SPH_PLX) {
+                muAlphaStar = values.found(STILColumnPlan.PMRA) ? values.get(STILColumnPlan.PMRA) : 0;
+                muDelta = values.found(STILColumnPlan.PMDEC) ? values.get(STILColumnPlan.PMDEC) : 0;
+                radVel = values.found(STILColumnPlan.RADVEL) ? values.get(STILColumnPlan.RADVEL) : Float.NaN;
+
+                double radVelValue = Double.isFinite(radVel) ? radVel : 0;
+
+                double raRad = plan.radians(STILColumnPlan.POS1, values);
+                double decRad = plan.radians(STILColumnPlan.POS2, values);
+                AstroUtils.properMotionsToCartesian(muAlphaStar, muDelta, radVelValue, raRad, decRad, distPc, pm);
+            } else {
+                pm.set(0, 0, 0);
+            }
 
-                            // NAME(S)
-                            String[] names;
-                            if (ucdParser.NAME.isEmpty()) {
-                                // Name from ID.
-                                if (idIsNotNumber) {
-                                    Pair<UCD, String> idPair = getStringUcd(ucdParser.ID, row);
-                                    names = new String[]{idPair.getSecond()};
-                                } else {
-                                    names = new String[]{Long.toString(id)};
-                                }
-                            } else {
-                                // We have a name.
-                                Pair<UCD, String>[] namePairs = getAllStringsUcd(ucdParser.NAME, row);
-                                Array<String> namesArray = new Array<>(false, namePairs.length);
-                                for (Pair<UCD, String> pair : namePairs) {
-                                    String[] currNames = pair.getSecond().split(Constants.nameSeparatorRegex);
-                                    for (String actualName : currNames) {
-                                        if (actualName != null && !actualName.isEmpty() && !TextUtils.contains(forbiddenNameValues, actualName, true)) {
-                                            namesArray.add(actualName);
-                                        }
-                                    }
-                                }
-                                names = new String[namesArray.size];
-                                int k = 0;
-                                for (String n : namesArray) {
-                                    names[k++] = n;
-                                }
-                                // Default to ID.
-                                if (names.length == 0) {
-                                    names = new String[]{Long.toString(id)};
-                                }
-                            }
+            // MAGNITUDE
+            double appMag;
+            if (values.found(STILColumnPlan.MAG)) {
+                appMag = values.get(STILColumnPlan.MAG);
+            } else {
+                // Default magnitude.
+                appMag = Constants.DEFAULT_MAG;
+            }
+            // Scale magnitude if needed.
+            double magScl = isStars && datasetOptions != null ? datasetOptions.magnitudeScale : 0f;
+            appMag = appMag - magScl;
+
+            // Absolute magnitude to pseudo-size.
+            final double absMag = AstroUtils.apparentToAbsoluteMagnitude(distPc, appMag);
+            double sizePc = AstroUtils.absoluteMagnitudeToPseudoSize(absMag);
+
+            // SIZE (DIAMETER, not RADIUS!)
+            if (plan.has(STILColumnPlan.SIZE)) {
+                // We have a size in the dataset.
+                if (!isStars) {
+                    // Only particles, star datasets do not have a size.
+                    sizePc = plan.sizePc(values, pos.len(), sizePc);
+                }
+            } else {
+                if (!isStars) {
+                    // We have particles without a size. We just clamp what we have.
+                    sizePc = MathUtilsDouble.clamp(sizePc, 1e-8, ctx.maxSizePc);
+                }
+            }
 
-                            // Populate provider lists
-                            if (rgb != null) {
-                                colors.put(id, rgb);
-                            }
-                            sphericalPositions.put(id, new double[]{sph.x, sph.y, sph.z});
-
-                            if (datasetOptions == null || datasetOptions.type == DatasetOptions.DatasetLoadType.STARS
-                                    || datasetOptions.type == DatasetOptions.DatasetLoadType.VARIABLES) {
-                                var type = ParticleRecordType.STAR;
-
-                                IParticleRecord pr;
-                                if (datasetOptions != null && datasetOptions.type == DatasetLoadType.VARIABLES || variMags != null) {
-                                    pr = new VariableRecord();
-                                    var vr = (VariableRecord) pr;
-                                    vr.setNVari(nVari);
-                                    vr.setPeriod(pf);
-                                    vr.setVariMags(variMags);
-                                    vr.setVariTimes(variTimes);
-                                } else {
-                                    pr = new ParticleRecord(type);
-                                }
-                                pr.setId(id);
-                                pr.setNames(names);
-                                pr.setPos(p.realPosition.x, p.realPosition.y, p.realPosition.z);
-                                pr.setVelocityVector(pm.x, pm.y, pm.z);
-                                pr.setProperMotion((float) muAlphaStar, (float) muDelta, (float) radVel);
-                                pr.setMag((float) appMag, (float) absMag);
-                                pr.setCol(colorPacked);
-                                pr.setSize((float) sizePc);
-                                pr.setHip(hip);
-                                // Extra
-                                ObjectMap<UCD, Object> extraAttributes = addExtraAttributes(ucdParser, row);
-                                if (ucdParser.TEFF.isEmpty()) {
-                                    UCD tEffUCD = new UCD("phys.temperature.effective", "teff", "K", -1);
-                                    extraAttributes = initExtraAttributes(extraAttributes);
-                                    extraAttributes.put(tEffUCD, tEff);
-                                    pr.setTeff(tEff);
-                                } else {
-                                    extraAttributes = initExtraAttributes(extraAttributes);
-                                    extraAttributes.put(ucdParser.TEFF.first(), tEff);
-                                    pr.setTeff(tEff);
-                                }
-                                pr.setExtraAttributes(extraAttributes);
-
-                                list.add(pr);
-
-                                int appMagClamp = (int) MathUtilsDouble.clamp(appMag, 0, 21);
-                                countsPerMag[appMagClamp] += 1;
-                            } else if (datasetOptions.type == DatasetOptions.DatasetLoadType.PARTICLES) {
-                                var type = ParticleRecordType.PARTICLE;
-
-                                IParticleRecord pr = new ParticleRecord(type);
-                                pr.setId(id);
-                                pr.setNames(names);
-                                pr.setPos(p.realPosition.x, p.realPosition.y, p.realPosition.z);
-                                // Extra
-                                ObjectMap<UCD, Object> extraAttributes = addExtraAttributes(ucdParser, row);
-                                pr.setExtraAttributes(extraAttributes);
-
-                                list.add(pr);
-                            } else if (datasetOptions.type == DatasetOptions.DatasetLoadType.PARTICLES_EXT) {
-                                var type = ParticleRecordType.PARTICLE_EXT;
-
-                                IParticleRecord pr = new ParticleRecord(type);
-                                pr.setId(id);
-                                pr.setNames(names);
-                                pr.setPos(p.realPosition.x, p.realPosition.y, p.realPosition.z);
-                                pr.setVelocityVector(pm.x, pm.y, pm.z);
-                                pr.setProperMotion((float) muAlphaStar, (float) muDelta, (float) radVel);
-                                pr.setMag((float) appMag, (float) absMag);
-                                pr.setCol(colorPacked);
-                                pr.setSize((float) (sizePc * Constants.PC_TO_U));
-                                // Extra
-                                ObjectMap<UCD, Object> extraAttributes = addExtraAttributes(ucdParser, row);
-                                pr.setExtraAttributes(extraAttributes);
-
-                                list.add(pr);
-                            }
+            // COLOR INDEX
+            float colorIndex;
+            if (plan.has(STILColumnPlan.COL)) {
+                if (values.found(STILColumnPlan.COL)) {
+                    colorIndex = (float) values.get(STILColumnPlan.COL);
+                } else {
+                    colorIndex = (float) Constants.DEFAULT_COLOR;
+                }
+            } else {
+                // Default color index for stars, NaN for others.
+                colorIndex = isStars ? (float) Constants.DEFAULT_COLOR : Float.NaN;
+            }
 
-                        } catch (Exception e) {
-                            logger.debug(e);
-                            logger.debug(I18n.msg("debug.parse.row.skip", i));
-                        }
-                        i++;
-                        if (updateCallback != null && i % step == 0) {
-                            updateCallback.run(i, count);
-                        }
+            // VARIABILITY
+            float[] variMags = null;
+            double[] variTimes = null;
+            double pf = 0.0;
+            int nVari = 0;
+            if (ucdParser.hasVariability) {
+                if (!ucdParser.hasPeriod || !values.found(STILColumnPlan.PERIOD) || !Double.isFinite(values.get(STILColumnPlan.PERIOD))) {
+                    // Skip stars without period
+                    out.noPeriods++;
+                    return true;
+                } else {
+                    pf = values.get(STILColumnPlan.PERIOD);
+                }
+                Pair<UCD, double[]> variMagsPair = getDoubleArrayUcd(ucdParser.VARI_MAGS, row);
+                assert variMagsPair != null;
+                double[] variMagsDouble = variMagsPair.getSecond();
+                nVari = variMagsDouble.length;
+                variMags = new float[nVari];
+
+                Pair<UCD, double[]> variTimesPair = getDoubleArrayUcd(ucdParser.VARI_TIMES, row);
+                assert variTimesPair != null;
+                variTimes = variTimesPair.getSecond();
+
+                double[] auxMags = variMagsDouble;
+                double[] auxTimes = variTimes;
+
+                // SANITIZE (no NaNs)
+                List<Double> magnitudesList = new ArrayList<>();
+                List<Double> timesList = new ArrayList<>();
+                int idx = 0;
+                for (double mag : auxMags) {
+                    if (Double.isFinite(mag)) {
+                        magnitudesList.add(mag - magScl);
+                        timesList.add(auxTimes[idx]);
                     }
-                    if (nInvalidParallaxes > 0) {
-                        logger.warn(I18n.msg("warn.star.parallax", nInvalidParallaxes, Constants.DEFAULT_PARALLAX));
+                    idx++;
+                }
+                variMagsDouble = magnitudesList.stream().mapToDouble(Double::doubleValue).toArray();
+                variTimes = timesList.stream().mapToDouble(Double::doubleValue).toArray();
+                nVari = variMagsDouble.length;
+
+                // FOLD
+                List<Vector2d> list = new ArrayList<>(nVari);
+                for (int k = 0; k < nVari; k++) {
+                    double phase = ((variTimes[k] - variTimes[0]) % pf);
+                    list.add(new Vector2d(phase, variMagsDouble[k]));
+                }
+                list.sort(Comparator.comparingDouble(o -> o.x));
+
+                for (int k = 0; k < nVari; k++) {
+                    Vector2d point = list.get(k);
+                    variTimes[k] = point.x + variTimes[0];
+                    variMagsDouble[k] = point.y;
+                }
+
+                // RESAMPLE (only if too many samples)
+                final int MAX_VARI = VariableSetInstancedRenderer.MAX_VARI;
+                if (variMagsDouble.length > MAX_VARI) {
+                    nVari = MAX_VARI;
+                    double t0 = variTimes[0];
+                    double tn = variTimes[variTimes.length - 1];
+                    double tStep = (tn - t0) / (nVari - 1);
+
+                    var linearInterpolator = new LinearInterpolator(variTimes, variMagsDouble);
+
+                    variMagsDouble = new double[nVari];
+                    variTimes = new double[nVari];
+
+                    for (idx = 0; idx < nVari; idx++) {
+                        double t = t0 + tStep * idx;
+                        variTimes[idx] = t;
+                        variMagsDouble[idx] = linearInterpolator.value(t);
                     }
-                    if (resampledLightCurves > 0) {
-                        logger.warn(I18n.msg("warn.star.vari.resample", resampledLightCurves, VariableSetInstancedRenderer.MAX_VARI));
+                    out.resampledLightCurves++;
+                }
+
+                // Convert magnitudes to sizes
+                assert variMags.length == variTimes.length;
+                for (int j = 0; j < variMagsDouble.length; j++) {
+                    double variAbsoluteMag = AstroUtils.apparentToAbsoluteMagnitude(distPc, variMagsDouble[j]);
+                    variMags[j] = (float) AstroUtils.absoluteMagnitudeToPseudoSize(variAbsoluteMag);
+                }
+            }
+
+            // EFFECTIVE TEMPERATURE
+            float tEff;
+            if (plan.has(STILColumnPlan.TEFF)) {
+                if (values.found(STILColumnPlan.TEFF)) {
+                    // Use value from table.
+                    tEff = (float) values.get(STILColumnPlan.TEFF);
+                } else {
+                    // Use color index.
+                    tEff = (float) bvToTEff.bvToTeff(colorIndex);
+                }
+            } else {
+                // Convert B-V to T_eff using Ballesteros 2012
+                tEff = (float) bvToTEff.bvToTeff(colorIndex);
+            }
+
+            // RGB COLOR (PACKED) from COLOR INDEX or effective temperature.
+            float colorPacked;
+            float[] rgb = null;
+            if (Float.isFinite(colorIndex)) {
+                // Convert color index to RGB.
+                rgb = ColorUtils.BVtoRGB(colorIndex);
+                colorPacked = Color.toFloatBits(rgb[0], rgb[1], rgb[2], 1.0f);
+            } else if (Float.isFinite(tEff)) {
+                rgb = ColorUtils.tEffToRGB_harre(tEff);
+                colorPacked = Color.toFloatBits(rgb[0], rgb[1], rgb[2], 1.0f);
+            } else {
+                colorPacked = Float.NaN;
+            }
+
+            // IDENTIFIER
+            long id;
+            boolean idIsNotNumber = false;
+            // Generated IDs are assigned in order when the records are merged.
+            boolean generatedId = false, namesFromId = false;
+            int hip = -1;
+            if (!ucdParser.ID.isEmpty()) {
+                // We have ID
+                Pair<UCD, String> idPair = getStringUcd(ucdParser.ID, row);
+                assert idPair != null;
+                try {
+                    id = Parser.parseLongException(idPair.getSecond());
+                    if (isStars && idPair.getFirst().colName.equalsIgnoreCase("hip")) {
+                        hip = (int) id;
                     }
-                    if (noPeriods > 0) {
-                        logger.warn(I18n.msg("warn.star.vari.noperiod", noPeriods));
+                } catch (NumberFormatException e) {
+                    // ID is not an integer.
+                    id = 0L;
+                    generatedId = true;
+                    idIsNotNumber = true;
+                }
+            } else {
+                // Empty ID
+                id = 0L;
+                    generatedId = true;
+            }
+            // Add hip numbers if present.
+            if (hip < 0 && ctx.hipIndex >= 0) {
+                int hipIndex = ctx.hipIndex;
+                var hipNum = row[hipIndex];
+                if(hipNum instanceof Integer hn) {
+                    hip = hn;
+                }
+            }
+
+            // NAME(S)
+            String[] names;
+            if (ucdParser.NAME.isEmpty()) {
+                // Name from ID.
+                if (idIsNotNumber) {
+                    Pair<UCD, String> idPair = getStringUcd(ucdParser.ID, row);
+                    names = new String[]{idPair.getSecond()};
+                } else {
+                    names = new String[]{Long.toString(id)};
+                    namesFromId = generatedId;
+                }
+            } else {
+                // We have a name.
+                Pair<UCD, String>[] namePairs = getAllStringsUcd(ucdParser.NAME, row);
+                Array<String> namesArray = new Array<>(false, namePairs.length);
+                for (Pair<UCD, String> pair : namePairs) {
+                    String[] currNames = pair.getSecond().split(Constants.nameSeparatorRegex);
+                    for (String actualName : currNames) {
+                        if (actualName != null && !actualName.isEmpty() && !TextUtils.contains(forbiddenNameValues, actualName, true)) {
+                            namesArray.add(actualName);
+                        }
                     }
+                }
+                names = new String[namesArray.size];
+                int k = 0;
+                for (String n : namesArray) {
+                    names[k++] = n;
+                }
+                // Default to ID.
+                if (names.length == 0) {
+                    names = new String[]{Long.toString(id)};
+                    namesFromId = generatedId;
+                }
+            }
+
+            final double[] sphArray = new double[]{sph.x, sph.y, sph.z};
+
+            if (datasetOptions == null || datasetOptions.type == DatasetOptions.DatasetLoadType.STARS
+                    || datasetOptions.type == DatasetOptions.DatasetLoadType.VARIABLES) {
+                var type = ParticleRecordType.STAR;
+
+                IParticleRecord pr;
+                if (datasetOptions != null && datasetOptions.type == DatasetLoadType.VARIABLES || variMags != null) {
+                    pr = new VariableRecord();
+                    var vr = (VariableRecord) pr;
+                    vr.setNVari(nVari);
+                    vr.setPeriod(pf);
+                    vr.setVariMags(variMags);
+                    vr.setVariTimes(variTimes);
                 } else {
-                    logger.error(I18n.msg("error.star.noposition"));
+                    pr = new ParticleRecord(type);
+                }
+                pr.setId(id);
+                pr.setNames(names);
+                pr.setPos(pos.x, pos.y, pos.z);
+                pr.setVelocityVector(pm.x, pm.y, pm.z);
+                pr.setProperMotion((float) muAlphaStar, (float) muDelta, (float) radVel);
+                pr.setMag((float) appMag, (float) absMag);
+                pr.setCol(colorPacked);
+                pr.setSize((float) sizePc);
+                pr.setHip(hip);
+                // Extra
+                ObjectMap<UCD, Object> extraAttributes = addExtraAttributes(ucdParser, row);
+                if (ucdParser.TEFF.isEmpty()) {
+                    extraAttributes = initExtraAttributes(extraAttributes);
+                    extraAttributes.put(ctx.tEffUcd, tEff);
+                    pr.setTeff(tEff);
+                } else {
+                    extraAttributes = initExtraAttributes(extraAttributes);
+                    extraAttributes.put(ucdParser.TEFF.first(), tEff);
+                    pr.setTeff(tEff);
                 }
+                pr.setExtraAttributes(extraAttributes);
+
+                out.add(pr, rgb, sphArray, generatedId, namesFromId);
+
+                int appMagClamp = (int) MathUtilsDouble.clamp(appMag, 0, 21);
+                out.countsPerMag[appMagClamp] += 1;
+            } else if (datasetOptions.type == DatasetOptions.DatasetLoadType.PARTICLES) {
+                var type = ParticleRecordType.PARTICLE;
+
+                IParticleRecord pr = new ParticleRecord(type);
+                pr.setId(id);
+                pr.setNames(names);
+                pr.setPos(pos.x, pos.y, pos.z);
+                // Extra
+                ObjectMap<UCD, Object> extraAttributes = addExtraAttributes(ucdParser, row);
+                pr.setExtraAttributes(extraAttributes);
+
+                out.add(pr, rgb, sphArray, generatedId, namesFromId);
+            } else if (datasetOptions.type == DatasetOptions.DatasetLoadType.PARTICLES_EXT) {
+                var type = ParticleRecordType.PARTICLE_EXT;
+
+                IParticleRecord pr = new ParticleRecord(type);
+                pr.setId(id);
+                pr.setNames(names);
+                pr.setPos(pos.x, pos.y, pos.z);
+                pr.setVelocityVector(pm.x, pm.y, pm.z);
+                pr.setProperMotion((float) muAlphaStar, (float) muDelta, (float) radVel);
+                pr.setMag((float) appMag, (float) absMag);
+                pr.setCol(colorPacked);
+                pr.setSize((float) (sizePc * Constants.PC_TO_U));
+                // Extra
+                ObjectMap<UCD, Object> extraAttributes = addExtraAttributes(ucdParser, row);
+                pr.setExtraAttributes(extraAttributes);
+
+                out.add(pr, rgb, sphArray, generatedId, namesFromId);
             }
+
         } catch (Exception e) {
-            logger.error(e);
-        } finally {
-            if (postCallback != null)
-                postCallback.run();
+            logger.debug(e);
+            logger.debug(I18n.msg("debug.parse.row.skip", index));
         }
-
-        return list;
+        return true;
     }
 
     protected boolean hasCol(ColId colId) {
@@ -870,6 +1161,9 @@ public class STILDataProvider extends AbstractStarGroupDataProvider {
     public void setProviderParams(Map<String, Object> params) {
         super.setProviderParams(params);
         datasetOptionsFromParameters();
+        if (params != null && params.get("parallelLoading") instanceof Boolean parallel) {
+            parallelLoading = parallel;
+        }
     }
 
     private void datasetOptionsFromParameters() {
@@ -911,4 +1205,81 @@ public class STILDataProvider extends AbstractStarGroupDataProvider {
         }
 
     }
+
+    /**
+     * Per-load state that does not change while rows are converted, plus the counters of the merged chunks.
+     */
+    private class LoadContext {
+        private final UCDParser ucdParser;
+        private final boolean isStars;
+        private final BVToTeff_ballesteros bvToTEff = new BVToTeff_ballesteros();
+        private final double maxSizePc;
+        private final int hipIndex;
+        private final STILColumnPlan plan;
+        /** Effective temperature attribute, for tables without one. **/
+        private final UCD tEffUcd = new UCD("phys.temperature.effective", "teff", "K", -1);
+
+        // Counters, only updated when merging.
+        private long rows;
+        private int nInvalidParallaxes, resampledLightCurves, noPeriods;
+
+        private LoadContext(UCDParser ucdParser,
+                            boolean isStars) {
+            this.ucdParser = ucdParser;
+            this.isStars = isStars;
+            double maxSize = 3.0;
+            if (params != null && params.get("maxSizePc") instanceof Number n) {
+                maxSize = n.doubleValue();
+            }
+            this.maxSizePc = maxSize;
+            this.hipIndex = hasCol(ColId.hip) ? idx(ColId.hip) : -1;
+            this.plan = new STILColumnPlan(ucdParser);
+        }
+    }
+
+    /**
+     * The records converted from a contiguous range of rows, with the data that goes to the provider lists.
+     */
+    private static class Chunk {
+        private final List<IParticleRecord> records = new ArrayList<>(CHUNK_ROWS);
+        private final List<float[]> colors = new ArrayList<>(CHUNK_ROWS);
+        private final List<double[]> sphericalPositions = new ArrayList<>(CHUNK_ROWS);
+        private final BitSet generatedIds = new BitSet();
+        private final BitSet namesFromIds = new BitSet();
+        private final long[] countsPerMag = new long[22];
+        private final STILColumnPlan.Values values = new STILColumnPlan.Values();
+        /** Number of rows read. **/
+        private long rows;
+        /** Whether loading must stop after this chunk. **/
+        private boolean stopped;
+        private int nInvalidParallaxes, resampledLightCurves, noPeriods;
+
+        private void add(IParticleRecord record,
+                         float[] rgb,
+                         double[] sph,
+                         boolean generatedId,
+                         boolean nameFromId) {
+            final int k = records.size();
+            records.add(record);
+            colors.add(rgb);
+            sphericalPositions.add(sph);
+            generatedIds.set(k, generatedId);
+            namesFromIds.set(k, nameFromId);
+        }
+
+        private int size() {
+            return records.size();
+        }
+
+        private void clear() {
+            records.clear();
+            colors.clear();
+            sphericalPositions.clear();
+            generatedIds.clear();
+            namesFromIds.clear();
+            Arrays.fill(countsPerMag, 0);
+            rows = 0;
+            nInvalidParallaxes = resampledLightCurves = noPeriods = 0;
+        }
+    }
 }
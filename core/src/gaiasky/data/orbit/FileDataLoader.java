@@ -10,14 +10,12 @@ package gaiasky.data.orbit;
 import gaiasky.data.util.PointCloudData;
 import gaiasky.util.Constants;
 import gaiasky.util.coord.AstroUtils;
-import gaiasky.util.math.Vector3d;
 import gaiasky.util.parse.Parser;
 
 import java.io.BufferedReader;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.sql.Timestamp;
-import java.time.Instant;
 
 public class FileDataLoader {
 
@@ -61,15 +59,11 @@ public class FileDataLoader {
                     // Valid data line.
                     long t = parseTime(tokens[0].trim());
                     if (t != last) {
-                        orbitData.time.add(Instant.ofEpochMilli(t));
-
-                        Vector3d pos = new Vector3d(parsed(tokens[1]), parsed(tokens[2]), parsed(tokens[3]));
                         // Kilometers to internal units.
-                        pos.scl(Constants.KM_TO_U);
-
-                        orbitData.x.add(pos.x);
-                        orbitData.y.add(pos.y);
-                        orbitData.z.add(pos.z);
+                        orbitData.addPoint(parsed(tokens[1]) * Constants.KM_TO_U,
+                                           parsed(tokens[2]) * Constants.KM_TO_U,
+                                           parsed(tokens[3]) * Constants.KM_TO_U,
+                                           t);
 
                         last = t;
                     }
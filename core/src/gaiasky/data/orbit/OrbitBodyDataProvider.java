@@ -17,6 +17,7 @@ import gaiasky.scene.component.Trajectory;
 import gaiasky.util.Logger;
 import gaiasky.util.Nature;
 import gaiasky.util.coord.Coordinates;
+import gaiasky.util.coord.vsop87.AbstractVSOP87;
 import gaiasky.util.i18n.I18n;
 import gaiasky.util.math.Vector3b;
 import gaiasky.util.math.Vector3d;
@@ -99,10 +100,27 @@ public class OrbitBodyDataProvider implements IOrbitDataProvider {
                     d = Instant.ofEpochMilli(parameter.ini.getTime());
                 }
 
+                // VSOP87 bodies are evaluated at all the sample times at once.
+                double[] batch = null;
+                if (coordinates.coordinates instanceof AbstractVSOP87 vsop87) {
+                    final Instant[] dates = new Instant[numSamples + 1];
+                    for (int i = 0; i <= numSamples; i++) {
+                        dates[i] = Instant.ofEpochMilli(d.toEpochMilli() + i * stepMs);
+                    }
+                    batch = new double[dates.length * 3];
+                    if (!vsop87.getEclipticCartesianCoordinates(dates, dates.length, batch)) {
+                        batch = null;
+                    }
+                }
+
                 // Load orbit data.
                 long t = 0;
                 for (int i = 0; i <= numSamples; i++) {
-                    coordinates.coordinates.getEclipticCartesianCoordinates(d, aux1);
+                    if (batch != null) {
+                        aux1.set(batch[i * 3], batch[i * 3 + 1], batch[i * 3 + 2]);
+                    } else {
+                        coordinates.coordinates.getEclipticCartesianCoordinates(d, aux1);
+                    }
                     Coordinates.cartesianToSpherical(aux1, aux2);
                     double eclX = aux2.x;
 
@@ -117,20 +135,13 @@ public class OrbitBodyDataProvider implements IOrbitDataProvider {
                         break;
                     }
                     aux1.mul(Coordinates.eclToEq());
-                    data.x.add(aux1.x.doubleValue());
-                    data.y.add(aux1.y.doubleValue());
-                    data.z.add(aux1.z.doubleValue());
-                    data.time.add(d);
+                    data.addPoint(aux1.x.doubleValue(), aux1.y.doubleValue(), aux1.z.doubleValue(), d);
 
                     d = Instant.ofEpochMilli(d.toEpochMilli() + stepMs);
                     t += stepMs;
                 }
                 // Close the circle.
-                data.x.add(data.x.get(0));
-                data.y.add(data.y.get(0));
-                data.z.add(data.z.get(0));
-                d = Instant.ofEpochMilli(d.toEpochMilli() + stepMs);
-                data.time.add(Instant.ofEpochMilli(d.toEpochMilli()));
+                data.addPoint(data.getX(0), data.getY(0), data.getZ(0), d.toEpochMilli() + stepMs);
 
                 if (writeData) {
                     try {
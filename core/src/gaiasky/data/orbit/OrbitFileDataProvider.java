@@ -51,12 +51,7 @@ public class OrbitFileDataProvider implements IOrbitDataProvider {
                 }
                 data = odl.load(is);
                 if (parameter.multiplier != 1f) {
-                    int n = data.x.size();
-                    for (int i = 0; i < n; i++) {
-                        data.x.set(i, data.x.get(i) * parameter.multiplier);
-                        data.y.set(i, data.y.get(i) * parameter.multiplier);
-                        data.z.set(i, data.z.get(i) * parameter.multiplier);
-                    }
+                    data.scl(parameter.multiplier);
                 }
                 EventManager.publish(Event.ORBIT_DATA_LOADED, this, data, file);
             } catch (Exception e) {
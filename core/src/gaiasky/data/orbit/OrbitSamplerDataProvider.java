@@ -94,7 +94,7 @@ public class OrbitSamplerDataProvider implements IOrbitDataProvider {
         double period = parameter.orbitalPeriod * 0.999d;
         int numSamples = parameter.numSamples > 0 ? parameter.numSamples : (int) (300.0 * period / 365.0);
         numSamples = FastMath.max(200, FastMath.min(2000, numSamples));
-        data = new PointCloudData();
+        data = new PointCloudData(numSamples + 2);
         String bodyDesc = parameter.name;
 
         // Milliseconds of this orbit in one revolution
@@ -127,20 +127,13 @@ public class OrbitSamplerDataProvider implements IOrbitDataProvider {
         for (int i = 0; i <= numSamples; i++) {
             coordinates.coordinates.getEclipticCartesianCoordinates(d, ecl);
             ecl.mul(Coordinates.eclToEq()).scl(1);
-            data.x.add(ecl.x.doubleValue());
-            data.y.add(ecl.y.doubleValue());
-            data.z.add(ecl.z.doubleValue());
-            data.time.add(d);
+            data.addPoint(ecl.x.doubleValue(), ecl.y.doubleValue(), ecl.z.doubleValue(), d);
 
             d = Instant.ofEpochMilli(d.toEpochMilli() + (long) stepMs);
         }
 
         // Close the circle
-        data.x.add(data.x.get(0));
-        data.y.add(data.y.get(0));
-        data.z.add(data.z.get(0));
-        d = Instant.ofEpochMilli(d.toEpochMilli() + (long) stepMs);
-        data.time.add(Instant.ofEpochMilli(d.toEpochMilli()));
+        data.addPoint(data.getX(0), data.getY(0), data.getZ(0), d.toEpochMilli() + (long) stepMs);
 
         if (writeData) {
             try {
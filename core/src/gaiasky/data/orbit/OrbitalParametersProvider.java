@@ -66,16 +66,12 @@ public class OrbitalParametersProvider implements IOrbitDataProvider {
                         double sx = data.getX(0);
                         double sy = data.getY(0);
                         double sz = data.getZ(0);
-                        data.x.add(sx);
-                        data.y.add(sy);
-                        data.z.add(sz);
+                        data.addPoint(sx, sy, sz);
                     } else {
                         // Add point
-                        data.x.add(out.x);
-                        data.y.add(out.y);
-                        data.z.add(out.z);
+                        data.addPoint(out.x, out.y, out.z);
                     }
-                    data.time.add(AstroUtils.julianDateToInstant(epoch + t));
+                    data.addTime(AstroUtils.julianDateToInstant(epoch + t).toEpochMilli());
 
                     t += t_step;
                 }
@@ -115,10 +111,7 @@ public class OrbitalParametersProvider implements IOrbitDataProvider {
             data = new PointCloudData();
             for (Vector3d point : samples) {
                 point.mul(transform);
-                data.x.add(point.x);
-                data.y.add(point.y);
-                data.z.add(point.z);
-                data.time.add(Instant.now());
+                data.addPoint(point.x, point.y, point.z, Instant.now());
             }
             EventManager.publish(Event.ORBIT_DATA_LOADED, this, data, parameter.name);
         } catch (Exception e) {
@@ -13,50 +13,69 @@ import gaiasky.util.math.Vector3d;
 
 import java.time.Instant;
 import java.util.ArrayList;
-import java.util.List;
-
+import java.util.Arrays;
+
+/**
+ * Holds a sequence of points, optionally with times. Coordinates are stored in primitive arrays, and times
+ * are stored as milliseconds since the epoch of 1970-01-01T00:00:00Z, so that lookups do not box or allocate.
+ * <p>
+ * Times, if present, must be sorted in ascending order. Time lookups use a binary search, with a cursor
+ * that makes sequential (monotonic) queries, like the ones issued during playback, constant time.
+ */
 public class PointCloudData {
-    private final Vector3d v0;
-    private final Vector3d v1;
     // Values of x, y, z in world coordinates
-    public List<Double> x, y, z;
-    public List<Instant> time;
+    private double[] x, y, z;
+    // Times in milliseconds since epoch
+    private long[] time;
+    // Number of points and times
+    private int size, timeSize;
+    // Last index found by a time lookup. Only used as a hint, so races are harmless.
+    private int cursor = 0;
     // Period in days
     public double period = -1;
-    private Instant start, end;
 
     public PointCloudData() {
         this(16);
     }
 
     public PointCloudData(int capacity) {
-        x = new ArrayList<>(capacity);
-        y = new ArrayList<>(capacity);
-        z = new ArrayList<>(capacity);
-        time = new ArrayList<>(capacity);
-
-        v0 = new Vector3d();
-        v1 = new Vector3d();
+        capacity = Math.max(capacity, 2);
+        x = new double[capacity];
+        y = new double[capacity];
+        z = new double[capacity];
+        time = new long[0];
     }
 
     /**
      * Clears all data
      **/
     public void clear() {
-        x.clear();
-        y.clear();
-        z.clear();
-        time.clear();
-        v0.setZero();
-        v1.setZero();
+        size = 0;
+        timeSize = 0;
+        cursor = 0;
     }
 
     public boolean isEmpty() {
-        return x.isEmpty() && y.isEmpty() && z.isEmpty();
+        return size == 0;
     }
 
     public boolean hasTime() {
-        return time != null && !time.isEmpty();
+        return timeSize > 0;
+    }
+
+    private void ensurePointCapacity(int capacity) {
+        if (capacity > x.length) {
+            int newCapacity = Math.max(capacity, x.length + (x.length >> 1));
+            x = Arrays.copyOf(x, newCapacity);
+            y = Arrays.copyOf(y, newCapacity);
+            z = Arrays.copyOf(z, newCapacity);
+        }
+    }
+
+    private void ensureTimeCapacity(int capacity) {
+        if (capacity > time.length) {
+            time = Arrays.copyOf(time, Math.max(Math.max(capacity, x.length), time.length + (time.length >> 1)));
+        }
     }
 
     /**
@@ -69,10 +88,12 @@ public class PointCloudData {
     public void addPoints(double[] points) {
         if (points.length % 3 == 0) {
             int nPoints = points.length / 3;
+            ensurePointCapacity(size + nPoints);
             for (int i = 0; i < nPoints; i++) {
-                x.add(points[i * 3]);
-                y.add(points[i * 3 + 1]);
-                z.add(points[i * 3 + 2]);
+                x[size] = points[i * 3];
+                y[size] = points[i * 3 + 1];
+                z[size] = points[i * 3 + 2];
+                size++;
             }
         }
     }
@@ -85,10 +106,12 @@ public class PointCloudData {
     public void addPoints(ArrayList points) {
         if (points.size() % 3 == 0) {
             int nPoints = points.size() / 3;
+            ensurePointCapacity(size + nPoints);
             for (int i = 0; i < nPoints; i++) {
-                x.add((double) points.get(i * 3));
-                y.add((double) points.get(i * 3 + 1));
-                z.add((double) points.get(i * 3 + 2));
+                x[size] = (double) points.get(i * 3);
+                y[size] = (double) points.get(i * 3 + 1);
+                z[size] = (double) points.get(i * 3 + 2);
+                size++;
             }
         }
     }
@@ -99,9 +122,7 @@ public class PointCloudData {
      * @param point The point
      */
     public void addPoint(Vector3d point) {
-        x.add(point.x);
-        y.add(point.y);
-        z.add(point.z);
+        addPoint(point.x, point.y, point.z);
     }
 
     /**
@@ -112,9 +133,46 @@ public class PointCloudData {
      * @param z The z component
      */
     public void addPoint(double x, double y, double z) {
-        this.x.add(x);
-        this.y.add(y);
-        this.z.add(z);
+        ensurePointCapacity(size + 1);
+        this.x[size] = x;
+        this.y[size] = y;
+        this.z[size] = z;
+        size++;
+    }
+
+    /**
+     * Adds a single point with its time to the cloud. Times must be added in ascending order.
+     *
+     * @param x      The x component
+     * @param y      The y component
+     * @param z      The z component
+     * @param timeMs The time of the point, in milliseconds since epoch
+     */
+    public void addPoint(double x, double y, double z, long timeMs) {
+        addPoint(x, y, z);
+        addTime(timeMs);
+    }
+
+    /**
+     * Adds a single point with its time to the cloud. Times must be added in ascending order.
+     *
+     * @param x       The x component
+     * @param y       The y component
+     * @param z       The z component
+     * @param instant The time of the point
+     */
+    public void addPoint(double x, double y, double z, Instant instant) {
+        addPoint(x, y, z, instant.toEpochMilli());
+    }
+
+    /**
+     * Adds a time to the cloud. Times must be added in ascending order.
+     *
+     * @param timeMs The time, in milliseconds since epoch
+     */
+    public void addTime(long timeMs) {
+        ensureTimeCapacity(timeSize + 1);
+        time[timeSize++] = timeMs;
     }
 
     /**
@@ -125,81 +183,98 @@ public class PointCloudData {
      * @param index The data index.
      */
     public void loadPoint(Vector3d v, int index) {
-        v.set(x.get(index), y.get(index), z.get(index));
+        v.set(x[index], y[index], z[index]);
     }
 
     public void loadPoint(Vector3b v, int index) {
-        v.set(x.get(index), y.get(index), z.get(index));
+        v.set(x[index], y[index], z[index]);
     }
 
     public Instant loadTime(int index) {
-        return time.get(index);
+        return getDate(index);
     }
 
     public int getNumPoints() {
-        return x.size();
+        return size;
     }
 
     public double getX(int index) {
-        return x.get(index);
+        return x[index];
     }
 
     public void setX(int index, double value) {
-        x.set(index, value);
+        x[index] = value;
     }
 
     public double getY(int index) {
-        return y.get(index);
+        return y[index];
     }
 
     public void setY(int index, double value) {
-        y.set(index, value);
+        y[index] = value;
     }
 
     public double getZ(int index) {
-        return z.get(index);
+        return z[index];
     }
 
     public void setZ(int index, double value) {
-        z.set(index, value);
+        z[index] = value;
     }
 
     public void setPoint(Vector3d v, int index) {
-        x.set(index, v.x);
-        y.set(index, v.y);
-        z.set(index, v.z);
+        x[index] = v.x;
+        y[index] = v.y;
+        z[index] = v.z;
     }
 
     public void setPoint(Vector3b v, int index) {
-        x.set(index, v.x.doubleValue());
-        y.set(index, v.y.doubleValue());
-        z.set(index, v.z.doubleValue());
+        x[index] = v.x.doubleValue();
+        y[index] = v.y.doubleValue();
+        z[index] = v.z.doubleValue();
+    }
+
+    /**
+     * Multiplies all coordinates by the given factor.
+     *
+     * @param factor The scale factor.
+     */
+    public void scl(double factor) {
+        for (int i = 0; i < size; i++) {
+            x[i] *= factor;
+            y[i] *= factor;
+            z[i] *= factor;
+        }
     }
 
     public Instant getDate(int index) {
-        return time.get(index);
+        return Instant.ofEpochMilli(time[index]);
+    }
+
+    /**
+     * Gets the time of the point at the given index.
+     *
+     * @param index The index.
+     * @return The time in milliseconds since epoch.
+     */
+    public long getTimeMs(int index) {
+        return time[index];
     }
 
     public Instant getStart() {
-        if (start == null) {
-            start = time.get(0);
-        }
-        return start;
+        return Instant.ofEpochMilli(getStartMs());
     }
 
     public long getStartMs() {
-        return getStart().toEpochMilli();
+        return time[0];
     }
 
     public Instant getEnd() {
-        if (end == null) {
-            end = time.get(time.size() - 1);
-        }
-        return end;
+        return Instant.ofEpochMilli(getEndMs());
     }
 
     public long getEndMs() {
-        return getEnd().toEpochMilli();
+        return time[timeSize - 1];
     }
 
     /**
@@ -210,7 +285,7 @@ public class PointCloudData {
      * @param index The index of the point to load.
      */
     public void loadPointF(Vector3 v, int index) {
-        v.set(x.get(index).floatValue(), y.get(index).floatValue(), z.get(index).floatValue());
+        v.set((float) x[index], (float) y[index], (float) z[index]);
     }
 
     /**
@@ -238,52 +313,43 @@ public class PointCloudData {
      * @return Whether the operation completes successfully
      */
     public boolean loadPoint(Vector3d v, long timeMs) {
-        // Data is sorted
-        int idx = binarySearch(time, timeMs);
-
-        if (idx < 0 || idx >= time.size()) {
+        int idx = getIndex(timeMs);
+        if (idx < 0) {
             // No data for this time
             return false;
         }
-
-        if (time.get(idx).toEpochMilli() == timeMs) {
-            v.set(x.get(idx), y.get(idx), z.get(idx));
+        if (time[idx] == timeMs || idx + 1 >= size) {
+            v.set(x[idx], y[idx], z[idx]);
         } else {
-            // Interpolate
-            loadPoint(v0, idx);
-            loadPoint(v1, idx + 1);
-            Instant t0 = time.get(idx);
-            Instant t1 = time.get(idx + 1);
-
-            double scl = (double) (timeMs - t0.toEpochMilli()) / (t1.toEpochMilli() - t0.toEpochMilli());
-            v.set(v1.sub(v0).scl(scl).add(v0));
+            double scl = interpolationFactor(idx, timeMs);
+            v.set(lerp(x, idx, scl), lerp(y, idx, scl), lerp(z, idx, scl));
         }
         return true;
     }
 
     public boolean loadPoint(Vector3b v, long timeMs) {
-        // Data is sorted
-        int idx = binarySearch(time, timeMs);
-
-        if (idx < 0 || idx >= time.size()) {
+        int idx = getIndex(timeMs);
+        if (idx < 0) {
             // No data for this time
             return false;
         }
-
-        if (time.get(idx).toEpochMilli() == timeMs) {
-            v.set(x.get(idx), y.get(idx), z.get(idx));
+        if (time[idx] == timeMs || idx + 1 >= size) {
+            v.set(x[idx], y[idx], z[idx]);
         } else {
-            // Interpolate
-            loadPoint(v0, idx);
-            loadPoint(v1, idx + 1);
-            Instant t0 = time.get(idx);
-            Instant t1 = time.get(idx + 1);
-
-            double scl = (double) (timeMs - t0.toEpochMilli()) / (t1.toEpochMilli() - t0.toEpochMilli());
-            v.set(v1.sub(v0).scl(scl).add(v0));
+            double scl = interpolationFactor(idx, timeMs);
+            v.set(lerp(x, idx, scl), lerp(y, idx, scl), lerp(z, idx, scl));
         }
         return true;
+    }
+
+    private double interpolationFactor(int idx, long timeMs) {
+        long t0 = time[idx];
+        return (double) (timeMs - t0) / (time[idx + 1] - t0);
+    }
 
+    private static double lerp(double[] values, int idx, double scl) {
+        double v0 = values[idx];
+        return v0 + (values[idx + 1] - v0) * scl;
     }
 
     public Instant getWrapTime(Instant instant) {
@@ -291,12 +357,15 @@ public class PointCloudData {
     }
 
     public long getWrapTimeMs(Instant instant) {
-        long c = instant.toEpochMilli();
+        return getWrapTimeMs(instant.toEpochMilli());
+    }
+
+    public long getWrapTimeMs(long timeMs) {
         long s = getStartMs();
         long e = getEndMs();
 
         long ep = e - s;
-        long cp = c - s;
+        long cp = timeMs - s;
         long wrapCurrentTime = ep > 0 ? ((cp % ep) + ep) % ep : 0;
         return wrapCurrentTime + s;
     }
@@ -308,44 +377,49 @@ public class PointCloudData {
      * @return The two indices
      */
     public int getIndex(Instant instant) {
-        return binarySearch(time, getWrapTimeMs(instant));
+        return getIndex(getWrapTimeMs(instant));
     }
 
-    public int getIndex(long wrappedTimeMs) {
-        return binarySearch(time, wrappedTimeMs);
-    }
-
-    private int binarySearch(List<Instant> times, Instant elem) {
-        return binarySearch(times, elem.toEpochMilli());
-    }
-
-    private int binarySearch(List<Instant> times, long time) {
-        if (time >= times.get(0).toEpochMilli() && time <= times.get(times.size() - 1).toEpochMilli()) {
-            return binarySearch(times, time, 0, times.size() - 1);
-        } else {
+    /**
+     * Gets the index of the last point whose time is not greater than the given time.
+     *
+     * @param timeMs The time in milliseconds since epoch.
+     * @return The index, or -1 if the time is out of range.
+     */
+    public int getIndex(long timeMs) {
+        final int n = timeSize;
+        if (n == 0 || timeMs < time[0] || timeMs > time[n - 1]) {
             return -1;
         }
-    }
-
-    private int binarySearch(List<Instant> times, long time, int i0, int i1) {
-        if (i0 > i1) {
-            return -1;
-        } else if (i0 == i1) {
-            if (times.get(i0).toEpochMilli() > time) {
-                return i0 - 1;
-            } else {
-                return i0;
+        // Check the cursor and its successor first, which covers sequential playback.
+        int c = cursor;
+        if (c < n) {
+            if (time[c] <= timeMs) {
+                if (c + 1 >= n || timeMs < time[c + 1]) {
+                    return c;
+                } else if (c + 2 >= n || timeMs < time[c + 2]) {
+                    cursor = c + 1;
+                    return c + 1;
+                }
             }
         }
-
-        int mid = (i0 + i1) / 2;
-        if (times.get(mid).toEpochMilli() == time) {
-            return mid;
-        } else if (times.get(mid).toEpochMilli() < time) {
-            return binarySearch(times, time, mid + 1, i1);
-        } else {
-            return binarySearch(times, time, i0, mid);
+        int idx = binarySearch(timeMs, n);
+        cursor = idx;
+        return idx;
+    }
+
+    private int binarySearch(long timeMs, int n) {
+        int lo = 0, hi = n - 1;
+        // Invariant: time[lo] <= timeMs, and timeMs < time[hi + 1] if hi + 1 < n.
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (time[mid] <= timeMs) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
         }
+        return lo;
     }
 
 }
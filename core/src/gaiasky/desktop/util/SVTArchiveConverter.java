@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2023 Gaia Sky - All rights reserved.
+ *  This file is part of Gaia Sky, which is released under the Mozilla Public License 2.0.
+ *  You may use, distribute and modify this code under the terms of MPL2.
+ *  See the file LICENSE.md in the project root for full license details.
+ */
+
+package gaiasky.desktop.util;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import gaiasky.util.svt.SVTArchive;
+import gaiasky.util.svt.SVTQuadtree;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Converts an SVT tile directory, with a "level[num]" directory for each level and a "tx_[col]_[row].[ext]" file
+ * for each tile, into a single archive file ({@link SVTArchive}). The SVT loader picks up the archive automatically
+ * if it is in the SVT location.
+ */
+public class SVTArchiveConverter {
+
+    /**
+     * Converts the given SVT tile directory into an archive.
+     *
+     * @param args The program arguments.
+     */
+    public static void main(String[] args) {
+
+        CLIArgs cliArgs = new CLIArgs();
+        JCommander jc = JCommander.newBuilder().addObject(cliArgs).build();
+        jc.setProgramName("svtarchiveconverter");
+        try {
+            jc.parse(args);
+
+            if (cliArgs.help) {
+                printUsage(jc);
+                return;
+            }
+        } catch (Exception e) {
+            System.out.print("gaiasky: bad program arguments\n\n");
+            printUsage(jc);
+            return;
+        }
+
+        var loc = Path.of(cliArgs.location);
+        if (!Files.isDirectory(loc.resolve("level0"))) {
+            System.out.println("Not an SVT location, 'level0' directory not found: " + loc);
+            return;
+        }
+        var output = cliArgs.output != null ? Path.of(cliArgs.output) : loc.resolve(SVTArchive.FILE_NAME);
+        try {
+            convert(loc, output);
+        } catch (IOException e) {
+            System.out.println("Error: " + e);
+        }
+    }
+
+    /**
+     * Converts the given SVT tile directory into an archive.
+     *
+     * @param location The SVT location, with the level directories.
+     * @param output   The archive file to write.
+     *
+     * @throws IOException If the tiles can't be read or the archive can't be written.
+     */
+    public static void convert(Path location, Path output) throws IOException {
+        final List<Tile> tiles = new ArrayList<>();
+        String format = null;
+        try (Stream<Path> levels = Files.list(location)) {
+            for (var directory : levels.toList()) {
+                var dirName = directory.getFileName().toString();
+                if (!Files.isDirectory(directory) || !dirName.matches("level\\d+")) {
+                    continue;
+                }
+                var level = Integer.parseInt(dirName.substring(5));
+                try (Stream<Path> files = Files.list(directory)) {
+                    for (var file : files.toList()) {
+                        var fileName = file.getFileName().toString();
+                        // Accepted file names: tx[_|-| ]COLNUM[_|-| ]ROWNUM.ext
+                        if (!fileName.matches("tx[_\\-\\s.]\\d+[_\\-\\s.]\\d+\\.\\w+")) {
+                            System.out.println("Wrong tile name format, skipping: " + file);
+                            continue;
+                        }
+                        String[] tokens = fileName.split("[_\\-\\s.]");
+                        int col = Integer.parseInt(tokens[1].trim());
+                        int row = Integer.parseInt(tokens[2].trim());
+                        var extension = tokens[tokens.length - 1];
+                        if (format == null) {
+                            format = extension;
+                        } else if (!format.equalsIgnoreCase(extension)) {
+                            throw new IOException("All tiles must have the same format, found " + format + " and " + extension + ": " + file);
+                        }
+                        tiles.add(new Tile(SVTQuadtree.key(level, col, row), file));
+                    }
+                }
+            }
+        }
+        if (tiles.isEmpty()) {
+            throw new IOException("No tiles found in " + location);
+        }
+        tiles.sort(Comparator.comparingLong(Tile::key));
+
+        final long[] keys = new long[tiles.size()];
+        final Path[] files = new Path[tiles.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = tiles.get(i).key;
+            files[i] = tiles.get(i).file;
+            if (i > 0 && keys[i] == keys[i - 1]) {
+                throw new IOException("Duplicate tile: " + files[i - 1] + ", " + files[i]);
+            }
+        }
+        SVTArchive.write(output, format, keys, files);
+        System.out.println("Written " + keys.length + " tiles (" + Files.size(output) + " bytes) to " + output);
+    }
+
+    private static void printUsage(JCommander jc) {
+        jc.usage();
+    }
+
+    private record Tile(long key, Path file) {
+    }
+
+    /**
+     * Program CLI arguments.
+     */
+    private static class CLIArgs {
+        @Parameter(names = { "-h", "--help" }, description = "Show program options and usage information.", help = true, order = 0) private boolean help = false;
+
+        @Parameter(names = { "-l", "--location" }, description = "Specify the SVT location, with the 'level[num]' directories.", order = 1, required = true) private String location = null;
+
+        @Parameter(names = { "-o", "--output" }, description = "Specify the output archive file. Defaults to '" + SVTArchive.FILE_NAME + "' in the SVT location.", order = 2) private String output = null;
+    }
+}
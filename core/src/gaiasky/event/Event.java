@@ -395,6 +395,16 @@ public enum Event {
      * Dispose the source GPU mesh.
      **/
     GPU_DISPOSE_VARIABLE_GROUP,
+    /**
+     * Update some instance attributes of the source GPU mesh in place, without rebuilding it.
+     * Contains the attributes to update, as a combination of the <code>ParticleSet.ATTR_*</code> flags, in [0].
+     **/
+    GPU_UPDATE_STAR_GROUP,
+    /**
+     * Update some instance attributes of the source GPU mesh in place, without rebuilding it.
+     * Contains the attributes to update, as a combination of the <code>ParticleSet.ATTR_*</code> flags, in [0].
+     **/
+    GPU_UPDATE_VARIABLE_GROUP,
     /**
      * Dispose the source GPU mesh.
      */
@@ -448,8 +448,9 @@ public class GuiRegistry implements IObserver {
                     fc.setShowHiddenConsumer((showHidden) -> Settings.settings.program.fileChooser.showHidden = showHidden);
                     fc.setAcceptText(I18n.msg("gui.loadcatalog"));
                     fc.setFileFilter(pathname -> pathname.getFileName().toString().endsWith(".vot") || pathname.getFileName().toString().endsWith(".csv")
-                            || pathname.getFileName().toString().endsWith(".fits") || pathname.getFileName().toString().endsWith(".json"));
-                    fc.setAcceptedFiles("*.vot, *.csv, *.fits, *.json");
+                            || pathname.getFileName().toString().endsWith(".fits") || pathname.getFileName().toString().endsWith(".json")
+                            || pathname.getFileName().toString().endsWith(".arrow") || pathname.getFileName().toString().endsWith(".feather"));
+                    fc.setAcceptedFiles("*.vot, *.csv, *.fits, *.json, *.arrow, *.feather");
                     fc.setResultListener((success, result) -> {
                         if (success) {
                             if (Files.exists(result) && Files.exists(result)) {
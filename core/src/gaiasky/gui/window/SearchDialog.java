@@ -39,15 +39,15 @@ import gaiasky.util.i18n.I18n;
 import gaiasky.util.scene2d.OwnLabel;
 import gaiasky.util.scene2d.OwnTextField;
 
+import java.util.LinkedHashSet;
 import java.util.Optional;
-import java.util.SortedSet;
-import java.util.TreeSet;
+import java.util.Set;
 
 public class SearchDialog extends GenericDialog {
     private static final Log logger = Logger.getLogger(SearchDialog.class);
     private final Scene scene;
     // Matching nodes
-    private final SortedSet<String> matching;
+    private final Set<String> matching;
     private final Array<OwnLabel> matchingLabels;
     private final FocusView view;
     private final FilterView filterView;
@@ -65,7 +65,8 @@ public class SearchDialog extends GenericDialog {
         super(I18n.msg("gui.objects.search"), skin, ui);
         this.scene = scene;
         this.aux = new Vector2();
-        this.matching = new TreeSet<>();
+        // Matches are ranked, keep the insertion order.
+        this.matching = new LinkedHashSet<>();
         this.matchingLabels = new Array<>(10);
         this.tasks = new Array<>(20);
         this.view = new FocusView();
@@ -80,6 +80,15 @@ public interface ISceneRenderer {
     /** Returns he render lists of this renderer. **/
     List<List<IRenderable>> getRenderLists();
 
+    /**
+     * Appends the given chunk render lists, produced by parallel extraction, to the render lists of this renderer.
+     * Chunks are merged in order, and are cleared afterwards.
+     *
+     * @param chunkLists The chunk render lists, indexed by chunk and then by render group ordinal.
+     * @param numChunks  The number of chunks to merge.
+     */
+    void mergeRenderLists(List<List<List<IRenderable>>> chunkLists, int numChunks);
+
     /** Gets the light glow pass object. **/
     LightGlowRenderPass getLightGlowPass();
 }
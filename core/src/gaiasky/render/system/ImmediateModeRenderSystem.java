@@ -10,15 +10,20 @@ package gaiasky.render.system;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.math.Matrix4;
 import com.badlogic.gdx.utils.Array;
+import gaiasky.GaiaSky;
 import gaiasky.render.RenderGroup;
+import gaiasky.render.RenderingContext;
 import gaiasky.render.api.IRenderable;
+import gaiasky.scene.camera.ICamera;
 import gaiasky.scene.component.AffineTransformations;
 import gaiasky.scene.system.render.SceneRenderer;
+import gaiasky.scene.system.render.draw.UploadScheduler;
 import gaiasky.util.gdx.mesh.IntMesh;
 import gaiasky.util.gdx.shader.ExtShaderProgram;
 
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -104,6 +109,7 @@ public abstract class ImmediateModeRenderSystem extends AbstractRenderSystem {
         try {
             MeshData md = meshes.get(i);
             if (md != null && md.mesh != null) {
+                UploadScheduler.instance().cancel(md);
                 md.dispose();
                 meshes.set(i, null);
             }
@@ -173,6 +179,83 @@ public abstract class ImmediateModeRenderSystem extends AbstractRenderSystem {
         curr = null;
     }
 
+    @Override
+    public void render(List<IRenderable> renderables,
+                       ICamera camera,
+                       double t,
+                       RenderingContext rc) {
+        // Continue the pending uploads, within the budget of the current frame.
+        UploadScheduler.instance().process(GaiaSky.instance.frames);
+        super.render(renderables, camera, t, rc);
+    }
+
+    /**
+     * Schedules the upload of the given vertices to the mesh of the given mesh data. The vertices are sent in
+     * ranges over the next frames, so only the first {@link #getResident(MeshData, int)} vertices can be drawn.
+     * The array must not be modified afterwards.
+     *
+     * @param md          The mesh data.
+     * @param vertices    The vertices.
+     * @param numVertices The number of vertices.
+     */
+    protected void scheduleVertexUpload(MeshData md,
+                                        float[] vertices,
+                                        int numVertices) {
+        final IntMesh mesh = md.mesh;
+        UploadScheduler.instance().submit(md, vertices, numVertices, md.vertexSize,
+                (data, offset, count) -> mesh.updateVerticesRange(offset, data, offset, count));
+        UploadScheduler.instance().process(GaiaSky.instance.frames);
+    }
+
+    /**
+     * Schedules the upload of the given per-instance attributes to the mesh of the given mesh data. The instances are
+     * sent in ranges over the next frames, so only the first {@link #getResident(MeshData, int)} instances can be drawn.
+     * The array must not be modified afterwards.
+     *
+     * @param md           The mesh data.
+     * @param instances    The per-instance attributes.
+     * @param numInstances The number of instances.
+     */
+    protected void scheduleInstanceUpload(MeshData md,
+                                          float[] instances,
+                                          int numInstances) {
+        final IntMesh mesh = md.mesh;
+        UploadScheduler.instance().submit(md, instances, numInstances, md.instanceSize,
+                (data, offset, count) -> mesh.updateInstanceAttribs(offset, data, offset, count));
+        UploadScheduler.instance().process(GaiaSky.instance.frames);
+    }
+
+    /**
+     * Schedules the upload of new per-instance attributes to a mesh whose instances are already in the GPU. The
+     * instances are sent in ranges over the next frames, and meanwhile the ones not yet sent are drawn with their
+     * previous attributes. The array must not be modified afterwards.
+     *
+     * @param md           The mesh data.
+     * @param instances    The per-instance attributes.
+     * @param numInstances The number of instances.
+     */
+    protected void scheduleInstanceUpdate(MeshData md,
+                                          float[] instances,
+                                          int numInstances) {
+        final IntMesh mesh = md.mesh;
+        UploadScheduler.instance().submitUpdate(md, instances, numInstances, md.instanceSize,
+                (data, offset, count) -> mesh.updateInstanceAttribs(offset, data, offset, count));
+        UploadScheduler.instance().process(GaiaSky.instance.frames);
+    }
+
+    /**
+     * Gets the number of vertices or instances of the given mesh data that are already in the GPU.
+     *
+     * @param md    The mesh data.
+     * @param total The total number of vertices or instances.
+     *
+     * @return The number of resident vertices or instances.
+     */
+    protected int getResident(MeshData md,
+                              int total) {
+        return UploadScheduler.instance().getResident(md, total);
+    }
+
     /**
      * This function makes sure that the tempVerts array has at least
      * the given size. After calling this function, the elements of tempVerts
@@ -9,9 +9,11 @@ package gaiasky.render.system;
 
 import com.badlogic.gdx.graphics.GL30;
 import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes;
 import com.badlogic.gdx.graphics.VertexAttributes.Usage;
 import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.utils.Array;
+import gaiasky.GaiaSky;
 import gaiasky.event.IObserver;
 import gaiasky.render.RenderGroup;
 import gaiasky.render.api.IRenderable;
@@ -19,7 +21,10 @@ import gaiasky.scene.camera.ICamera;
 import gaiasky.scene.component.ParticleSet;
 import gaiasky.scene.entity.ParticleUtils;
 import gaiasky.scene.system.render.SceneRenderer;
+import gaiasky.scene.system.render.draw.UploadScheduler;
 import gaiasky.util.Bits;
+import gaiasky.util.Logger;
+import gaiasky.util.Logger.Log;
 import gaiasky.util.ModelCache;
 import gaiasky.util.gdx.IcoSphereCreator;
 import gaiasky.util.gdx.ModelCreator.IFace;
@@ -27,11 +32,13 @@ import gaiasky.util.gdx.mesh.IntMesh;
 import gaiasky.util.gdx.model.IntModel;
 import gaiasky.util.gdx.shader.ExtShaderProgram;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 public abstract class InstancedRenderSystem extends ImmediateModeRenderSystem implements IObserver {
+    private static final Log logger = Logger.getLogger(InstancedRenderSystem.class);
 
     /**
      * Instanced model list, one per particle group.
@@ -39,17 +46,33 @@ public abstract class InstancedRenderSystem extends ImmediateModeRenderSystem im
     protected Array<InstancedModel> models = new Array<>(50);
     /** Particle utils instance. **/
     protected final ParticleUtils utils;
+    /** Packing jobs, in flight or finished, per renderable. Only accessed from the render thread. **/
+    private final Map<IRenderable, PackJob> packJobs = new HashMap<>();
+    /** Generation of the instance data of each renderable. Increased every time the data is invalidated. **/
+    private final Map<IRenderable, Integer> generations = new HashMap<>();
+    /** Uploaded instance data that has a row map, kept so that its attributes can be rewritten in place. **/
+    private final Map<IRenderable, PackedInstances> retained = new HashMap<>();
+    /** Attributes waiting to be rewritten, per renderable, as combinations of the <code>ParticleSet.ATTR_*</code> flags. **/
+    private final Map<IRenderable, Integer> pendingUpdates = new HashMap<>();
+    /** Attribute update jobs, in flight or finished, per renderable. **/
+    private final Map<IRenderable, UpdateJob> updateJobs = new HashMap<>();
 
     /**
      * Holds temporary instanced model data.
      */
     public static class InstancedModel {
         // Attribute offsets.
-        public int sizeOffset, particlePosOffset, properMotionOffset, textureIndexOffset, nVariOffset, variMagsOffset, variTimesOffset;
+        public int colorOffset, sizeOffset, particlePosOffset, properMotionOffset, textureIndexOffset, nVariOffset, variMagsOffset, variTimesOffset;
         /** Number of vertices. **/
         public int numVertices;
         /** Vertex size in floats (4-bytes). **/
         public int modelVertexSize;
+        /** Instance size in floats (4-bytes). **/
+        public int instanceSize;
+        /** Whether the instance attributes use the compact (quantised) layout. **/
+        public boolean compact = false;
+        /** Parameters to decode the compact layout of the uploaded instances, see {@link PackedInstances#decodeParams}. **/
+        public float[] decodeParams;
         /** Number of indices. **/
         public int numIndices = 0;
         public float[] vertices;
@@ -118,7 +141,10 @@ public abstract class InstancedRenderSystem extends ImmediateModeRenderSystem im
     protected void setModel(int offset,
                             InstancedModel model) {
         if (offset >= 0) {
-            models.insert(offset, model);
+            if (offset >= models.size) {
+                models.setSize(offset + 1);
+            }
+            models.set(offset, model);
         }
     }
 
@@ -377,6 +403,33 @@ public abstract class InstancedRenderSystem extends ImmediateModeRenderSystem im
     protected abstract void addAttributesDivisor1(Array<VertexAttribute> attributes,
                                                   int primitive);
 
+    /**
+     * Adds the required vertex attributes for this renderer to the given list, in the full or the compact layout.
+     * Renderers that support a compact layout must override this, and {@link #useCompactLayout(ParticleSet)}. By
+     * default, the full layout is always used.
+     *
+     * @param attributes The list of attributes with divisor=1
+     * @param primitive  The rendering primitive.
+     * @param compact    Whether to use the compact layout.
+     */
+    protected void addAttributesDivisor1(Array<VertexAttribute> attributes,
+                                         int primitive,
+                                         boolean compact) {
+        addAttributesDivisor1(attributes, primitive);
+    }
+
+    /**
+     * Checks whether the instances of the given set should be packed in the compact layout. Compact layouts trade
+     * precision for upload bandwidth and GPU memory.
+     *
+     * @param set The particle set.
+     *
+     * @return Whether to use the compact layout.
+     */
+    protected boolean useCompactLayout(ParticleSet set) {
+        return false;
+    }
+
     /**
      * Builds the vertex attributes with divisor=0 array and returns it.
      * The content of divisor-0 attributes is updated in each iteration of the vertex shader.
@@ -408,8 +461,21 @@ public abstract class InstancedRenderSystem extends ImmediateModeRenderSystem im
      * @return The vertex attributes array.
      */
     protected VertexAttribute[] buildAttributesDivisor1(int primitive) {
+        return buildAttributesDivisor1(primitive, false);
+    }
+
+    /**
+     * Builds the vertex attributes with divisor=1 array, in the full or the compact layout, and returns it.
+     *
+     * @param primitive The rendering primitive.
+     * @param compact   Whether to use the compact layout.
+     *
+     * @return The vertex attributes array.
+     */
+    protected VertexAttribute[] buildAttributesDivisor1(int primitive,
+                                                        boolean compact) {
         Array<VertexAttribute> attributes = new Array<>();
-        addAttributesDivisor1(attributes, primitive);
+        addAttributesDivisor1(attributes, primitive, compact);
 
         VertexAttribute[] array = new VertexAttribute[attributes.size];
         for (int i = 0; i < attributes.size; i++)
@@ -428,15 +494,44 @@ public abstract class InstancedRenderSystem extends ImmediateModeRenderSystem im
                                      InstancedModel model);
 
     /**
-     * Computes the offset for each vertex attribute in the instanced array. The offsets will be
-     * used later in the render stage.
+     * Computes the offset for each vertex attribute in the instanced array, and stores it in the model.
+     * The offsets will be used later to pack the instance data. This does not need a mesh, so
+     * it can be called before the mesh slot is allocated.
      *
-     * @param curr  The current mesh data.
-     * @param model The instanced model.
+     * @param attributes The instance (divisor=1) vertex attributes.
+     * @param model      The instanced model.
      */
-    protected abstract void offsets1(MeshData curr,
+    protected abstract void offsets1(VertexAttributes attributes,
                                      InstancedModel model);
 
+    /**
+     * Gets the offset, in floats, of the attribute with the given usage.
+     *
+     * @param attributes The vertex attributes.
+     * @param usage      The usage.
+     *
+     * @return The offset in floats, or 0 if there is no such attribute.
+     */
+    protected static int offset(VertexAttributes attributes,
+                                int usage) {
+        VertexAttribute attribute = attributes.findByUsage(usage);
+        return attribute != null ? attribute.offset / 4 : 0;
+    }
+
+    /**
+     * Computes the instance layout (size and attribute offsets) of the given model for the given primitive. The
+     * compact layout is used if the {@link InstancedModel#compact} flag of the model is set.
+     *
+     * @param model     The model.
+     * @param primitive The rendering primitive.
+     */
+    protected void computeInstanceLayout(InstancedModel model,
+                                         int primitive) {
+        VertexAttributes attributes = new VertexAttributes(buildAttributesDivisor1(primitive, model.compact));
+        model.instanceSize = attributes.vertexSize / 4;
+        offsets1(attributes, model);
+    }
+
     /**
      * Adds a new mesh data to the meshes list and increases the mesh data index.
      *
@@ -461,18 +556,397 @@ public abstract class InstancedRenderSystem extends ImmediateModeRenderSystem im
 
         VertexAttribute[] attributes0 = buildAttributesDivisor0(modelFile == null && modelType.equalsIgnoreCase("quad") ? 2 : 3, modelFile != null,
                 !isWireframe(primitive));
-        VertexAttribute[] attributes1 = buildAttributesDivisor1(primitive);
+        VertexAttribute[] attributes1 = buildAttributesDivisor1(primitive, model.compact);
         curr.mesh = new IntMesh(true, maxVerts, maxInstances, maxIndices, attributes0, attributes1);
 
         curr.vertexSize = curr.mesh.getVertexAttributes().vertexSize / 4;
         curr.instanceSize = curr.mesh.getInstanceAttributes().vertexSize / 4;
 
         offsets0(curr, model);
-        offsets1(curr, model);
+        offsets1(curr.mesh.getInstanceAttributes(), model);
+        curr.colorOffset = model.colorOffset;
 
         return mdi;
     }
 
+    /**
+     * Gets the packed instance data of the given renderable. If the data is not available, a packing job
+     * is submitted to the worker pool, and null is returned until it finishes. Must be called from the render
+     * thread.
+     *
+     * @param renderable The renderable.
+     * @param set        The particle set of the renderable.
+     * @param packer     The packer, used only if a new packing job needs to be submitted.
+     *
+     * @return The packed instances, or null if they are not ready yet.
+     */
+    protected PackedInstances getPackedInstances(IRenderable renderable,
+                                                 ParticleSet set,
+                                                 InstancePacker packer) {
+        if (set.disposed) {
+            // The data is gone, never pack it.
+            return null;
+        }
+        final int generation = generations.getOrDefault(renderable, 0);
+        PackJob job = packJobs.get(renderable);
+        if (job != null && job.done && job.generation != generation) {
+            // Data was invalidated while packing, discard.
+            packJobs.remove(renderable);
+            job = null;
+        }
+        if (job == null) {
+            int offset = getOffset(renderable);
+            var model = getModel(set, offset);
+            model.compact = useCompactLayout(set);
+            computeInstanceLayout(model, set.modelPrimitive);
+            if (retained.containsKey(renderable) || updateJobs.containsKey(renderable)
+                    || (offset >= 0 && offset < meshes.size && UploadScheduler.instance().isPending(meshes.get(offset)))) {
+                // The current attributes are still in use, so pack into a new array.
+                model.instanceAttributes = null;
+            }
+            job = new PackJob(model, packer, generation);
+            packJobs.put(renderable, job);
+            if (!GaiaSky.instance.getExecutorService().execute(job)) {
+                job.run();
+            }
+        }
+        if (job.done) {
+            packJobs.remove(renderable);
+            if (job.error != null) {
+                logger.error(job.error, "Error packing instance data");
+                // Upload no instances, so that we do not retry every frame.
+                return new PackedInstances(job.model, new float[0], 0);
+            }
+            return job.result;
+        }
+        return null;
+    }
+
+    /**
+     * Uploads the given packed instances to a new mesh slot, and releases the previous slot of the renderable,
+     * if any. The instance attributes are uploaded over several frames by the {@link UploadScheduler}, so
+     * renderers must draw {@link #getResidentCount(IRenderable)} instances. Must be called from the render thread.
+     *
+     * @param renderable The renderable.
+     * @param set        The particle set of the renderable.
+     * @param packed     The packed instances.
+     * @param useIndices Whether to upload the model indices.
+     *
+     * @return The new mesh data.
+     */
+    protected MeshData uploadPackedInstances(IRenderable renderable,
+                                             ParticleSet set,
+                                             PackedInstances packed,
+                                             boolean useIndices) {
+        final var model = packed.model;
+        int previous = getOffset(renderable);
+        if (previous >= 0) {
+            clearMeshData(previous);
+            if (previous < models.size) {
+                models.set(previous, null);
+            }
+        }
+        int maxIndices = useIndices ? model.numIndices : 0;
+        int offset = addMeshData(model, model.numVertices, packed.count, maxIndices, set.modelFile, set.modelType, set.modelPrimitive);
+        model.decodeParams = packed.decodeParams;
+        setModel(offset, model);
+        setOffset(renderable, offset);
+        curr = meshes.get(offset);
+        // Global (divisor=0) vertices (position, uv) plus optional indices
+        curr.mesh.setVertices(model.vertices, 0, model.numVertices * model.modelVertexSize);
+        if (maxIndices > 0) {
+            curr.mesh.setIndices(model.indices, 0, model.numIndices);
+        }
+        // Per instance (divisor=1) vertices, spread over the next frames
+        scheduleInstanceUpload(curr, packed.attributes, packed.count);
+        curr.numVertices = packed.count;
+        curr.instanceIdx = packed.count * curr.instanceSize;
+        setCount(renderable, packed.count);
+        setInGpu(renderable, true);
+        if (packed.rows != null) {
+            retained.put(renderable, packed);
+        } else {
+            retained.remove(renderable);
+        }
+        return curr;
+    }
+
+    /**
+     * Gets the number of instances of the given renderable that are already in the GPU, and can be drawn.
+     *
+     * @param renderable The renderable.
+     *
+     * @return The number of resident instances.
+     */
+    protected int getResidentCount(IRenderable renderable) {
+        int offset = getOffset(renderable);
+        var md = offset >= 0 && offset < meshes.size ? meshes.get(offset) : null;
+        return md != null ? getResident(md, getCount(renderable)) : getCount(renderable);
+    }
+
+    /**
+     * Marks the instance data of the given renderable as stale. The current mesh, if any, is still rendered
+     * until the data has been packed again and uploaded. Must be called from the render thread.
+     *
+     * @param renderable The renderable.
+     */
+    protected void invalidateInstances(IRenderable renderable) {
+        generations.merge(renderable, 1, Integer::sum);
+        retained.remove(renderable);
+        pendingUpdates.remove(renderable);
+        if (inGpu != null) {
+            inGpu.remove(renderable);
+        }
+    }
+
+    /**
+     * Releases the instance data of the given renderable, whose set has been disposed. Its packing and update jobs
+     * are cancelled, its pending upload is dropped, and its mesh slot is freed. Must be called from the render thread.
+     *
+     * @param renderable The renderable.
+     */
+    protected void disposeInstances(IRenderable renderable) {
+        final PackJob packJob = packJobs.remove(renderable);
+        if (packJob != null) {
+            packJob.cancelled = true;
+        }
+        final UpdateJob updateJob = updateJobs.remove(renderable);
+        if (updateJob != null) {
+            updateJob.cancelled = true;
+        }
+        generations.remove(renderable);
+        retained.remove(renderable);
+        pendingUpdates.remove(renderable);
+
+        int offset = getOffset(renderable);
+        if (offset >= 0) {
+            // Also cancels the pending upload.
+            clearMeshData(offset);
+            if (offset < models.size) {
+                models.set(offset, null);
+            }
+            setOffset(renderable, -1);
+        }
+        if (inGpu != null) {
+            inGpu.remove(renderable);
+        }
+    }
+
+    /**
+     * Requests the rewrite of some attributes of the instance data of the given renderable. If the data was
+     * packed with a row map, only the given attributes are rewritten, in place, by the next call to
+     * {@link #updateInstances(IRenderable, InstanceUpdater)}. Otherwise, the instance data is invalidated.
+     * Must be called from the render thread.
+     *
+     * @param renderable The renderable.
+     * @param attributes The attributes, as a combination of the <code>ParticleSet.ATTR_*</code> flags.
+     */
+    protected void requestInstanceUpdate(IRenderable renderable,
+                                         int attributes) {
+        if (retained.containsKey(renderable) || packJobs.containsKey(renderable)) {
+            // If a packing job is in flight, the update is applied on top of its result.
+            pendingUpdates.merge(renderable, attributes, (a, b) -> a | b);
+        } else {
+            invalidateInstances(renderable);
+        }
+    }
+
+    /**
+     * Processes the pending attribute updates of the given renderable. The attributes are rewritten in the retained
+     * instance data on a worker thread, and then uploaded over the current mesh, which is drawn meanwhile with the previous
+     * data. Must be called every frame from the render thread, once the renderable is in the GPU.
+     *
+     * @param renderable The renderable.
+     * @param updater    The updater, used only if a new update job needs to be submitted.
+     */
+    protected void updateInstances(IRenderable renderable,
+                                   InstanceUpdater updater) {
+        final UpdateJob job = updateJobs.get(renderable);
+        if (job != null) {
+            if (job.done) {
+                updateJobs.remove(renderable);
+                if (job.error != null) {
+                    logger.error(job.error, "Error updating instance data");
+                    invalidateInstances(renderable);
+                } else if (retained.get(renderable) == job.packed) {
+                    int offset = getOffset(renderable);
+                    var md = offset >= 0 && offset < meshes.size ? meshes.get(offset) : null;
+                    if (md != null) {
+                        scheduleInstanceUpdate(md, job.packed.attributes, job.packed.count);
+                    }
+                }
+            }
+            return;
+        }
+        var packed = retained.get(renderable);
+        if (packed != null && pendingUpdates.containsKey(renderable)) {
+            int offset = getOffset(renderable);
+            if (offset >= 0 && offset < meshes.size && UploadScheduler.instance().isPending(meshes.get(offset))) {
+                // The scheduler still reads the attributes of an earlier upload, so rewrite a copy.
+                packed = new PackedInstances(packed.model, Arrays.copyOf(packed.attributes, packed.count * packed.model.instanceSize),
+                                             packed.count, packed.rows, packed.decodeParams);
+                retained.put(renderable, packed);
+            }
+            final UpdateJob newJob = new UpdateJob(packed, pendingUpdates.remove(renderable), updater);
+            updateJobs.put(renderable, newJob);
+            if (!GaiaSky.instance.getExecutorService().execute(newJob)) {
+                newJob.run();
+            }
+        }
+    }
+
+    @Override
+    public void dispose() {
+        super.dispose();
+        packJobs.clear();
+        generations.clear();
+        retained.clear();
+        pendingUpdates.clear();
+        updateJobs.clear();
+    }
+
+    /**
+     * Instance attributes packed off the render thread, in the layout of the model.
+     */
+    public static class PackedInstances {
+        /** The model, with the instance layout. **/
+        public final InstancedModel model;
+        /** The packed attributes, {@link #count} instances of {@link InstancedModel#instanceSize} floats each. **/
+        public final float[] attributes;
+        /** Number of packed instances. **/
+        public final int count;
+        /**
+         * Index of the particle of each instance, or null. Instance data with a row map is kept after the upload, so that
+         * its attributes can be rewritten in place with {@link #requestInstanceUpdate(IRenderable, int)}.
+         */
+        public final int[] rows;
+        /**
+         * Parameters needed by the shader to decode the attributes in the compact layout, or null. They are computed
+         * when packing, and do not change with in-place updates.
+         */
+        public final float[] decodeParams;
+
+        public PackedInstances(InstancedModel model,
+                               float[] attributes,
+                               int count) {
+            this(model, attributes, count, null);
+        }
+
+        public PackedInstances(InstancedModel model,
+                               float[] attributes,
+                               int count,
+                               int[] rows) {
+            this(model, attributes, count, rows, null);
+        }
+
+        public PackedInstances(InstancedModel model,
+                               float[] attributes,
+                               int count,
+                               int[] rows,
+                               float[] decodeParams) {
+            this.model = model;
+            this.attributes = attributes;
+            this.count = count;
+            this.rows = rows;
+            this.decodeParams = decodeParams;
+        }
+    }
+
+    /**
+     * Packs the instance attributes of a renderable. Runs on a worker thread, so implementations must only
+     * read state that is not modified by the render thread, and must not use shared scratch objects.
+     */
+    @FunctionalInterface
+    protected interface InstancePacker {
+        /**
+         * Packs the instance attributes in the layout of the given model.
+         *
+         * @param model The model, with the instance size and attribute offsets already computed.
+         *
+         * @return The packed instances.
+         */
+        PackedInstances pack(InstancedModel model);
+    }
+
+    /**
+     * Rewrites some attributes of packed instance data in place. Runs on a worker thread, with the same restrictions as
+     * {@link InstancePacker}.
+     */
+    @FunctionalInterface
+    protected interface InstanceUpdater {
+        /**
+         * Rewrites the given attributes of all the instances.
+         *
+         * @param packed     The packed instances, with their row map.
+         * @param attributes The attributes, as a combination of the <code>ParticleSet.ATTR_*</code> flags.
+         */
+        void update(PackedInstances packed,
+                    int attributes);
+    }
+
+    private static class UpdateJob implements Runnable {
+        private final PackedInstances packed;
+        private final int attributes;
+        private final InstanceUpdater updater;
+        private volatile Throwable error;
+        private volatile boolean done = false;
+        /** Set when the renderable is disposed, so that the job does not touch its data if it has not started yet. **/
+        private volatile boolean cancelled = false;
+
+        UpdateJob(PackedInstances packed,
+                  int attributes,
+                  InstanceUpdater updater) {
+            this.packed = packed;
+            this.attributes = attributes;
+            this.updater = updater;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (!cancelled) {
+                    updater.update(packed, attributes);
+                }
+            } catch (Throwable t) {
+                error = t;
+            } finally {
+                done = true;
+            }
+        }
+    }
+
+    private static class PackJob implements Runnable {
+        private final InstancedModel model;
+        private final InstancePacker packer;
+        private final int generation;
+        private volatile PackedInstances result;
+        private volatile Throwable error;
+        private volatile boolean done = false;
+        /** Set when the renderable is disposed, so that the job does not read its data if it has not started yet. **/
+        private volatile boolean cancelled = false;
+
+        PackJob(InstancedModel model,
+                InstancePacker packer,
+                int generation) {
+            this.model = model;
+            this.packer = packer;
+            this.generation = generation;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (!cancelled) {
+                    result = packer.pack(model);
+                }
+            } catch (Throwable t) {
+                error = t;
+            } finally {
+                done = true;
+            }
+        }
+    }
+
     protected void preRenderObjects(ExtShaderProgram shaderProgram,
                                     ICamera camera) {
         // Empty, override if needed
@@ -16,10 +16,10 @@ import gaiasky.util.Logger;
 import gaiasky.util.i18n.I18n;
 import gaiasky.util.tree.IPosition;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.SortedSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -29,6 +29,9 @@ public class Index {
     /** Quick lookup map. Name to node. **/
     protected final Map<String, Entity> index;
 
+    /** Search structure with the names of focusable entities in the lookup map. **/
+    protected final NameSearchIndex search = new NameSearchIndex();
+
     /**
      * Map from integer to position with all Hipparcos stars, for the
      * constellations.
@@ -96,7 +99,7 @@ public class Index {
                     for (String name : base.names) {
                         String nameLowerCase = name.toLowerCase().trim();
                         if (!index.containsKey(nameLowerCase)) {
-                            index.put(nameLowerCase, entity);
+                            put(nameLowerCase, entity);
                         } else if (!nameLowerCase.isEmpty()) {
                             Entity conflict = index.get(nameLowerCase);
                             var conflictBase = Mapper.base.get(conflict);
@@ -122,7 +125,7 @@ public class Index {
                     Id id = Mapper.id.get(entity);
                     if (id != null && id.id > 0) {
                         String idString = String.valueOf(id.id);
-                        index.put(idString, entity);
+                        put(idString, entity);
                     }
                 }
 
@@ -135,7 +138,7 @@ public class Index {
                     Hip hip = Mapper.hip.get(entity);
                     if (hip.hip > 0) {
                         String hipid = "hip " + hip.hip;
-                        index.put(hipid, entity);
+                        put(hipid, entity);
                     }
                 }
 
@@ -156,12 +159,41 @@ public class Index {
             if (particleSet.index != null) {
                 Set<String> keys = particleSet.index.keySet();
                 for (String key : keys) {
-                    index.put(key, entity);
+                    put(key, entity);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the names of the given particles of a set to the index. Used when particles are appended
+     * to a set that is already in the index.
+     *
+     * @param entity    The entity of the set.
+     * @param particles The particles.
+     */
+    public void addParticles(Entity entity, List<IParticleRecord> particles) {
+        for (IParticleRecord particle : particles) {
+            if (particle.names() != null) {
+                for (String name : particle.names()) {
+                    put(name.toLowerCase(), entity);
                 }
             }
         }
     }
 
+    /**
+     * Puts the given key in the lookup map. Keys of focusable entities are also added to the search structure.
+     */
+    private void put(String key, Entity entity) {
+        index.put(key, entity);
+        if (Mapper.focus.has(entity)) {
+            search.add(key);
+        } else {
+            search.remove(key);
+        }
+    }
+
     public Map<Integer, IPosition> getHipMap() {
         return hipMap;
     }
@@ -203,11 +235,12 @@ public class Index {
     /** Removes the given key from the index. **/
     public void remove(String key) {
         index.remove(key);
+        search.remove(key);
     }
     /** Removes the given keys from the index. **/
     public void remove(String[] keys) {
         for(var key : keys) {
-            index.remove(key);
+            remove(key);
         }
     }
 
@@ -220,13 +253,13 @@ public class Index {
         var base = Mapper.base.get(entity);
         if (base.names != null) {
             for (String name : base.names) {
-                index.remove(name.toLowerCase().trim());
+                remove(name.toLowerCase().trim());
             }
 
             // Id
             if (base.id > 0) {
                 String id = String.valueOf(base.id);
-                index.remove(id);
+                remove(id);
             }
 
             // HIP
@@ -252,49 +285,24 @@ public class Index {
         if (set.index != null) {
             Set<String> keys = set.index.keySet();
             for (String key : keys) {
-                index.remove(key);
+                remove(key);
             }
         }
     }
 
     /**
      * Returns focus entities in this index matching the given string by name, to a maximum
-     * of <code>maxResults</code>. The <code>abort</code> atomic boolean can be used to stop
+     * of <code>maxResults</code>. Names starting with the string come first, followed by names containing it
+     * (see {@link NameSearchIndex#find(String, Collection, int, AtomicBoolean)}). The results are added in rank order,
+     * so the collection should keep the insertion order. The <code>abort</code> atomic boolean can be used to stop
      * the computation.
      *
      * @param name       The name.
-     * @param results    The set where the results are to be stored.
+     * @param results    The collection where the results are to be stored.
      * @param maxResults The maximum number of results.
      * @param abort      To enable abortion mid-computation.
      */
-    public void matchingFocusableNodes(String name, SortedSet<String> results, int maxResults, AtomicBoolean abort) {
-        Set<String> keys = index.keySet();
-        name = name.toLowerCase().trim();
-
-        int i = 0;
-        // Starts with
-        for (String key : keys) {
-            if (abort != null && abort.get())
-                return;
-            Entity entity = index.get(key);
-            if (Mapper.focus.has(entity) && key.startsWith(name)) {
-                results.add(key);
-                i++;
-            }
-            if (i >= maxResults)
-                return;
-        }
-        // Contains
-        for (String key : keys) {
-            if (abort != null && abort.get())
-                return;
-            Entity entity = index.get(key);
-            if (Mapper.focus.has(entity) && key.contains(name)) {
-                results.add(key);
-                i++;
-            }
-            if (i >= maxResults)
-                return;
-        }
+    public void matchingFocusableNodes(String name, Collection<String> results, int maxResults, AtomicBoolean abort) {
+        search.find(name.toLowerCase().trim(), results, maxResults, abort);
     }
 }
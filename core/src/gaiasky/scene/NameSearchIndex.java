@@ -0,0 +1,291 @@
+/*
+ * Copyright (c) 2023 Gaia Sky - All rights reserved.
+ *  This file is part of Gaia Sky, which is released under the Mozilla Public License 2.0.
+ *  You may use, distribute and modify this code under the terms of MPL2.
+ *  See the file LICENSE.md in the project root for full license details.
+ */
+
+package gaiasky.scene;
+
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.LongMap;
+import com.badlogic.gdx.utils.ObjectIntMap;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Search structure over object names, used to look up names by prefix and by substring without scanning all of them.
+ * Prefix queries use a sorted set of the names. Substring queries use a trigram index, which maps each sequence of
+ * three characters to the identifiers of the names that contain it, so that only the names in the shortest list of
+ * the query trigrams need to be checked. Queries shorter than three characters use the lists of single characters
+ * and pairs of characters, which are capped, as these queries match many names and only need a few of them.
+ * Names are added and removed incrementally. Removed names keep their identifier and their entries in the lists,
+ * which are skipped, and reused if the name is added again. When removed names outnumber the live ones, the index is
+ * rebuilt from the live names. Names are expected in lower case. Thread-safe.
+ */
+public class NameSearchIndex {
+    /** Number of candidates gathered per requested result in each stage, before ranking. **/
+    private static final int CANDIDATES_PER_RESULT = 4;
+    /** Maximum length of the lists of single characters and pairs of characters. **/
+    private static final int SHORT_LIST_CAP = 1024;
+    /** Minimum number of removed names before the index is compacted. **/
+    private static final int COMPACT_MIN_REMOVED = 1024;
+
+    /** Names currently in the index, sorted. **/
+    private final NavigableSet<String> sorted = new TreeSet<>();
+    /** Identifier of each name ever added. **/
+    private final ObjectIntMap<String> ids = new ObjectIntMap<>();
+    /** Name of each identifier. **/
+    private final List<String> names = new ArrayList<>();
+    /** Identifiers of the names currently in the index. **/
+    private final BitSet alive = new BitSet();
+    /** Trigram to identifiers of the names that contain it. **/
+    private final LongMap<IntArray> trigrams = new LongMap<>();
+    /** Single characters and pairs of characters to identifiers of some of the names that contain them. **/
+    private final LongMap<IntArray> shortGrams = new LongMap<>();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Adds a name. Does nothing if it is already in the index.
+     *
+     * @param name The name, in lower case.
+     */
+    public void add(String name) {
+        if (name == null || name.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            int id = ids.get(name, -1);
+            if (id < 0) {
+                id = index(name);
+            }
+            if (!alive.get(id)) {
+                alive.set(id);
+                sorted.add(name);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a name, if it is in the index.
+     *
+     * @param name The name, in lower case.
+     */
+    public void remove(String name) {
+        if (name == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            final int id = ids.get(name, -1);
+            if (id >= 0 && alive.get(id)) {
+                alive.clear(id);
+                sorted.remove(name);
+                final int removed = names.size() - sorted.size();
+                if (removed >= COMPACT_MIN_REMOVED && removed > sorted.size()) {
+                    compact();
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Gives a new identifier to the given name, and adds it to the lists. Must be called with the write lock held.
+     *
+     * @return The identifier.
+     */
+    private int index(String name) {
+        final int id = names.size();
+        names.add(name);
+        ids.put(name, id);
+        for (int i = 0; i < name.length(); i++) {
+            if (i + 3 <= name.length()) {
+                addToList(trigrams, gram(name, i, 3), id, Integer.MAX_VALUE);
+            }
+            if (i + 2 <= name.length()) {
+                addToList(shortGrams, gram(name, i, 2), id, SHORT_LIST_CAP);
+            }
+            addToList(shortGrams, gram(name, i, 1), id, SHORT_LIST_CAP);
+        }
+        return id;
+    }
+
+    /**
+     * Rebuilds the identifiers and the lists from the live names only, in their original order, so that removed
+     * names are forgotten. Must be called with the write lock held.
+     */
+    private void compact() {
+        final List<String> live = new ArrayList<>(sorted.size());
+        for (int id = alive.nextSetBit(0); id >= 0; id = alive.nextSetBit(id + 1)) {
+            live.add(names.get(id));
+        }
+        ids.clear();
+        names.clear();
+        alive.clear();
+        trigrams.clear();
+        shortGrams.clear();
+        for (String name : live) {
+            alive.set(index(name));
+        }
+    }
+
+    /**
+     * Gets the number of names in the index.
+     *
+     * @return The number of names.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return sorted.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the names that start with or contain the given string, and adds them to the results, ranked. The exact
+     * match comes first, then names starting with the string, shortest first, then names containing it, ranked by
+     * the position of the match and then by length. Only a bounded number of candidates are ranked in each stage,
+     * so the ranking is approximate for very common strings.
+     *
+     * @param query      The string to find, in lower case.
+     * @param results    The collection to add the names to. Names already in it are not added again.
+     * @param maxResults The maximum number of names to add.
+     * @param abort      To enable abortion mid-computation. May be null.
+     */
+    public void find(String query,
+                     Collection<String> results,
+                     int maxResults,
+                     AtomicBoolean abort) {
+        if (query == null || query.isEmpty() || maxResults <= 0) {
+            return;
+        }
+        final int maxCandidates = maxResults * CANDIDATES_PER_RESULT;
+        final int initial = results.size();
+        lock.readLock().lock();
+        try {
+            // Starts with, the exact match included.
+            final List<String> prefixed = new ArrayList<>();
+            for (String name : sorted.subSet(query, true, query + Character.MAX_VALUE, false)) {
+                if (abort != null && abort.get())
+                    return;
+                prefixed.add(name);
+                if (prefixed.size() >= maxCandidates)
+                    break;
+            }
+            prefixed.sort(Comparator.comparingInt(String::length).thenComparing(Comparator.naturalOrder()));
+            if (add(prefixed, results, initial + maxResults))
+                return;
+
+            // Contains.
+            final List<String> contained = new ArrayList<>();
+            final IntArray candidates = query.length() >= 3 ? shortestList(query) : shortGrams.get(gram(query, 0, query.length()));
+            if (candidates == null)
+                return;
+            for (int i = 0; i < candidates.size && contained.size() < maxCandidates; i++) {
+                if (abort != null && abort.get())
+                    return;
+                final int id = candidates.get(i);
+                if (alive.get(id)) {
+                    final String name = names.get(id);
+                    if (name.indexOf(query) > 0) {
+                        contained.add(name);
+                    }
+                }
+            }
+            if (query.length() < 3 && candidates.size >= SHORT_LIST_CAP && results.size() + contained.size() < initial + maxResults) {
+                // The capped list ran out, look for more names.
+                contained.clear();
+                for (String name : sorted) {
+                    if (abort != null && abort.get())
+                        return;
+                    if (name.indexOf(query) > 0) {
+                        contained.add(name);
+                        if (contained.size() >= maxCandidates)
+                            break;
+                    }
+                }
+            }
+            contained.sort(Comparator.<String>comparingInt(name -> name.indexOf(query)).thenComparingInt(String::length)
+                    .thenComparing(Comparator.naturalOrder()));
+            add(contained, results, initial + maxResults);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds the names to the results until the results hold the given number of names.
+     *
+     * @return Whether the results are full.
+     */
+    private boolean add(List<String> ranked,
+                        Collection<String> results,
+                        int size) {
+        for (String name : ranked) {
+            if (results.size() >= size)
+                break;
+            if (!results.contains(name))
+                results.add(name);
+        }
+        return results.size() >= size;
+    }
+
+    /**
+     * Gets the shortest list of identifiers among the trigrams of the given string.
+     *
+     * @return The list, or null if some trigram is in no name, and thus no name contains the string.
+     */
+    private IntArray shortestList(String query) {
+        IntArray shortest = null;
+        for (int i = 0; i + 3 <= query.length(); i++) {
+            final IntArray list = trigrams.get(gram(query, i, 3));
+            if (list == null) {
+                return null;
+            }
+            if (shortest == null || list.size < shortest.size) {
+                shortest = list;
+            }
+        }
+        return shortest;
+    }
+
+    private static void addToList(LongMap<IntArray> lists,
+                                  long key,
+                                  int id,
+                                  int cap) {
+        IntArray list = lists.get(key);
+        if (list == null) {
+            list = new IntArray(4);
+            lists.put(key, list);
+        }
+        // Repeated sequences of the same name are added once.
+        if (list.size < cap && (list.isEmpty() || list.peek() != id)) {
+            list.add(id);
+        }
+    }
+
+    /**
+     * Packs a sequence of one to three characters in a long. The length goes in the top bits, so that sequences
+     * of different lengths never collide.
+     */
+    private static long gram(String str,
+                             int i,
+                             int length) {
+        long key = length;
+        for (int k = 0; k < length; k++) {
+            key = (key << 16) | str.charAt(i + k);
+        }
+        return key;
+    }
+}
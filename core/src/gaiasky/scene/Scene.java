@@ -34,8 +34,8 @@ import gaiasky.util.tree.OctreeNode;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.util.Collection;
 import java.util.Set;
-import java.util.SortedSet;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class Scene {
@@ -47,6 +47,9 @@ public class Scene {
     /** The index of names to entities. **/
     private Index index;
 
+    /** Nearest-neighbour and radius queries over the particles. **/
+    private SpatialQueries spatialQueries;
+
     /** Repository for families, which are component set definitions. **/
     private Families families;
 
@@ -76,6 +79,11 @@ public class Scene {
         return index;
     }
 
+    /** Access to the spatial queries. **/
+    public SpatialQueries spatialQueries() {
+        return spatialQueries;
+    }
+
     /** Access to the archetypes. **/
     public Archetypes archetypes() {
         return archetypes;
@@ -88,6 +96,9 @@ public class Scene {
         // Initialize families.
         families = new Families();
 
+        // Initialize spatial queries.
+        spatialQueries = new SpatialQueries(this);
+
         // Initialize archetypes.
         archetypes = new Archetypes();
         archetypes.initialize(engine);
@@ -651,12 +662,12 @@ public class Scene {
      * of <code>maxResults</code>.
      *
      * @param name       The name.
-     * @param results    The set where the results are to be stored.
+     * @param results    The collection where the results are to be stored, in rank order.
      * @param maxResults The maximum number of results.
      * @param abort      To enable abortion mid-computation.
      */
     public void matchingFocusableNodes(String name,
-                                       SortedSet<String> results,
+                                       Collection<String> results,
                                        int maxResults,
                                        AtomicBoolean abort) {
         index.matchingFocusableNodes(name, results, maxResults, abort);
@@ -0,0 +1,360 @@
+/*
+ * Copyright (c) 2023 Gaia Sky - All rights reserved.
+ *  This file is part of Gaia Sky, which is released under the Mozilla Public License 2.0.
+ *  You may use, distribute and modify this code under the terms of MPL2.
+ *  See the file LICENSE.md in the project root for full license details.
+ */
+
+package gaiasky.scene;
+
+import com.badlogic.ashley.core.Entity;
+import gaiasky.scene.api.IParticleRecord;
+import gaiasky.scene.component.ParticleSet;
+import gaiasky.scene.view.OctreeObjectView;
+import gaiasky.util.math.Matrix4d;
+import gaiasky.util.math.Vector3d;
+import gaiasky.util.tree.IOctreeObject;
+import gaiasky.util.tree.OctreeNode;
+import gaiasky.util.tree.ParticleBVH;
+import net.jafama.FastMath;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * Nearest-neighbour and radius queries over the particles and stars of the scene. Loaded particle and star sets are
+ * queried through their spatial index ({@link ParticleSet#getSpatialIndex(boolean)}), or scanned if it is not ready.
+ * Only the sets with at least {@link #MIN_INDEXED_PARTICLES} particles start building their index when they are
+ * queried, so that a query does not build an index for every octant it visits.
+ * Octrees are traversed using the bounds of their octants, so that only the octants that may hold a result are
+ * visited. The octants that may hold a result but are not loaded are reported to the caller, which can decide
+ * whether to load them.
+ * <p>
+ * Positions and distances are in internal units, and the particles are placed at the current time.
+ */
+public class SpatialQueries {
+    /** Minimum number of particles of a set to start building its spatial index when it is queried. **/
+    private static final int MIN_INDEXED_PARTICLES = 50_000;
+
+    private final Scene scene;
+
+    public SpatialQueries(Scene scene) {
+        this.scene = scene;
+    }
+
+    /**
+     * A particle found by a query.
+     */
+    public static class Hit {
+        /** The entity of the set that contains the particle. **/
+        public final Entity entity;
+        /** The set that contains the particle. **/
+        public final ParticleSet set;
+        /** The index of the particle in the set. **/
+        public final int index;
+        /** The distance to the query point, in internal units. **/
+        public final double distance;
+
+        public Hit(Entity entity,
+                   ParticleSet set,
+                   int index,
+                   double distance) {
+            this.entity = entity;
+            this.set = set;
+            this.index = index;
+            this.distance = distance;
+        }
+
+        public IParticleRecord getRecord() {
+            return set.pointData.get(index);
+        }
+
+        /**
+         * Gets the first name of the particle, or null if it has none.
+         */
+        public String getName() {
+            final var names = getRecord().names();
+            return names != null && names.length > 0 ? names[0] : null;
+        }
+    }
+
+    /**
+     * Finds the particles closest to the given point, sorted by increasing distance.
+     *
+     * @param point       The point, in internal units.
+     * @param k           The maximum number of particles to find.
+     * @param maxDistance Only particles within this distance are found, in internal units.
+     * @param namedOnly   Whether to consider only particles with a name.
+     * @param unloaded    If not null, gets the octants that are not loaded and may hold closer particles.
+     *
+     * @return The particles found.
+     */
+    public List<Hit> nearest(Vector3d point,
+                             int k,
+                             double maxDistance,
+                             boolean namedOnly,
+                             List<OctreeNode> unloaded) {
+        final Nearest query = new Nearest(point, k, maxDistance, namedOnly);
+        for (Entity entity : scene.findEntitiesByFamily(scene.getFamilies().particleSets)) {
+            query.add(entity, set(entity));
+        }
+        for (Entity entity : scene.findEntitiesByFamily(scene.getFamilies().octrees)) {
+            var octant = Mapper.octant.get(entity);
+            if (octant != null && octant.octant != null) {
+                nearest(octant.octant, query, unloaded);
+            }
+        }
+        return query.hits;
+    }
+
+    /**
+     * Finds the particles within the given distance of the given point, sorted by increasing distance.
+     *
+     * @param point     The point, in internal units.
+     * @param radius    The distance, in internal units.
+     * @param namedOnly Whether to consider only particles with a name.
+     * @param unloaded  If not null, gets the octants that are not loaded and may hold particles in range.
+     *
+     * @return The particles found.
+     */
+    public List<Hit> within(Vector3d point,
+                            double radius,
+                            boolean namedOnly,
+                            List<OctreeNode> unloaded) {
+        final List<Hit> hits = new ArrayList<>();
+        for (Entity entity : scene.findEntitiesByFamily(scene.getFamilies().particleSets)) {
+            within(entity, set(entity), point, radius, namedOnly, hits);
+        }
+        for (Entity entity : scene.findEntitiesByFamily(scene.getFamilies().octrees)) {
+            var octant = Mapper.octant.get(entity);
+            if (octant != null && octant.octant != null) {
+                within(octant.octant, point, radius, namedOnly, hits, unloaded);
+            }
+        }
+        hits.sort(Comparator.comparingDouble(hit -> hit.distance));
+        return hits;
+    }
+
+    private void nearest(OctreeNode node,
+                         Nearest query,
+                         List<OctreeNode> unloaded) {
+        if (boxDistance(node, query.point) > query.bound()) {
+            return;
+        }
+        visitObjects(node, unloaded, (entity, set) -> query.add(entity, set));
+        // Visit the closest children first, so that the bound shrinks sooner.
+        final List<OctreeNode> children = new ArrayList<>(8);
+        for (OctreeNode child : node.children) {
+            if (child != null) {
+                children.add(child);
+            }
+        }
+        children.sort(Comparator.comparingDouble(child -> boxDistance(child, query.point)));
+        for (OctreeNode child : children) {
+            nearest(child, query, unloaded);
+        }
+    }
+
+    private void within(OctreeNode node,
+                        Vector3d point,
+                        double radius,
+                        boolean namedOnly,
+                        List<Hit> hits,
+                        List<OctreeNode> unloaded) {
+        if (boxDistance(node, point) > radius) {
+            return;
+        }
+        visitObjects(node, unloaded, (entity, set) -> within(entity, set, point, radius, namedOnly, hits));
+        for (OctreeNode child : node.children) {
+            if (child != null) {
+                within(child, point, radius, namedOnly, hits, unloaded);
+            }
+        }
+    }
+
+    /**
+     * Visits the sets of the given octant, or reports the octant if it has objects but they are not loaded.
+     */
+    private void visitObjects(OctreeNode node,
+                              List<OctreeNode> unloaded,
+                              SetVisitor visitor) {
+        final List<IOctreeObject> objects = node.objects;
+        if (objects != null && !objects.isEmpty()) {
+            for (IOctreeObject object : objects) {
+                if (object instanceof OctreeObjectView view && view.set != null) {
+                    visitor.visit(view.getEntity(), view.set);
+                }
+            }
+        } else if (node.numObjects > 0 && unloaded != null) {
+            unloaded.add(node);
+        }
+    }
+
+    private interface SetVisitor {
+        void visit(Entity entity,
+                   ParticleSet set);
+    }
+
+    private void within(Entity entity,
+                        ParticleSet set,
+                        Vector3d point,
+                        double radius,
+                        boolean namedOnly,
+                        List<Hit> hits) {
+        final List<IParticleRecord> data = set != null ? set.pointData : null;
+        if (data == null || data.isEmpty()) {
+            return;
+        }
+        final double deltaYears = set.getDeltaYears();
+        final ParticleBVH bvh = spatialIndex(entity, set);
+        if (bvh != null) {
+            final Vector3d aux = new Vector3d();
+            bvh.within(point, radius, deltaYears, i -> {
+                if (!namedOnly || hasName(data.get(i))) {
+                    hits.add(new Hit(entity, set, i, position(data.get(i), deltaYears, null, aux).dst(point)));
+                }
+            });
+        } else {
+            final Matrix4d transform = transform(entity);
+            final Vector3d aux = new Vector3d();
+            for (int i = 0; i < data.size(); i++) {
+                final IParticleRecord pb = data.get(i);
+                if (!namedOnly || hasName(pb)) {
+                    final double distance = position(pb, deltaYears, transform, aux).dst(point);
+                    if (distance <= radius) {
+                        hits.add(new Hit(entity, set, i, distance));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The state of a nearest-neighbour query, which keeps the closest particles found so far.
+     */
+    private class Nearest {
+        final Vector3d point;
+        final int k;
+        final double maxDistance;
+        final boolean namedOnly;
+        final List<Hit> hits = new ArrayList<>();
+        final int[] indices;
+        final double[] distances;
+        final Vector3d aux = new Vector3d();
+
+        Nearest(Vector3d point,
+                int k,
+                double maxDistance,
+                boolean namedOnly) {
+            this.point = point;
+            this.k = FastMath.max(0, k);
+            this.maxDistance = maxDistance;
+            this.namedOnly = namedOnly;
+            this.indices = new int[this.k];
+            this.distances = new double[this.k];
+        }
+
+        /** Distance beyond which particles can't be in the result. **/
+        double bound() {
+            return hits.size() < k ? maxDistance : hits.get(hits.size() - 1).distance;
+        }
+
+        void add(Entity entity,
+                 ParticleSet set) {
+            final List<IParticleRecord> data = set != null ? set.pointData : null;
+            if (data == null || data.isEmpty() || k == 0) {
+                return;
+            }
+            final double deltaYears = set.getDeltaYears();
+            final ParticleBVH bvh = spatialIndex(entity, set);
+            if (bvh != null) {
+                final IntPredicate filter = namedOnly ? i -> hasName(data.get(i)) : null;
+                final int n = bvh.nearest(point, k, bound(), deltaYears, filter, indices, distances);
+                for (int i = 0; i < n; i++) {
+                    insert(new Hit(entity, set, indices[i], distances[i]));
+                }
+            } else {
+                final Matrix4d transform = transform(entity);
+                for (int i = 0; i < data.size(); i++) {
+                    final IParticleRecord pb = data.get(i);
+                    if (!namedOnly || hasName(pb)) {
+                        final double distance = position(pb, deltaYears, transform, aux).dst(point);
+                        if (distance <= bound()) {
+                            insert(new Hit(entity, set, i, distance));
+                        }
+                    }
+                }
+            }
+        }
+
+        /** Inserts the hit in order, and drops the farthest one if there are too many. **/
+        void insert(Hit hit) {
+            int i = hits.size();
+            while (i > 0 && hits.get(i - 1).distance > hit.distance) {
+                i--;
+            }
+            if (i < k) {
+                hits.add(i, hit);
+                if (hits.size() > k) {
+                    hits.remove(hits.size() - 1);
+                }
+            }
+        }
+    }
+
+    private static ParticleSet set(Entity entity) {
+        return Mapper.particleSet.has(entity) ? Mapper.particleSet.get(entity) : Mapper.starSet.get(entity);
+    }
+
+    /**
+     * Gets the spatial index of the set, or null if it is not ready or the set has affine transformations, which
+     * the index does not consider. Large sets start building their index if it is not ready, smaller ones are
+     * cheaper to scan.
+     */
+    private static ParticleBVH spatialIndex(Entity entity,
+                                            ParticleSet set) {
+        return transform(entity) == null ? set.getSpatialIndex(set.pointData.size() >= MIN_INDEXED_PARTICLES) : null;
+    }
+
+    /**
+     * Gets the affine transformations of the given entity, or null if it has none.
+     */
+    private static Matrix4d transform(Entity entity) {
+        var affine = Mapper.affine.get(entity);
+        if (affine != null && !affine.isEmpty()) {
+            return affine.apply(new Matrix4d().idt());
+        }
+        return null;
+    }
+
+    private static Vector3d position(IParticleRecord pb,
+                                     double deltaYears,
+                                     Matrix4d transform,
+                                     Vector3d out) {
+        out.set(pb.x(), pb.y(), pb.z());
+        if (transform != null) {
+            out.mul(transform);
+        }
+        if (pb.hasProperMotion()) {
+            out.add(pb.pmx() * deltaYears, pb.pmy() * deltaYears, pb.pmz() * deltaYears);
+        }
+        return out;
+    }
+
+    private static boolean hasName(IParticleRecord pb) {
+        return pb.names() != null && pb.names().length > 0;
+    }
+
+    /**
+     * Distance from the point to the bounds of the octant, or zero if the point is inside.
+     */
+    private static double boxDistance(OctreeNode node,
+                                      Vector3d point) {
+        final double dx = FastMath.max(0, FastMath.max(node.min.x - point.x, point.x - node.max.x));
+        final double dy = FastMath.max(0, FastMath.max(node.min.y - point.y, point.y - node.max.y));
+        final double dz = FastMath.max(0, FastMath.max(node.min.z - point.z, point.z - node.max.z));
+        return FastMath.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+}
@@ -375,7 +375,7 @@ public class SpacecraftCamera extends AbstractCamera implements IObserver {
     }
 
     @Override
-    public void checkClosestBody(IFocus cb) {
+    public synchronized void checkClosestBody(IFocus cb) {
         super.checkClosestBody(cb);
         if (sc != null && cb instanceof FocusView fv) {
             if (fv.getEntity() != sc && cb.getDistToCamera() < secondClosest.getDistToCamera()) {
@@ -385,7 +385,7 @@ public class SpacecraftCamera extends AbstractCamera implements IObserver {
     }
 
     @Override
-    public void checkClosestBody(Entity cb) {
+    public synchronized void checkClosestBody(Entity cb) {
         super.checkClosestBody(cb);
         if (sc != null && cb != null) {
             auxView.setEntity(cb);
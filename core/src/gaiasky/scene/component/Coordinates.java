@@ -9,9 +9,10 @@ package gaiasky.scene.component;
 
 import com.badlogic.ashley.core.Component;
 import com.badlogic.ashley.core.Engine;
+import com.badlogic.ashley.core.Entity;
 import gaiasky.util.coord.IBodyCoordinates;
 
-public class Coordinates implements Component, ICopy {
+public class Coordinates implements Component, ICopy, IDisposable {
 
     /**
      * Coordinates provider. Provides position coordinates depending on time.
@@ -31,6 +32,13 @@ public class Coordinates implements Component, ICopy {
         setCoordinatesProvider(coordinates);
     }
 
+    @Override
+    public void dispose(Entity entity) {
+        if (coordinates != null) {
+            coordinates.dispose();
+        }
+    }
+
     @Override
     public Component getCopy(Engine engine) {
         var copy = engine.createComponent(this.getClass());
@@ -29,6 +29,7 @@ import gaiasky.util.coord.Coordinates;
 import gaiasky.util.gdx.model.IntModel;
 import gaiasky.util.i18n.I18n;
 import gaiasky.util.math.*;
+import gaiasky.util.tree.ParticleBVH;
 import net.jafama.FastMath;
 import uk.ac.starlink.table.ColumnInfo;
 
@@ -40,6 +41,13 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
 public class ParticleSet implements Component, IDisposable {
 
+    /** Color attribute of the particles, see {@link #markForUpdate(Render, int)}. **/
+    public static final int ATTR_COLOR = 1;
+    /** Size attribute of the particles, see {@link #markForUpdate(Render, int)}. **/
+    public static final int ATTR_SIZE = 1 << 1;
+    /** Visibility of the particles, given by the dataset filter and the per-particle visibility array. **/
+    public static final int ATTR_VISIBILITY = 1 << 2;
+
     private static long idSeq = 0;
 
     public static synchronized long getNextSequence() {
@@ -308,6 +316,10 @@ public class ParticleSet implements Component, IDisposable {
     // Updater task.
     public ParticleSetUpdaterTask updaterTask;
 
+    // Spatial index used to pick particles, built on demand. Null until built, or if the data has changed.
+    private volatile ParticleBVH spatialIndex;
+    private final AtomicBoolean spatialIndexBuilding = new AtomicBoolean(false);
+
     // Last sort position.
     public Vector3b lastSortCameraPos, cPosD;
     // Auxiliary matrix.
@@ -363,6 +375,7 @@ public class ParticleSet implements Component, IDisposable {
     public void setData(List<IParticleRecord> pointData,
                         boolean regenerateIndex) {
         this.pointData = pointData;
+        this.spatialIndex = null;
 
         // Regenerate index
         if (regenerateIndex)
@@ -374,6 +387,116 @@ public class ParticleSet implements Component, IDisposable {
         }
     }
 
+    /**
+     * Appends a batch of particles to this set, used when datasets are streamed in. The name index, the visibility
+     * array and the sorting buffers are extended, and the new particles are sorted with the rest in the next update.
+     * The data list and arrays are replaced, not modified, so that tasks running on other threads always see
+     * consistent data. As each call copies the whole set, batches should grow with the set, so that streaming a
+     * dataset in takes linear time. The GPU data is not touched, see {@link #markForUpdate(Render)}.
+     * Must be called from the main thread.
+     *
+     * @param batch The new particles.
+     *
+     * @return False if the set is being sorted, in which case nothing is appended and the call must be retried
+     * later. True otherwise.
+     */
+    public boolean appendData(List<IParticleRecord> batch) {
+        if (!updating.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            final int from = pointData.size();
+            final int n = from + batch.size();
+
+            // Visibility goes first, readers get the size from the data list.
+            final byte[] visibility = Arrays.copyOf(visibilityArray, n);
+            Arrays.fill(visibility, from, n, (byte) 1);
+            visibilityArray = visibility;
+
+            final List<IParticleRecord> data = new ArrayList<>(n);
+            data.addAll(pointData);
+            data.addAll(batch);
+            pointData = data;
+            spatialIndex = null;
+
+            if (index != null) {
+                synchronized (indexSync) {
+                    for (int i = from; i < n; i++) {
+                        IParticleRecord pb = data.get(i);
+                        if (pb.names() != null) {
+                            for (String name : pb.names()) {
+                                index.put(name.toLowerCase(), i);
+                            }
+                        }
+                    }
+                }
+            }
+
+            if (active != null) {
+                // Keep the current order, new particles go last until the next sort.
+                final Integer[] sorted = Arrays.copyOf(active, n);
+                for (int i = from; i < n; i++) {
+                    sorted[i] = i;
+                }
+                metadata = Arrays.copyOf(metadata, n);
+                indices1 = sorted;
+                indices2 = Arrays.copyOf(sorted, n);
+                active = indices1;
+                background = indices2;
+                // Sort as soon as possible.
+                lastSortTime = 0;
+            }
+        } finally {
+            updating.set(false);
+        }
+        return true;
+    }
+
+    /**
+     * Gets the spatial index of the particles of this set, used to pick particles. The index is built in the
+     * background the first time it is requested, and again after the data changes. Meanwhile, this method
+     * returns null.
+     *
+     * @return The spatial index, or null if it is not ready.
+     */
+    public ParticleBVH getSpatialIndex() {
+        return getSpatialIndex(true);
+    }
+
+    /**
+     * Gets the spatial index of the particles of this set, if it is ready.
+     *
+     * @param build Whether to start building the index in the background if it is not ready. Callers that query
+     *              many sets every frame should only build the indices of the sets they need the most.
+     *
+     * @return The spatial index, or null if it is not ready.
+     */
+    public ParticleBVH getSpatialIndex(boolean build) {
+        var bvh = spatialIndex;
+        final var data = pointData;
+        if (bvh != null && bvh.getData() != data) {
+            // Built over previous data.
+            bvh = null;
+        }
+        if (build && bvh == null && data != null && !data.isEmpty() && spatialIndexBuilding.compareAndSet(false, true)) {
+            final boolean submitted = GaiaSky.instance.getExecutorService().execute(() -> {
+                try {
+                    final var built = new ParticleBVH(data, this::getRadius);
+                    // Discard it if the data changed meanwhile.
+                    if (pointData == data) {
+                        spatialIndex = built;
+                    }
+                } finally {
+                    spatialIndexBuilding.set(false);
+                }
+            });
+            if (!submitted) {
+                spatialIndexBuilding.set(false);
+            }
+        }
+        return bvh;
+    }
+
     public void setColumnInfoList(List<ColumnInfo> columnInfoList) {
         this.columnInfoList = columnInfoList;
     }
@@ -747,7 +870,7 @@ public class ParticleSet implements Component, IDisposable {
             boolean previousVisibility = this.visibilityArray[index] != 0;
             this.visibilityArray[index] = (byte) (visible ? 1 : 0);
             if (previousVisibility != visible) {
-                markForUpdate(render);
+                markForUpdate(render, ATTR_VISIBILITY);
             }
         }
     }
@@ -758,6 +881,18 @@ public class ParticleSet implements Component, IDisposable {
         }
     }
 
+    /**
+     * Marks some attributes of the particles of this set for update in VRAM. Renderers that support it rewrite only
+     * the given attributes in place. By default, the whole group is marked for update.
+     *
+     * @param render     The render component.
+     * @param attributes The attributes to update, as a combination of the <code>ATTR_*</code> flags.
+     */
+    public void markForUpdate(Render render,
+                              int attributes) {
+        markForUpdate(render);
+    }
+
     /**
      * Returns the position of the object with the given name at the given date, if any, in the out vector.
      *
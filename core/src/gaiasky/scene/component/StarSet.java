@@ -30,6 +30,11 @@ public class StarSet extends ParticleSet {
      * Number of particles to render as a billboard for this group.
      **/
     public int numBillboards = -1;
+    /**
+     * Pack the instances of this set in the compact layout, with quantised positions and half-precision proper motions
+     * and sizes. It uses less GPU memory and upload bandwidth, at the expense of precision.
+     **/
+    public boolean compactInstances = false;
 
     /**
      * Updates the parameters of the focus, if the focus is active in this group.
@@ -66,6 +71,15 @@ public class StarSet extends ParticleSet {
         this.variabilityEpochJd = epochJd;
     }
 
+    /**
+     * Sets whether the instances of this set are packed in the compact layout.
+     *
+     * @param compactInstances Whether to use the compact layout.
+     */
+    public void setCompactInstances(Boolean compactInstances) {
+        this.compactInstances = compactInstances;
+    }
+
 
     public int getHip() {
         if (focus != null && focus.hip() > 0)
@@ -130,4 +144,14 @@ public class StarSet extends ParticleSet {
             GaiaSky.postRunnable(() -> EventManager.publish(Event.GPU_DISPOSE_STAR_GROUP, render));
         }
     }
+
+    @Override
+    public void markForUpdate(Render render,
+                              int attributes) {
+        if (variableStars) {
+            GaiaSky.postRunnable(() -> EventManager.publish(Event.GPU_UPDATE_VARIABLE_GROUP, render, attributes));
+        } else {
+            GaiaSky.postRunnable(() -> EventManager.publish(Event.GPU_UPDATE_STAR_GROUP, render, attributes));
+        }
+    }
 }
@@ -8,13 +8,16 @@
 package gaiasky.scene.entity;
 
 import com.badlogic.ashley.core.Entity;
+import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.PerspectiveCamera;
 import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
 import gaiasky.GaiaSky;
 import gaiasky.scene.Mapper;
 import gaiasky.scene.api.IParticleRecord;
 import gaiasky.scene.camera.NaturalCamera;
+import gaiasky.scene.component.ParticleSet;
 import gaiasky.scene.view.FilterView;
 import gaiasky.scene.view.FocusView;
 import gaiasky.util.Constants;
@@ -24,18 +27,29 @@ import gaiasky.util.Settings;
 import gaiasky.util.math.IntersectorDouble;
 import gaiasky.util.math.Vector3b;
 import gaiasky.util.math.Vector3d;
+import gaiasky.util.tree.ParticleBVH;
 import net.jafama.FastMath;
 
 import java.util.List;
 
 public class FocusHit {
+    /** Maximum ratio of the distance to the ray to the distance to the camera for ray hits. **/
+    private static final double RAY_HIT_ANGLE = 0.01;
+    /** Margin applied to the tolerances when selecting the candidate particles with the spatial index. **/
+    private static final double PICK_MARGIN = 2.0;
 
     private final Vector3 F31 = new Vector3();
+    private final Vector3 F32 = new Vector3();
+    private final Vector3 F33 = new Vector3();
     private final Vector3d D31 = new Vector3d();
     private final Vector3d D32 = new Vector3d();
     private final Vector3d D33 = new Vector3d();
+    private final Vector3d D34 = new Vector3d();
+    private final Vector3d D35 = new Vector3d();
     private final Vector3b B31 = new Vector3b();
     private final FilterView filter;
+    /** Candidate particles for the current hit test. **/
+    private final IntArray candidates = new IntArray();
 
     public FocusHit() {
         filter = new FilterView();
@@ -265,9 +279,30 @@ public class FocusHit {
         if (hitCondition(view)) {
             var entity = view.getEntity();
 
+            PerspectiveCamera perspectiveCamera;
+            if (Settings.settings.program.modeStereo.active) {
+                if (screenX < w / 2f) {
+                    perspectiveCamera = camera.getCameraStereoLeft();
+                } else {
+                    perspectiveCamera = camera.getCameraStereoRight();
+                }
+                perspectiveCamera.update();
+            } else {
+                perspectiveCamera = camera.camera;
+            }
+
+            float backBufferScale = (float) Settings.settings.graphics.backBufferScale;
+            float viewportHeight = perspectiveCamera.viewportHeight / backBufferScale;
+            float viewportWidth = perspectiveCamera.viewportWidth / backBufferScale;
+
+            // Only test the particles close to the click, if the spatial index is ready.
+            IntArray candidates = coordinateCandidates(set, entity, screenX, screenY, pixelDist, camera, perspectiveCamera, viewportWidth, viewportHeight);
+            int numCandidates = candidates != null ? candidates.size : n;
+
             filter.setEntity(entity);
             Array<Pair<Integer, Double>> temporalHits = new Array<>();
-            for (int i = 0; i < n; i++) {
+            for (int k = 0; k < numCandidates; k++) {
+                int i = candidates != null ? candidates.get(k) : k;
                 if (filter.filter(i)) {
                     IParticleRecord pb = pointData.get(i);
                     Vector3 posFloat = F31;
@@ -289,22 +324,6 @@ public class FocusHit {
                             continue;
                         }
 
-                        PerspectiveCamera perspectiveCamera;
-                        if (Settings.settings.program.modeStereo.active) {
-                            if (screenX < w / 2f) {
-                                perspectiveCamera = camera.getCameraStereoLeft();
-                            } else {
-                                perspectiveCamera = camera.getCameraStereoRight();
-                            }
-                            perspectiveCamera.update();
-                        } else {
-                            perspectiveCamera = camera.camera;
-                        }
-
-                        float backBufferScale = (float) Settings.settings.graphics.backBufferScale;
-                        float viewportHeight = perspectiveCamera.viewportHeight / backBufferScale;
-                        float viewportWidth = perspectiveCamera.viewportWidth / backBufferScale;
-
                         angle = (float) FastMath.toDegrees(angle * camera.fovFactor) * (40f / perspectiveCamera.fieldOfView);
                         double pixelSize = FastMath.max(pixelDist, ((angle * viewportHeight) / perspectiveCamera.fieldOfView) / 2);
                         perspectiveCamera.project(posFloat);
@@ -343,6 +362,101 @@ public class FocusHit {
         set.updateFocusDataPos();
     }
 
+    /**
+     * Gets the particles of the set that may be hit by a click at the given screen coordinates, using the spatial index
+     * of the set. The ray through the click is computed by inverting the projection used in
+     * {@link #addHitCoordinateParticleSet(FocusView, int, int, int, int, int, NaturalCamera, Array)}, and the angular
+     * tolerance is derived from the size of a pixel around the click, with a safety margin.
+     *
+     * @return The indices of the candidate particles, or null if all particles must be tested.
+     */
+    private IntArray coordinateCandidates(ParticleSet set,
+                                          Entity entity,
+                                          int screenX,
+                                          int screenY,
+                                          int pixelDist,
+                                          NaturalCamera camera,
+                                          PerspectiveCamera perspectiveCamera,
+                                          float viewportWidth,
+                                          float viewportHeight) {
+        var bvh = spatialIndex(set, entity);
+        if (bvh == null) {
+            return null;
+        }
+        // Click position in projected coordinates.
+        boolean stereo = Settings.settings.program.modeStereo.active;
+        float px = (screenX % viewportWidth) * (stereo ? 2f : 1f);
+        float py = viewportHeight - screenY;
+        Vector3d dir = pickDirection(perspectiveCamera, px, py, D32);
+        // Angle subtended by one unit of click distance around the click, in both axes.
+        double pixelAngle = FastMath.toRadians(FastMath.max(dir.angle(pickDirection(perspectiveCamera, px + (stereo ? 2f : 1f), py, D33)),
+                dir.angle(pickDirection(perspectiveCamera, px, py + 1f, D33))));
+        if (!Double.isFinite(pixelAngle) || pixelAngle <= 0 || dir.hasNaN()) {
+            return null;
+        }
+        // Pixels per unit of radius/distance, as in the hit test.
+        double pixelsPerSize = FastMath.toDegrees(1) * (40f / perspectiveCamera.fieldOfView) * viewportHeight / perspectiveCamera.fieldOfView / 2;
+        double tanAngle = FastMath.tan(FastMath.min(PICK_MARGIN * pixelAngle * pixelDist, 1.5));
+        double sizeFactor = PICK_MARGIN * pixelAngle * pixelsPerSize;
+
+        Vector3d cam = camera.getPos().put(D34);
+        candidates.clear();
+        bvh.query(cam, dir, cam, tanAngle, sizeFactor, true, set.getDeltaYears(), candidates::add);
+        return candidates;
+    }
+
+    /**
+     * Gets the candidate particles of the set for a ray between the given points, relative to the camera. See
+     * {@link #addHitRayParticleSet(FocusView, Vector3d, Vector3d, NaturalCamera, Array)}.
+     *
+     * @return The indices of the candidate particles, or null if all particles must be tested.
+     */
+    private IntArray rayCandidates(ParticleSet set,
+                                   Entity entity,
+                                   Vector3d p0,
+                                   Vector3d p1) {
+        var bvh = spatialIndex(set, entity);
+        if (bvh == null || set.cPosD == null || set.cPosD.hasNaN()) {
+            return null;
+        }
+        Vector3d origin = set.cPosD.put(D34);
+        Vector3d point = D35.set(p0).add(origin);
+        Vector3d dir = D32.set(p1).sub(p0).nor();
+        if (dir.hasNaN()) {
+            return null;
+        }
+        candidates.clear();
+        bvh.query(point, dir, origin, PICK_MARGIN * RAY_HIT_ANGLE, 0, false, set.getDeltaYears(), candidates::add);
+        return candidates;
+    }
+
+    /**
+     * Gets the spatial index of the given set, if it can be used. Positions of sets with affine transformations are
+     * not in the frame of the index.
+     */
+    private ParticleBVH spatialIndex(ParticleSet set,
+                                     Entity entity) {
+        var affine = Mapper.affine.get(entity);
+        if (affine != null && !affine.isEmpty()) {
+            return null;
+        }
+        return set.getSpatialIndex();
+    }
+
+    /**
+     * Computes the direction of the ray through the given projected coordinates of the camera.
+     */
+    private Vector3d pickDirection(PerspectiveCamera perspectiveCamera,
+                                   float px,
+                                   float py,
+                                   Vector3d out) {
+        float nx = 2f * px / Gdx.graphics.getWidth() - 1f;
+        float ny = 2f * py / Gdx.graphics.getHeight() - 1f;
+        Vector3 near = F32.set(nx, ny, -1f).prj(perspectiveCamera.invProjectionView);
+        Vector3 mid = F33.set(nx, ny, 0f).prj(perspectiveCamera.invProjectionView);
+        return out.set(mid.x - near.x, mid.y - near.y, mid.z - near.z).nor();
+    }
+
     public void addHitRayParticleSet(FocusView view,
                                      Vector3d p0,
                                      Vector3d p1,
@@ -355,9 +469,14 @@ public class FocusHit {
             var entity = view.getEntity();
 
             Vector3d beamDir = new Vector3d();
+            // Only test the particles close to the ray, if the spatial index is ready.
+            IntArray candidates = rayCandidates(set, entity, p0, p1);
+            int numCandidates = candidates != null ? candidates.size : n;
+
             filter.setEntity(entity);
             Array<Pair<Integer, Double>> temporalHits = new Array<>();
-            for (int i = 0; i < n; i++) {
+            for (int k = 0; k < numCandidates; k++) {
+                int i = candidates != null ? candidates.get(k) : k;
                 if (filter.filter(i)) {
                     IParticleRecord pb = pointData.get(i);
                     Vector3d posd = set.fetchPositionDouble(pb, set.cPosD, D31, set.getDeltaYears());
@@ -371,7 +490,7 @@ public class FocusHit {
                         double distToLine = IntersectorDouble.distanceLinePoint(p0, p1, posd.put(D31));
                         double value = distToLine / dist;
 
-                        if (value < 0.01) {
+                        if (value < RAY_HIT_ANGLE) {
                             temporalHits.add(new Pair<>(i, angle));
                         }
                     }
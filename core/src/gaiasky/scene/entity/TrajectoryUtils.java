@@ -53,8 +53,8 @@ public class TrajectoryUtils {
         PointCloudData pointCloudData = verts.pointCloudData;
         if (pointCloudData != null) {
             if (pointCloudData.hasTime()) {
-                trajectory.orbitStartMs = pointCloudData.getDate(0).toEpochMilli();
-                trajectory.orbitEndMs = pointCloudData.getDate(pointCloudData.getNumPoints() - 1).toEpochMilli();
+                trajectory.orbitStartMs = pointCloudData.getTimeMs(0);
+                trajectory.orbitEndMs = pointCloudData.getTimeMs(pointCloudData.getNumPoints() - 1);
             }
         }
         updateSize(body, trajectory, verts);
@@ -8,7 +8,6 @@
 package gaiasky.scene.record;
 
 import com.badlogic.gdx.files.FileHandle;
-import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.Pixmap;
 import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.glutils.FileTextureData;
@@ -19,7 +18,15 @@ import gaiasky.scene.record.BilinearInterpolator.GridModel;
 import gaiasky.util.GlobalResources;
 import gaiasky.util.SysUtils;
 
+/**
+ * Height data backed by a whole height map pixmap. The pixmap is converted to float heights lazily, in square tiles
+ * kept in a small {@link HeightTileCache}, so queries do not allocate or go through {@link Pixmap#getPixel(int, int)}.
+ */
 public class HeightDataPixmap implements IHeightData {
+    /** Side of the height tiles, in pixels. **/
+    private static final int TILE_SIZE = 256;
+    /** Number of height tiles kept in memory. **/
+    private static final int HEIGHT_TILES = 16;
 
     private final Pixmap heightPixmap;
     private GridModel model;
@@ -59,27 +66,9 @@ public class HeightDataPixmap implements IHeightData {
         }
     }
 
-    private void initModel(){
-        this.model = new GridModel() {
-            private final Color color = new Color();
-            @Override
-            public int getWidth() {
-                assert heightPixmap != null;
-                return heightPixmap.getWidth();
-            }
-
-            @Override
-            public int getHeight() {
-                assert heightPixmap != null;
-                return heightPixmap.getHeight();
-            }
-
-            @Override
-            public double getValue(int x, int y) {
-                assert heightPixmap != null;
-                return color.set(heightPixmap.getPixel(x, y)).r;
-            }
-        };
+    private void initModel() {
+        assert heightPixmap != null;
+        this.model = new TiledGridModel(heightPixmap);
     }
 
     @Override
@@ -90,4 +79,46 @@ public class HeightDataPixmap implements IHeightData {
 
         return BilinearInterpolator.interpolate(u, v, model, true, false);
     }
+
+    /**
+     * Grid model that reads the heights of the pixmap from float tiles, decoding them on demand.
+     */
+    private static class TiledGridModel implements GridModel {
+        private final Pixmap pixmap;
+        private final HeightTileCache tiles;
+        private final int width, height;
+        private final int tilesX;
+
+        TiledGridModel(Pixmap pixmap) {
+            this.pixmap = pixmap;
+            this.width = pixmap.getWidth();
+            this.height = pixmap.getHeight();
+            this.tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+            this.tiles = new HeightTileCache(HEIGHT_TILES);
+        }
+
+        @Override
+        public int getWidth() {
+            return width;
+        }
+
+        @Override
+        public int getHeight() {
+            return height;
+        }
+
+        @Override
+        public double getValue(int x, int y) {
+            final int tx = x / TILE_SIZE;
+            final int ty = y / TILE_SIZE;
+            final long key = (long) ty * tilesX + tx;
+            var tile = tiles.get(key);
+            if (tile == null) {
+                final int x0 = tx * TILE_SIZE;
+                final int y0 = ty * TILE_SIZE;
+                tile = tiles.put(key, pixmap, x0, y0, Math.min(TILE_SIZE, width - x0), Math.min(TILE_SIZE, height - y0));
+            }
+            return tile.getValue(x - tx * TILE_SIZE, y - ty * TILE_SIZE);
+        }
+    }
 }
@@ -8,74 +8,99 @@
 package gaiasky.scene.record;
 
 import com.badlogic.gdx.assets.AssetManager;
-import com.badlogic.gdx.graphics.Color;
-import com.badlogic.gdx.graphics.Pixmap;
-import gaiasky.scene.record.BilinearInterpolator.GridModel;
+import gaiasky.scene.record.HeightTileCache.Tile;
+import gaiasky.util.GaiaSkyAssets;
 import gaiasky.util.svt.SVTQuadtree;
+import gaiasky.util.svt.SVTQuadtreeNode;
+import gaiasky.util.svt.SVTTileCache;
 import net.jafama.FastMath;
 
 import java.nio.file.Path;
 
+/**
+ * Height data backed by an SVT. Heights are sampled from the deepest tile available at each position, taken from
+ * the cache of decoded SVT tiles. Tiles are converted to float heights once, and kept in a small
+ * {@link HeightTileCache}. Queries do not allocate, and must be done from the main thread.
+ */
 public class HeightDataSVT implements IHeightData {
+    /** Number of height tiles kept in memory. **/
+    private static final int HEIGHT_TILES = 16;
 
     private final SVTQuadtree<Path> svt;
     private final AssetManager manager;
-    private final PixmapGridModel model;
+    private final HeightTileCache heightTiles;
+    private SVTTileCache tileCache;
+
+    // Last tile hit, and generation of the tile cache at that time.
+    private SVTQuadtreeNode<Path> lastTile;
+    private Tile lastHeights;
+    private long lastGeneration = -1;
+
+    // Auxiliary arrays.
+    private final int[] colRow = new int[2];
+    private final double[] tileUV = new double[2];
 
     public HeightDataSVT(SVTQuadtree<Path> svt, AssetManager manager) {
         this.svt = svt;
         this.manager = manager;
-        this.model = new PixmapGridModel();
+        this.heightTiles = new HeightTileCache(HEIGHT_TILES);
     }
 
     @Override
     public double getNormalizedHeight(double u, double v) {
-        if (svt != null) {
-            v = 1.0 - v;
-            for (int level = svt.depth; level >= 0; level--) {
-                int[] cr = svt.getColRow(level, u, v);
-                if (svt.contains(level, cr[0], cr[1])) {
-                    // Hit! Query this, if loaded!
-                    var tile = svt.getTile(level, cr[0], cr[1]);
-                    if (manager.contains(tile.object.toString())) {
-                        Pixmap pm = manager.get(tile.object.toString());
-                        double[] tileUV = tile.getUV();
-                        double tilesPerLevel = FastMath.pow(2.0, level);
-                        double tileU = (u - tileUV[0]) * tilesPerLevel * svt.root.length;
-                        double tileV = (v - tileUV[1]) * tilesPerLevel;
-                        model.setPixmap(pm);
-                        return BilinearInterpolator.interpolate(tileU, tileV, model, false, false);
+        if (svt == null) {
+            return 0;
+        }
+        v = 1.0 - v;
+        final var source = getTileCache();
+        final long generation = source != null ? source.getGeneration() : -1;
+
+        // The last tile is still the best one if it covers the point, and no deeper tiles have been decoded since.
+        if (lastTile != null && (lastTile.level == svt.depth || generation == lastGeneration)) {
+            svt.getColRow(lastTile.level, u, v, colRow);
+            if (colRow[0] == lastTile.col && colRow[1] == lastTile.row) {
+                return sample(lastTile, lastHeights, u, v);
+            }
+        }
+
+        for (int level = svt.depth; level >= 0; level--) {
+            svt.getColRow(level, u, v, colRow);
+            var tile = svt.getTile(level, colRow[0], colRow[1]);
+            if (tile != null) {
+                // Hit! Query this, if loaded!
+                var heights = heightTiles.get(tile.getKey());
+                if (heights == null && source != null) {
+                    var pixmap = source.get(tile.object.toString());
+                    if (pixmap != null) {
+                        heights = heightTiles.put(tile.getKey(), pixmap, 0, 0, pixmap.getWidth(), pixmap.getHeight());
                     }
                 }
+                if (heights != null) {
+                    lastTile = tile;
+                    lastHeights = heights;
+                    lastGeneration = generation;
+                    return sample(tile, heights, u, v);
+                }
             }
         }
         return 0;
     }
 
-    private static class PixmapGridModel implements GridModel {
-        private Pixmap pixmap;
-        private final Color color;
-
-        public PixmapGridModel() {
-            this.color = new Color();
-        }
-
-        public void setPixmap(Pixmap pixmap) {
-            this.pixmap = pixmap;
-        }
-        @Override
-        public int getWidth() {
-            return pixmap.getWidth();
-        }
-
-        @Override
-        public int getHeight() {
-            return pixmap.getHeight();
-        }
+    private double sample(SVTQuadtreeNode<Path> tile, Tile heights, double u, double v) {
+        svt.getUV(tile.level, tile.col, tile.row, tileUV);
+        double tilesPerLevel = FastMath.pow(2.0, tile.level);
+        double tileU = (u - tileUV[0]) * tilesPerLevel * svt.root.length;
+        double tileV = (v - tileUV[1]) * tilesPerLevel;
+        return BilinearInterpolator.interpolate(tileU, tileV, heights, false, false);
+    }
 
-        @Override
-        public double getValue(int x, int y) {
-            return color.set(pixmap.getPixel(x, y)).r;
+    private SVTTileCache getTileCache() {
+        if (tileCache == null && manager != null && manager.isLoaded("gaiasky-assets")) {
+            var svtManager = manager.get("gaiasky-assets", GaiaSkyAssets.class).svtManager;
+            if (svtManager != null) {
+                tileCache = svtManager.getTileCache();
+            }
         }
+        return tileCache;
     }
 }
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2023 Gaia Sky - All rights reserved.
+ *  This file is part of Gaia Sky, which is released under the Mozilla Public License 2.0.
+ *  You may use, distribute and modify this code under the terms of MPL2.
+ *  See the file LICENSE.md in the project root for full license details.
+ */
+
+package gaiasky.scene.record;
+
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Pixmap.Format;
+import gaiasky.scene.record.BilinearInterpolator.GridModel;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Small least-recently-used cache of height tiles, stored as primitive float arrays with the normalized
+ * heights (the red channel of the source pixmap). Tiles are identified by a long key. The last tile hit is
+ * checked first, and the arrays of evicted tiles are reused, so lookups and insertions do not allocate
+ * once the cache is full. Not thread-safe.
+ */
+public class HeightTileCache {
+
+    private final Tile[] tiles;
+    private Tile last;
+    private long clock = 0;
+
+    /**
+     * Creates a new cache.
+     *
+     * @param capacity The maximum number of tiles.
+     */
+    public HeightTileCache(int capacity) {
+        tiles = new Tile[Math.max(1, capacity)];
+        for (int i = 0; i < tiles.length; i++) {
+            tiles[i] = new Tile();
+        }
+    }
+
+    /**
+     * Gets the tile with the given key, and marks it as the most recently used.
+     *
+     * @param key The key.
+     *
+     * @return The tile, or null if it is not in the cache.
+     */
+    public Tile get(long key) {
+        if (last != null && last.key == key) {
+            last.used = ++clock;
+            return last;
+        }
+        for (var tile : tiles) {
+            if (tile.data != null && tile.key == key) {
+                tile.used = ++clock;
+                last = tile;
+                return tile;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Decodes the given region of the pixmap into a new tile with the given key, evicting the least
+     * recently used tile if the cache is full.
+     *
+     * @param key    The key.
+     * @param pixmap The source pixmap. Heights are read from its red channel.
+     * @param x0     The first column of the region.
+     * @param y0     The first row of the region.
+     * @param width  The width of the region.
+     * @param height The height of the region.
+     *
+     * @return The new tile.
+     */
+    public Tile put(long key, Pixmap pixmap, int x0, int y0, int width, int height) {
+        Tile tile = tiles[0];
+        for (var candidate : tiles) {
+            if (candidate.data == null || candidate.key == key) {
+                tile = candidate;
+                break;
+            }
+            if (candidate.used < tile.used) {
+                tile = candidate;
+            }
+        }
+        final int n = width * height;
+        if (tile.data == null || tile.data.length < n) {
+            tile.data = new float[n];
+        }
+        tile.key = key;
+        tile.width = width;
+        tile.height = height;
+        tile.used = ++clock;
+        readHeights(pixmap, x0, y0, width, height, tile.data);
+        last = tile;
+        return tile;
+    }
+
+    /** Removes all tiles. **/
+    public void clear() {
+        for (var tile : tiles) {
+            tile.data = null;
+        }
+        last = null;
+    }
+
+    /**
+     * Reads the red channel of the given region of the pixmap, in [0,1], into the given array, row by row.
+     */
+    private static void readHeights(Pixmap pixmap, int x0, int y0, int width, int height, float[] out) {
+        final Format format = pixmap.getFormat();
+        final int bytesPerPixel = switch (format) {
+            case RGBA8888 -> 4;
+            case RGB888 -> 3;
+            case Intensity -> 1;
+            case LuminanceAlpha -> 2;
+            default -> 0;
+        };
+        final int w = pixmap.getWidth();
+        if (bytesPerPixel > 0) {
+            // The red (or luminance) byte comes first.
+            final ByteBuffer pixels = pixmap.getPixels();
+            for (int y = 0; y < height; y++) {
+                int p = ((y0 + y) * w + x0) * bytesPerPixel;
+                final int row = y * width;
+                for (int x = 0; x < width; x++) {
+                    out[row + x] = (pixels.get(p) & 0xff) / 255f;
+                    p += bytesPerPixel;
+                }
+            }
+        } else {
+            for (int y = 0; y < height; y++) {
+                final int row = y * width;
+                for (int x = 0; x < width; x++) {
+                    out[row + x] = ((pixmap.getPixel(x0 + x, y0 + y) >>> 24) & 0xff) / 255f;
+                }
+            }
+        }
+    }
+
+    /**
+     * A tile of heights.
+     */
+    public static class Tile implements GridModel {
+        private long key;
+        private int width, height;
+        private float[] data;
+        private long used;
+
+        public long getKey() {
+            return key;
+        }
+
+        @Override
+        public int getWidth() {
+            return width;
+        }
+
+        @Override
+        public int getHeight() {
+            return height;
+        }
+
+        @Override
+        public double getValue(int x, int y) {
+            return data[y * width + x];
+        }
+    }
+}
@@ -439,6 +439,20 @@ public class SceneRenderer implements ISceneRenderer, IObserver {
         return renderLists;
     }
 
+    @Override
+    public void mergeRenderLists(List<List<List<IRenderable>>> chunkLists, int numChunks) {
+        for (int chunk = 0; chunk < numChunks; chunk++) {
+            var lists = chunkLists.get(chunk);
+            for (int i = 0; i < lists.size(); i++) {
+                var l = lists.get(i);
+                if (!l.isEmpty()) {
+                    renderLists.get(i).addAll(l);
+                    l.clear();
+                }
+            }
+        }
+    }
+
     private void initRenderMode(ICamera camera) {
         if (Settings.settings.runtime.openXr) {
             // Using Steam OpenVR renderer
@@ -11,6 +11,7 @@ import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.GL30;
 import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes;
 import com.badlogic.gdx.graphics.VertexAttributes.Usage;
 import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.math.Vector3;
@@ -25,7 +26,12 @@ import gaiasky.render.system.InstancedRenderSystem;
 import gaiasky.scene.Mapper;
 import gaiasky.scene.api.IParticleRecord;
 import gaiasky.scene.camera.ICamera;
+import gaiasky.scene.component.Body;
+import gaiasky.scene.component.DatasetDescription;
+import gaiasky.scene.component.Highlight;
+import gaiasky.scene.component.ParticleSet;
 import gaiasky.scene.component.Render;
+import gaiasky.scene.entity.ParticleUtils;
 import gaiasky.scene.system.render.SceneRenderer;
 import gaiasky.util.Constants;
 import gaiasky.util.Logger;
@@ -35,7 +41,6 @@ import gaiasky.util.Settings.SceneSettings.StarSettings;
 import gaiasky.util.color.Colormap;
 import gaiasky.util.coord.AstroUtils;
 import gaiasky.util.gdx.shader.ExtShaderProgram;
-import gaiasky.util.math.StdRandom;
 import gaiasky.util.parse.Parser;
 import net.jafama.FastMath;
 
@@ -96,16 +101,14 @@ public class ParticleSetInstancedRenderer extends InstancedRenderSystem implemen
     }
 
     @Override
-    protected void offsets1(MeshData curr,
+    protected void offsets1(VertexAttributes attributes,
                             InstancedModel model) {
-        curr.colorOffset = curr.mesh.getInstancedAttribute(Usage.ColorPacked) != null ? curr.mesh.getInstancedAttribute(Usage.ColorPacked).offset / 4 : 0;
-        model.sizeOffset = curr.mesh.getInstancedAttribute(OwnUsage.Size) != null ? curr.mesh.getInstancedAttribute(OwnUsage.Size).offset / 4 : 0;
-        model.textureIndexOffset = curr.mesh.getInstancedAttribute(OwnUsage.TextureIndex) != null ? curr.mesh.getInstancedAttribute(OwnUsage.TextureIndex).offset / 4 : 0;
-        model.particlePosOffset =
-                curr.mesh.getInstancedAttribute(OwnUsage.ObjectPosition) != null ? curr.mesh.getInstancedAttribute(OwnUsage.ObjectPosition).offset / 4 : 0;
+        model.colorOffset = offset(attributes, Usage.ColorPacked);
+        model.sizeOffset = offset(attributes, OwnUsage.Size);
+        model.textureIndexOffset = offset(attributes, OwnUsage.TextureIndex);
+        model.particlePosOffset = offset(attributes, OwnUsage.ObjectPosition);
         if (extended) {
-            model.properMotionOffset =
-                    curr.mesh.getInstancedAttribute(OwnUsage.ProperMotion) != null ? curr.mesh.getInstancedAttribute(OwnUsage.ProperMotion).offset / 4 : 0;
+            model.properMotionOffset = offset(attributes, OwnUsage.ProperMotion);
         }
     }
 
@@ -131,156 +134,20 @@ public class ParticleSetInstancedRenderer extends InstancedRenderSystem implemen
 
 
         if (!set.disposed) {
-            boolean hlCmap = hl.isHighlighted() && !hl.isHlplain();
-            int n = set.pointData.size();
-            var model = getModel(set, getOffset(render));
             if (!inGpu(render)) {
-                int offset = addMeshData(model, model.numVertices, n, model.numIndices, set.modelFile, set.modelType, set.modelPrimitive);
-                setModel(offset, model);
-                setOffset(render, offset);
-                curr = meshes.get(offset);
-                model.ensureInstanceAttribsSize(n * curr.instanceSize);
-
-                float[] c = utils.getColor(body, hl);
-                float[] colorMin = set.getColorMin();
-                float[] colorMax = set.getColorMax();
-                double minDistance = set.getMinDistance();
-                double maxDistance = set.getMaxDistance();
-
-                int numParticlesAdded = 0;
-                for (int i = 0; i < n; i++) {
-                    if (utils.filter(i, set, desc) && set.isVisible(i)) {
-                        IParticleRecord particle = set.get(i);
-                        double[] p = particle.rawDoubleData();
-
-                        // SIZE
-                        if (extended && particle.hasSize()) {
-                            model.instanceAttributes[curr.instanceIdx + model.sizeOffset] = particle.size();
-                        } else {
-                            model.instanceAttributes[curr.instanceIdx + model.sizeOffset] = (body.size + (float) (rand.nextGaussian() * body.size / 5.0));
-                        }
-
-                        // TEXTURE INDEX
-                        float textureIndex = -1.0f;
-                        if (set.textureArray != null && !set.isWireframe()) {
-                            int nTextures = set.textureArray.getDepth();
-                            if (set.textureAttribute != null && particle.hasExtra(set.textureAttribute)) {
-                                var value = particle.getExtra(set.textureAttribute);
-                                if (value instanceof Number num) {
-                                    textureIndex = MathUtils.clamp(num.intValue() - 1, 0, nTextures - 1);
-                                } else if(value instanceof String str) {
-                                    // Try to parse it as integer, otherwise, use hash code.
-                                    try {
-                                        textureIndex = MathUtils.clamp((int) Parser.parseDoubleException(str) -1, 0, nTextures -1);
-                                    } catch (NumberFormatException ignored) {
-                                        textureIndex = value.hashCode() % nTextures;
-                                    }
-                                } else {
-                                   // Any other type, use hash code.
-                                    textureIndex = value.hashCode() % nTextures;
-                                }
-                            } else {
-                                // Random index.
-                                textureIndex = (float) rand.nextInt(nTextures);
-                            }
-                        }
-                        model.instanceAttributes[curr.instanceIdx + model.textureIndexOffset] = textureIndex;
-
-                        // COLOR
-                        if (hl.isHighlighted()) {
-                            if (hlCmap) {
-                                // Color map.
-                                double[] color = cmap.colormap(hl.getHlcmi(), hl.getHlcma().getNumber(particle), hl.getHlcmmin(), hl.getHlcmmax());
-                                model.instanceAttributes[curr.instanceIdx + curr.colorOffset] = Color.toFloatBits((float) color[0], (float) color[1], (float) color[2],
-                                        hl.getHlcmAlpha());
-                            } else {
-                                // Plain highlight color.
-                                model.instanceAttributes[curr.instanceIdx + curr.colorOffset] = Color.toFloatBits(c[0], c[1], c[2], c[3]);
-                            }
-                        } else {
-                            if (extended && particle.hasColor() && Float.isFinite(particle.col())) {
-                                // Use particle color.
-                                model.instanceAttributes[curr.instanceIdx + curr.colorOffset] = particle.col();
-                            } else {
-                                // Generate color.
-                                if(set.colorFromTexture && set.textureArray != null && textureIndex >= 0f) {
-                                    // Generate color using texture index, so particles with the same index get the
-                                    // same color.
-                                    float r = 0, g = 0, b = 0;
-                                    if (set.colorNoise != 0) {
-                                        StdRandom.setSeed((long) textureIndex);
-                                        r = (float) ((StdRandom.uniform() - 0.5) * 2.0 * set.colorNoise);
-                                        g = (float) ((StdRandom.uniform() - 0.5) * 2.0 * set.colorNoise);
-                                        b = (float) ((StdRandom.uniform() - 0.5) * 2.0 * set.colorNoise);
-                                    }
-                                    model.instanceAttributes[curr.instanceIdx + curr.colorOffset] = Color.toFloatBits(MathUtils.clamp(c[0] + r, 0, 1),
-                                            MathUtils.clamp(c[1] + g, 0, 1),
-                                            MathUtils.clamp(c[2] + b, 0, 1),
-                                            MathUtils.clamp(c[3], 0, 1));
-
-                                } else {
-                                    if (colorMin != null && colorMax != null) {
-                                        double dist = FastMath.sqrt(p[0] * p[0] + p[1] * p[1] + p[2] * p[2]);
-                                        // fac = 0 -> colorMin,  fac = 1 -> colorMax
-                                        double fac = (dist - minDistance) / (maxDistance - minDistance);
-                                        interpolateColor(colorMin, colorMax, c, fac);
-                                    }
-                                    float r = 0, g = 0, b = 0;
-                                    if (set.colorNoise != 0) {
-                                        r = (float) ((StdRandom.uniform() - 0.5) * 2.0 * set.colorNoise);
-                                        g = (float) ((StdRandom.uniform() - 0.5) * 2.0 * set.colorNoise);
-                                        b = (float) ((StdRandom.uniform() - 0.5) * 2.0 * set.colorNoise);
-                                    }
-                                    model.instanceAttributes[curr.instanceIdx + curr.colorOffset] = Color.toFloatBits(MathUtils.clamp(c[0] + r, 0, 1),
-                                            MathUtils.clamp(c[1] + g, 0, 1),
-                                            MathUtils.clamp(c[2] + b, 0, 1),
-                                            MathUtils.clamp(c[3], 0, 1));
-                                }
-                            }
-                        }
-
-                        // PARTICLE POSITION
-                        model.instanceAttributes[curr.instanceIdx + model.particlePosOffset] = (float) p[0];
-                        model.instanceAttributes[curr.instanceIdx + model.particlePosOffset + 1] = (float) p[1];
-                        model.instanceAttributes[curr.instanceIdx + model.particlePosOffset + 2] = (float) p[2];
-
-                        if (extended) {
-                            // PROPER MOTION
-                            if (particle.hasProperMotion()) {
-                                model.instanceAttributes[curr.instanceIdx + model.properMotionOffset] = (float) particle.pmx();
-                                model.instanceAttributes[curr.instanceIdx + model.properMotionOffset + 1] = (float) particle.pmy();
-                                model.instanceAttributes[curr.instanceIdx + model.properMotionOffset + 2] = (float) particle.pmz();
-                            } else {
-                                model.instanceAttributes[curr.instanceIdx + model.properMotionOffset] = 0f;
-                                model.instanceAttributes[curr.instanceIdx + model.properMotionOffset + 1] = 0f;
-                                model.instanceAttributes[curr.instanceIdx + model.properMotionOffset + 2] = 0f;
-                            }
-                        }
-
-                        curr.instanceIdx += curr.instanceSize;
-                        curr.numVertices++;
-                        numParticlesAdded++;
-                    }
-                }
-                // Global (divisor=0) vertices (position, uv?) plus optional indices
-                curr.mesh.setVertices(model.vertices, 0, model.numVertices * model.modelVertexSize);
-                if (model.numIndices > 0) {
-                    curr.mesh.setIndices(model.indices, 0, model.numIndices);
+                final long seed = rand.nextLong();
+                var packed = getPackedInstances(render, set, (model) -> pack(model, set, body, hl, desc, seed));
+                if (packed != null) {
+                    uploadPackedInstances(render, set, packed, true);
+                    packed.model.instanceAttributes = null;
                 }
-                // Per instance (divisor=1) vertices
-                int count = numParticlesAdded * curr.instanceSize;
-                setCount(render, numParticlesAdded);
-                curr.mesh.setInstanceAttribs(model.instanceAttributes, 0, count);
-                model.instanceAttributes = null;
-
-                setInGpu(render, true);
             }
 
             /*
              * RENDER
              */
             int offset = getOffset(render);
-            curr = meshes.get(offset);
+            curr = offset >= 0 ? meshes.get(offset) : null;
             if (curr != null) {
                 // Only quads are textured.
                 if (set.textureArray != null && !set.isWireframe()) {
@@ -315,7 +182,7 @@ public class ParticleSetInstancedRenderer extends InstancedRenderSystem implemen
                     Gdx.gl30.glEnable(GL30.GL_CULL_FACE);
                     Gdx.gl30.glCullFace(GL30.GL_BACK);
                     int count = curr.mesh.getNumIndices() > 0 ? curr.mesh.getNumIndices() : curr.mesh.getNumVertices();
-                    curr.mesh.render(shaderProgram, set.modelPrimitive, 0, count, getCount(render));
+                    curr.mesh.render(shaderProgram, set.modelPrimitive, 0, count, getResidentCount(render));
                     Gdx.gl30.glDisable(GL30.GL_CULL_FACE);
                 } catch (IllegalArgumentException e) {
                     logger.error(e, "Render exception");
@@ -326,6 +193,149 @@ public class ParticleSetInstancedRenderer extends InstancedRenderSystem implemen
         }
     }
 
+    /**
+     * Packs the instance attributes of the given particle set. Runs on a worker thread.
+     */
+    private PackedInstances pack(InstancedModel model,
+                                 ParticleSet set,
+                                 Body body,
+                                 Highlight hl,
+                                 DatasetDescription desc,
+                                 long seed) {
+        final var utils = new ParticleUtils();
+        final var rand = new Random(seed);
+        final var textureRand = new Random();
+        final boolean hlCmap = hl.isHighlighted() && !hl.isHlplain();
+        final int n = set.pointData.size();
+        final int instanceSize = model.instanceSize;
+        model.ensureInstanceAttribsSize(n * instanceSize);
+        final float[] attributes = model.instanceAttributes;
+        int instanceIdx = 0;
+
+        // Work on a copy, the color is modified below.
+        float[] c = utils.getColor(body, hl).clone();
+        float[] colorMin = set.getColorMin();
+        float[] colorMax = set.getColorMax();
+        double minDistance = set.getMinDistance();
+        double maxDistance = set.getMaxDistance();
+
+        int numParticlesAdded = 0;
+        for (int i = 0; i < n; i++) {
+            if (utils.filter(i, set, desc) && set.isVisible(i)) {
+                IParticleRecord particle = set.get(i);
+                double[] p = particle.rawDoubleData();
+
+                // SIZE
+                if (extended && particle.hasSize()) {
+                    attributes[instanceIdx + model.sizeOffset] = particle.size();
+                } else {
+                    attributes[instanceIdx + model.sizeOffset] = (body.size + (float) (rand.nextGaussian() * body.size / 5.0));
+                }
+
+                // TEXTURE INDEX
+                float textureIndex = -1.0f;
+                if (set.textureArray != null && !set.isWireframe()) {
+                    int nTextures = set.textureArray.getDepth();
+                    if (set.textureAttribute != null && particle.hasExtra(set.textureAttribute)) {
+                        var value = particle.getExtra(set.textureAttribute);
+                        if (value instanceof Number num) {
+                            textureIndex = MathUtils.clamp(num.intValue() - 1, 0, nTextures - 1);
+                        } else if(value instanceof String str) {
+                            // Try to parse it as integer, otherwise, use hash code.
+                            try {
+                                textureIndex = MathUtils.clamp((int) Parser.parseDoubleException(str) -1, 0, nTextures -1);
+                            } catch (NumberFormatException ignored) {
+                                textureIndex = value.hashCode() % nTextures;
+                            }
+                        } else {
+                           // Any other type, use hash code.
+                            textureIndex = value.hashCode() % nTextures;
+                        }
+                    } else {
+                        // Random index.
+                        textureIndex = (float) rand.nextInt(nTextures);
+                    }
+                }
+                attributes[instanceIdx + model.textureIndexOffset] = textureIndex;
+
+                // COLOR
+                if (hl.isHighlighted()) {
+                    if (hlCmap) {
+                        // Color map.
+                        double[] color = cmap.colormap(hl.getHlcmi(), hl.getHlcma().getNumber(particle), hl.getHlcmmin(), hl.getHlcmmax());
+                        attributes[instanceIdx + model.colorOffset] = Color.toFloatBits((float) color[0], (float) color[1], (float) color[2],
+                                hl.getHlcmAlpha());
+                    } else {
+                        // Plain highlight color.
+                        attributes[instanceIdx + model.colorOffset] = Color.toFloatBits(c[0], c[1], c[2], c[3]);
+                    }
+                } else {
+                    if (extended && particle.hasColor() && Float.isFinite(particle.col())) {
+                        // Use particle color.
+                        attributes[instanceIdx + model.colorOffset] = particle.col();
+                    } else {
+                        // Generate color.
+                        if(set.colorFromTexture && set.textureArray != null && textureIndex >= 0f) {
+                            // Generate color using texture index, so particles with the same index get the
+                            // same color.
+                            float r = 0, g = 0, b = 0;
+                            if (set.colorNoise != 0) {
+                                textureRand.setSeed((long) textureIndex);
+                                r = (float) ((textureRand.nextDouble() - 0.5) * 2.0 * set.colorNoise);
+                                g = (float) ((textureRand.nextDouble() - 0.5) * 2.0 * set.colorNoise);
+                                b = (float) ((textureRand.nextDouble() - 0.5) * 2.0 * set.colorNoise);
+                            }
+                            attributes[instanceIdx + model.colorOffset] = Color.toFloatBits(MathUtils.clamp(c[0] + r, 0, 1),
+                                    MathUtils.clamp(c[1] + g, 0, 1),
+                                    MathUtils.clamp(c[2] + b, 0, 1),
+                                    MathUtils.clamp(c[3], 0, 1));
+
+                        } else {
+                            if (colorMin != null && colorMax != null) {
+                                double dist = FastMath.sqrt(p[0] * p[0] + p[1] * p[1] + p[2] * p[2]);
+                                // fac = 0 -> colorMin,  fac = 1 -> colorMax
+                                double fac = (dist - minDistance) / (maxDistance - minDistance);
+                                interpolateColor(colorMin, colorMax, c, fac);
+                            }
+                            float r = 0, g = 0, b = 0;
+                            if (set.colorNoise != 0) {
+                                r = (float) ((rand.nextDouble() - 0.5) * 2.0 * set.colorNoise);
+                                g = (float) ((rand.nextDouble() - 0.5) * 2.0 * set.colorNoise);
+                                b = (float) ((rand.nextDouble() - 0.5) * 2.0 * set.colorNoise);
+                            }
+                            attributes[instanceIdx + model.colorOffset] = Color.toFloatBits(MathUtils.clamp(c[0] + r, 0, 1),
+                                    MathUtils.clamp(c[1] + g, 0, 1),
+                                    MathUtils.clamp(c[2] + b, 0, 1),
+                                    MathUtils.clamp(c[3], 0, 1));
+                        }
+                    }
+                }
+
+                // PARTICLE POSITION
+                attributes[instanceIdx + model.particlePosOffset] = (float) p[0];
+                attributes[instanceIdx + model.particlePosOffset + 1] = (float) p[1];
+                attributes[instanceIdx + model.particlePosOffset + 2] = (float) p[2];
+
+                if (extended) {
+                    // PROPER MOTION
+                    if (particle.hasProperMotion()) {
+                        attributes[instanceIdx + model.properMotionOffset] = (float) particle.pmx();
+                        attributes[instanceIdx + model.properMotionOffset + 1] = (float) particle.pmy();
+                        attributes[instanceIdx + model.properMotionOffset + 2] = (float) particle.pmz();
+                    } else {
+                        attributes[instanceIdx + model.properMotionOffset] = 0f;
+                        attributes[instanceIdx + model.properMotionOffset + 1] = 0f;
+                        attributes[instanceIdx + model.properMotionOffset + 2] = 0f;
+                    }
+                }
+
+                instanceIdx += instanceSize;
+                numParticlesAdded++;
+            }
+        }
+        return new PackedInstances(model, attributes, numParticlesAdded);
+    }
+
     private void interpolateColor(float[] c0,
                                   float[] c1,
                                   float[] result,
@@ -352,14 +362,14 @@ public class ParticleSetInstancedRenderer extends InstancedRenderSystem implemen
                        Object source,
                        final Object... data) {
         if (event == Event.GPU_DISPOSE_PARTICLE_GROUP) {
-            IRenderable renderable = (IRenderable) source;
-            int offset = getOffset(renderable);
-            if (offset >= 0) {
-                clearMeshData(offset);
-                models.set(offset, null);
+            var render = (Render) source;
+            var set = Mapper.particleSet.get(render.entity);
+            if (set == null || set.disposed) {
+                disposeInstances(render);
+            } else {
+                // Keep rendering the current mesh until the new data is packed and uploaded.
+                invalidateInstances(render);
             }
-            if (inGpu != null)
-                inGpu.remove(renderable);
         }
     }
 
@@ -116,7 +116,7 @@ public class ParticleSetPointRenderer extends PointCloudRenderer implements IObs
                 double minDistance = set.getMinDistance();
                 double maxDistance = set.getMaxDistance();
 
-                ensureTempVertsSize(set.pointData.size() * curr.vertexSize);
+                final float[] verts = new float[set.pointData.size() * curr.vertexSize];
                 int n = set.pointData.size();
                 int numAdded = 0;
                 for (int i = 0; i < n; i++) {
@@ -125,7 +125,7 @@ public class ParticleSetPointRenderer extends PointCloudRenderer implements IObs
                         double[] p = pb.rawDoubleData();
 
                         // SIZE, CMAP_VALUE
-                        tempVerts[curr.vertexIdx + additionalOffset] =
+                        verts[curr.vertexIdx + additionalOffset] =
                                 (body.size + (float) (rand.nextGaussian() * body.size / 5d)) * sizeFactor * (float) Constants.DISTANCE_SCALE_FACTOR;
 
                         // TEXTURE INDEX
@@ -152,17 +152,17 @@ public class ParticleSetPointRenderer extends PointCloudRenderer implements IObs
                                 textureIndex = (float) rand.nextInt(nTextures);
                             }
                         }
-                        tempVerts[curr.vertexIdx + textureIndexOffset] = textureIndex;
+                        verts[curr.vertexIdx + textureIndexOffset] = textureIndex;
 
                         // COLOR
                         if (hl.isHighlighted()) {
                             if (hlCmap) {
                                 // Color map
                                 double[] color = cmap.colormap(hl.getHlcmi(), hl.getHlcma().getNumber(pb), hl.getHlcmmin(), hl.getHlcmmax());
-                                tempVerts[curr.vertexIdx + curr.colorOffset] = Color.toFloatBits((float) color[0], (float) color[1], (float) color[2], hl.getHlcmAlpha());
+                                verts[curr.vertexIdx + curr.colorOffset] = Color.toFloatBits((float) color[0], (float) color[1], (float) color[2], hl.getHlcmAlpha());
                             } else {
                                 // Plain
-                                tempVerts[curr.vertexIdx + curr.colorOffset] = Color.toFloatBits(c[0], c[1], c[2], c[3]);
+                                verts[curr.vertexIdx + curr.colorOffset] = Color.toFloatBits(c[0], c[1], c[2], c[3]);
                             }
                         } else {
                             // Generate color.
@@ -176,7 +176,7 @@ public class ParticleSetPointRenderer extends PointCloudRenderer implements IObs
                                     g = (float) ((StdRandom.uniform() - 0.5) * 2.0 * set.colorNoise);
                                     b = (float) ((StdRandom.uniform() - 0.5) * 2.0 * set.colorNoise);
                                 }
-                                tempVerts[curr.vertexIdx + curr.colorOffset] = Color.toFloatBits(
+                                verts[curr.vertexIdx + curr.colorOffset] = Color.toFloatBits(
                                         MathUtils.clamp(c[0] + r, 0, 1),
                                         MathUtils.clamp(c[1] + g, 0, 1),
                                         MathUtils.clamp(c[2] + b, 0, 1),
@@ -195,24 +195,24 @@ public class ParticleSetPointRenderer extends PointCloudRenderer implements IObs
                                     g = (float) ((StdRandom.uniform() - 0.5) * 2.0 * set.colorNoise);
                                     b = (float) ((StdRandom.uniform() - 0.5) * 2.0 * set.colorNoise);
                                 }
-                                tempVerts[curr.vertexIdx + curr.colorOffset] = Color.toFloatBits(MathUtils.clamp(c[0] + r, 0, 1), MathUtils.clamp(c[1] + g, 0, 1),
+                                verts[curr.vertexIdx + curr.colorOffset] = Color.toFloatBits(MathUtils.clamp(c[0] + r, 0, 1), MathUtils.clamp(c[1] + g, 0, 1),
                                         MathUtils.clamp(c[2] + b, 0, 1), MathUtils.clamp(c[3], 0, 1));
                             }
                         }
 
                         // POSITION
                         final int idx = curr.vertexIdx;
-                        tempVerts[idx] = (float) p[0];
-                        tempVerts[idx + 1] = (float) p[1];
-                        tempVerts[idx + 2] = (float) p[2];
+                        verts[idx] = (float) p[0];
+                        verts[idx + 1] = (float) p[1];
+                        verts[idx + 2] = (float) p[2];
 
                         curr.vertexIdx += curr.vertexSize;
                         numAdded++;
                     }
                 }
-                int count = numAdded * curr.vertexSize;
-                setCount(render, count);
-                curr.mesh.setVertices(tempVerts, 0, count);
+                setCount(render, numAdded);
+                // Upload over the next frames, drawing the resident vertices meanwhile.
+                scheduleVertexUpload(curr, verts, numAdded);
 
                 setInGpu(render, true);
             }
@@ -235,7 +235,7 @@ public class ParticleSetPointRenderer extends PointCloudRenderer implements IObs
 
                 addAffineTransformUniforms(shaderProgram, Mapper.affine.get(render.entity));
 
-                curr.mesh.render(shaderProgram, ShapeType.Point.getGlType());
+                curr.mesh.render(shaderProgram, ShapeType.Point.getGlType(), 0, getResident(curr, getCount(render)));
 
             }
         }
@@ -47,6 +47,8 @@ public class PrimitiveVertexRenderSystem<T extends IGPUVertsRenderable> extends
     protected final VertsView vertsView;
     protected ICamera camera;
     protected int coordOffset;
+    /** Current GL line width, to avoid redundant state changes. **/
+    private float glLineWidth;
 
     public PrimitiveVertexRenderSystem(SceneRenderer sceneRenderer,
                                        RenderGroup rg,
@@ -113,6 +115,14 @@ public class PrimitiveVertexRenderSystem<T extends IGPUVertsRenderable> extends
         shaderProgram.begin();
 
         this.camera = camera;
+        this.glLineWidth = -1;
+
+        // Uniforms common to all objects. The geometry of each object is retained in the GPU, so the per-object
+        // work is limited to a few uniforms and a draw call.
+        shaderProgram.setUniformMatrix("u_projView", camera.getCamera().combined);
+        // Rel, grav, z-buffer.
+        addEffectsUniforms(shaderProgram, camera);
+
         renderables.forEach(r -> {
             Render render = (Render) r;
             if (!Mapper.verts.has(render.entity)) {
@@ -153,8 +163,8 @@ public class PrimitiveVertexRenderSystem<T extends IGPUVertsRenderable> extends
                 }
                 // Coord maps time.
                 boolean hasTime = data.hasTime();
-                long t0 = hasTime ? data.getDate(0).getEpochSecond() : 0;
-                long t1 = hasTime ? data.getDate(data.getNumPoints() - 1).getEpochSecond() : 0;
+                long t0 = hasTime ? data.getTimeMs(0) : 0;
+                long t1 = hasTime ? data.getTimeMs(data.getNumPoints() - 1) : 0;
                 long t01 = t1 - t0;
 
                 // Ensure vertices capacity.
@@ -163,7 +173,7 @@ public class PrimitiveVertexRenderSystem<T extends IGPUVertsRenderable> extends
                 int numAddedVertices = 0;
                 float[] cc = renderable.getColor();
                 for (int point_i = 0; point_i < nPoints; point_i++) {
-                    coord(!hasTime ? (coordEnabled ? (float) point_i / (float) nPoints : 1f) : (float) ((double) (data.getDate(point_i).getEpochSecond() - t0) / (double) t01));
+                    coord(!hasTime ? (coordEnabled ? (float) point_i / (float) nPoints : 1f) : (float) ((double) (data.getTimeMs(point_i) - t0) / (double) t01));
                     color(cc[0], cc[1], cc[2], 1.0);
                     vertex((float) data.getX(point_i), (float) data.getY(point_i), (float) data.getZ(point_i));
                     numAddedVertices++;
@@ -196,13 +206,15 @@ public class PrimitiveVertexRenderSystem<T extends IGPUVertsRenderable> extends
             if (isLine()) {
                 float lw = vertsView.getPrimitiveSize() * Settings.settings.scene.renderer.line.width * camera.getFovFactor() + Settings.settings.scene.renderer.line.glWidthBias;
                 shaderProgram.setUniformf("u_lineWidthTan", (float) (lw * 0.8f * baseWidthAngleTan));
-                Gdx.gl.glLineWidth(lw * 1.5f);
+                if (lw != glLineWidth) {
+                    Gdx.gl.glLineWidth(lw * 1.5f);
+                    glLineWidth = lw;
+                }
             } else {
                 shaderProgram.setUniformf("u_pointSize", renderable.getPrimitiveSize());
             }
 
             shaderProgram.setUniformMatrix("u_worldTransform", renderable.getLocalTransform());
-            shaderProgram.setUniformMatrix("u_projView", camera.getCamera().combined);
             shaderProgram.setUniformf("u_alpha", (float) (renderable.getAlpha()) * getAlpha(renderable) * base.opacity * 0.6f);
             shaderProgram.setUniformf("u_coordEnabled", coordEnabled ? 1f : -1f);
             if (trajectory != null && trajectory.body != null) {
@@ -224,8 +236,6 @@ public class PrimitiveVertexRenderSystem<T extends IGPUVertsRenderable> extends
                     shaderProgram.setUniformf("u_parentPos", 0, 0, 0);
             }
 
-            // Rel, grav, z-buffer.
-            addEffectsUniforms(shaderProgram, camera);
             curr.mesh.render(shaderProgram, renderable.getGlPrimitive(), 0, getCount(render));
 
         });
@@ -10,6 +10,7 @@ package gaiasky.scene.system.render.draw;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.GL20;
 import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes;
 import com.badlogic.gdx.graphics.VertexAttributes.Usage;
 import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.utils.Array;
@@ -23,7 +24,12 @@ import gaiasky.render.system.InstancedRenderSystem;
 import gaiasky.scene.Mapper;
 import gaiasky.scene.api.IParticleRecord;
 import gaiasky.scene.camera.ICamera;
+import gaiasky.scene.component.DatasetDescription;
+import gaiasky.scene.component.Highlight;
+import gaiasky.scene.component.ParticleSet;
 import gaiasky.scene.component.Render;
+import gaiasky.scene.component.StarSet;
+import gaiasky.scene.entity.ParticleUtils;
 import gaiasky.scene.system.render.SceneRenderer;
 import gaiasky.util.Constants;
 import gaiasky.util.Logger;
@@ -32,9 +38,24 @@ import gaiasky.util.Settings;
 import gaiasky.util.color.Colormap;
 import gaiasky.util.coord.AstroUtils;
 import gaiasky.util.gdx.shader.ExtShaderProgram;
+import gaiasky.util.math.HalfFloat;
 
 /**
- * Renders star sets as instanced triangles.
+ * Renders star sets as instanced triangles. Star sets with {@link StarSet#compactInstances} use a compact instance
+ * layout of 20 bytes per star, instead of 32. The position is quantised to 16-bit unsigned integers relative to the
+ * bounding box of the set, and the proper motion and the size are half-precision floats scaled by powers of two. The
+ * 16-bit values are packed in pairs into the 4-byte words of the instance array (lower half first, as buffers use the
+ * native little-endian order):
+ * <ul>
+ *     <li>packed color.</li>
+ *     <li>position x and proper motion x (<code>a_starPos.xy</code>).</li>
+ *     <li>position y and proper motion y (<code>a_starPos.zw</code>).</li>
+ *     <li>position z and proper motion z (<code>a_pm.xy</code>).</li>
+ *     <li>size and padding (<code>a_size</code>), so that the size can be rewritten without touching other values.</li>
+ * </ul>
+ * The positions go in the lower halves and finite half floats in the upper halves, so that no word is a NaN bit
+ * pattern, which is not guaranteed to survive float stores. The shader decodes the values with the parameters in
+ * {@link InstancedModel#decodeParams}.
  */
 public class StarSetInstancedRenderer extends InstancedRenderSystem implements IObserver {
     protected static final Log logger = Logger.getLogger(StarSetInstancedRenderer.class);
@@ -55,7 +76,7 @@ public class StarSetInstancedRenderer extends InstancedRenderSystem implements I
 
         EventManager.instance.subscribe(this, Event.STAR_BRIGHTNESS_CMD, Event.STAR_BRIGHTNESS_POW_CMD,
                 Event.STAR_POINT_SIZE_CMD, Event.STAR_BASE_LEVEL_CMD, Event.BACKBUFFER_SCALE_CMD, Event.FOV_CHANGED_CMD,
-                Event.GPU_DISPOSE_STAR_GROUP, Event.BILLBOARD_TEXTURE_IDX_CMD);
+                Event.GPU_DISPOSE_STAR_GROUP, Event.GPU_UPDATE_STAR_GROUP, Event.BILLBOARD_TEXTURE_IDX_CMD);
     }
 
     @Override
@@ -68,17 +89,37 @@ public class StarSetInstancedRenderer extends InstancedRenderSystem implements I
         attributes.add(new VertexAttribute(OwnUsage.Size, 1, "a_size"));
     }
 
+    @Override
+    protected void addAttributesDivisor1(Array<VertexAttribute> attributes,
+                                         int primitive,
+                                         boolean compact) {
+        if (compact) {
+            // Half floats are passed as raw unsigned shorts, and decoded in the shader.
+            attributes.add(new VertexAttribute(Usage.ColorPacked, 4, ExtShaderProgram.COLOR_ATTRIBUTE));
+            attributes.add(new VertexAttribute(OwnUsage.ObjectPosition, 4, GL20.GL_UNSIGNED_SHORT, false, "a_starPos"));
+            attributes.add(new VertexAttribute(OwnUsage.ProperMotion, 2, GL20.GL_UNSIGNED_SHORT, false, "a_pm"));
+            attributes.add(new VertexAttribute(OwnUsage.Size, 2, GL20.GL_UNSIGNED_SHORT, false, "a_size"));
+        } else {
+            addAttributesDivisor1(attributes, primitive);
+        }
+    }
+
+    @Override
+    protected boolean useCompactLayout(ParticleSet set) {
+        return set instanceof StarSet && ((StarSet) set).compactInstances;
+    }
+
     @Override
     protected void offsets0(MeshData curr, InstancedModel model) {
         // Not needed
     }
 
     @Override
-    protected void offsets1(MeshData curr, InstancedModel model) {
-        curr.colorOffset = curr.mesh.getInstancedAttribute(Usage.ColorPacked) != null ? curr.mesh.getInstancedAttribute(Usage.ColorPacked).offset / 4 : 0;
-        model.properMotionOffset = curr.mesh.getInstancedAttribute(OwnUsage.ProperMotion) != null ? curr.mesh.getInstancedAttribute(OwnUsage.ProperMotion).offset / 4 : 0;
-        model.sizeOffset = curr.mesh.getInstancedAttribute(OwnUsage.Size) != null ? curr.mesh.getInstancedAttribute(OwnUsage.Size).offset / 4 : 0;
-        model.particlePosOffset = curr.mesh.getInstancedAttribute(OwnUsage.ObjectPosition) != null ? curr.mesh.getInstancedAttribute(OwnUsage.ObjectPosition).offset / 4 : 0;
+    protected void offsets1(VertexAttributes attributes, InstancedModel model) {
+        model.colorOffset = offset(attributes, Usage.ColorPacked);
+        model.properMotionOffset = offset(attributes, OwnUsage.ProperMotion);
+        model.sizeOffset = offset(attributes, OwnUsage.Size);
+        model.particlePosOffset = offset(attributes, OwnUsage.ObjectPosition);
     }
 
     @Override
@@ -106,68 +147,22 @@ public class StarSetInstancedRenderer extends InstancedRenderSystem implements I
         float sizeFactor = utils.getDatasetSizeFactor(render.entity, hl, desc);
 
         if (!set.disposed) {
-            boolean hlCmap = hl.isHighlighted() && !hl.isHlplain();
-            var model = getModel(set, getOffset(render));
-            int n = set.data().size();
             if (!inGpu(render)) {
-                int offset = addMeshData(model, model.numVertices, n, 0, set.modelFile, set.modelType, set.modelPrimitive);
-                setModel(offset, model);
-                setOffset(render, offset);
-                curr = meshes.get(offset);
-                model.ensureInstanceAttribsSize(n * curr.instanceSize);
-                int numStarsAdded = 0;
-
-                for (int i = 0; i < n; i++) {
-                    if (utils.filter(i, set, desc) && set.isVisible(i)) {
-                        IParticleRecord particle = set.get(i);
-                        if (!Double.isFinite(particle.size())) {
-                            logger.debug("Star " + particle.id() + " has a non-finite size");
-                            continue;
-                        }
-
-                        // COLOR
-                        if (hlCmap) {
-                            // Color map.
-                            double[] color = cmap.colormap(hl.getHlcmi(), hl.getHlcma().getNumber(particle), hl.getHlcmmin(), hl.getHlcmmax());
-                            model.instanceAttributes[curr.instanceIdx + curr.colorOffset] = Color.toFloatBits((float) color[0], (float) color[1], (float) color[2], hl.getHlcmAlpha());
-                        } else {
-                            // Plain color.
-                            model.instanceAttributes[curr.instanceIdx + curr.colorOffset] = utils.saturateColor(i, set, hl);
-                        }
-
-                        // SIZE
-                        model.instanceAttributes[curr.instanceIdx + model.sizeOffset] = (float) (particle.size() * Constants.STAR_SIZE_FACTOR) * sizeFactor;
-
-                        // PROPER MOTION [u/yr]
-                        model.instanceAttributes[curr.instanceIdx + model.properMotionOffset] = (float) particle.pmx();
-                        model.instanceAttributes[curr.instanceIdx + model.properMotionOffset + 1] = (float) particle.pmy();
-                        model.instanceAttributes[curr.instanceIdx + model.properMotionOffset + 2] = (float) particle.pmz();
-
-                        // STAR POSITION [u]
-                        model.instanceAttributes[curr.instanceIdx + model.particlePosOffset] = (float) particle.x();
-                        model.instanceAttributes[curr.instanceIdx + model.particlePosOffset + 1] = (float) particle.y();
-                        model.instanceAttributes[curr.instanceIdx + model.particlePosOffset + 2] = (float) particle.z();
-
-                        curr.instanceIdx += curr.instanceSize;
-                        curr.numVertices++;
-                        numStarsAdded++;
-                    }
+                var packed = getPackedInstances(render, set, (model) -> pack(model, set, hl, desc, sizeFactor));
+                if (packed != null) {
+                    uploadPackedInstances(render, set, packed, false);
                 }
-                // Global (divisor=0) vertices (position, uv)
-                curr.mesh.setVertices(model.vertices, 0, model.numVertices * model.modelVertexSize);
-                // Per instance (divisor=1) vertices
-                int count = numStarsAdded * curr.instanceSize;
-                setCount(render, numStarsAdded);
-                curr.mesh.setInstanceAttribs(model.instanceAttributes, 0, count);
-
-                setInGpu(render, true);
+            } else {
+                updateInstances(render, (packed, attributes) -> updateAttributes(packed, attributes, set, hl, desc, sizeFactor));
             }
 
             /*
              * RENDER
              */
-            curr = meshes.get(getOffset(render));
+            int offset = getOffset(render);
+            curr = offset >= 0 ? meshes.get(offset) : null;
             if (curr != null) {
+                var model = models.get(offset);
                 if (triComponent.starTex != null) {
                     triComponent.starTex.bind(0);
                     shaderProgram.setUniformi("u_starTex", 0);
@@ -195,8 +190,19 @@ public class StarSetInstancedRenderer extends InstancedRenderSystem implements I
                 // Proximity descriptor loading.
                 shaderProgram.setUniformf("u_proximityThreshold", (float) set.proximityThreshold);
 
+                // Compact layout decoding. The size factor is applied here, as it is not packed.
+                final float[] decode = model.compact ? model.decodeParams : null;
+                if (decode != null) {
+                    shaderProgram.setUniformi("u_compact", 1);
+                    shaderProgram.setUniformf("u_posOffset", decode[0], decode[1], decode[2]);
+                    shaderProgram.setUniformf("u_posScale", decode[3], decode[4], decode[5]);
+                    shaderProgram.setUniformf("u_pmSizeScale", decode[6], decode[7] * sizeFactor);
+                } else {
+                    shaderProgram.setUniformi("u_compact", 0);
+                }
+
                 try {
-                    curr.mesh.render(shaderProgram, GL20.GL_TRIANGLES, 0, model.numVertices, getCount(render));
+                    curr.mesh.render(shaderProgram, GL20.GL_TRIANGLES, 0, model.numVertices, getResidentCount(render));
                 } catch (IllegalArgumentException e) {
                     logger.error(e, "Render exception");
                 }
@@ -206,6 +212,184 @@ public class StarSetInstancedRenderer extends InstancedRenderSystem implements I
         }
     }
 
+    /**
+     * Packs the instance attributes of the given star set. Runs on a worker thread. All stars with a finite size get
+     * an instance, so that filter and visibility changes can be applied in place. Hidden stars get a negative size.
+     */
+    private PackedInstances pack(InstancedModel model,
+                                 StarSet set,
+                                 Highlight hl,
+                                 DatasetDescription desc,
+                                 float sizeFactor) {
+        final int n = set.data().size();
+        final int instanceSize = model.instanceSize;
+        model.ensureInstanceAttribsSize(n * instanceSize);
+        final float[] attributes = model.instanceAttributes;
+        final int[] rows = new int[n];
+        int instanceIdx = 0;
+        int numStarsAdded = 0;
+
+        for (int i = 0; i < n; i++) {
+            IParticleRecord particle = set.get(i);
+            if (!Double.isFinite(particle.size())) {
+                logger.debug("Star " + particle.id() + " has a non-finite size");
+                continue;
+            }
+            rows[numStarsAdded] = i;
+            numStarsAdded++;
+            if (model.compact) {
+                // Packed in a second pass.
+                continue;
+            }
+
+            // PROPER MOTION [u/yr]
+            attributes[instanceIdx + model.properMotionOffset] = (float) particle.pmx();
+            attributes[instanceIdx + model.properMotionOffset + 1] = (float) particle.pmy();
+            attributes[instanceIdx + model.properMotionOffset + 2] = (float) particle.pmz();
+
+            // STAR POSITION [u]
+            attributes[instanceIdx + model.particlePosOffset] = (float) particle.x();
+            attributes[instanceIdx + model.particlePosOffset + 1] = (float) particle.y();
+            attributes[instanceIdx + model.particlePosOffset + 2] = (float) particle.z();
+
+            instanceIdx += instanceSize;
+        }
+        final float[] decodeParams = model.compact ? packCompact(model, set, attributes, rows, numStarsAdded) : null;
+        var packed = new PackedInstances(model, attributes, numStarsAdded, rows, decodeParams);
+        updateAttributes(packed, ParticleSet.ATTR_COLOR | ParticleSet.ATTR_SIZE | ParticleSet.ATTR_VISIBILITY, set, hl, desc, sizeFactor);
+        return packed;
+    }
+
+    /**
+     * Packs the positions and proper motions of the given rows in the compact layout. Positions are quantised relative
+     * to the bounding box of the set, and proper motions are converted to half precision, scaled by a power of two.
+     *
+     * @return The decode parameters: position offset (3), position scale per quantisation step (3), proper motion
+     * scale and size scale.
+     */
+    private float[] packCompact(InstancedModel model,
+                                StarSet set,
+                                float[] attributes,
+                                int[] rows,
+                                int count) {
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, minZ = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE, maxZ = -Double.MAX_VALUE;
+        double maxPm = 0, maxSize = 0;
+        for (int row = 0; row < count; row++) {
+            IParticleRecord particle = set.get(rows[row]);
+            minX = Math.min(minX, particle.x());
+            minY = Math.min(minY, particle.y());
+            minZ = Math.min(minZ, particle.z());
+            maxX = Math.max(maxX, particle.x());
+            maxY = Math.max(maxY, particle.y());
+            maxZ = Math.max(maxZ, particle.z());
+            final double pm = Math.max(Math.abs(particle.pmx()), Math.max(Math.abs(particle.pmy()), Math.abs(particle.pmz())));
+            if (pm > maxPm && Double.isFinite(pm)) {
+                maxPm = pm;
+            }
+            maxSize = Math.max(maxSize, particle.size() * Constants.STAR_SIZE_FACTOR);
+        }
+        final double scaleX = count > 0 && maxX > minX ? maxX - minX : 1;
+        final double scaleY = count > 0 && maxY > minY ? maxY - minY : 1;
+        final double scaleZ = count > 0 && maxZ > minZ ? maxZ - minZ : 1;
+        final float pmScale = powerOfTwoAbove(maxPm);
+        final float sizeScale = powerOfTwoAbove(maxSize);
+
+        int instanceIdx = 0;
+        for (int row = 0; row < count; row++) {
+            IParticleRecord particle = set.get(rows[row]);
+
+            // STAR POSITION, unsigned shorts, and PROPER MOTION, half floats, in pairs.
+            int qx = quantise((particle.x() - minX) / scaleX);
+            int qy = quantise((particle.y() - minY) / scaleY);
+            int qz = quantise((particle.z() - minZ) / scaleZ);
+            attributes[instanceIdx + model.particlePosOffset] = packHalves(qx, finiteHalf(particle.pmx() / pmScale));
+            attributes[instanceIdx + model.particlePosOffset + 1] = packHalves(qy, finiteHalf(particle.pmy() / pmScale));
+            attributes[instanceIdx + model.properMotionOffset] = packHalves(qz, finiteHalf(particle.pmz() / pmScale));
+
+            instanceIdx += model.instanceSize;
+        }
+        return new float[] { (float) minX, (float) minY, (float) minZ, (float) (scaleX / 65535.0), (float) (scaleY / 65535.0),
+                (float) (scaleZ / 65535.0), pmScale, sizeScale };
+    }
+
+    /** Quantises a value in [0, 1] to a 16-bit unsigned integer. **/
+    private static int quantise(double value) {
+        return (int) Math.round(Math.min(Math.max(value, 0.0), 1.0) * 65535.0);
+    }
+
+    /** Gets the smallest power of two greater than the given value, or 1 if the value is not positive. **/
+    private static float powerOfTwoAbove(double value) {
+        return value > 0 && Double.isFinite(value) ? Math.scalb(1f, Math.getExponent(value) + 1) : 1f;
+    }
+
+    /** Converts a value to a half float, or to zero if it is not finite, so that it never makes a NaN bit pattern. **/
+    private static int finiteHalf(double value) {
+        return Double.isFinite(value) ? HalfFloat.fromFloat((float) value) : 0;
+    }
+
+    /**
+     * Packs two 16-bit values into the bits of a float. The upper value must be a finite half float, or zero, so that
+     * the result is never a NaN bit pattern.
+     */
+    private static float packHalves(int lower,
+                                    int upper) {
+        return Float.intBitsToFloat(((upper & 0xffff) << 16) | (lower & 0xffff));
+    }
+
+    /**
+     * Rewrites the given attributes of the packed instances of a star set in place. Runs on a worker thread.
+     * Size and visibility are both stored in the size attribute.
+     */
+    private void updateAttributes(PackedInstances packed,
+                                  int attributes,
+                                  StarSet set,
+                                  Highlight hl,
+                                  DatasetDescription desc,
+                                  float sizeFactor) {
+        final var utils = new ParticleUtils();
+        final var model = packed.model;
+        final float[] data = packed.attributes;
+        final boolean color = (attributes & ParticleSet.ATTR_COLOR) != 0;
+        final boolean size = (attributes & (ParticleSet.ATTR_SIZE | ParticleSet.ATTR_VISIBILITY)) != 0;
+        final boolean hlCmap = hl.isHighlighted() && !hl.isHlplain();
+        final float[] decode = packed.decodeParams;
+        int instanceIdx = 0;
+
+        for (int row = 0; row < packed.count; row++) {
+            final int i = packed.rows[row];
+            IParticleRecord particle = set.get(i);
+
+            // COLOR
+            if (color) {
+                if (hlCmap) {
+                    // Color map.
+                    double[] c = cmap.colormap(hl.getHlcmi(), hl.getHlcma().getNumber(particle), hl.getHlcmmin(), hl.getHlcmmax());
+                    data[instanceIdx + model.colorOffset] = Color.toFloatBits((float) c[0], (float) c[1], (float) c[2], hl.getHlcmAlpha());
+                } else {
+                    // Plain color.
+                    data[instanceIdx + model.colorOffset] = utils.saturateColor(i, set, hl);
+                }
+            }
+
+            // SIZE, negative if hidden
+            if (size) {
+                final boolean visible = utils.filter(i, set, desc) && set.isVisible(i);
+                if (decode != null) {
+                    // Compact: half float in the lower half of its own word, without the size factor.
+                    final double value = visible ? particle.size() * Constants.STAR_SIZE_FACTOR / decode[7] : -1;
+                    data[instanceIdx + model.sizeOffset] = packHalves(finiteHalf(value), 0);
+                } else if (visible) {
+                    data[instanceIdx + model.sizeOffset] = (float) (particle.size() * Constants.STAR_SIZE_FACTOR) * sizeFactor;
+                } else {
+                    data[instanceIdx + model.sizeOffset] = -1f;
+                }
+            }
+
+            instanceIdx += model.instanceSize;
+        }
+    }
+
     protected void setInGpu(IRenderable renderable,
                             boolean state) {
         if (inGpu != null) {
@@ -246,14 +430,16 @@ public class StarSetInstancedRenderer extends InstancedRenderSystem implements I
                 triComponent.touchStarParameters(getShaderProgram());
             }
             case GPU_DISPOSE_STAR_GROUP -> {
-                IRenderable renderable = (IRenderable) source;
-                int offset = getOffset(renderable);
-                if (offset >= 0) {
-                    clearMeshData(offset);
-                    models.set(offset, null);
-                    inGpu.remove(renderable);
+                var render = (Render) source;
+                var set = Mapper.starSet.get(render.entity);
+                if (set == null || set.disposed) {
+                    disposeInstances(render);
+                } else {
+                    // Keep rendering the current mesh until the new data is packed and uploaded.
+                    invalidateInstances(render);
                 }
             }
+            case GPU_UPDATE_STAR_GROUP -> requestInstanceUpdate((IRenderable) source, (Integer) data[0]);
             case BILLBOARD_TEXTURE_IDX_CMD ->
                     GaiaSky.postRunnable(() -> triComponent.setStarTexture(Settings.settings.scene.star.getStarTexture()));
             default -> {
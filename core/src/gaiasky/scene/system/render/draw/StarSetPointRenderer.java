@@ -67,7 +67,7 @@ public class StarSetPointRenderer extends ImmediateModeRenderSystem implements I
         utils = new ParticleUtils();
         setStarTexture(Settings.settings.scene.star.getStarTexture());
 
-        EventManager.instance.subscribe(this, Event.STAR_BASE_LEVEL_CMD, Event.GPU_DISPOSE_STAR_GROUP, Event.BILLBOARD_TEXTURE_IDX_CMD);
+        EventManager.instance.subscribe(this, Event.STAR_BASE_LEVEL_CMD, Event.GPU_DISPOSE_STAR_GROUP, Event.GPU_UPDATE_STAR_GROUP, Event.BILLBOARD_TEXTURE_IDX_CMD);
     }
 
     public void setStarTexture(String starTexture) {
@@ -148,7 +148,7 @@ public class StarSetPointRenderer extends ImmediateModeRenderSystem implements I
                         int offset = addMeshData(n);
                         setOffset(render, offset);
                         curr = meshes.get(offset);
-                        ensureTempVertsSize(n * curr.vertexSize);
+                        final float[] verts = new float[n * curr.vertexSize];
                         int numAdded = 0;
                         for (int i = 0; i < n; i++) {
                             if (utils.filter(i, set, desc) && set.isVisible(i)) {
@@ -161,35 +161,36 @@ public class StarSetPointRenderer extends ImmediateModeRenderSystem implements I
                                 if (hlCmap) {
                                     // Color map
                                     double[] color = cmap.colormap(hl.getHlcmi(), hl.getHlcma().getNumber(particle), hl.getHlcmmin(), hl.getHlcmmax());
-                                    tempVerts[curr.vertexIdx + curr.colorOffset] = Color.toFloatBits((float) color[0], (float) color[1], (float) color[2], hl.getHlcmAlpha());
+                                    verts[curr.vertexIdx + curr.colorOffset] = Color.toFloatBits((float) color[0], (float) color[1], (float) color[2], hl.getHlcmAlpha());
                                 } else {
                                     // Plain
-                                    tempVerts[curr.vertexIdx + curr.colorOffset] = utils.getColor(i, set, hl);
+                                    verts[curr.vertexIdx + curr.colorOffset] = utils.getColor(i, set, hl);
                                 }
 
                                 // SIZE
                                 if (hl.isHlAllVisible() && hl.isHighlighted()) {
-                                    tempVerts[curr.vertexIdx + sizeOffset] = FastMath.max(10f, (float) (particle.size() * Constants.STAR_SIZE_FACTOR) * sizeFactor);
+                                    verts[curr.vertexIdx + sizeOffset] = FastMath.max(10f, (float) (particle.size() * Constants.STAR_SIZE_FACTOR) * sizeFactor);
                                 } else {
-                                    tempVerts[curr.vertexIdx + sizeOffset] = (float) (particle.size() * Constants.STAR_SIZE_FACTOR) * sizeFactor;
+                                    verts[curr.vertexIdx + sizeOffset] = (float) (particle.size() * Constants.STAR_SIZE_FACTOR) * sizeFactor;
                                 }
 
                                 // POSITION [u]
-                                tempVerts[curr.vertexIdx] = (float) particle.x();
-                                tempVerts[curr.vertexIdx + 1] = (float) particle.y();
-                                tempVerts[curr.vertexIdx + 2] = (float) particle.z();
+                                verts[curr.vertexIdx] = (float) particle.x();
+                                verts[curr.vertexIdx + 1] = (float) particle.y();
+                                verts[curr.vertexIdx + 2] = (float) particle.z();
 
                                 // PROPER MOTION [u/yr]
-                                tempVerts[curr.vertexIdx + pmOffset] = (float) particle.pmx();
-                                tempVerts[curr.vertexIdx + pmOffset + 1] = (float) particle.pmy();
-                                tempVerts[curr.vertexIdx + pmOffset + 2] = (float) particle.pmz();
+                                verts[curr.vertexIdx + pmOffset] = (float) particle.pmx();
+                                verts[curr.vertexIdx + pmOffset + 1] = (float) particle.pmy();
+                                verts[curr.vertexIdx + pmOffset + 2] = (float) particle.pmz();
 
                                 curr.vertexIdx += curr.vertexSize;
                                 numAdded++;
                             }
                         }
-                        int count = numAdded * curr.vertexSize;
-                        curr.mesh.setVertices(tempVerts, 0, count);
+                        setCount(render, numAdded);
+                        // Upload over the next frames, drawing the resident vertices meanwhile.
+                        scheduleVertexUpload(curr, verts, numAdded);
 
                         setInGpu(render, true);
 
@@ -227,7 +228,7 @@ public class StarSetPointRenderer extends ImmediateModeRenderSystem implements I
                         shaderProgram.setUniformf("u_proximityThreshold", (float) set.proximityThreshold);
 
                         try {
-                            curr.mesh.render(shaderProgram, GL20.GL_POINTS);
+                            curr.mesh.render(shaderProgram, GL20.GL_POINTS, 0, getResident(curr, getCount(render)));
                         } catch (IllegalArgumentException e) {
                             logger.error("Render exception");
                         }
@@ -264,7 +265,7 @@ public class StarSetPointRenderer extends ImmediateModeRenderSystem implements I
     public void notify(final Event event, Object source, final Object... data) {
         switch (event) {
             case STAR_BASE_LEVEL_CMD -> opacityLimits[0] = (float) data[0];
-            case GPU_DISPOSE_STAR_GROUP -> {
+            case GPU_DISPOSE_STAR_GROUP, GPU_UPDATE_STAR_GROUP -> {
                 IRenderable renderable = (IRenderable) source;
                 int offset = getOffset(renderable);
                 if (offset >= 0) {
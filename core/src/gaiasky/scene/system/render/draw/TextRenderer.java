@@ -15,17 +15,24 @@ import gaiasky.scene.Mapper;
 import gaiasky.scene.camera.ICamera;
 import gaiasky.scene.component.Render;
 import gaiasky.scene.system.render.SceneRenderer;
+import gaiasky.scene.system.render.draw.text.LabelEntityRenderSystem;
 import gaiasky.scene.view.LabelView;
+import gaiasky.util.Settings;
 import gaiasky.util.gdx.g2d.BitmapFont;
 import gaiasky.util.gdx.g2d.ExtSpriteBatch;
 import gaiasky.util.gdx.shader.ExtShaderProgram;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 
 public class TextRenderer extends FontRenderSystem {
 
     private final ExtSpriteBatch batch;
     private final LabelView view;
+    /** Renderables in label priority order, for the overlap culling. **/
+    private final List<IRenderable> sorted = new ArrayList<>();
+    private final Comparator<IRenderable> priorityComparator;
     public BitmapFont fontDistanceField, font2d, fontTitles;
 
     public TextRenderer(SceneRenderer sceneRenderer, RenderGroup rg, float[] alphas, ExtSpriteBatch batch, ExtShaderProgram program) {
@@ -33,6 +40,9 @@ public class TextRenderer extends FontRenderSystem {
         this.batch = batch;
 
         this.view = new LabelView();
+        // Forced labels first, then by decreasing apparent solid angle.
+        this.priorityComparator = Comparator.comparing((IRenderable r) -> !Mapper.label.has(((Render) r).entity) || !Mapper.label.get(((Render) r).entity).forceLabel)
+                .thenComparingDouble(r -> -Mapper.body.get(((Render) r).entity).solidAngleApparent);
     }
 
     public TextRenderer(SceneRenderer sceneRenderer, RenderGroup rg, float[] alphas, ExtSpriteBatch batch, ExtShaderProgram program, BitmapFont fontDistanceField, BitmapFont font2d, BitmapFont fontTitles) {
@@ -51,6 +61,14 @@ public class TextRenderer extends FontRenderSystem {
         batch.begin();
 
         ExtShaderProgram program = programs[0];
+        if (Settings.settings.scene.label.overlapCulling && fontDistanceField != null) {
+            // Labels with higher priority claim their screen space first.
+            LabelEntityRenderSystem.beginLabelPass(rc.w(), rc.h());
+            sorted.clear();
+            sorted.addAll(renderables);
+            sorted.sort(priorityComparator);
+            renderables = sorted;
+        }
         renderFont3D(renderables, program, camera, alphas[ComponentType.Labels.ordinal()]);
         batch.end();
     }
@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2023 Gaia Sky - All rights reserved.
+ *  This file is part of Gaia Sky, which is released under the Mozilla Public License 2.0.
+ *  You may use, distribute and modify this code under the terms of MPL2.
+ *  See the file LICENSE.md in the project root for full license details.
+ */
+
+package gaiasky.scene.system.render.draw;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Spreads the uploads of large vertex and instance buffers over several frames. Buffers are submitted whole, and
+ * they are sent to their {@link MeshSink} in ranges of complete elements (vertices or instances), in submission order,
+ * so that no more than a given number of bytes is uploaded per frame. Renderers draw the elements that are already
+ * resident, given by {@link #getResident(Object, int)}, so large datasets appear progressively instead of stalling
+ * the frame in which they are loaded.
+ * <p>
+ * The scheduler does not depend on OpenGL, so it can be driven with any sink. It is not thread-safe, and is
+ * meant to be used from the render thread only.
+ */
+public class UploadScheduler {
+    /** Default upload budget, in bytes per frame. **/
+    public static final long DEFAULT_BYTES_PER_FRAME = 8L * 1024L * 1024L;
+
+    private static final UploadScheduler instance = new UploadScheduler(DEFAULT_BYTES_PER_FRAME);
+
+    /**
+     * Gets the scheduler shared by all renderers, so that the budget is global.
+     *
+     * @return The shared scheduler.
+     */
+    public static UploadScheduler instance() {
+        return instance;
+    }
+
+    /** Pending uploads, in submission order. **/
+    private final Map<Object, Upload> uploads = new LinkedHashMap<>();
+    /** Budget, in bytes per frame. **/
+    private long bytesPerFrame;
+    /** Current frame, and bytes uploaded in it. **/
+    private long frame = Long.MIN_VALUE;
+    private long frameBytes = 0;
+    /** Bytes uploaded in the last complete frame. **/
+    private long lastFrameBytes = 0;
+    /** Total bytes uploaded. **/
+    private long totalBytes = 0;
+
+    /**
+     * Creates a new scheduler with the given budget.
+     *
+     * @param bytesPerFrame The maximum number of bytes to upload per frame. At least one element is always uploaded
+     *                      per frame, even if it is larger than the budget.
+     */
+    public UploadScheduler(long bytesPerFrame) {
+        setBytesPerFrame(bytesPerFrame);
+    }
+
+    public long getBytesPerFrame() {
+        return bytesPerFrame;
+    }
+
+    public void setBytesPerFrame(long bytesPerFrame) {
+        this.bytesPerFrame = Math.max(0, bytesPerFrame);
+    }
+
+    /**
+     * Submits a new buffer for upload. If there is a pending upload with the same key, it is replaced.
+     * The data array is not copied, so it must not be modified until the upload is complete.
+     *
+     * @param key         The key that identifies the upload, usually the mesh data.
+     * @param data        The data to upload.
+     * @param numElements The number of elements (vertices or instances) in the data.
+     * @param elementSize The size of each element, in floats.
+     * @param sink        The sink that receives the ranges.
+     */
+    public void submit(Object key, float[] data, int numElements, int elementSize, MeshSink sink) {
+        submit(key, data, numElements, elementSize, 0, sink);
+    }
+
+    /**
+     * Submits new data for a buffer whose elements are already in the GPU, for instance after rewriting some of their
+     * attributes. Unlike {@link #submit(Object, float[], int, int, MeshSink)}, the elements that were drawable before
+     * remain drawable while the upload is in progress, with their previous data.
+     *
+     * @param key         The key that identifies the upload, usually the mesh data.
+     * @param data        The data to upload.
+     * @param numElements The number of elements (vertices or instances) in the data.
+     * @param elementSize The size of each element, in floats.
+     * @param sink        The sink that receives the ranges.
+     */
+    public void submitUpdate(Object key, float[] data, int numElements, int elementSize, MeshSink sink) {
+        submit(key, data, numElements, elementSize, getResident(key, numElements), sink);
+    }
+
+    private void submit(Object key, float[] data, int numElements, int elementSize, int drawable, MeshSink sink) {
+        uploads.remove(key);
+        if (numElements > 0 && elementSize > 0) {
+            uploads.put(key, new Upload(data, numElements, elementSize, drawable, sink));
+        }
+    }
+
+    /**
+     * Cancels the pending upload with the given key, if any. The ranges already uploaded are not affected.
+     *
+     * @param key The key.
+     *
+     * @return Whether there was a pending upload with the key.
+     */
+    public boolean cancel(Object key) {
+        return uploads.remove(key) != null;
+    }
+
+    /** Cancels all pending uploads. **/
+    public void clear() {
+        uploads.clear();
+    }
+
+    /**
+     * Checks whether the upload with the given key is still in progress.
+     *
+     * @param key The key.
+     *
+     * @return Whether there is a pending upload with the key.
+     */
+    public boolean isPending(Object key) {
+        return uploads.containsKey(key);
+    }
+
+    /**
+     * Gets the number of elements already uploaded for the given key.
+     *
+     * @param key      The key.
+     * @param complete The value to return if there is no pending upload with the key, usually the total number of elements.
+     *
+     * @return The number of resident elements, or the given default if the key has no pending upload.
+     */
+    public int getResident(Object key, int complete) {
+        final var upload = uploads.get(key);
+        return upload != null ? Math.max(upload.resident, upload.drawable) : complete;
+    }
+
+    /** Number of pending uploads. **/
+    public int getNumPending() {
+        return uploads.size();
+    }
+
+    /** Number of bytes still to upload. **/
+    public long getPendingBytes() {
+        long bytes = 0;
+        for (var upload : uploads.values()) {
+            bytes += (long) (upload.numElements - upload.resident) * upload.elementSize * 4L;
+        }
+        return bytes;
+    }
+
+    /** Number of bytes uploaded in the last complete frame. **/
+    public long getLastFrameBytes() {
+        return lastFrameBytes;
+    }
+
+    /** Total number of bytes uploaded. **/
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Uploads the next ranges of the pending buffers, within what is left of the budget of the given frame.
+     * It can be called several times per frame, for instance by each renderer, and also right after a
+     * submission, so that small buffers are uploaded in the frame they are submitted.
+     *
+     * @param frame The current frame number.
+     *
+     * @return The number of bytes uploaded in this call.
+     */
+    public long process(long frame) {
+        if (frame != this.frame) {
+            lastFrameBytes = this.frame == Long.MIN_VALUE ? 0 : frameBytes;
+            this.frame = frame;
+            frameBytes = 0;
+        }
+        long uploaded = 0;
+        final Iterator<Upload> it = uploads.values().iterator();
+        while (it.hasNext()) {
+            final Upload upload = it.next();
+            final long elementBytes = upload.elementSize * 4L;
+            long n = Math.min(upload.numElements - upload.resident, (bytesPerFrame - frameBytes) / elementBytes);
+            if (n <= 0) {
+                if (frameBytes > 0) {
+                    // Budget exhausted.
+                    break;
+                }
+                // Always make progress, even with a budget smaller than an element.
+                n = 1;
+            }
+            final int offset = upload.resident * upload.elementSize;
+            final int count = (int) n * upload.elementSize;
+            upload.sink.upload(upload.data, offset, count);
+            upload.resident += (int) n;
+            frameBytes += n * elementBytes;
+            uploaded += n * elementBytes;
+            if (upload.resident >= upload.numElements) {
+                it.remove();
+            }
+        }
+        totalBytes += uploaded;
+        return uploaded;
+    }
+
+    /**
+     * Receives the ranges of a buffer as they are uploaded.
+     */
+    @FunctionalInterface
+    public interface MeshSink {
+        /**
+         * Uploads a range of the data. The offset is both the offset in the source data and in the target buffer.
+         *
+         * @param data   The whole data array.
+         * @param offset The offset of the range, in floats.
+         * @param count  The size of the range, in floats.
+         */
+        void upload(float[] data, int offset, int count);
+    }
+
+    private static class Upload {
+        private final float[] data;
+        private final int numElements;
+        private final int elementSize;
+        /** Number of elements that can be drawn regardless of the progress, because they hold older data. **/
+        private final int drawable;
+        private final MeshSink sink;
+        private int resident = 0;
+
+        private Upload(float[] data, int numElements, int elementSize, int drawable, MeshSink sink) {
+            this.data = data;
+            this.numElements = numElements;
+            this.elementSize = elementSize;
+            this.drawable = Math.min(drawable, numElements);
+            this.sink = sink;
+        }
+    }
+}
@@ -10,6 +10,7 @@ package gaiasky.scene.system.render.draw;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.GL20;
 import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes;
 import com.badlogic.gdx.graphics.VertexAttributes.Usage;
 import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.utils.Array;
@@ -22,7 +23,12 @@ import gaiasky.render.api.IRenderable;
 import gaiasky.render.system.InstancedRenderSystem;
 import gaiasky.scene.Mapper;
 import gaiasky.scene.camera.ICamera;
+import gaiasky.scene.component.DatasetDescription;
+import gaiasky.scene.component.Highlight;
+import gaiasky.scene.component.ParticleSet;
 import gaiasky.scene.component.Render;
+import gaiasky.scene.component.StarSet;
+import gaiasky.scene.entity.ParticleUtils;
 import gaiasky.scene.record.VariableRecord;
 import gaiasky.scene.system.render.SceneRenderer;
 import gaiasky.util.Constants;
@@ -56,7 +62,7 @@ public class VariableSetInstancedRenderer extends InstancedRenderSystem implemen
 
         EventManager.instance.subscribe(this, Event.STAR_BRIGHTNESS_CMD, Event.STAR_BRIGHTNESS_POW_CMD,
                 Event.STAR_POINT_SIZE_CMD, Event.STAR_BASE_LEVEL_CMD, Event.BACKBUFFER_SCALE_CMD, Event.FOV_CHANGED_CMD,
-                Event.GPU_DISPOSE_VARIABLE_GROUP, Event.BILLBOARD_TEXTURE_IDX_CMD);
+                Event.GPU_DISPOSE_VARIABLE_GROUP, Event.GPU_UPDATE_VARIABLE_GROUP, Event.BILLBOARD_TEXTURE_IDX_CMD);
     }
 
     @Override
@@ -86,14 +92,13 @@ public class VariableSetInstancedRenderer extends InstancedRenderSystem implemen
     }
 
     @Override
-    protected void offsets1(MeshData curr, InstancedModel model) {
-        curr.colorOffset = curr.mesh.getInstancedAttribute(Usage.ColorPacked) != null ? curr.mesh.getInstancedAttribute(Usage.ColorPacked).offset / 4 : 0;
-        model.properMotionOffset = curr.mesh.getInstancedAttribute(OwnUsage.ProperMotion) != null ? curr.mesh.getInstancedAttribute(OwnUsage.ProperMotion).offset / 4 : 0;
-        model.particlePosOffset = curr.mesh.getInstancedAttribute(OwnUsage.ObjectPosition) != null ? curr.mesh.getInstancedAttribute(OwnUsage.ObjectPosition).offset / 4 : 0;
-        model.nVariOffset = curr.mesh.getInstancedAttribute(OwnUsage.NumVariablePoints) != null ? curr.mesh.getInstancedAttribute(OwnUsage.NumVariablePoints).offset / 4 : 0;
-        model.variMagsOffset =
-                curr.mesh.getInstancedAttribute(OwnUsage.VariableMagnitudes) != null ? curr.mesh.getInstancedAttribute(OwnUsage.VariableMagnitudes).offset / 4 : 0;
-        model.variTimesOffset = curr.mesh.getInstancedAttribute(OwnUsage.VariableTimes) != null ? curr.mesh.getInstancedAttribute(OwnUsage.VariableTimes).offset / 4 : 0;
+    protected void offsets1(VertexAttributes attributes, InstancedModel model) {
+        model.colorOffset = offset(attributes, Usage.ColorPacked);
+        model.properMotionOffset = offset(attributes, OwnUsage.ProperMotion);
+        model.particlePosOffset = offset(attributes, OwnUsage.ObjectPosition);
+        model.nVariOffset = offset(attributes, OwnUsage.NumVariablePoints);
+        model.variMagsOffset = offset(attributes, OwnUsage.VariableMagnitudes);
+        model.variTimesOffset = offset(attributes, OwnUsage.VariableTimes);
     }
 
     @Override
@@ -121,73 +126,22 @@ public class VariableSetInstancedRenderer extends InstancedRenderSystem implemen
         float sizeFactor = utils.getDatasetSizeFactor(render.entity, hl, desc);
 
         if (!set.disposed) {
-            boolean hlCmap = hl.isHighlighted() && !hl.isHlplain();
-            var model = getModel(set, getOffset(render));
-            int n = set.data().size();
             if (!inGpu(render)) {
-                int offset = addMeshData(model, model.numVertices, n, 0, set.modelFile, set.modelType, set.modelPrimitive);
-                setModel(offset, model);
-                setOffset(render, offset);
-                curr = meshes.get(offset);
-                model.ensureInstanceAttribsSize(n * curr.instanceSize);
-                int numStarsAdded = 0;
-
-                for (int i = 0; i < n; i++) {
-                    if (utils.filter(i, set, desc) && set.isVisible(i)) {
-                        VariableRecord particle = (VariableRecord) set.get(i);
-                        if (!Double.isFinite(particle.size())) {
-                            logger.debug("Star " + particle.id() + " has a non-finite size");
-                            continue;
-                        }
-
-                        // COLOR
-                        if (hlCmap) {
-                            // Color map
-                            double[] color = cmap.colormap(hl.getHlcmi(), hl.getHlcma().getNumber(particle), hl.getHlcmmin(), hl.getHlcmmax());
-                            model.instanceAttributes[curr.instanceIdx + curr.colorOffset] = Color.toFloatBits((float) color[0], (float) color[1], (float) color[2], hl.getHlcmAlpha());
-                        } else {
-                            // Plain
-                            model.instanceAttributes[curr.instanceIdx + curr.colorOffset] = utils.saturateColor(i, set, hl);
-                        }
-
-                        // VARIABLE STARS (magnitudes and times)
-                        model.instanceAttributes[curr.instanceIdx + model.nVariOffset] = particle.nVari;
-                        for (int k = 0; k < particle.nVari; k++) {
-                            model.instanceAttributes[curr.instanceIdx + model.variMagsOffset + k] = (float) (particle.variMag(k) * Constants.STAR_SIZE_FACTOR) * sizeFactor;
-                            model.instanceAttributes[curr.instanceIdx + model.variTimesOffset + k] = (float) particle.variTime(k);
-                        }
-
-                        // PROPER MOTION [u/yr]
-                        model.instanceAttributes[curr.instanceIdx + model.properMotionOffset] = (float) particle.pmx();
-                        model.instanceAttributes[curr.instanceIdx + model.properMotionOffset + 1] = (float) particle.pmy();
-                        model.instanceAttributes[curr.instanceIdx + model.properMotionOffset + 2] = (float) particle.pmz();
-
-                        // STAR POSITION [u]
-                        model.instanceAttributes[curr.instanceIdx + model.particlePosOffset] = (float) particle.x();
-                        model.instanceAttributes[curr.instanceIdx + model.particlePosOffset + 1] = (float) particle.y();
-                        model.instanceAttributes[curr.instanceIdx + model.particlePosOffset + 2] = (float) particle.z();
-
-                        curr.instanceIdx += curr.instanceSize;
-                        curr.numVertices++;
-                        numStarsAdded++;
-                    }
+                var packed = getPackedInstances(render, set, (model) -> pack(model, set, hl, desc, sizeFactor));
+                if (packed != null) {
+                    uploadPackedInstances(render, set, packed, false);
                 }
-                // Global (divisor=0) vertices (position, uv)
-                curr.mesh.setVertices(model.vertices, 0, model.numVertices * model.modelVertexSize);
-                // Per instance (divisor=1) vertices
-                int count = numStarsAdded * curr.instanceSize;
-                setCount(render, numStarsAdded);
-                curr.mesh.setInstanceAttribs(model.instanceAttributes, 0, count);
-
-                setInGpu(render, true);
-
+            } else {
+                updateInstances(render, (packed, attributes) -> updateAttributes(packed, attributes, set, hl, desc, sizeFactor));
             }
 
             /*
              * RENDER
              */
-            curr = meshes.get(getOffset(render));
+            int offset = getOffset(render);
+            curr = offset >= 0 ? meshes.get(offset) : null;
             if (curr != null) {
+                var model = models.get(offset);
                 if (triComponent.starTex != null) {
                     triComponent.starTex.bind(0);
                 }
@@ -218,7 +172,7 @@ public class VariableSetInstancedRenderer extends InstancedRenderSystem implemen
                 shaderProgram.setUniformf("u_proximityThreshold", (float) set.proximityThreshold);
 
                 try {
-                    curr.mesh.render(shaderProgram, GL20.GL_TRIANGLES, 0, model.numVertices, getCount(render));
+                    curr.mesh.render(shaderProgram, GL20.GL_TRIANGLES, 0, model.numVertices, getResidentCount(render));
                 } catch (IllegalArgumentException e) {
                     logger.error(e, "Render exception");
                 }
@@ -228,6 +182,107 @@ public class VariableSetInstancedRenderer extends InstancedRenderSystem implemen
         }
     }
 
+    /**
+     * Packs the instance attributes of the given variable star set. Runs on a worker thread. All stars with a finite
+     * size get an instance, so that filter and visibility changes can be applied in place. Hidden stars get a negative
+     * number of variability points.
+     */
+    private PackedInstances pack(InstancedModel model,
+                                 StarSet set,
+                                 Highlight hl,
+                                 DatasetDescription desc,
+                                 float sizeFactor) {
+        final int n = set.data().size();
+        final int instanceSize = model.instanceSize;
+        model.ensureInstanceAttribsSize(n * instanceSize);
+        final float[] attributes = model.instanceAttributes;
+        final int[] rows = new int[n];
+        int instanceIdx = 0;
+        int numStarsAdded = 0;
+
+        for (int i = 0; i < n; i++) {
+            VariableRecord particle = (VariableRecord) set.get(i);
+            if (!Double.isFinite(particle.size())) {
+                logger.debug("Star " + particle.id() + " has a non-finite size");
+                continue;
+            }
+
+            // VARIABLE STARS (times)
+            for (int k = 0; k < particle.nVari; k++) {
+                attributes[instanceIdx + model.variTimesOffset + k] = (float) particle.variTime(k);
+            }
+
+            // PROPER MOTION [u/yr]
+            attributes[instanceIdx + model.properMotionOffset] = (float) particle.pmx();
+            attributes[instanceIdx + model.properMotionOffset + 1] = (float) particle.pmy();
+            attributes[instanceIdx + model.properMotionOffset + 2] = (float) particle.pmz();
+
+            // STAR POSITION [u]
+            attributes[instanceIdx + model.particlePosOffset] = (float) particle.x();
+            attributes[instanceIdx + model.particlePosOffset + 1] = (float) particle.y();
+            attributes[instanceIdx + model.particlePosOffset + 2] = (float) particle.z();
+
+            rows[numStarsAdded] = i;
+            instanceIdx += instanceSize;
+            numStarsAdded++;
+        }
+        var packed = new PackedInstances(model, attributes, numStarsAdded, rows);
+        updateAttributes(packed, ParticleSet.ATTR_COLOR | ParticleSet.ATTR_SIZE | ParticleSet.ATTR_VISIBILITY, set, hl, desc, sizeFactor);
+        return packed;
+    }
+
+    /**
+     * Rewrites the given attributes of the packed instances of a variable star set in place. Runs on a worker thread.
+     * The sizes are the variability magnitudes, and the visibility is stored in the sign of the number of variability points.
+     */
+    private void updateAttributes(PackedInstances packed,
+                                  int attributes,
+                                  StarSet set,
+                                  Highlight hl,
+                                  DatasetDescription desc,
+                                  float sizeFactor) {
+        final var utils = new ParticleUtils();
+        final var model = packed.model;
+        final float[] data = packed.attributes;
+        final boolean color = (attributes & ParticleSet.ATTR_COLOR) != 0;
+        final boolean size = (attributes & ParticleSet.ATTR_SIZE) != 0;
+        final boolean visibility = (attributes & ParticleSet.ATTR_VISIBILITY) != 0;
+        final boolean hlCmap = hl.isHighlighted() && !hl.isHlplain();
+        int instanceIdx = 0;
+
+        for (int row = 0; row < packed.count; row++) {
+            final int i = packed.rows[row];
+            VariableRecord particle = (VariableRecord) set.get(i);
+
+            // COLOR
+            if (color) {
+                if (hlCmap) {
+                    // Color map
+                    double[] c = cmap.colormap(hl.getHlcmi(), hl.getHlcma().getNumber(particle), hl.getHlcmmin(), hl.getHlcmmax());
+                    data[instanceIdx + model.colorOffset] = Color.toFloatBits((float) c[0], (float) c[1], (float) c[2], hl.getHlcmAlpha());
+                } else {
+                    // Plain
+                    data[instanceIdx + model.colorOffset] = utils.saturateColor(i, set, hl);
+                }
+            }
+
+            // VARIABLE STARS (magnitudes)
+            if (size) {
+                for (int k = 0; k < particle.nVari; k++) {
+                    data[instanceIdx + model.variMagsOffset + k] = (float) (particle.variMag(k) * Constants.STAR_SIZE_FACTOR) * sizeFactor;
+                }
+            }
+
+            // VISIBILITY, negative number of points if hidden
+            if (visibility) {
+                boolean visible = utils.filter(i, set, desc) && set.isVisible(i);
+                data[instanceIdx + model.nVariOffset] = visible ? particle.nVari : -1 - particle.nVari;
+            }
+
+            instanceIdx += model.instanceSize;
+        }
+    }
+
     protected void setInGpu(IRenderable renderable,
                             boolean state) {
         if (inGpu != null) {
@@ -268,14 +323,16 @@ public class VariableSetInstancedRenderer extends InstancedRenderSystem implemen
                 triComponent.touchStarParameters(getShaderProgram());
             }
             case GPU_DISPOSE_VARIABLE_GROUP -> {
-                IRenderable renderable = (IRenderable) source;
-                int offset = getOffset(renderable);
-                if (offset >= 0) {
-                    clearMeshData(offset);
-                    models.set(offset, null);
-                    inGpu.remove(renderable);
+                var render = (Render) source;
+                var set = Mapper.starSet.get(render.entity);
+                if (set == null || set.disposed) {
+                    disposeInstances(render);
+                } else {
+                    // Keep rendering the current mesh until the new data is packed and uploaded.
+                    invalidateInstances(render);
                 }
             }
+            case GPU_UPDATE_VARIABLE_GROUP -> requestInstanceUpdate((IRenderable) source, (Integer) data[0]);
             case BILLBOARD_TEXTURE_IDX_CMD ->
                     GaiaSky.postRunnable(() -> triComponent.setStarTexture(Settings.settings.scene.star.getStarTexture()));
             default -> {
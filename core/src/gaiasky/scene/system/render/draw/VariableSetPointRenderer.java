@@ -66,7 +66,7 @@ public class VariableSetPointRenderer extends ImmediateModeRenderSystem implemen
         utils = new ParticleUtils();
         setStarTexture(Settings.settings.scene.star.getStarTexture());
 
-        EventManager.instance.subscribe(this, Event.STAR_BASE_LEVEL_CMD, Event.GPU_DISPOSE_VARIABLE_GROUP, Event.BILLBOARD_TEXTURE_IDX_CMD);
+        EventManager.instance.subscribe(this, Event.STAR_BASE_LEVEL_CMD, Event.GPU_DISPOSE_VARIABLE_GROUP, Event.GPU_UPDATE_VARIABLE_GROUP, Event.BILLBOARD_TEXTURE_IDX_CMD);
     }
 
     public void setStarTexture(String starTexture) {
@@ -150,7 +150,7 @@ public class VariableSetPointRenderer extends ImmediateModeRenderSystem implemen
                             int offset = addMeshData(n);
                             setOffset(render, offset);
                             curr = meshes.get(offset);
-                            ensureTempVertsSize(n * curr.vertexSize);
+                            final float[] verts = new float[n * curr.vertexSize];
                             int numAdded = 0;
                             for (int i = 0; i < n; i++) {
                                 if (utils.filter(i, set, desc) && set.isVisible(i)) {
@@ -163,40 +163,40 @@ public class VariableSetPointRenderer extends ImmediateModeRenderSystem implemen
                                     if (hlCmap) {
                                         // Color map
                                         double[] color = cmap.colormap(hl.getHlcmi(), hl.getHlcma().getNumber(particle), hl.getHlcmmin(), hl.getHlcmmax());
-                                        tempVerts[curr.vertexIdx + curr.colorOffset] = Color.toFloatBits((float) color[0], (float) color[1], (float) color[2], hl.getHlcmAlpha());
+                                        verts[curr.vertexIdx + curr.colorOffset] = Color.toFloatBits((float) color[0], (float) color[1], (float) color[2], hl.getHlcmAlpha());
                                     } else {
                                         // Plain
-                                        tempVerts[curr.vertexIdx + curr.colorOffset] = utils.getColor(i, set, hl);
+                                        verts[curr.vertexIdx + curr.colorOffset] = utils.getColor(i, set, hl);
                                     }
 
                                     // VARIABLE STARS (magnitudes and times)
-                                    tempVerts[curr.vertexIdx + nVariOffset] = particle.nVari;
+                                    verts[curr.vertexIdx + nVariOffset] = particle.nVari;
                                     for (int k = 0; k < particle.nVari; k++) {
                                         if (hl.isHlAllVisible() && hl.isHighlighted()) {
-                                            tempVerts[curr.vertexIdx + variMagsOffset + k] = FastMath.max(10f, (float) (particle.variMag(k) * Constants.STAR_SIZE_FACTOR) * sizeFactor);
+                                            verts[curr.vertexIdx + variMagsOffset + k] = FastMath.max(10f, (float) (particle.variMag(k) * Constants.STAR_SIZE_FACTOR) * sizeFactor);
                                         } else {
-                                            tempVerts[curr.vertexIdx + variMagsOffset + k] = (float) (particle.variMag(k) * Constants.STAR_SIZE_FACTOR) * sizeFactor;
+                                            verts[curr.vertexIdx + variMagsOffset + k] = (float) (particle.variMag(k) * Constants.STAR_SIZE_FACTOR) * sizeFactor;
                                         }
-                                        tempVerts[curr.vertexIdx + variTimesOffset + k] = (float) particle.variTime(k);
+                                        verts[curr.vertexIdx + variTimesOffset + k] = (float) particle.variTime(k);
                                     }
 
                                     // POSITION [u]
-                                    tempVerts[curr.vertexIdx] = (float) particle.x();
-                                    tempVerts[curr.vertexIdx + 1] = (float) particle.y();
-                                    tempVerts[curr.vertexIdx + 2] = (float) particle.z();
+                                    verts[curr.vertexIdx] = (float) particle.x();
+                                    verts[curr.vertexIdx + 1] = (float) particle.y();
+                                    verts[curr.vertexIdx + 2] = (float) particle.z();
 
                                     // PROPER MOTION [u/yr]
-                                    tempVerts[curr.vertexIdx + pmOffset] = (float) particle.pmx();
-                                    tempVerts[curr.vertexIdx + pmOffset + 1] = (float) particle.pmy();
-                                    tempVerts[curr.vertexIdx + pmOffset + 2] = (float) particle.pmz();
+                                    verts[curr.vertexIdx + pmOffset] = (float) particle.pmx();
+                                    verts[curr.vertexIdx + pmOffset + 1] = (float) particle.pmy();
+                                    verts[curr.vertexIdx + pmOffset + 2] = (float) particle.pmz();
 
                                     curr.vertexIdx += curr.vertexSize;
                                     numAdded++;
                                 }
                             }
-                            int count = numAdded * curr.vertexSize;
-                            setCount(render, count);
-                            curr.mesh.setVertices(tempVerts, 0, count);
+                            setCount(render, numAdded);
+                            // Upload over the next frames, drawing the resident vertices meanwhile.
+                            scheduleVertexUpload(curr, verts, numAdded);
 
                             setInGpu(render, true);
 
@@ -238,7 +238,7 @@ public class VariableSetPointRenderer extends ImmediateModeRenderSystem implemen
                             shaderProgram.setUniformf("u_proximityThreshold", (float) set.proximityThreshold);
 
                             try {
-                                curr.mesh.render(shaderProgram, GL20.GL_POINTS);
+                                curr.mesh.render(shaderProgram, GL20.GL_POINTS, 0, getResident(curr, getCount(render)));
                             } catch (IllegalArgumentException e) {
                                 logger.error("Render exception");
                             }
@@ -290,7 +290,7 @@ public class VariableSetPointRenderer extends ImmediateModeRenderSystem implemen
     public void notify(final Event event, Object source, final Object... data) {
         switch (event) {
             case STAR_BASE_LEVEL_CMD -> opacityLimits[0] = (float) data[0];
-            case GPU_DISPOSE_VARIABLE_GROUP -> {
+            case GPU_DISPOSE_VARIABLE_GROUP, GPU_UPDATE_VARIABLE_GROUP -> {
                 IRenderable renderable = (IRenderable) source;
                 int offset = getOffset(renderable);
                 if (offset >= 0) {
@@ -14,6 +14,7 @@ import com.badlogic.gdx.math.MathUtils;
 import gaiasky.GaiaSky;
 import gaiasky.render.ComponentTypes;
 import gaiasky.render.ComponentTypes.ComponentType;
+import gaiasky.render.RenderGroup;
 import gaiasky.render.system.LineRenderSystem;
 import gaiasky.scene.Mapper;
 import gaiasky.scene.api.IParticleRecord;
@@ -74,23 +75,29 @@ public class LineEntityRenderSystem {
         renderer.addLine(lineView, vr.beamP1.x, vr.beamP1.y, vr.beamP1.z, vr.beamP2.x, vr.beamP2.y, vr.beamP2.z, p1c[0], p1c[1], p1c[2], p1c[3], p2c[0], p2c[1], p2c[2], p2c[3]);
     }
 
+    /**
+     * Renders a polyline. The geometry of polylines in the {@link RenderGroup#LINE_GPU} render group is retained in the GPU,
+     * so only their arrow caps are rendered here.
+     */
     public void renderPolyline(Entity entity, LinePrimitiveRenderer renderer, ICamera camera, float alpha) {
         // Render line CPU
         float[] cc = lineView.body.color;
         alpha *= cc[3];
         var verts = lineView.verts;
         if (verts.pointCloudData != null && verts.pointCloudData.getNumPoints() > 1) {
-            var graph = Mapper.graph.get(entity);
+            if (verts.renderGroup != RenderGroup.LINE_GPU) {
+                var graph = Mapper.graph.get(entity);
 
-            Vector3d prev = D31;
+                Vector3d prev = D31;
 
-            for (int i = 0; i < verts.pointCloudData.getNumPoints(); i++) {
-                verts.pointCloudData.loadPoint(prev, i);
-                prev.add(graph.translation);
-                renderer.addPoint(lineView, (float) prev.x, (float) prev.y, (float) prev.z, cc[0], cc[1], cc[2], alpha);
+                for (int i = 0; i < verts.pointCloudData.getNumPoints(); i++) {
+                    verts.pointCloudData.loadPoint(prev, i);
+                    prev.add(graph.translation);
+                    renderer.addPoint(lineView, (float) prev.x, (float) prev.y, (float) prev.z, cc[0], cc[1], cc[2], alpha);
 
+                }
+                renderer.breakLine();
             }
-            renderer.breakLine();
 
             // Render cap if needed
             var arrow = Mapper.arrow.get(entity);
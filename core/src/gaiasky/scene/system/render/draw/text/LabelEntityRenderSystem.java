@@ -49,9 +49,26 @@ public class LabelEntityRenderSystem {
     private final Vector3 F32 = new Vector3();
     private final Vector3b B31 = new Vector3b();
 
+    /** Screen-space grid to cull overlapping labels, shared by all label renderers. **/
+    private static final LabelOverlapGrid overlapGrid = new LabelOverlapGrid();
+
     public LabelEntityRenderSystem() {
     }
 
+    /**
+     * Starts a new label pass for the overlap culling. Must be called before rendering the labels of each view.
+     *
+     * @param width  The width of the view, in pixels.
+     * @param height The height of the view, in pixels.
+     */
+    public static void beginLabelPass(int width, int height) {
+        overlapGrid.begin(width, height, Settings.settings.scene.label.maxLabels);
+    }
+
+    public static LabelOverlapGrid getOverlapGrid() {
+        return overlapGrid;
+    }
+
     public void renderLocation(LabelView view, ExtSpriteBatch batch, ExtShaderProgram shader, FontRenderSystem sys, RenderingContext rc, ICamera camera) {
         var body = view.body;
         var graph = view.graph;
@@ -72,7 +89,7 @@ public class LabelEntityRenderSystem {
         shader.setUniformf("u_viewAngle", view.label.forceLabel ? 2f : (float) (body.solidAngleApparent * scaffolding.locVaMultiplier * Constants.U_TO_KM));
         shader.setUniformf("u_viewAnglePow", 1f);
         shader.setUniformf("u_thLabel", view.label.forceLabel ? 1f : scaffolding.locThresholdLabel / (float) Constants.DISTANCE_SCALE_FACTOR);
-        render3DLabel(view, batch, shader, ((TextRenderer) sys).fontDistanceField, camera, rc, view.text(), labelPosition, body.distToCamera, view.textScale() * camera.getFovFactor(), view.textSize() * camera.getFovFactor(), view.getRadius(), 0.025f, 0.1f, view.label.forceLabel);
+        render3DLabelCulled(view, batch, shader, ((TextRenderer) sys).fontDistanceField, camera, rc, view.text(), labelPosition, body.distToCamera, view.textScale() * camera.getFovFactor(), view.textSize() * camera.getFovFactor(), view.getRadius(), 0.025f, 0.1f, view.label.forceLabel);
     }
 
     public void renderShape(LabelView view, ExtSpriteBatch batch, ExtShaderProgram shader, FontRenderSystem sys, RenderingContext rc, ICamera camera) {
@@ -223,7 +240,7 @@ public class LabelEntityRenderSystem {
         shader.setUniformf("u_viewAnglePow", view.label.forceLabel ? 1f : view.label.solidAnglePow);
         shader.setUniformf("u_thLabel", view.label.forceLabel ? 1f : (float) view.sa.thresholdLabel / view.label.labelBias);
 
-        render3DLabel(view, batch, shader, ((TextRenderer) sys).fontDistanceField, camera, rc, view.text(), pos, view.body.distToCamera, view.textScale() * camera.getFovFactor(), view.textSize() * camera.getFovFactor(), view.getRadius(), view.label.forceLabel);
+        render3DLabelCulled(view, batch, shader, ((TextRenderer) sys).fontDistanceField, camera, rc, view.text(), pos, view.body.distToCamera, view.textScale() * camera.getFovFactor(), view.textSize() * camera.getFovFactor(), view.getRadius(), -1, -1, view.label.forceLabel);
     }
 
     public void renderCluster(LabelView view, ExtSpriteBatch batch, ExtShaderProgram shader, FontRenderSystem sys, RenderingContext rc, ICamera camera) {
@@ -266,6 +283,10 @@ public class LabelEntityRenderSystem {
             var pointData = view.particleSet.pointData;
             int n = FastMath.min(pointData.size(), view.particleSet.numLabels);
             for (int i = 0; i < n; i++) {
+                if (Settings.settings.scene.label.overlapCulling && overlapGrid.isFull()) {
+                    // Label cap reached.
+                    break;
+                }
                 if (set.metadata[i] < Double.MAX_VALUE && set.isVisible(i)) {
                     IParticleRecord pb = pointData.get(active[i]);
                     if (pb.names() != null) {
@@ -294,7 +315,7 @@ public class LabelEntityRenderSystem {
                         }
 
                         textSize = (float) FastMath.tan(alpha) * distToCamera * 0.5f;
-                        render3DLabel(view, batch, shader, ((TextRenderer) sys).fontDistanceField, camera, rc, pb.names()[0], labelPosition, distToCamera, view.textScale() * camera.getFovFactor(), textSize * camera.getFovFactor(), view.getRadius(), view.label.forceLabel);
+                        render3DLabelCulled(view, batch, shader, ((TextRenderer) sys).fontDistanceField, camera, rc, pb.names()[0], labelPosition, distToCamera, view.textScale() * camera.getFovFactor(), textSize * camera.getFovFactor(), view.getRadius(), -1, -1, view.label.forceLabel);
                     }
                 }
             }
@@ -354,6 +375,10 @@ public class LabelEntityRenderSystem {
         }
         float solidAngle = (float) (((radius / distToCamera) / camera.getFovFactor()) * Settings.settings.scene.star.brightness * 1.5f);
 
+        if (!forceLabel && Settings.settings.scene.label.overlapCulling && overlapGrid.isFull()) {
+            // Label cap reached, stop here.
+            return false;
+        }
         var visibleCamera = camera.isVisible(solidAngle, starPosition.put(D32), distToCamera);
         if (visibleCamera) {
             if (forceLabel || solidAngle > thresholdLabel) {
@@ -376,7 +401,7 @@ public class LabelEntityRenderSystem {
                 }
 
                 textSize = (float) FastMath.tan(alpha) * distToCamera * 0.5f;
-                return render3DLabel(view, batch, shader, ((TextRenderer) sys).fontDistanceField, camera, rc, star.names()[0], labelPosition, distToCamera, view.textScale() * camera.getFovFactor(), textSize * camera.getFovFactor(), radius, forceLabel);
+                return render3DLabelCulled(view, batch, shader, ((TextRenderer) sys).fontDistanceField, camera, rc, star.names()[0], labelPosition, distToCamera, view.textScale() * camera.getFovFactor(), textSize * camera.getFovFactor(), radius, -1, -1, forceLabel);
             } else {
                 return false;
             }
@@ -624,6 +649,48 @@ public class LabelEntityRenderSystem {
         DecalUtils.drawFont2D(font, batch, rc, label, x, y, scale, align);
     }
 
+    /**
+     * Same as {@link #render3DLabel(LabelView, ExtSpriteBatch, ExtShaderProgram, BitmapFont, ICamera, RenderingContext, String, Vector3d, double, float, double, double, float, float, boolean)},
+     * but the label is first checked against the overlap grid, and skipped if it overlaps a label with higher priority
+     * or the label cap is reached. Skipped labels count as rendered, so that callers keep going.
+     */
+    protected boolean render3DLabelCulled(LabelView view, ExtSpriteBatch batch, ExtShaderProgram shader, BitmapFont font, ICamera camera, RenderingContext rc, String labelText, Vector3d labelPosition, double distToCamera, float scale, double size, double radius, float minSizeDegrees, float maxSizeDegrees, boolean forceLabel) {
+        if (Settings.settings.scene.label.overlapCulling
+                && (forceLabel || radius == 0 || distToCamera > radius * 1.3)
+                && !reserveLabel(font, camera, rc, labelText, labelPosition, size * Settings.settings.scene.label.size, minSizeDegrees, maxSizeDegrees, forceLabel)) {
+            return true;
+        }
+        return render3DLabel(view, batch, shader, font, camera, rc, labelText, labelPosition, distToCamera, scale, size, radius, minSizeDegrees, maxSizeDegrees, forceLabel);
+    }
+
+    /**
+     * Reserves the approximate screen-space box of the given label in the overlap grid.
+     *
+     * @return Whether the label should be drawn.
+     */
+    private boolean reserveLabel(BitmapFont font, ICamera camera, RenderingContext rc, String labelText, Vector3d labelPosition, double size, float minSizeDegrees, float maxSizeDegrees, boolean forceLabel) {
+        var cam = camera.getCamera();
+        var pos = F32.set((float) labelPosition.x, (float) labelPosition.y, (float) labelPosition.z);
+        double dist = labelPosition.len();
+        if (dist <= 0 || cam.direction.dot(pos) <= 0 || rc.isCubemap()) {
+            // Behind the camera, or in a projection where the box can't be estimated this way.
+            return true;
+        }
+        // Same clamping as in DecalUtils#drawFont3D.
+        if (minSizeDegrees > 0) {
+            size = FastMath.max(size, FastMath.tan(Math.toRadians(minSizeDegrees)) * dist);
+        }
+        if (maxSizeDegrees > 0) {
+            size = FastMath.min(size, FastMath.tan(Math.toRadians(maxSizeDegrees)) * dist);
+        }
+        cam.project(pos, 0, 0, rc.w(), rc.h());
+        double pixelsPerUnit = (rc.h() * 0.5) / (FastMath.tan(Math.toRadians(cam.fieldOfView * 0.5)) * dist);
+        float height = (float) (font.getLineHeight() * size * pixelsPerUnit);
+        // Average glyph advance of about half the line height.
+        float width = height * 0.5f * labelText.length();
+        return overlapGrid.reserve(pos.x, pos.y, width, height, forceLabel);
+    }
+
     protected boolean render3DLabel(LabelView view, ExtSpriteBatch batch, ExtShaderProgram shader, BitmapFont font, ICamera camera, RenderingContext rc, String label, Vector3d pos, double distToCamera, float scale, double size, double radius, boolean forceLabel) {
         return render3DLabel(view, batch, shader, font, camera, rc, label, pos, distToCamera, scale, size, radius, -1, -1, forceLabel);
     }
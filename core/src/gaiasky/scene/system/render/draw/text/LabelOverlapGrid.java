@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2023 Gaia Sky - All rights reserved.
+ *  This file is part of Gaia Sky, which is released under the Mozilla Public License 2.0.
+ *  You may use, distribute and modify this code under the terms of MPL2.
+ *  See the file LICENSE.md in the project root for full license details.
+ */
+
+package gaiasky.scene.system.render.draw.text;
+
+import java.util.Arrays;
+
+/**
+ * Screen-space occupancy grid used to cull overlapping labels. Labels must be submitted in priority order. Each label
+ * reserves the cells covered by its screen-space box, and is rejected if any of them is already taken in the current
+ * pass. Cells are marked with the pass number, so starting a new pass is O(1), and each label only visits the few
+ * cells it covers. The grid also caps the number of labels accepted per pass. Forced labels are always accepted,
+ * and they do not count towards the cap. The grid counts the accepted and rejected labels of the last complete pass,
+ * and of all complete passes.
+ */
+public class LabelOverlapGrid {
+    /** Side of each cell, in pixels. **/
+    private static final int CELL_SIZE = 16;
+    /** Labels larger than this many cells per side are always accepted, and do not reserve cells. **/
+    private static final int MAX_CELLS_PER_SIDE = 32;
+
+    private int[] cells = new int[0];
+    private int cols, rows;
+    private int pass = 0;
+    private int maxLabels = -1;
+    private boolean started = false;
+
+    // Counters of the current and last complete passes.
+    private int accepted, rejectedOverlap, rejectedCap;
+    private int lastAccepted, lastRejectedOverlap, lastRejectedCap;
+    // Counters of all complete passes.
+    private long passes, totalAccepted, totalRejectedOverlap, totalRejectedCap;
+
+    /**
+     * Starts a new pass. All cells become free.
+     *
+     * @param width     The width of the screen, in pixels.
+     * @param height    The height of the screen, in pixels.
+     * @param maxLabels The maximum number of non-forced labels accepted in this pass. Zero or negative for no limit.
+     */
+    public void begin(int width, int height, int maxLabels) {
+        if (started) {
+            lastAccepted = accepted;
+            lastRejectedOverlap = rejectedOverlap;
+            lastRejectedCap = rejectedCap;
+            totalAccepted += accepted;
+            totalRejectedOverlap += rejectedOverlap;
+            totalRejectedCap += rejectedCap;
+            passes++;
+        }
+        started = true;
+        accepted = 0;
+        rejectedOverlap = 0;
+        rejectedCap = 0;
+
+        final int c = Math.max(1, (width + CELL_SIZE - 1) / CELL_SIZE);
+        final int r = Math.max(1, (height + CELL_SIZE - 1) / CELL_SIZE);
+        if (c != cols || r != rows) {
+            cols = c;
+            rows = r;
+            cells = new int[cols * rows];
+            pass = 0;
+        }
+        if (++pass == Integer.MAX_VALUE) {
+            Arrays.fill(cells, 0);
+            pass = 1;
+        }
+        this.maxLabels = maxLabels;
+    }
+
+    /**
+     * Checks whether the cap has been reached in this pass.
+     *
+     * @return Whether no more non-forced labels are accepted.
+     */
+    public boolean isFull() {
+        return maxLabels > 0 && accepted >= maxLabels;
+    }
+
+    /**
+     * Tries to reserve the given screen-space box for a label.
+     *
+     * @param x      The left of the box, in pixels.
+     * @param y      The bottom of the box, in pixels.
+     * @param width  The width of the box, in pixels.
+     * @param height The height of the box, in pixels.
+     * @param force  Whether the label is forced. Forced labels are always accepted.
+     *
+     * @return Whether the label is accepted and should be drawn.
+     */
+    public boolean reserve(float x, float y, float width, float height, boolean force) {
+        if (!force && isFull()) {
+            rejectedCap++;
+            return false;
+        }
+        final int c0 = Math.max(0, (int) Math.floor(x / CELL_SIZE));
+        final int r0 = Math.max(0, (int) Math.floor(y / CELL_SIZE));
+        final int c1 = Math.min(cols - 1, (int) Math.floor((x + width) / CELL_SIZE));
+        final int r1 = Math.min(rows - 1, (int) Math.floor((y + height) / CELL_SIZE));
+        if (c1 < c0 || r1 < r0) {
+            // Off-screen, let the renderer deal with it.
+            return true;
+        }
+        if (c1 - c0 >= MAX_CELLS_PER_SIDE || r1 - r0 >= MAX_CELLS_PER_SIDE) {
+            // Very large labels belong to close objects, which are always drawn.
+            if (!force) {
+                accepted++;
+            }
+            return true;
+        }
+        if (!force) {
+            for (int r = r0; r <= r1; r++) {
+                final int row = r * cols;
+                for (int c = c0; c <= c1; c++) {
+                    if (cells[row + c] == pass) {
+                        rejectedOverlap++;
+                        return false;
+                    }
+                }
+            }
+            accepted++;
+        }
+        for (int r = r0; r <= r1; r++) {
+            final int row = r * cols;
+            for (int c = c0; c <= c1; c++) {
+                cells[row + c] = pass;
+            }
+        }
+        return true;
+    }
+
+    /** Number of non-forced labels accepted in the last complete pass. **/
+    public int getLastAccepted() {
+        return lastAccepted;
+    }
+
+    /** Number of labels rejected because they overlapped others in the last complete pass. **/
+    public int getLastRejectedOverlap() {
+        return lastRejectedOverlap;
+    }
+
+    /** Number of labels rejected because of the cap in the last complete pass. **/
+    public int getLastRejectedCap() {
+        return lastRejectedCap;
+    }
+
+    /** Number of complete passes. **/
+    public long getPasses() {
+        return passes;
+    }
+
+    /** Number of non-forced labels accepted in all complete passes. **/
+    public long getTotalAccepted() {
+        return totalAccepted;
+    }
+
+    /** Number of labels rejected because they overlapped others in all complete passes. **/
+    public long getTotalRejectedOverlap() {
+        return totalRejectedOverlap;
+    }
+
+    /** Number of labels rejected because of the cap in all complete passes. **/
+    public long getTotalRejectedCap() {
+        return totalRejectedCap;
+    }
+}
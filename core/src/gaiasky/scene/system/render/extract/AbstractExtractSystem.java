@@ -10,6 +10,7 @@ package gaiasky.scene.system.render.extract;
 import com.badlogic.ashley.core.Entity;
 import com.badlogic.ashley.core.Family;
 import com.badlogic.ashley.systems.IteratingSystem;
+import com.badlogic.ashley.utils.ImmutableArray;
 import gaiasky.GaiaSky;
 import gaiasky.render.RenderGroup;
 import gaiasky.render.api.IRenderable;
@@ -17,20 +18,141 @@ import gaiasky.render.api.ISceneRenderer;
 import gaiasky.scene.camera.ICamera;
 import gaiasky.scene.component.Base;
 import gaiasky.scene.view.LabelView;
+import gaiasky.util.Logger;
+import gaiasky.util.Settings;
+import net.jafama.FastMath;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 public abstract class AbstractExtractSystem extends IteratingSystem {
+    private static final Logger.Log logger = Logger.getLogger(AbstractExtractSystem.class);
+
+    /** Minimum number of entities per chunk when extracting in parallel. **/
+    private static final int MIN_CHUNK_SIZE = 64;
+    /**
+     * Render lists of the chunk that the current worker thread is extracting. This is null
+     * when extraction runs serially, in which case we write directly to the renderer lists.
+     */
+    private static final ThreadLocal<List<List<IRenderable>>> chunkRenderLists = new ThreadLocal<>();
 
     protected final ICamera camera;
     protected ISceneRenderer renderer;
     protected LabelView view;
     protected List<List<IRenderable>> renderLists;
 
+    /** Whether this system can process its entities in parallel. **/
+    private final boolean parallel;
+    /** Per-chunk render lists, indexed by chunk and then by render group ordinal. **/
+    private final List<List<List<IRenderable>>> chunkBuffers;
+    /** Per-chunk extraction tasks. **/
+    private final List<Callable<Integer>> chunkTasks;
+    /** Delta time of the current update cycle, used by the chunk tasks. **/
+    private float chunkDeltaTime;
+
     public AbstractExtractSystem(Family family, int priority) {
+        this(family, priority, false);
+    }
+
+    /**
+     * Creates a new extract system.
+     *
+     * @param family   The family.
+     * @param priority The priority of the system.
+     * @param parallel Whether the entities of this system may be extracted in parallel. Only systems whose
+     *                 {@link #processEntity(Entity, float)} does not mutate shared state other than the render
+     *                 lists (through {@link #addToRender(IRenderable, RenderGroup)} and friends) and the closest
+     *                 objects of the camera (through its <code>checkClosest*</code> methods, which all camera
+     *                 implementations synchronize) should set this.
+     */
+    public AbstractExtractSystem(Family family, int priority, boolean parallel) {
         super(family, priority);
         this.camera = GaiaSky.instance.cameraManager;
         this.view = new LabelView();
+        this.parallel = parallel;
+        this.chunkBuffers = new ArrayList<>();
+        this.chunkTasks = new ArrayList<>();
+    }
+
+    @Override
+    public void update(float deltaTime) {
+        final var entities = getEntities();
+        final int numChunks = getNumChunks(entities.size());
+        if (numChunks <= 1) {
+            super.update(deltaTime);
+            return;
+        }
+
+        prepareChunks(entities, numChunks);
+        chunkDeltaTime = deltaTime;
+        try {
+            List<Future<Integer>> futures = ForkJoinPool.commonPool().invokeAll(chunkTasks.subList(0, numChunks));
+            for (var future : futures) {
+                future.get();
+            }
+        } catch (Exception e) {
+            logger.error(e);
+        }
+        // Merge chunk lists in chunk order, so that the result is the same as in serial extraction.
+        renderer.mergeRenderLists(chunkBuffers, numChunks);
+    }
+
+    /**
+     * Computes the number of chunks to split the given number of entities into. One chunk
+     * means serial extraction.
+     *
+     * @param numEntities The number of entities.
+     *
+     * @return The number of chunks.
+     */
+    private int getNumChunks(int numEntities) {
+        if (!parallel || !Settings.settings.performance.multithreading) {
+            return 1;
+        }
+        return FastMath.min(Settings.settings.performance.getNumberOfThreads(), numEntities / MIN_CHUNK_SIZE);
+    }
+
+    private void prepareChunks(ImmutableArray<Entity> entities, int numChunks) {
+        final int numGroups = renderLists.size();
+        while (chunkBuffers.size() < numChunks) {
+            List<List<IRenderable>> lists = new ArrayList<>(numGroups);
+            for (int i = 0; i < numGroups; i++) {
+                lists.add(new ArrayList<>(20));
+            }
+            chunkBuffers.add(lists);
+        }
+        chunkTasks.clear();
+        final int n = entities.size();
+        for (int chunk = 0; chunk < numChunks; chunk++) {
+            final int from = (int) ((long) chunk * n / numChunks);
+            final int to = (int) ((long) (chunk + 1) * n / numChunks);
+            final var lists = chunkBuffers.get(chunk);
+            chunkTasks.add(() -> {
+                chunkRenderLists.set(lists);
+                try {
+                    for (int i = from; i < to; i++) {
+                        processEntity(entities.get(i), chunkDeltaTime);
+                    }
+                } finally {
+                    chunkRenderLists.remove();
+                }
+                return to - from;
+            });
+        }
+    }
+
+    /**
+     * Gets the render lists to use in the current thread. These are the chunk lists when
+     * extracting in parallel, or the renderer lists otherwise.
+     *
+     * @return The render lists.
+     */
+    private List<List<IRenderable>> getRenderLists() {
+        var lists = chunkRenderLists.get();
+        return lists != null ? lists : renderLists;
     }
 
     public void extract(Entity entity) {
@@ -65,7 +187,7 @@ public abstract class AbstractExtractSystem extends IteratingSystem {
      */
     protected boolean addToRender(IRenderable renderable, RenderGroup rg) {
         try {
-            return renderLists.get(rg.ordinal()).add(renderable);
+            return getRenderLists().get(rg.ordinal()).add(renderable);
         } catch (Exception e) {
             return false;
         }
@@ -80,17 +202,18 @@ public abstract class AbstractExtractSystem extends IteratingSystem {
      * @return True if removed, false otherwise.
      */
     protected boolean removeFromRender(IRenderable renderable, RenderGroup rg) {
-        return renderLists.get(rg.ordinal()).remove(renderable);
+        return getRenderLists().get(rg.ordinal()).remove(renderable);
     }
 
     protected boolean isInRender(IRenderable renderable, RenderGroup rg) {
-        return renderLists.get(rg.ordinal()).contains(renderable);
+        return getRenderLists().get(rg.ordinal()).contains(renderable);
     }
 
     protected boolean isInRender(IRenderable renderable, RenderGroup... rgs) {
+        var lists = getRenderLists();
         boolean is = false;
         for (RenderGroup rg : rgs)
-            is = is || renderLists.get(rg.ordinal()).contains(renderable);
+            is = is || lists.get(rg.ordinal()).contains(renderable);
         return is;
     }
 }
@@ -15,7 +15,7 @@ import gaiasky.scene.Mapper;
 public class LocExtractor extends AbstractExtractSystem {
 
     public LocExtractor(Family family, int priority) {
-        super(family, priority);
+        super(family, priority, true);
     }
 
     @Override
@@ -21,7 +21,7 @@ public class ModelExtractor extends AbstractExtractSystem {
 
     public ModelExtractor(Family family,
                           int priority) {
-        super(family, priority);
+        super(family, priority, true);
     }
 
     @Override
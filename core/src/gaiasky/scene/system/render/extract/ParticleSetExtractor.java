@@ -20,7 +20,7 @@ import net.jafama.FastMath;
 public class ParticleSetExtractor extends AbstractExtractSystem {
     public ParticleSetExtractor(Family family,
                                 int priority) {
-        super(family, priority);
+        super(family, priority, true);
     }
 
     @Override
@@ -28,7 +28,7 @@ public class TrajectoryExtractor extends AbstractExtractSystem {
     private final TrajectoryUtils utils;
 
     public TrajectoryExtractor(Family family, int priority) {
-        super(family, priority);
+        super(family, priority, true);
         this.utils = new TrajectoryUtils();
     }
 
@@ -9,6 +9,7 @@ package gaiasky.scene.system.render.extract;
 
 import com.badlogic.ashley.core.Entity;
 import com.badlogic.ashley.core.Family;
+import gaiasky.render.RenderGroup;
 import gaiasky.scene.Mapper;
 
 public class VertsExtractor extends AbstractExtractSystem {
@@ -25,6 +26,13 @@ public class VertsExtractor extends AbstractExtractSystem {
         if (this.mustRender(base) && verts.pointCloudData != null && verts.pointCloudData.getNumPoints() > 1) {
             var render = Mapper.render.get(entity);
             addToRender(render, verts.renderGroup);
+
+            // The geometry of GPU polylines is retained, but their arrow caps depend on the camera, so they are
+            // added to the CPU line renderer, which only draws the caps for them.
+            var arrow = Mapper.arrow.get(entity);
+            if (verts.renderGroup == RenderGroup.LINE_GPU && arrow != null && arrow.arrowCap && Mapper.line.has(entity)) {
+                addToRender(render, RenderGroup.LINE);
+            }
         }
     }
 }
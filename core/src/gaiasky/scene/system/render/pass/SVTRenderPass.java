@@ -264,14 +264,14 @@ public class SVTRenderPass extends RenderPass {
     }
 
     /**
-     * Third stage: use SVT manager to update the observed tiles queue using the tile detection buffer.
+     * Third stage: hand the tile detection buffer to the SVT manager, which decodes it in a worker thread.
      */
     private void stage3() {
         if (!pixelsReady.get()) {
             return;
         }
 
-        svtManager.updateObservedTiles(pixels);
+        svtManager.updateObservedTiles(pixels, frameBuffer.getWidth());
 
         // Flip pixels flag.
         pixelsReady.set(false);
@@ -56,16 +56,16 @@ public class KeyframeUpdater extends AbstractUpdateSystem {
             Vector3d p1 = D32;
             view.setEntity(vo);
             PointCloudData p = view.getPointCloud();
-            p0.set(p.x.get(0), p.y.get(0), p.z.get(0));
-            p1.set(p.x.get(1), p.y.get(1), p.z.get(1));
+            p.loadPoint(p0, 0);
+            p.loadPoint(p1, 1);
 
             Vector3d c = D33.set(camera.getPos());
             double len = FastMath.max(1e-9, FastMath.atan(0.03) * c.dst(p0));
 
             Vector3d v = c.set(p1).sub(p0).nor().scl(len);
-            p.x.set(1, p0.x + v.x);
-            p.y.set(1, p0.y + v.y);
-            p.z.set(1, p0.z + v.z);
+            p.setX(1, p0.x + v.x);
+            p.setY(1, p0.y + v.y);
+            p.setZ(1, p0.z + v.z);
 
             view.markForUpdate();
         }
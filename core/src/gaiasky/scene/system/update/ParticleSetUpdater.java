@@ -18,16 +18,44 @@ import gaiasky.scene.component.ParticleSet;
 import gaiasky.scene.component.StarSet;
 import gaiasky.scene.entity.ParticleUtils;
 import gaiasky.scene.view.FocusView;
+import gaiasky.util.Constants;
 import gaiasky.util.Nature;
 import gaiasky.util.coord.AstroUtils;
+import gaiasky.util.math.Vector3d;
 import net.jafama.FastMath;
 
 import java.nio.file.Files;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
 
 public class ParticleSetUpdater extends AbstractUpdateSystem {
+    /** Number of candidates taken from the k-nearest query per proximity record, before ranking. **/
+    private static final int CANDIDATES_PER_RECORD = 4;
 
     private final ParticleUtils utils;
 
+    /**
+     * Indices of the particles ranked first for the proximity records, and their ranking keys. During a query, they
+     * are a bounded max-heap by key, so that the worst particle is on top. After it, they are sorted, best first.
+     **/
+    private int[] nearestIndices = new int[Constants.N_DIR_LIGHTS];
+    private double[] nearestKeys = new double[Constants.N_DIR_LIGHTS];
+    private int heapSize, heapCapacity;
+    /** Candidates found with a k-nearest query, when the particles of the previous update are not usable. **/
+    private int[] candidates = new int[Constants.N_DIR_LIGHTS * CANDIDATES_PER_RECORD];
+    private double[] candidateDistances = new double[candidates.length];
+    /** State of the current query, used by {@link #offer(int)}. **/
+    private ICamera rankCamera;
+    private ParticleSet rankSet;
+    private IntPredicate rankFilter;
+    private boolean rankApparentSize;
+    private final IntConsumer offerCandidate = this::offer;
+    private final Vector3d camPos = new Vector3d();
+    /** Accepts the particles of the current set that pass the filter of their dataset and are visible. **/
+    private final IntPredicate closeStarFilter = i -> utils.filter(i, filterSet, filterDataset) && filterSet.isVisible(i);
+    private ParticleSet filterSet;
+    private DatasetDescription filterDataset;
+
     public ParticleSetUpdater(Family family,
                               int priority) {
         super(family, priority);
@@ -46,19 +74,28 @@ public class ParticleSetUpdater extends AbstractUpdateSystem {
         var camera = GaiaSky.instance.cameraManager;
         var set = Mapper.particleSet.has(entity) ? Mapper.particleSet.get(entity) : Mapper.starSet.get(entity);
         if (set != null) {
-            updateCommon(camera, set);
+            var datasetDesc = Mapper.datasetDescription.get(entity);
+            updateCommon(camera, set, datasetDesc);
             if (set instanceof StarSet ss) {
-                updateStarSet(camera, ss, Mapper.datasetDescription.get(entity));
+                updateStarSet(camera, ss, datasetDesc);
             } else {
                 updateParticleSet(camera, set);
             }
         }
     }
 
-    private void updateCommon(ICamera camera, ParticleSet set) {
+    private void updateCommon(ICamera camera,
+                              ParticleSet set,
+                              DatasetDescription datasetDesc) {
         // Update proximity loading.
-        if (set.proximityLoadingFlag) {
-            int idxNearest = set.active[0];
+        if (set.proximityLoadingFlag && set.active != null && set.active.length > 0 && set.pointData != null) {
+            filterSet = set;
+            filterDataset = datasetDesc;
+            camera.getPos().put(camPos);
+            if (closest(camera, set, 1, closeStarFilter) == 0) {
+                return;
+            }
+            int idxNearest = nearestIndices[0];
             var bean = set.pointData.get(idxNearest);
             if (bean != null) {
                 var sa = set.getSolidAngleApparent(idxNearest);
@@ -122,22 +159,234 @@ public class ParticleSetUpdater extends AbstractUpdateSystem {
         if (set.active != null && set.active.length > 0 && set.pointData != null) {
             updateParticleSet(camera, set);
 
-            // Update close stars
-            int j = 0;
-            for (int i = 0; i < FastMath.min(set.proximity.updating.length, set.pointData.size()); i++) {
-                if (utils.filter(set.active[i], set, datasetDesc)
-                        && set.isVisible(set.active[i])) {
-                    IParticleRecord closeStar = set.pointData.get(set.active[i]);
-                    set.proximity.set(j, set.active[i], closeStar, camera, set.currDeltaYears);
-                    camera.checkClosestParticle(set.proximity.updating[j]);
-
-                    // Model distance
-                    if (j == 0) {
-                        set.modelDist = 172.4643429 * closeStar.radius();
+            // Update close stars.
+            int size = FastMath.min(set.proximity.updating.length, set.pointData.size());
+            filterSet = set;
+            filterDataset = datasetDesc;
+            camera.getPos().put(camPos);
+            int n = closest(camera, set, size, closeStarFilter);
+            for (int j = 0; j < n; j++) {
+                int i = nearestIndices[j];
+                IParticleRecord closeStar = set.pointData.get(i);
+                set.proximity.set(j, i, closeStar, camera, set.currDeltaYears);
+                camera.checkClosestParticle(set.proximity.updating[j]);
+
+                // Model distance
+                if (j == 0) {
+                    set.modelDist = 172.4643429 * closeStar.radius();
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the particles of the set ranked first by the same key as the background sorter of the set, which is the
+     * apparent size for stars and extended particles, and the distance for the rest. The candidates are the first
+     * particles of the sorted indices, plus, if the spatial index of the set is ready, the particles around the camera,
+     * so that particles that got close since the last sort are not missed. The particles around the camera come from
+     * a radius query bounded by the particles found in the previous update, or from a k-nearest query if these are not
+     * usable. The candidates go through a bounded max-heap by key, and their indices end up in
+     * {@link #nearestIndices}, best first. The camera position must be in {@link #camPos}.
+     *
+     * @param camera The camera.
+     * @param set    The set.
+     * @param k      The maximum number of particles to find.
+     * @param filter Accepts the particles to consider.
+     *
+     * @return The number of particles found.
+     */
+    private int closest(ICamera camera,
+                        ParticleSet set,
+                        int k,
+                        IntPredicate filter) {
+        if (nearestIndices.length < k) {
+            nearestIndices = new int[k];
+            nearestKeys = new double[k];
+        }
+        rankCamera = camera;
+        rankSet = set;
+        rankFilter = filter;
+        rankApparentSize = set instanceof StarSet || set.isExtended;
+        heapCapacity = k;
+        heapSize = 0;
+
+        var affine = set.entity != null ? Mapper.affine.get(set.entity) : null;
+        if (affine == null || affine.isEmpty()) {
+            // Only build the index of the sets that hold the closest particle, or the focus.
+            var bvh = set.getSpatialIndex(isCloseSet(camera, set));
+            if (bvh != null) {
+                final double radius = previousBound(set, k, filter);
+                if (radius < Double.POSITIVE_INFINITY) {
+                    bvh.within(camPos, radius, set.currDeltaYears, offerCandidate);
+                } else {
+                    final int maxCandidates = k * CANDIDATES_PER_RECORD;
+                    if (candidates.length < maxCandidates) {
+                        candidates = new int[maxCandidates];
+                        candidateDistances = new double[maxCandidates];
+                    }
+                    final int n = bvh.nearest(camPos, maxCandidates, Double.POSITIVE_INFINITY, set.currDeltaYears, filter,
+                                              candidates, candidateDistances);
+                    for (int c = 0; c < n; c++) {
+                        offer(candidates[c]);
                     }
-                    j++;
                 }
             }
         }
+        final int numSorted = FastMath.min(k, set.active.length);
+        for (int s = 0; s < numSorted; s++) {
+            offer(set.active[s]);
+        }
+
+        // Sort the heap in place, best first.
+        for (int n = heapSize - 1; n > 0; n--) {
+            swap(0, n);
+            siftDown(0, n);
+        }
+        rankCamera = null;
+        rankSet = null;
+        rankFilter = null;
+        return heapSize;
+    }
+
+    /**
+     * Offers a candidate to the heap of the current query. Candidates that do not pass the filter, that are worse
+     * than the top of a full heap, or that are already in the heap are discarded.
+     */
+    private void offer(int i) {
+        if (i < 0 || i >= rankSet.pointData.size() || !rankFilter.test(i)) {
+            return;
+        }
+        final double key = rankKey(rankCamera, rankSet, i, rankApparentSize);
+        if (heapSize == heapCapacity && key >= nearestKeys[0]) {
+            return;
+        }
+        for (int c = 0; c < heapSize; c++) {
+            if (nearestIndices[c] == i) {
+                return;
+            }
+        }
+        if (heapSize < heapCapacity) {
+            nearestIndices[heapSize] = i;
+            nearestKeys[heapSize] = key;
+            int c = heapSize++;
+            while (c > 0) {
+                final int parent = (c - 1) / 2;
+                if (nearestKeys[parent] >= nearestKeys[c]) {
+                    break;
+                }
+                swap(parent, c);
+                c = parent;
+            }
+        } else {
+            nearestIndices[0] = i;
+            nearestKeys[0] = key;
+            siftDown(0, heapSize);
+        }
+    }
+
+    private void siftDown(int i,
+                          int n) {
+        while (true) {
+            final int left = 2 * i + 1;
+            if (left >= n) {
+                return;
+            }
+            int worst = left;
+            if (left + 1 < n && nearestKeys[left + 1] > nearestKeys[left]) {
+                worst = left + 1;
+            }
+            if (nearestKeys[i] >= nearestKeys[worst]) {
+                return;
+            }
+            swap(i, worst);
+            i = worst;
+        }
+    }
+
+    private void swap(int i,
+                      int j) {
+        final int index = nearestIndices[i];
+        nearestIndices[i] = nearestIndices[j];
+        nearestIndices[j] = index;
+        final double key = nearestKeys[i];
+        nearestKeys[i] = nearestKeys[j];
+        nearestKeys[j] = key;
+    }
+
+    /**
+     * Gets the distance from the camera to the farthest of the particles found for the set in the previous update, at
+     * the current camera position and time. Only a few particles get in or out of the first ones between updates, so
+     * this is a good radius for the query around the camera. When the particles are ranked by distance, no particle
+     * out of this radius can be ranked before the particles in it. When they are ranked by apparent size, the large
+     * particles farther away come from the sorted indices.
+     *
+     * @return The distance, or infinity if the particles of the previous update are not usable.
+     */
+    private double previousBound(ParticleSet set,
+                                 int k,
+                                 IntPredicate filter) {
+        var records = set.proximity != null ? set.proximity.updating : null;
+        if (records == null || k <= 0 || records.length < k) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double bound2 = 0;
+        for (int j = 0; j < k; j++) {
+            var record = records[j];
+            if (record == null || record.index < 0 || record.index >= set.pointData.size() || !filter.test(record.index)) {
+                return Double.POSITIVE_INFINITY;
+            }
+            for (int l = 0; l < j; l++) {
+                if (records[l].index == record.index) {
+                    return Double.POSITIVE_INFINITY;
+                }
+            }
+            var pb = set.pointData.get(record.index);
+            double x = pb.x() - camPos.x, y = pb.y() - camPos.y, z = pb.z() - camPos.z;
+            if (pb.hasProperMotion()) {
+                x += pb.pmx() * set.currDeltaYears;
+                y += pb.pmy() * set.currDeltaYears;
+                z += pb.pmz() * set.currDeltaYears;
+            }
+            bound2 = FastMath.max(bound2, x * x + y * y + z * z);
+        }
+        // Some slack for the rounding errors.
+        return FastMath.sqrt(bound2) * (1 + 1e-9);
+    }
+
+    /**
+     * Computes the sorting key of a particle, as in the background sorter of the set. Lower keys go first.
+     */
+    private double rankKey(ICamera camera,
+                           ParticleSet set,
+                           int i,
+                           boolean apparentSize) {
+        var pb = set.pointData.get(i);
+        double x = pb.x() - camPos.x, y = pb.y() - camPos.y, z = pb.z() - camPos.z;
+        if (!apparentSize) {
+            return x * x + y * y + z * z;
+        }
+        x += pb.pmx() * set.currDeltaYears;
+        y += pb.pmy() * set.currDeltaYears;
+        z += pb.pmz() * set.currDeltaYears;
+        return -(pb.size() / (x * x + y * y + z * z)) / camera.getFovFactor();
+    }
+
+    /**
+     * Checks whether the set holds the focus or the particle closest to the camera in the last update.
+     */
+    private boolean isCloseSet(ICamera camera,
+                               ParticleSet set) {
+        if (camera.getFocus() instanceof FocusView view && view.getSet() == set) {
+            return true;
+        }
+        var closest = camera.getClosestParticle();
+        if (closest != null && set.proximity != null) {
+            for (var record : set.proximity.updating) {
+                if (record == closest) {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 }
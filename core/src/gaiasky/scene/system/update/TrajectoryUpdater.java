@@ -58,8 +58,8 @@ public class TrajectoryUpdater extends AbstractUpdateSystem {
         if (verts.pointCloudData != null) {
             if (verts.pointCloudData.hasTime()) {
                 long now = time.getTime().toEpochMilli();
-                long t0 = verts.pointCloudData.time.get(0).toEpochMilli();
-                long t1 = verts.pointCloudData.time.get(verts.pointCloudData.getNumPoints() - 1).toEpochMilli();
+                long t0 = verts.pointCloudData.getTimeMs(0);
+                long t1 = verts.pointCloudData.getTimeMs(verts.pointCloudData.getNumPoints() - 1);
 
                 long t1t0 = t1 - t0;
                 long nowt0 = (now - t0) % t1t0;
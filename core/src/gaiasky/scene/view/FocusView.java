@@ -1090,12 +1090,27 @@ public class FocusView extends BaseView implements IFocus, IVisibilitySwitch {
      * Marks the element for update in VRAM.
      */
     public void markForUpdate() {
+        markForUpdate(-1);
+    }
+
+    /**
+     * Marks the element for update in VRAM. Particle sets only update the given attributes, if their
+     * renderer supports it.
+     *
+     * @param attributes The attributes to update, as a combination of the <code>ParticleSet.ATTR_*</code> flags,
+     *                   or -1 to update everything.
+     */
+    public void markForUpdate(int attributes) {
         if (!isValid()) {
             return;
         }
         var set = getSet();
         if (set != null) {
-            set.markForUpdate(Mapper.render.get(entity));
+            if (attributes < 0) {
+                set.markForUpdate(Mapper.render.get(entity));
+            } else {
+                set.markForUpdate(Mapper.render.get(entity), attributes);
+            }
         }
         if (Mapper.orbitElementsSet.has(entity)) {
             Mapper.orbitElementsSet.get(entity).markForUpdate(Mapper.render.get(entity));
@@ -1116,7 +1131,8 @@ public class FocusView extends BaseView implements IFocus, IVisibilitySwitch {
                           float[] color,
                           boolean allVisible) {
         initHighlight();
-        markForUpdate();
+        // Highlighting (and the dataset filter, re-applied through it) only affects these attributes.
+        markForUpdate(ParticleSet.ATTR_COLOR | ParticleSet.ATTR_SIZE | ParticleSet.ATTR_VISIBILITY);
 
         // Set highlight properties.
         this.hl.highlighted = state;
@@ -1157,7 +1173,8 @@ public class FocusView extends BaseView implements IFocus, IVisibilitySwitch {
                           double cmMax,
                           boolean allVisible) {
         initHighlight();
-        markForUpdate();
+        // Highlighting (and the dataset filter, re-applied through it) only affects these attributes.
+        markForUpdate(ParticleSet.ATTR_COLOR | ParticleSet.ATTR_SIZE | ParticleSet.ATTR_VISIBILITY);
 
         hl.highlighted = state;
         if (state) {
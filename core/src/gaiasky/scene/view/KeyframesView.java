@@ -160,13 +160,13 @@ public class KeyframesView extends BaseView {
         synchronized (verts) {
             verts.setEntity(vo);
             PointCloudData p = verts.getPointCloud();
-            p.x.set(0, pos.x);
-            p.y.set(0, pos.y);
-            p.z.set(0, pos.z);
+            p.setX(0, pos.x);
+            p.setY(0, pos.y);
+            p.setZ(0, pos.z);
 
-            p.x.set(1, pos.x + vec.x);
-            p.y.set(1, pos.y + vec.y);
-            p.z.set(1, pos.z + vec.z);
+            p.setX(1, pos.x + vec.x);
+            p.setY(1, pos.y + vec.y);
+            p.setZ(1, pos.z + vec.z);
             verts.markForUpdate();
         }
     }
@@ -248,13 +248,13 @@ public class KeyframesView extends BaseView {
                 double[] targ = (i % 2 == 0) ? dirs : ups;
                 Entity vo = kf.orientations.get(i);
                 PointCloudData p = Mapper.verts.get(vo).pointCloudData;
-                p.x.set(0, kts[i / 2 * 3]);
-                p.y.set(0, kts[i / 2 * 3 + 1]);
-                p.z.set(0, kts[i / 2 * 3 + 2]);
+                p.setX(0, kts[i / 2 * 3]);
+                p.setY(0, kts[i / 2 * 3 + 1]);
+                p.setZ(0, kts[i / 2 * 3 + 2]);
 
-                p.x.set(1, kts[i / 2 * 3] + targ[j]);
-                p.y.set(1, kts[i / 2 * 3 + 1] + targ[j + 1]);
-                p.z.set(1, kts[i / 2 * 3 + 2] + targ[j + 2]);
+                p.setX(1, kts[i / 2 * 3] + targ[j]);
+                p.setY(1, kts[i / 2 * 3 + 1] + targ[j + 1]);
+                p.setZ(1, kts[i / 2 * 3 + 2] + targ[j + 2]);
 
                 if (i % 2 == 1)
                     j += 3;
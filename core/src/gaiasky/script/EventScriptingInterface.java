@@ -23,6 +23,7 @@ import com.badlogic.gdx.utils.TimeUtils;
 import gaiasky.GaiaSky;
 import gaiasky.data.SceneJsonLoader;
 import gaiasky.data.StarClusterLoader;
+import gaiasky.data.group.ArrowDataProvider;
 import gaiasky.data.group.DatasetOptions;
 import gaiasky.data.group.DatasetOptions.DatasetLoadType;
 import gaiasky.data.group.STILDataProvider;
@@ -46,11 +47,13 @@ import gaiasky.render.postprocess.effects.CubmeapProjectionEffect.CubemapProject
 import gaiasky.scene.Archetype;
 import gaiasky.scene.Mapper;
 import gaiasky.scene.Scene;
+import gaiasky.scene.SpatialQueries;
 import gaiasky.scene.api.IFocus;
 import gaiasky.scene.api.IParticleRecord;
 import gaiasky.scene.camera.CameraManager.CameraMode;
 import gaiasky.scene.camera.NaturalCamera;
 import gaiasky.scene.component.AttitudeComponent;
+import gaiasky.scene.component.ParticleSet;
 import gaiasky.scene.entity.EntityUtils;
 import gaiasky.scene.entity.TrajectoryUtils;
 import gaiasky.scene.record.ModelComponent;
@@ -71,6 +74,7 @@ import gaiasky.util.i18n.I18n;
 import gaiasky.util.math.*;
 import gaiasky.util.screenshot.ImageRenderer;
 import gaiasky.util.time.ITimeFrameProvider;
+import gaiasky.util.tree.OctreeNode;
 import gaiasky.util.ucd.UCD;
 import net.jafama.FastMath;
 import uk.ac.starlink.util.DataSource;
@@ -88,6 +92,7 @@ import java.time.ZoneOffset;
 import java.time.temporal.ChronoField;
 import java.util.*;
 import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
@@ -2166,6 +2171,66 @@ public class EventScriptingInterface implements IScriptingInterface, IObserver {
         return null;
     }
 
+    @Override
+    public List<String> getNearestObjects(double[] position,
+                                          int n,
+                                          String units) {
+        if (checkLength(position, 3, "position") && checkNum(n, 1, Integer.MAX_VALUE, "n") && checkDistanceUnits(units, "units")) {
+            DistanceUnits u = DistanceUnits.valueOf(units.toUpperCase());
+            Vector3d point = new Vector3d(u.toInternalUnits(position[0]), u.toInternalUnits(position[1]), u.toInternalUnits(position[2]));
+            List<OctreeNode> unloaded = new ArrayList<>();
+            var hits = scene.spatialQueries().nearest(point, n, Double.POSITIVE_INFINITY, true, unloaded);
+            logUnloadedOctants(unloaded);
+            return hitNames(hits);
+        }
+        return null;
+    }
+
+    public List<String> getNearestObjects(List<Double> position,
+                                          int n,
+                                          String units) {
+        return getNearestObjects(dArray(position), n, units);
+    }
+
+    @Override
+    public List<String> getObjectsWithinRadius(double[] position,
+                                               double radius,
+                                               String units) {
+        if (checkLength(position, 3, "position") && checkNum(radius, 0d, Double.MAX_VALUE, "radius") && checkDistanceUnits(units, "units")) {
+            DistanceUnits u = DistanceUnits.valueOf(units.toUpperCase());
+            Vector3d point = new Vector3d(u.toInternalUnits(position[0]), u.toInternalUnits(position[1]), u.toInternalUnits(position[2]));
+            List<OctreeNode> unloaded = new ArrayList<>();
+            var hits = scene.spatialQueries().within(point, u.toInternalUnits(radius), true, unloaded);
+            logUnloadedOctants(unloaded);
+            return hitNames(hits);
+        }
+        return null;
+    }
+
+    public List<String> getObjectsWithinRadius(List<Double> position,
+                                               double radius,
+                                               String units) {
+        return getObjectsWithinRadius(dArray(position), radius, units);
+    }
+
+    private List<String> hitNames(List<SpatialQueries.Hit> hits) {
+        List<String> names = new ArrayList<>(hits.size());
+        for (var hit : hits) {
+            names.add(hit.getName());
+        }
+        return names;
+    }
+
+    private void logUnloadedOctants(List<OctreeNode> unloaded) {
+        if (!unloaded.isEmpty()) {
+            int objects = 0;
+            for (var octant : unloaded) {
+                objects += octant.numObjects;
+            }
+            logger.info(unloaded.size() + " octants with " + objects + " objects in range are not loaded, and were not considered");
+        }
+    }
+
     @Override
     public double[] getObjectPosition(String name) {
         return getObjectPosition(name, "internal");
@@ -3727,7 +3792,8 @@ public class EventScriptingInterface implements IScriptingInterface, IObserver {
                 vertsView.setEntity(entity);
                 vertsView.setPrimitiveSize((float) lineWidth);
                 vertsView.setPoints(points);
-                vertsView.setRenderGroup(arrowCaps ? RenderGroup.LINE : RenderGroup.LINE_GPU);
+                // Arrow caps, if any, are added by the CPU line renderer.
+                vertsView.setRenderGroup(RenderGroup.LINE_GPU);
                 vertsView.setClosedLoop(false);
                 vertsView.setGlPrimitive(primitive);
             }
@@ -4300,6 +4366,14 @@ public class EventScriptingInterface implements IScriptingInterface, IObserver {
         return false;
     }
 
+    /**
+     * Creates the provider for the given data source, which reads Arrow files with {@link ArrowDataProvider}, and
+     * the rest of the formats with {@link STILDataProvider}.
+     */
+    private STILDataProvider newProvider(DataSource ds) {
+        return ArrowDataProvider.isArrow(ds) ? new ArrowDataProvider() : new STILDataProvider();
+    }
+
     private List<IParticleRecord> loadParticleBeans(DataSource ds,
                                                     DatasetOptions datasetOptions,
                                                     STILDataProvider provider) {
@@ -4319,6 +4393,129 @@ public class EventScriptingInterface implements IScriptingInterface, IObserver {
         });
     }
 
+    /**
+     * Loads a star or particle dataset progressively. The set is created and added to the scene with the first batch
+     * of records, and the next batches are appended to it in the main thread as they are loaded, so that the data
+     * is displayed right away. Loading is cancelled if the set is disposed meanwhile. If loading stops early, the
+     * records loaded so far stay in the set.
+     *
+     * @param dsName         The dataset name.
+     * @param ds             The data source.
+     * @param type           The catalog info source.
+     * @param datasetOptions The dataset options, may be null.
+     * @param sync           Whether to wait until the set is in the scene.
+     */
+    private void loadParticleSetStreaming(String dsName,
+                                          DataSource ds,
+                                          CatalogInfoSource type,
+                                          DatasetOptions datasetOptions,
+                                          boolean sync) {
+        var provider = newProvider(ds);
+        AtomicReference<Entity> group = new AtomicReference<>();
+        // Batches waiting to be appended, in order.
+        Queue<List<IParticleRecord>> pending = new ConcurrentLinkedQueue<>();
+        AtomicBoolean created = new AtomicBoolean(false);
+
+        provider.setBatchConsumer((batch) -> {
+            var entity = group.get();
+            if (entity != null && getParticleSet(entity).disposed) {
+                provider.cancel();
+                return;
+            }
+            if (created.compareAndSet(false, true)) {
+                // The type may be switched to extended particles by the provider, so we check it here.
+                boolean stars = datasetOptions == null || datasetOptions.type == DatasetLoadType.STARS || datasetOptions.type == DatasetLoadType.VARIABLES;
+                List<IParticleRecord> data = new ArrayList<>(batch);
+                postRunnable(() -> {
+                    if (datasetOptions != null)
+                        datasetOptions.initializeCatalogInfo = false;
+                    Entity set;
+                    if (stars) {
+                        set = EntityUtils.getStarSet(scene, dsName, ds.getName(), data, provider.getColumnInfoList(), datasetOptions, false);
+                        new CatalogInfo(dsName, ds.getName(), null, type, 1.5f, set);
+                    } else {
+                        set = EntityUtils.getParticleSet(scene, dsName, ds.getName(), data, provider.getColumnInfoList(), datasetOptions, false);
+                        new CatalogInfo(dsName, ds.getName(), ds.getURL().toString(), type, 1.5f, set);
+                    }
+                    // Add to scene.
+                    EventManager.publish(Event.SCENE_ADD_OBJECT_CMD, this, set, true);
+                    // Add to catalog manager -> setUp.
+                    scene.setUpEntity(set);
+                    group.set(set);
+                });
+            } else {
+                pending.add(batch);
+                postRunnable(() -> appendParticles(group.get(), pending));
+            }
+        });
+
+        List<IParticleRecord> data = loadParticleBeans(ds, datasetOptions, provider);
+        if (data != null && !data.isEmpty() && created.get()) {
+            postRunnable(() -> {
+                var entity = group.get();
+                var set = getParticleSet(entity);
+                if (set.disposed) {
+                    return;
+                }
+                if (set.meanPosition == null) {
+                    // The mean position was computed with the first batch only.
+                    var body = Mapper.body.get(entity);
+                    body.pos.set(0, 0, 0);
+                    for (IParticleRecord point : data) {
+                        body.pos.add(point.x(), point.y(), point.z());
+                    }
+                    body.pos.scl(1d / data.size());
+                    var label = Mapper.label.get(entity);
+                    if (Mapper.particleSet.has(entity) && label != null && label.labelPosition != null) {
+                        label.labelPosition.set(body.pos);
+                    }
+                }
+
+                String typeStr = datasetOptions == null || datasetOptions.type == DatasetLoadType.STARS ?
+                        I18n.msg("gui.dsload.stars.name") :
+                        (datasetOptions.type == DatasetLoadType.VARIABLES ? I18n.msg("gui.dsload.variablestars.name") : I18n.msg("gui.dsload.objects.name"));
+                logger.info(I18n.msg("notif.catalog.loaded", data.size(), typeStr));
+                EventManager.publish(Event.POST_POPUP_NOTIFICATION, this, dsName + ": " + I18n.msg("notif.catalog.loaded", data.size(), typeStr));
+            });
+            // Sync waiting until the node is in the scene graph
+            while (sync && group.get() == null) {
+                sleepFrames(1);
+            }
+        }
+    }
+
+    /**
+     * Appends the pending batches of records to the given set, in order. If the set is being sorted, it tries again
+     * in the next frame. Must run in the main thread.
+     */
+    private void appendParticles(Entity entity,
+                                 Queue<List<IParticleRecord>> pending) {
+        var set = getParticleSet(entity);
+        if (set.disposed) {
+            pending.clear();
+            return;
+        }
+        boolean appended = false;
+        List<IParticleRecord> batch;
+        while ((batch = pending.peek()) != null) {
+            if (!set.appendData(batch)) {
+                postRunnable(() -> appendParticles(entity, pending));
+                break;
+            }
+            pending.poll();
+            scene.index().addParticles(entity, batch);
+            appended = true;
+        }
+        if (appended) {
+            // One GPU update for all the batches.
+            set.markForUpdate(Mapper.render.get(entity));
+        }
+    }
+
+    private ParticleSet getParticleSet(Entity entity) {
+        return Mapper.particleSet.has(entity) ? Mapper.particleSet.get(entity) : Mapper.starSet.get(entity);
+    }
+
     public boolean loadJsonCatalog(String dsName,
                                    String path) {
         return loadJsonDataset(dsName, path, true);
@@ -4434,8 +4631,13 @@ public class EventScriptingInterface implements IScriptingInterface, IObserver {
                 if (path != null && path.getFileName().toString().endsWith(".json")) {
                     // Only local files allowed for JSON.
                     loadJsonDataset(dsName, path.toString(), sync);
+                } else if (Settings.settings.data.streamingLoad && (datasetOptions == null || datasetOptions.type == DatasetLoadType.STARS
+                        || datasetOptions.type == DatasetLoadType.VARIABLES || datasetOptions.type == DatasetLoadType.PARTICLES
+                        || datasetOptions.type == DatasetLoadType.PARTICLES_EXT)) {
+                    // STAR OR PARTICLE GROUP, displayed while loading
+                    loadParticleSetStreaming(dsName, ds, type, datasetOptions, sync);
                 } else if (datasetOptions == null || datasetOptions.type == DatasetLoadType.STARS || datasetOptions.type == DatasetLoadType.VARIABLES) {
-                    var provider = new STILDataProvider();
+                    var provider = newProvider(ds);
                     List<IParticleRecord> data = loadParticleBeans(ds, datasetOptions, provider);
                     if (data != null && !data.isEmpty()) {
                         // STAR GROUP
@@ -4465,7 +4667,7 @@ public class EventScriptingInterface implements IScriptingInterface, IObserver {
                     }
                 } else if (datasetOptions.type == DatasetLoadType.PARTICLES) {
                     // PARTICLE GROUP
-                    var provider = new STILDataProvider();
+                    var provider = newProvider(ds);
                     List<IParticleRecord> data = loadParticleBeans(ds, datasetOptions, provider);
                     if (data != null && !data.isEmpty()) {
                         AtomicReference<Entity> particleGroup = new AtomicReference<>();
@@ -4491,7 +4693,7 @@ public class EventScriptingInterface implements IScriptingInterface, IObserver {
                     }
                 } else if (datasetOptions.type == DatasetLoadType.PARTICLES_EXT) {
                     // PARTICLE GROUP EXTENDED
-                    var provider = new STILDataProvider();
+                    var provider = newProvider(ds);
                     List<IParticleRecord> data = loadParticleBeans(ds, datasetOptions, provider);
                     if (data != null && !data.isEmpty()) {
                         AtomicReference<Entity> particleGroup = new AtomicReference<>();
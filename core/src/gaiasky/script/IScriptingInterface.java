@@ -1769,6 +1769,38 @@ public interface IScriptingInterface {
      */
     double[] getStarParameters(String starId);
 
+    /**
+     * Gets the names of the stars and particles closest to the given position, sorted by increasing distance.
+     * Only named objects in the particle and star sets currently loaded are considered. Octants of level-of-detail
+     * datasets that are not loaded are skipped, and a message is logged if they could contain closer objects.
+     *
+     * @param position The position, in the internal reference system and the given units.
+     * @param n        The maximum number of objects to return.
+     * @param units    The distance units of the position. One of "m", "km", "au", "ly", "pc", "internal".
+     *
+     * @return The names of the objects, closest first, or null if the parameters are not valid.
+     */
+    List<String> getNearestObjects(double[] position,
+                                   int n,
+                                   String units);
+
+    /**
+     * Gets the names of the stars and particles within the given distance of the given position, sorted by increasing
+     * distance. Only named objects in the particle and star sets currently loaded are considered. Octants of
+     * level-of-detail datasets that are not loaded are skipped, and a message is logged if they intersect the
+     * sphere.
+     *
+     * @param position The position, in the internal reference system and the given units.
+     * @param radius   The distance, in the given units.
+     * @param units    The distance units of the position and the distance. One of "m", "km", "au", "ly", "pc",
+     *                 "internal".
+     *
+     * @return The names of the objects, closest first, or null if the parameters are not valid.
+     */
+    List<String> getObjectsWithinRadius(double[] position,
+                                        double radius,
+                                        String units);
+
     /**
      * Gets the current position of the object identified by <code>name</code> in
      * the internal coordinate system and internal units. If the object does not exist,
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2024 Gaia Sky - All rights reserved.
+ *  This file is part of Gaia Sky, which is released under the Mozilla Public License 2.0.
+ *  You may use, distribute and modify this code under the terms of MPL2.
+ *  See the file LICENSE.md in the project root for full license details.
+ */
+
+package gaiasky.test;
+
+import gaiasky.scene.system.render.draw.text.LabelOverlapGrid;
+
+import java.util.Random;
+
+/**
+ * Drives the {@link LabelOverlapGrid} headless with synthetic label passes, and reports the labels and text batches
+ * that are submitted with and without the overlap culling. Every 3D label changes the matrices of the font batch,
+ * which flushes it, so each drawn label costs one batch submission. Labels are uniformly spread over the screen, or
+ * packed in a band, like the stars of the galactic plane. Their boxes are estimated as in the label renderer, with a
+ * height of 14 to 28 pixels and a width of half the height per character.
+ * <p>
+ * Usage: <code>LabelOverlapGridBenchmark [passes]</code>
+ */
+public class LabelOverlapGridBenchmark extends AbstractBenchmark {
+
+    private static final int WIDTH = 1920;
+    private static final int HEIGHT = 1080;
+    /** Default label cap, <code>scene.label.maxLabels</code>. **/
+    private static final int MAX_LABELS = 500;
+    /** Fraction of forced labels. **/
+    private static final double FORCED = 0.01;
+
+    private final int passes;
+
+    public LabelOverlapGridBenchmark(int passes) {
+        super(1, 0, LabelOverlapGridBenchmark.class.getSimpleName());
+        this.passes = passes;
+    }
+
+    public static void main(String[] args) {
+        int passes = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        new LabelOverlapGridBenchmark(passes).test();
+    }
+
+    private void test() {
+        int pad = 22;
+        log.info(pad("SCREEN", pad) + pad(WIDTH + "x" + HEIGHT, pad));
+        log.info(pad("MAX_LABELS", pad) + pad(Integer.toString(MAX_LABELS), pad));
+        log.info(pad("PASSES", pad) + pad(Integer.toString(passes), pad));
+        log.info("");
+
+        for (int numLabels : new int[] { 200, 1000, 5000 }) {
+            test(numLabels, false);
+            test(numLabels, true);
+        }
+    }
+
+    private void test(int numLabels,
+                      boolean band) {
+        final Random rand = new Random(42L);
+        final LabelOverlapGrid grid = new LabelOverlapGrid();
+        long forced = 0;
+        long start = System.nanoTime();
+        for (int p = 0; p < passes; p++) {
+            grid.begin(WIDTH, HEIGHT, MAX_LABELS);
+            for (int i = 0; i < numLabels; i++) {
+                final float height = 14f + rand.nextFloat() * 14f;
+                final float width = height * 0.5f * (4 + rand.nextInt(13));
+                final float x = rand.nextFloat() * WIDTH;
+                final float y = band ? (float) (HEIGHT * 0.5 + rand.nextGaussian() * HEIGHT * 0.08) : rand.nextFloat() * HEIGHT;
+                final boolean force = rand.nextDouble() < FORCED;
+                if (force) {
+                    forced++;
+                }
+                grid.reserve(x, y, width, height, force);
+            }
+        }
+        // Close the last pass, so that it is counted.
+        grid.begin(WIDTH, HEIGHT, MAX_LABELS);
+        long elapsed = System.nanoTime() - start;
+
+        final double submitted = (double) numLabels;
+        final double drawn = (grid.getTotalAccepted() + forced) / (double) grid.getPasses();
+        log.info(pad(numLabels + " labels, " + (band ? "band" : "uniform"), 22));
+        log.info(pad("  Labels drawn", 22) + format(drawn) + " of " + numLabels + " (" + format(100 * (1 - drawn / submitted)) + "% fewer)");
+        log.info(pad("  Rejected by overlap", 22) + format(grid.getTotalRejectedOverlap() / (double) grid.getPasses()));
+        log.info(pad("  Rejected by cap", 22) + format(grid.getTotalRejectedCap() / (double) grid.getPasses()));
+        log.info(pad("  Batches", 22) + format(drawn) + " instead of " + numLabels);
+        log.info(pad("  Time/pass", 22) + format(elapsed / 1_000d / passes) + " us");
+        log.info("");
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2024 Gaia Sky - All rights reserved.
+ *  This file is part of Gaia Sky, which is released under the Mozilla Public License 2.0.
+ *  You may use, distribute and modify this code under the terms of MPL2.
+ *  See the file LICENSE.md in the project root for full license details.
+ */
+
+package gaiasky.test;
+
+import gaiasky.scene.NameSearchIndex;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compares the name search of the {@link NameSearchIndex} with the linear scan over all the keys of the index,
+ * which was used before, with a set of synthetic catalog names. It reports the time per query of both, and checks
+ * that all the names found by the search index do match the query.
+ * <p>
+ * Usage: <code>NameSearchBenchmark [numNames]</code>
+ */
+public class NameSearchBenchmark extends AbstractBenchmark {
+
+    private static final String[] QUERIES = { "s", "si", "sirius", "rius", "gaia dr3 12", "4567", "hip 1", "zz", "xyzw" };
+    private static final int MAX_RESULTS = 10;
+
+    private final int numNames;
+
+    public NameSearchBenchmark(int numNames) {
+        super(20, 5, NameSearchBenchmark.class.getSimpleName());
+        this.numNames = numNames;
+    }
+
+    public static void main(String[] args) {
+        int numNames = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        new NameSearchBenchmark(numNames).test();
+    }
+
+    private void test() {
+        final Random rand = new Random(42L);
+        final Map<String, Boolean> keys = new ConcurrentHashMap<>();
+        final NameSearchIndex search = new NameSearchIndex();
+        long start = System.nanoTime();
+        for (int i = 0; i < numNames; i++) {
+            String name = switch (i % 3) {
+                case 0 -> "gaia dr3 " + (rand.nextLong() & Long.MAX_VALUE) % 10_000_000_000_000L;
+                case 1 -> "hip " + rand.nextInt(200_000);
+                default -> "star " + Integer.toString(rand.nextInt(1 << 30), 36);
+            };
+            keys.put(name, Boolean.TRUE);
+            search.add(name);
+        }
+        for (String name : new String[] { "sirius", "sirius b", "alpha sirius" }) {
+            keys.put(name, Boolean.TRUE);
+            search.add(name);
+        }
+        long buildNs = System.nanoTime() - start;
+
+        int pad = 22;
+        log.info(pad("N_NAMES", pad) + formatNumber(search.size()));
+        log.info(pad("BUILD", pad) + format(buildNs / 1_000_000d) + " ms");
+        log.info("");
+        log.info(pad("QUERY", pad) + pad("SCAN [ms]", pad) + pad("INDEX [ms]", pad) + "CHECK");
+
+        for (String query : QUERIES) {
+            long[] scan = new long[ROUNDS];
+            long[] index = new long[ROUNDS];
+            boolean ok = true;
+            for (int r = -ROUNDS_WARMUP; r < ROUNDS; r++) {
+                Set<String> results = new TreeSet<>();
+                long t = System.nanoTime();
+                scan(keys.keySet(), query, results);
+                if (r >= 0)
+                    scan[r] = System.nanoTime() - t;
+
+                Set<String> ranked = new LinkedHashSet<>();
+                t = System.nanoTime();
+                search.find(query, ranked, MAX_RESULTS, null);
+                if (r >= 0)
+                    index[r] = System.nanoTime() - t;
+                for (String name : ranked) {
+                    ok &= name.contains(query);
+                }
+                ok &= ranked.size() <= MAX_RESULTS;
+            }
+            log.info(pad("'" + query + "'", pad) + pad(format(mean(scan) / 1_000_000d), pad) + pad(format(mean(index) / 1_000_000d), pad) + (ok ? "OK" : "FAILED"));
+        }
+    }
+
+    /** The previous search: names starting with the query, then names containing it. **/
+    private void scan(Set<String> keys,
+                      String query,
+                      Set<String> results) {
+        int i = 0;
+        for (String key : keys) {
+            if (key.startsWith(query)) {
+                results.add(key);
+                if (++i >= MAX_RESULTS)
+                    return;
+            }
+        }
+        for (String key : keys) {
+            if (key.contains(query)) {
+                results.add(key);
+                if (++i >= MAX_RESULTS)
+                    return;
+            }
+        }
+    }
+}
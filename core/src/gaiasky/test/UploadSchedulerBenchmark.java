@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2024 Gaia Sky - All rights reserved.
+ *  This file is part of Gaia Sky, which is released under the Mozilla Public License 2.0.
+ *  You may use, distribute and modify this code under the terms of MPL2.
+ *  See the file LICENSE.md in the project root for full license details.
+ */
+
+package gaiasky.test;
+
+import gaiasky.scene.system.render.draw.UploadScheduler;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Drives the {@link UploadScheduler} headless, with fake mesh sinks that copy the uploaded ranges into plain arrays.
+ * It checks that the uploaded data matches the source, that the per-frame budget is respected, and reports the number
+ * of frames needed to make a few datasets resident with different budgets.
+ * <p>
+ * Usage: <code>UploadSchedulerBenchmark [numInstances]</code>
+ */
+public class UploadSchedulerBenchmark extends AbstractBenchmark {
+
+    /** Instance size in floats, as in the star set instanced renderer. **/
+    private static final int INSTANCE_SIZE = 11;
+    /** Number of datasets submitted at once. **/
+    private static final int NUM_SETS = 4;
+
+    private final int numInstances;
+
+    public UploadSchedulerBenchmark(int numInstances) {
+        super(1, 0, UploadSchedulerBenchmark.class.getSimpleName());
+        this.numInstances = numInstances;
+    }
+
+    public static void main(String[] args) {
+        int numInstances = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        new UploadSchedulerBenchmark(numInstances).test();
+    }
+
+    private void test() {
+        int pad = 22;
+        log.info(pad("N_SETS", pad) + pad(Integer.toString(NUM_SETS), pad));
+        log.info(pad("N_INSTANCES", pad) + pad(Integer.toString(numInstances), pad));
+        log.info(pad("INSTANCE_SIZE", pad) + pad(INSTANCE_SIZE * 4 + " bytes", pad));
+        log.info("");
+
+        final Random rand = new Random(42L);
+        final float[][] sources = new float[NUM_SETS][];
+        for (int i = 0; i < NUM_SETS; i++) {
+            // Sets of decreasing size.
+            sources[i] = new float[(numInstances >> i) * INSTANCE_SIZE];
+            for (int j = 0; j < sources[i].length; j++) {
+                sources[i][j] = rand.nextFloat();
+            }
+        }
+
+        for (long budget : new long[] { 1L << 20, 4L << 20, UploadScheduler.DEFAULT_BYTES_PER_FRAME, 64L << 20 }) {
+            test(budget, sources);
+        }
+    }
+
+    private void test(long budget,
+                      float[][] sources) {
+        final UploadScheduler scheduler = new UploadScheduler(budget);
+        final float[][] targets = new float[sources.length][];
+        final Object[] keys = new Object[sources.length];
+        for (int i = 0; i < sources.length; i++) {
+            final float[] target = new float[sources[i].length];
+            targets[i] = target;
+            keys[i] = new Object();
+            scheduler.submit(keys[i], sources[i], sources[i].length / INSTANCE_SIZE, INSTANCE_SIZE,
+                    (data, offset, count) -> System.arraycopy(data, offset, target, offset, count));
+        }
+
+        long frame = 0;
+        long maxFrameBytes = 0;
+        long maxFrameNs = 0;
+        int firstFrameResident = -1;
+        boolean contiguous = true;
+        while (scheduler.getNumPending() > 0) {
+            long start = System.nanoTime();
+            // Two calls per frame, as two renderers would do. The second one must not exceed the budget.
+            long bytes = scheduler.process(frame);
+            bytes += scheduler.process(frame);
+            maxFrameNs = Math.max(maxFrameNs, System.nanoTime() - start);
+            maxFrameBytes = Math.max(maxFrameBytes, bytes);
+            if (firstFrameResident < 0) {
+                firstFrameResident = scheduler.getResident(keys[0], sources[0].length / INSTANCE_SIZE);
+            }
+            // The resident instances must always be a prefix of the uploaded data.
+            int resident = scheduler.getResident(keys[0], sources[0].length / INSTANCE_SIZE);
+            if (resident > 0 && targets[0][resident * INSTANCE_SIZE - 1] != sources[0][resident * INSTANCE_SIZE - 1]) {
+                contiguous = false;
+            }
+            frame++;
+        }
+
+        boolean equal = true;
+        for (int i = 0; i < sources.length; i++) {
+            equal &= Arrays.equals(sources[i], targets[i]);
+        }
+
+        log.info(pad("Budget", 22) + pad(budget / 1024 + " KiB/frame", 22));
+        log.info(pad("  Frames", 22) + frame);
+        log.info(pad("  Max bytes/frame", 22) + maxFrameBytes + (maxFrameBytes <= Math.max(budget, INSTANCE_SIZE * 4L) ? "" : " (over budget!)"));
+        log.info(pad("  Max time/frame", 22) + format(maxFrameNs / 1_000_000d) + " ms");
+        log.info(pad("  Resident in frame 0", 22) + firstFrameResident);
+        log.info(pad("  Data check", 22) + (equal && contiguous ? "OK" : "FAILED"));
+        log.info("");
+    }
+}
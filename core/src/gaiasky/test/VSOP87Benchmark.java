@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2024 Gaia Sky - All rights reserved.
+ *  This file is part of Gaia Sky, which is released under the Mozilla Public License 2.0.
+ *  You may use, distribute and modify this code under the terms of MPL2.
+ *  See the file LICENSE.md in the project root for full license details.
+ */
+
+package gaiasky.test;
+
+import gaiasky.util.coord.vsop87.VSOP87Binary;
+import gaiasky.util.coord.vsop87.VSOP87Evaluator;
+import gaiasky.util.coord.vsop87.VSOP87Evaluator.Body;
+
+import java.lang.management.ManagementFactory;
+import java.util.logging.Level;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Compares the per-call evaluation of {@link VSOP87Binary} against the compiled {@link VSOP87Evaluator}, both
+ * for all planets at one time and for one planet at many times (orbit sampling).
+ * <p>
+ * Usage: <code>VSOP87Benchmark path/to/vsop87a.bin [percentSkipped]</code>
+ */
+public class VSOP87Benchmark extends AbstractBenchmark {
+
+    /** Number of times to evaluate. **/
+    private static final int N = 2_000;
+
+    private final String file;
+    private final double percentSkipped;
+    private final double[] taus;
+    private VSOP87Binary binary;
+    private VSOP87Evaluator evaluator;
+
+    public VSOP87Benchmark(String file,
+                           double percentSkipped) {
+        super(10, 3, VSOP87Benchmark.class.getSimpleName());
+        this.file = file;
+        this.percentSkipped = percentSkipped;
+        taus = new double[N];
+        for (int i = 0; i < N; i++) {
+            // From 1900 to 2100, in Julian millennia since J2000.
+            taus[i] = -0.1 + 0.2 * i / (N - 1);
+        }
+    }
+
+    public static void main(String[] args) {
+        String file = args.length > 0 ? args[0] : null;
+        double percentSkipped = args.length > 1 ? Double.parseDouble(args[1]) : 0.0;
+        new VSOP87Benchmark(file, percentSkipped).test();
+    }
+
+    private void test() {
+        if (file == null) {
+            log.severe("Usage: " + VSOP87Benchmark.class.getSimpleName() + " path/to/vsop87a.bin [percentSkipped]");
+            return;
+        }
+        try {
+            binary = new VSOP87Binary(file, percentSkipped);
+            evaluator = binary.getEvaluator();
+        } catch (Exception e) {
+            log.log(Level.SEVERE, "Could not load " + file, e);
+            return;
+        }
+
+        int pad = 22;
+        log.info(pad("Java version", pad) + System.getProperty("java.version"));
+        log.info(pad("ROUNDS", pad) + formatNumber(ROUNDS, pad));
+        log.info(pad("ROUNDS (warm-up)", pad) + formatNumber(ROUNDS_WARMUP, pad));
+        log.info(pad("N_TIMES", pad) + pad(Integer.toString(N), pad));
+        log.info(pad("N_TERMS", pad) + pad(Integer.toString(evaluator.getNumTerms()), pad));
+        log.info("");
+
+        final double[] planets = new double[3 * Body.NUM_PLANETS];
+        final double[] orbit = new double[3 * N];
+
+        // All planets, one time per call.
+        DoubleUnaryOperator binaryPlanets = (ignored) -> {
+            double sum = 0;
+            for (double tau : taus) {
+                sum += binary.getMercury(tau)[0] + binary.getVenus(tau)[0] + binary.getEarth(tau)[0] + binary.getMars(tau)[0]
+                        + binary.getJupiter(tau)[0] + binary.getSaturn(tau)[0] + binary.getUranus(tau)[0] + binary.getNeptune(tau)[0];
+            }
+            return sum;
+        };
+        DoubleUnaryOperator evaluatorPlanets = (ignored) -> {
+            double sum = 0;
+            for (double tau : taus) {
+                evaluator.evaluatePlanets(tau, planets);
+                for (int p = 0; p < Body.NUM_PLANETS; p++) {
+                    sum += planets[p * 3];
+                }
+            }
+            return sum;
+        };
+
+        // One planet, many times.
+        DoubleUnaryOperator binaryOrbit = (ignored) -> {
+            double sum = 0;
+            for (double tau : taus) {
+                sum += binary.getEarth(tau)[0];
+            }
+            return sum;
+        };
+        DoubleUnaryOperator evaluatorOrbit = (ignored) -> {
+            evaluator.evaluate(Body.EARTH, taus, N, orbit);
+            double sum = 0;
+            for (int i = 0; i < N; i++) {
+                sum += orbit[i * 3];
+            }
+            return sum;
+        };
+
+        // Check results.
+        log.info(pad("Max diff (planets)", pad) + maxDifferencePlanets(planets) + " AU");
+        log.info(pad("Max diff (orbit)", pad) + maxDifferenceOrbit(orbit) + " AU");
+        log.info("");
+
+        // Warm-up.
+        test("Binary planets", ROUNDS_WARMUP, binaryPlanets, false);
+        test("Compiled planets", ROUNDS_WARMUP, evaluatorPlanets, false);
+        test("Binary orbit", ROUNDS_WARMUP, binaryOrbit, false);
+        test("Compiled orbit", ROUNDS_WARMUP, evaluatorOrbit, false);
+
+        // Test.
+        test("Binary planets", ROUNDS, binaryPlanets, true);
+        test("Compiled planets", ROUNDS, evaluatorPlanets, true);
+        test("Binary orbit", ROUNDS, binaryOrbit, true);
+        test("Compiled orbit", ROUNDS, evaluatorOrbit, true);
+    }
+
+    private double maxDifferencePlanets(double[] planets) {
+        double max = 0;
+        for (double tau : taus) {
+            evaluator.evaluatePlanets(tau, planets);
+            double[][] reference = new double[][] { binary.getMercury(tau), binary.getVenus(tau), binary.getEarth(tau), binary.getMars(tau),
+                    binary.getJupiter(tau), binary.getSaturn(tau), binary.getUranus(tau), binary.getNeptune(tau) };
+            for (int p = 0; p < Body.NUM_PLANETS; p++) {
+                for (int v = 0; v < 3; v++) {
+                    max = Math.max(max, Math.abs(planets[p * 3 + v] - reference[p][v]));
+                }
+            }
+        }
+        return max;
+    }
+
+    private double maxDifferenceOrbit(double[] orbit) {
+        evaluator.evaluate(Body.EARTH, taus, N, orbit);
+        double max = 0;
+        for (int i = 0; i < N; i++) {
+            double[] reference = binary.getEarth(taus[i]);
+            for (int v = 0; v < 3; v++) {
+                max = Math.max(max, Math.abs(orbit[i * 3 + v] - reference[v]));
+            }
+        }
+        return max;
+    }
+
+    private void test(String name,
+                      final int rounds,
+                      DoubleUnaryOperator operator,
+                      boolean report) {
+        long[][] elapsed = new long[2][rounds];
+        double check = 0;
+        for (int round = 0; round < rounds; round++) {
+            long cpuStart = ManagementFactory.getThreadMXBean().getCurrentThreadCpuTime();
+            long clockStart = System.nanoTime();
+
+            check += operator.applyAsDouble(round);
+
+            elapsed[0][round] = System.nanoTime() - clockStart;
+            elapsed[1][round] = ManagementFactory.getThreadMXBean().getCurrentThreadCpuTime() - cpuStart;
+        }
+
+        if (report) {
+            double meanClockMs = mean(elapsed[0]) / 1_000_000d;
+            double stDevClock = stdev(elapsed[0], meanClockMs);
+
+            double meanCpuMs = mean(elapsed[1]) / 1_000_000d;
+            double stDevCpu = stdev(elapsed[1], meanCpuMs);
+
+            log.info(pad(name, 20) + pad(meanClockMs + " (±" + format(stDevClock) + ") ms", 28) + pad(meanCpuMs + " (±" + format(stDevCpu) + ") ms", 28) + "[" + format(check) + "]");
+        }
+    }
+}
@@ -7,16 +7,26 @@
 
 package gaiasky.util;
 
+import com.badlogic.gdx.utils.Disposable;
 import gaiasky.gui.bookmarks.BookmarksManager;
 import gaiasky.render.api.IPostProcessor;
 import gaiasky.script.IScriptingInterface;
 import gaiasky.util.samp.SAMPClient;
 import gaiasky.util.svt.SVTManager;
 
-public class GaiaSkyAssets {
+public class GaiaSkyAssets implements Disposable {
     public IScriptingInterface scriptingInterface;
     public IPostProcessor postProcessor;
     public BookmarksManager bookmarksManager;
     public SAMPClient sampClient;
     public SVTManager svtManager;
+
+    @Override
+    public void dispose() {
+        // Called by the asset manager when the assets are unloaded.
+        if (svtManager != null) {
+            svtManager.dispose();
+            svtManager = null;
+        }
+    }
 }
@@ -821,6 +821,10 @@ public class Settings extends SettingsObject {
         public String reflectionSkyboxLocation;
         public boolean highAccuracy;
         public boolean realGaiaAttitude;
+        /** Cache catalogs loaded from external files in the binary format, so that they load faster the next time. **/
+        public boolean catalogCache = true;
+        /** Display user-loaded catalogs progressively, while they are being loaded. **/
+        public boolean streamingLoad = true;
 
         /**
          * This method keeps compatibility with older versions of the configuration file where
@@ -1705,6 +1709,15 @@ public class Settings extends SettingsObject {
         public static class LabelSettings extends SettingsObject implements IObserver {
             public float size;
             public float number;
+            /**
+             * Skip labels that overlap labels with a higher priority in screen space.
+             **/
+            public boolean overlapCulling = true;
+            /**
+             * Maximum number of labels drawn per frame when overlap culling is on, not counting forced labels.
+             * Zero or negative for no limit.
+             **/
+            public int maxLabels = 500;
 
             @Override
             public void notify(final Event event,
@@ -2106,6 +2119,23 @@ public class Settings extends SettingsObject {
                  * Maximum number of tiles to load each frame.
                  **/
                 public int maxTilesPerFrame = 8;
+                /**
+                 * Only one in this many pixels of the tile detection buffer is decoded, in each dimension.
+                 * Use 1 to decode every pixel.
+                 **/
+                public int detectionSubsample = 1;
+                /**
+                 * Size of the cache of decoded tiles in main memory, in MB.
+                 **/
+                public int decodedCacheSize = 256;
+                /**
+                 * Number of threads used to decode tiles.
+                 **/
+                public int decodeThreads = 2;
+                /**
+                 * Prefetch the parents and children of observed tiles.
+                 **/
+                public boolean prefetch = true;
 
                 @Override
                 public VirtualTextureSettings clone() {
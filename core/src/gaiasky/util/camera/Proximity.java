@@ -22,8 +22,6 @@ import gaiasky.util.math.*;
 import gaiasky.util.time.ITimeFrameProvider;
 import gaiasky.util.tree.OctreeNode;
 
-import java.util.Arrays;
-
 public class Proximity {
     // Default number of proximity entries
     private static final int DEFAULT_SIZE = 4;
@@ -34,17 +32,34 @@ public class Proximity {
     private static final byte TYPE_STAR_GROUP = 1;
     private static final byte TYPE_OTHER = 2;
 
-    public NearbyRecord[] updating, effective, array0, array1;
+    /**
+     * Records being updated. The records added with the update methods are kept in a bounded max-heap by distance to
+     * the camera, so that the farthest record is on top, and candidates farther away are discarded right away. The
+     * records added with the set methods are kept in the given position, and are not swapped.
+     */
+    public final NearbyRecord[] updating;
+    /** Records of the last update, sorted by increasing distance to the camera. Unused positions are null. **/
+    public final NearbyRecord[] effective;
+    /** Number of records in the heap. **/
+    private int size = 0;
+    /** Copies of the records in the effective array, owned by this object. **/
+    private final NearbyRecord[] copies;
+    /** Records of focus objects that are not in the heap, to be reused. **/
+    private final NearbyRecord[] free;
+    private int numFree = 0;
+
+    private final Color color = new Color();
+    private final Vector3b aux3b = new Vector3b();
 
     public Proximity() {
         this(DEFAULT_SIZE);
     }
 
     public Proximity(int size) {
-        this.array0 = new NearbyRecord[size];
-        this.array1 = new NearbyRecord[size];
-        this.updating = this.array0;
-        this.effective = this.array1;
+        this.updating = new NearbyRecord[size];
+        this.effective = new NearbyRecord[size];
+        this.copies = new NearbyRecord[size];
+        this.free = new NearbyRecord[size + 1];
     }
 
     public void set(int index, int originalIndex, IParticleRecord pr, ICamera camera) {
@@ -81,57 +96,25 @@ public class Proximity {
     }
 
     /**
-     * Inserts the given record at the given index,
-     * moving the rest of the values to the right
-     *
-     * @param index  The index
-     * @param record The nearby record
-     */
-    public void insert(int index, NearbyRecord record) {
-        NearbyRecord oldRecord;
-        NearbyRecord newRecord = record;
-        for (int i = index; i < this.updating.length; i++) {
-            oldRecord = this.updating[i];
-            this.updating[i] = newRecord;
-            newRecord = oldRecord;
-        }
-    }
-
-    /**
-     * Inserts the given object at the given index,
-     * moving the rest of the values to the right
-     *
-     * @param index  The index
-     * @param object The nearby record
-     */
-    public void insert(int index, IFocus object, ICamera camera) {
-        NearbyRecord record = convert(object, new NearbyRecord(), camera);
-        insert(index, record);
-    }
-
-    /**
-     * Updates the list of proximal objects with the given {@link NearbyRecord}.
+     * Updates the list of proximal objects with the given {@link NearbyRecord}. The record is not copied until the
+     * buffers are swapped, so it must not change until then.
      *
      * @param object The record to use for updating.
      *
      * @return Whether this proximity array was modified.
      */
     public boolean update(NearbyRecord object) {
-        int i = 0;
-        for (NearbyRecord record : updating) {
-            if (record == null) {
-                set(i, object);
-                return true;
-            } else if (record == object) {
+        if (!accepts(object.distToCamera)) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            if (updating[i] == object) {
                 // Already in
                 return false;
-            } else if (object.distToCamera < record.distToCamera) {
-                insert(i, object);
-                return true;
             }
-            i++;
         }
-        return false;
+        push(object);
+        return true;
     }
 
     /**
@@ -143,24 +126,88 @@ public class Proximity {
      * @return Whether this proximity array was modified.
      */
     public boolean update(IFocus object, ICamera camera) {
-        int i = 0;
-        for (NearbyRecord record : updating) {
-            if (record == null) {
-                set(i, -1, object, camera);
-                return true;
-            } else if (record == object) {
+        if (!accepts(object.getClosestDistToCamera())) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            if (updating[i] == object || object.getName().equalsIgnoreCase(updating[i].name)) {
                 // Already in
                 return false;
-            } else if (!object.getName().equalsIgnoreCase(record.name)) {
-                if (object.getClosestDistToCamera() < record.distToCamera) {
-                    // Insert
-                    insert(i, object, camera);
-                    return true;
-                }
             }
-            i++;
         }
-        return false;
+        NearbyRecord record = numFree > 0 ? free[--numFree] : new NearbyRecord();
+        record.pooled = true;
+        convert(object, record, camera);
+        record.index = -1;
+        push(record);
+        return true;
+    }
+
+    /**
+     * Checks whether a record at the given distance would get in the heap.
+     */
+    private boolean accepts(double distToCamera) {
+        return size < updating.length || distToCamera < updating[0].distToCamera;
+    }
+
+    /**
+     * Adds the record to the heap, replacing the farthest record if the heap is full.
+     */
+    private void push(NearbyRecord record) {
+        if (size < updating.length) {
+            updating[size] = record;
+            siftUp(size++);
+        } else {
+            release(updating[0]);
+            updating[0] = record;
+            siftDown(0, size);
+        }
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            final int parent = (i - 1) >>> 1;
+            if (updating[parent].distToCamera >= updating[i].distToCamera) {
+                return;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i,
+                          int n) {
+        while (true) {
+            final int left = 2 * i + 1;
+            if (left >= n) {
+                return;
+            }
+            int farthest = left;
+            if (left + 1 < n && updating[left + 1].distToCamera > updating[left].distToCamera) {
+                farthest = left + 1;
+            }
+            if (updating[i].distToCamera >= updating[farthest].distToCamera) {
+                return;
+            }
+            swap(i, farthest);
+            i = farthest;
+        }
+    }
+
+    private void swap(int i,
+                      int j) {
+        final NearbyRecord record = updating[i];
+        updating[i] = updating[j];
+        updating[j] = record;
+    }
+
+    /**
+     * Makes the given record available for reuse, if it belongs to this object.
+     */
+    private void release(NearbyRecord record) {
+        if (record.pooled && numFree < free.length) {
+            free[numFree++] = record;
+        }
     }
 
     private byte getType(IFocus f) {
@@ -172,26 +219,28 @@ public class Proximity {
     }
 
     /**
-     * Swaps the arrays in this double-buffer implementation
+     * Publishes the records of the heap to the effective array, sorted by distance, and clears the heap. The
+     * effective array gets copies of the records, so the records may change after this call.
      */
     public void swapBuffers() {
-        if (updating == array0) {
-            // updating <- array1
-            // effective <- array0
-            updating = array1;
-            effective = array0;
-            clear(updating);
-        } else {
-            // updating <- array0
-            // effective <- array1
-            updating = array0;
-            effective = array1;
-            clear(updating);
+        // Sort the heap in place, closest first.
+        for (int n = size - 1; n > 0; n--) {
+            swap(0, n);
+            siftDown(0, n);
+        }
+        for (int i = 0; i < effective.length; i++) {
+            if (i < size) {
+                if (copies[i] == null) {
+                    copies[i] = new NearbyRecord();
+                }
+                effective[i] = copies[i].set(updating[i]);
+                release(updating[i]);
+                updating[i] = null;
+            } else {
+                effective[i] = null;
+            }
         }
-    }
-
-    private void clear(NearbyRecord[] arr) {
-        Arrays.fill(arr, null);
+        size = 0;
     }
 
     public NearbyRecord convert(IParticleRecord pr, NearbyRecord c, ICamera camera, double deltaYears) {
@@ -204,7 +253,7 @@ public class Proximity {
         c.name = pr.names()[0];
         c.type = TYPE_STAR_GROUP;
 
-        Color col = new Color();
+        Color col = color;
         Color.abgr8888ToColor(col, pr.col());
         c.col[0] = col.r;
         c.col[1] = col.g;
@@ -215,8 +264,7 @@ public class Proximity {
 
     public NearbyRecord convert(IFocus focus, NearbyRecord c, ICamera camera) {
         c.pm.set(0, 0, 0);
-        Vector3b absPos = new Vector3b();
-        absPos = focus.getAbsolutePosition(absPos);
+        Vector3b absPos = focus.getAbsolutePosition(aux3b);
         c.absolutePos.set(absPos);
         c.pos.set(c.absolutePos).sub(camera.getPos());
         c.size = focus.getSize();
@@ -249,6 +297,8 @@ public class Proximity {
         public byte type = TYPE_UNDEFINED;
         // The index in the source list
         public int index;
+        // Whether the record belongs to the proximity object, which reuses it
+        private boolean pooled = false;
 
         public NearbyRecord() {
             pos = new Vector3d();
@@ -257,6 +307,27 @@ public class Proximity {
             col = new float[4];
         }
 
+        /**
+         * Sets this record to a copy of the given one.
+         *
+         * @param other The record to copy.
+         *
+         * @return This record.
+         */
+        public NearbyRecord set(NearbyRecord other) {
+            distToCamera = other.distToCamera;
+            size = other.size;
+            radius = other.radius;
+            pos.set(other.pos);
+            pm.set(other.pm);
+            absolutePos.set(other.absolutePos);
+            System.arraycopy(other.col, 0, col, 0, col.length);
+            name = other.name;
+            type = other.type;
+            index = other.index;
+            return this;
+        }
+
         public boolean isStar() {
             return type == TYPE_STAR;
         }
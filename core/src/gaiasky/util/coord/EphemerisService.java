@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2023 Gaia Sky - All rights reserved.
+ *  This file is part of Gaia Sky, which is released under the Mozilla Public License 2.0.
+ *  You may use, distribute and modify this code under the terms of MPL2.
+ *  See the file LICENSE.md in the project root for full license details.
+ */
+
+package gaiasky.util.coord;
+
+import gaiasky.event.Event;
+import gaiasky.event.EventManager;
+import gaiasky.event.IObserver;
+import gaiasky.util.Logger;
+import gaiasky.util.Logger.Log;
+import gaiasky.util.math.Vector3b;
+import org.apfloat.Apfloat;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Memoises the positions computed by {@link IBodyCoordinates} implementations. Within a frame, several consumers
+ * (the scene graph updater, the camera, orbit refreshes, scripting calls) usually ask for the position of the same
+ * body at the same instant. This service keeps, for each registered body, the last few (instant, position) pairs
+ * used within a small sliding window of frames, so that repeated queries do not re-evaluate the full series.
+ * <p>
+ * Implementations register their canonical position evaluation with {@link #register(PositionEvaluator)}, and
+ * route their queries through the returned {@link Body}. Only bodies whose position is a pure function of time
+ * should be memoised.
+ */
+public class EphemerisService implements IObserver {
+    private static final Log logger = Logger.getLogger(EphemerisService.class);
+
+    /** Number of memoised instants per body. **/
+    private static final int SLOTS = 8;
+    /** Number of frames a memoised position stays valid after its last use. **/
+    private static final int FRAME_WINDOW = 2;
+    /** Number of frames between two reports of the cache metrics, in debug mode. **/
+    private static final int REPORT_FRAMES = 1800;
+
+    private static final EphemerisService instance = new EphemerisService();
+
+    public static EphemerisService instance() {
+        return instance;
+    }
+
+    /** Current frame number. **/
+    private volatile long frame = 0;
+    /**
+     * Current generation. It is incremented when all the memoised positions are discarded, and positions are only
+     * valid in the generation in which their evaluation started.
+     **/
+    private volatile long generation = 0;
+    /** Whether memoisation is active. If false, all queries are evaluated. **/
+    private volatile boolean enabled = true;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder frameHits = new LongAdder();
+    private final LongAdder frameMisses = new LongAdder();
+    private long lastFrameHits, lastFrameMisses;
+
+    private EphemerisService() {
+        EventManager.instance.subscribe(this, Event.HIGH_ACCURACY_CMD);
+    }
+
+    /**
+     * Registers a new body with the given evaluator.
+     *
+     * @param evaluator The function that actually computes the position of the body.
+     *
+     * @return The body handle, to be kept by the coordinates implementation.
+     */
+    public Body register(PositionEvaluator evaluator) {
+        return new Body(evaluator);
+    }
+
+    /**
+     * Advances the frame counter. Must be called once per frame, after the simulation time has been updated.
+     * Positions not used within the last few frames are discarded.
+     */
+    public synchronized void nextFrame() {
+        lastFrameHits = frameHits.sumThenReset();
+        lastFrameMisses = frameMisses.sumThenReset();
+        frame++;
+        if (frame % REPORT_FRAMES == 0) {
+            logger.debug(String.format("Ephemeris cache: %.1f%% hit rate (%d hits, %d misses), last frame: %d hits, %d misses", getHitRate() * 100,
+                                       getHits(), getMisses(), lastFrameHits, lastFrameMisses));
+        }
+    }
+
+    /**
+     * Discards the memoised positions of all bodies. Use when the evaluation itself changes, for instance
+     * when the number of retained series terms is modified.
+     */
+    public synchronized void invalidateAll() {
+        generation++;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Total number of queries answered from the cache. **/
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /** Total number of queries that needed an evaluation. **/
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /** Fraction of queries answered from the cache since the start, in [0,1]. **/
+    public double getHitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total > 0 ? (double) h / total : 0;
+    }
+
+    /** Number of queries answered from the cache in the last complete frame. **/
+    public long getLastFrameHits() {
+        return lastFrameHits;
+    }
+
+    /** Number of queries that needed an evaluation in the last complete frame. **/
+    public long getLastFrameMisses() {
+        return lastFrameMisses;
+    }
+
+    /** Resets all hit and miss counters. **/
+    public void resetMetrics() {
+        hits.reset();
+        misses.reset();
+        frameHits.reset();
+        frameMisses.reset();
+        lastFrameHits = 0;
+        lastFrameMisses = 0;
+    }
+
+    @Override
+    public void notify(Event event, Object source, Object... data) {
+        if (event == Event.HIGH_ACCURACY_CMD) {
+            invalidateAll();
+        }
+    }
+
+    private Vector3b position(Body body, Instant instant, Vector3b out) {
+        if (!enabled || instant == null) {
+            return body.evaluator.evaluate(instant, out);
+        }
+        final long seconds = instant.getEpochSecond();
+        final int nanos = instant.getNano();
+        final long currentFrame = frame;
+        final long currentGeneration = generation;
+
+        synchronized (body) {
+            final long minFrame = currentFrame - FRAME_WINDOW;
+            for (int i = 0; i < SLOTS; i++) {
+                if (body.frames[i] >= minFrame && body.generations[i] == currentGeneration && body.seconds[i] == seconds && body.nanos[i] == nanos) {
+                    hits.increment();
+                    frameHits.increment();
+                    body.frames[i] = currentFrame;
+                    if (!body.valid[i]) {
+                        return null;
+                    }
+                    return out.set(body.x[i], body.y[i], body.z[i]);
+                }
+            }
+        }
+
+        misses.increment();
+        frameMisses.increment();
+        final Vector3b result = body.evaluator.evaluate(instant, out);
+
+        synchronized (body) {
+            if (currentGeneration != generation) {
+                // The positions were discarded during the evaluation, which may have used the old settings.
+                return result;
+            }
+            final int i = body.next;
+            body.next = (i + 1) % SLOTS;
+            body.seconds[i] = seconds;
+            body.nanos[i] = nanos;
+            body.frames[i] = currentFrame;
+            body.generations[i] = currentGeneration;
+            body.valid[i] = result != null;
+            if (result != null) {
+                // Apfloat instances are immutable, so we can share them.
+                body.x[i] = result.x;
+                body.y[i] = result.y;
+                body.z[i] = result.z;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Computes the position of a body at the given instant.
+     */
+    @FunctionalInterface
+    public interface PositionEvaluator {
+        /**
+         * Evaluates the position.
+         *
+         * @param instant The instant.
+         * @param out     The vector to put the result.
+         *
+         * @return The out vector, or null if the instant is out of range.
+         */
+        Vector3b evaluate(Instant instant, Vector3b out);
+    }
+
+    /**
+     * Memoised positions of a single body. The positions are stored in a small ring buffer.
+     */
+    public static class Body {
+        private final PositionEvaluator evaluator;
+        private final long[] seconds = new long[SLOTS];
+        private final int[] nanos = new int[SLOTS];
+        private final long[] frames = new long[SLOTS];
+        private final long[] generations = new long[SLOTS];
+        private final boolean[] valid = new boolean[SLOTS];
+        private final Apfloat[] x = new Apfloat[SLOTS];
+        private final Apfloat[] y = new Apfloat[SLOTS];
+        private final Apfloat[] z = new Apfloat[SLOTS];
+        private int next = 0;
+
+        private Body(PositionEvaluator evaluator) {
+            this.evaluator = evaluator;
+            invalidate();
+        }
+
+        /**
+         * Gets the position of this body at the given instant, either from the cache or by evaluating it.
+         *
+         * @param instant The instant.
+         * @param out     The vector to put the result.
+         *
+         * @return The out vector, or null if the instant is out of range.
+         */
+        public Vector3b position(Instant instant, Vector3b out) {
+            return instance.position(this, instant, out);
+        }
+
+        /**
+         * Discards all memoised positions of this body.
+         */
+        public synchronized void invalidate() {
+            for (int i = 0; i < SLOTS; i++) {
+                frames[i] = Long.MIN_VALUE;
+                x[i] = y[i] = z[i] = null;
+            }
+        }
+    }
+}
@@ -20,6 +20,13 @@ public interface IBodyCoordinates {
      */
     void doneLoading(Object... params);
 
+    /**
+     * Releases the resources held by the coordinates object, if any, when the body is removed. The object
+     * may still be used afterwards, in which case it acquires them again.
+     */
+    default void dispose() {
+    }
+
     /**
      * Returns the ecliptic coordinates of the body in the out vector for the
      * given date.
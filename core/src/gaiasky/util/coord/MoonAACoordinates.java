@@ -15,6 +15,8 @@ import org.apfloat.Apfloat;
 import java.time.Instant;
 
 public class MoonAACoordinates extends AbstractOrbitCoordinates {
+    /** Memoised ecliptic spherical coordinates. **/
+    private final EphemerisService.Body ephemeris = EphemerisService.instance().register(this::computeEclipticSphericalCoordinates);
 
     private final Vector3d aux = new Vector3d();
 
@@ -24,6 +26,10 @@ public class MoonAACoordinates extends AbstractOrbitCoordinates {
 
     @Override
     public Vector3b getEclipticSphericalCoordinates(Instant date, Vector3b out) {
+        return ephemeris.position(date, out);
+    }
+
+    private Vector3b computeEclipticSphericalCoordinates(Instant date, Vector3b out) {
         if (Constants.notWithinVSOPTime(date.toEpochMilli()))
             return null;
         out = AstroUtils.moonEclipticCoordinates(date, aux, out);
@@ -72,18 +72,20 @@ public class OrbitLintCoordinates extends AbstractOrbitCoordinates {
 
     @Override
     public Vector3b getEquatorialCartesianCoordinates(Instant date, Vector3b out) {
-        boolean inRange = getData().loadPoint(out, date);
-        if(!periodic && !inRange) {
-            return null;
-        }
         if (data == null) {
-            return out;
+            boolean inRange = getData().loadPoint(out, date);
+            return !periodic && !inRange ? null : out;
+        }
+        final long dateMs = date.toEpochMilli();
+        if (!periodic && (dateMs < data.getStartMs() || dateMs > data.getEndMs())) {
+            return null;
         }
-        long dateWrap = data.getWrapTimeMs(date);
+        long dateWrap = data.getWrapTimeMs(dateMs);
         int baseIndex = data.getIndex(dateWrap);
 
         int nextIndex = (baseIndex + 1) % data.getNumPoints();
-        double percent = (double) FastMath.abs(dateWrap - data.getDate(baseIndex).toEpochMilli()) / (double) FastMath.abs(data.getDate(nextIndex).toEpochMilli() - data.getDate(baseIndex).toEpochMilli());
+        long baseTime = data.getTimeMs(baseIndex);
+        double percent = (double) FastMath.abs(dateWrap - baseTime) / (double) FastMath.abs(data.getTimeMs(nextIndex) - baseTime);
 
         data.loadPoint(out, baseIndex);
         data.loadPoint(aux, nextIndex);
@@ -14,6 +14,8 @@ import org.apfloat.Apfloat;
 import java.time.Instant;
 
 public class PlutoCoordinates extends AbstractOrbitCoordinates {
+    /** Memoised ecliptic spherical coordinates. **/
+    private final EphemerisService.Body ephemeris = EphemerisService.instance().register(this::computeEclipticSphericalCoordinates);
     public PlutoCoordinates() {
         super();
     }
@@ -25,6 +27,10 @@ public class PlutoCoordinates extends AbstractOrbitCoordinates {
 
     @Override
     public Vector3b getEclipticSphericalCoordinates(Instant date, Vector3b out) {
+        return ephemeris.position(date, out);
+    }
+
+    private Vector3b computeEclipticSphericalCoordinates(Instant date, Vector3b out) {
         AstroUtils.plutoEclipticCoordinates(date, out);
         // To internal units
         out.z = out.z.multiply(new Apfloat(Constants.KM_TO_U * scaling, Constants.PREC));
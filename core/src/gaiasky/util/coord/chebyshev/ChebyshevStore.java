@@ -0,0 +1,352 @@
+/*
+ * Copyright (c) 2024 Gaia Sky - All rights reserved.
+ *  This file is part of Gaia Sky, which is released under the Mozilla Public License 2.0.
+ *  You may use, distribute and modify this code under the terms of MPL2.
+ *  See the file LICENSE.md in the project root for full license details.
+ */
+
+package gaiasky.util.coord.chebyshev;
+
+import gaiasky.util.Logger;
+import gaiasky.util.Logger.Log;
+import gaiasky.util.SysUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Memory-mapped store of Chebyshev position coefficients. The coefficients are kept in a binary file with
+ * fixed-size granule records, so that the record of any granule is located directly from its index. The file is
+ * mapped in pages of {@link #PAGE_GRANULES} granules, and each page is only mapped when the simulation time reaches
+ * one of its granules. The coefficients of the last granule used are decoded and kept, so that monotonic time
+ * progressions within a granule do not touch the mapped memory at all.
+ * <p>
+ * Text ephemeris files, as read by {@link ChebyshevLoader}, are converted once to the binary format and cached
+ * in the cache directory.
+ * <p>
+ * The binary format is:
+ * <ul>
+ *     <li>int -- magic number</li>
+ *     <li>int -- format version</li>
+ *     <li>int -- number of granules</li>
+ *     <li>int -- maximum number of coefficients per dimension</li>
+ *     <li>int -- equidistant flag (0/1)</li>
+ *     <li>int -- padding</li>
+ *     <li>long -- begin time in nanoseconds TCB</li>
+ *     <li>long -- end time in nanoseconds TCB</li>
+ *     <li>long[nGranules + 1] -- granule begin times in nanoseconds TCB, plus the end time</li>
+ *     <li>nGranules records of: long -- number of coefficients, double[3 * maxCoefficients] -- the coefficients of X, Y
+ *     and Z</li>
+ * </ul>
+ */
+public class ChebyshevStore {
+    private static final Log logger = Logger.getLogger(ChebyshevStore.class);
+
+    /** Magic number of the binary format, "CHEB". **/
+    private static final int MAGIC = 0x43484542;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 6 * 4 + 2 * 8;
+    /** Number of granules per mapped page. **/
+    private static final int PAGE_GRANULES = 1024;
+
+    private final FileChannel channel;
+    private final int nGranules;
+    private final int maxCoefficients;
+    private final boolean isEquidistant;
+    private final long nanosecondsTcbBegin;
+    private final long nanosecondsTcbEnd;
+    /** Granule begin times. Only loaded for non-equidistant granules. **/
+    private final long[] granuleTimes;
+    /** Granule length, for equidistant granules. **/
+    private final double granuleLength;
+    private final long recordsOffset;
+    private final int recordSize;
+    private final MappedByteBuffer[] pages;
+
+    /** Cursor, holding the decoded coefficients of the last granule used. **/
+    private int cursorGranule = -1;
+    private long cursorBegin, cursorEnd;
+    private int cursorCoefficients;
+    private final double[] cursorX, cursorY, cursorZ;
+
+    private ChebyshevStore(Path binaryFile) throws IOException {
+        channel = FileChannel.open(binaryFile, StandardOpenOption.READ);
+        var header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            throw new IOException("Unexpected file format: " + binaryFile);
+        }
+        nGranules = header.getInt();
+        maxCoefficients = header.getInt();
+        isEquidistant = header.getInt() != 0;
+        header.getInt();
+        nanosecondsTcbBegin = header.getLong();
+        nanosecondsTcbEnd = header.getLong();
+
+        var times = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, (long) (nGranules + 1) * 8);
+        if (isEquidistant) {
+            granuleTimes = null;
+            granuleLength = times.getLong(8) - times.getLong(0);
+        } else {
+            granuleTimes = new long[nGranules + 1];
+            times.asLongBuffer().get(granuleTimes);
+            granuleLength = 0;
+        }
+
+        recordsOffset = HEADER_SIZE + (long) (nGranules + 1) * 8;
+        recordSize = 8 + 3 * 8 * maxCoefficients;
+        pages = new MappedByteBuffer[(nGranules + PAGE_GRANULES - 1) / PAGE_GRANULES];
+
+        cursorX = new double[maxCoefficients];
+        cursorY = new double[maxCoefficients];
+        cursorZ = new double[maxCoefficients];
+    }
+
+    /**
+     * Opens the store for the given ephemeris file. If the file is a text Chebyshev file, it is converted to the
+     * binary format the first time, and the binary version is cached.
+     *
+     * @param file The ephemeris file, either text or binary.
+     *
+     * @return The store.
+     *
+     * @throws IOException If the file can't be read or converted.
+     */
+    public static ChebyshevStore open(Path file) throws IOException {
+        return new ChebyshevStore(isBinary(file) ? file : getOrConvert(file));
+    }
+
+    private static boolean isBinary(Path file) throws IOException {
+        try (var raf = new RandomAccessFile(file.toFile(), "r")) {
+            return raf.length() >= HEADER_SIZE && raf.readInt() == MAGIC;
+        }
+    }
+
+    private static Path getOrConvert(Path textFile) throws IOException {
+        var name = textFile.getFileName().toString();
+        var cacheName = name + "-" + Files.size(textFile) + "-" + Files.getLastModifiedTime(textFile).toMillis() + ".bin";
+        var cacheDir = SysUtils.getCacheDir().resolve("chebyshev");
+        var binaryFile = cacheDir.resolve(cacheName);
+        if (!Files.exists(binaryFile)) {
+            logger.info("Converting Chebyshev ephemeris to binary format: " + textFile);
+            Files.createDirectories(cacheDir);
+            var coefficients = new ChebyshevLoader().loadData(textFile);
+            var tmp = Files.createTempFile(cacheDir, name, ".tmp");
+            write(coefficients, tmp);
+            Files.move(tmp, binaryFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        return binaryFile;
+    }
+
+    /**
+     * Writes the position coefficients to the given file in the binary format of this store.
+     *
+     * @param data The coefficients.
+     * @param file The output file.
+     *
+     * @throws IOException If the file can't be written.
+     */
+    public static void write(ChebyshevCoefficients data, Path file) throws IOException {
+        final var header = data.header[0];
+        final var coefficients = data.coefficients[0];
+        int maxCoefficients = 0;
+        for (var granule : coefficients.data) {
+            maxCoefficients = Math.max(maxCoefficients, granule[0].length);
+        }
+
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(header.nGranules);
+            out.writeInt(maxCoefficients);
+            out.writeInt(header.isEquidistant ? 1 : 0);
+            out.writeInt(0);
+            out.writeLong(header.nanosecondsTcbBegin);
+            out.writeLong(header.nanosecondsTcbEnd);
+            for (long t : coefficients.nanoSecondsTcb) {
+                out.writeLong(t);
+            }
+            for (var granule : coefficients.data) {
+                final int n = granule[0].length;
+                out.writeLong(n);
+                for (int dim = 0; dim < 3; dim++) {
+                    for (int i = 0; i < maxCoefficients; i++) {
+                        out.writeDouble(i < n ? granule[dim][i] : 0);
+                    }
+                }
+            }
+        }
+    }
+
+    public int getNumGranules() {
+        return nGranules;
+    }
+
+    public long getNanosecondsTcbBegin() {
+        return nanosecondsTcbBegin;
+    }
+
+    public long getNanosecondsTcbEnd() {
+        return nanosecondsTcbEnd;
+    }
+
+    /**
+     * Evaluates the Chebyshev polynomials of the granule that contains the given time.
+     *
+     * @param nanosecondsTcb The time in nanoseconds TCB.
+     * @param out            The output array, which gets the X, Y and Z components, in the units of the file.
+     *
+     * @return True if the time is in range, false otherwise.
+     */
+    public synchronized boolean evaluate(final long nanosecondsTcb, final double[] out) {
+        if (nanosecondsTcb < nanosecondsTcbBegin || nanosecondsTcb > nanosecondsTcbEnd) {
+            return false;
+        }
+
+        // Argument [0,+1] of the scaled Chebyshev polynomials.
+        final double t;
+        if (cursorGranule >= 0 && nanosecondsTcb >= cursorBegin && nanosecondsTcb < cursorEnd) {
+            // Cursor hit, nothing to do.
+            t = argument(nanosecondsTcb, cursorGranule);
+        } else {
+            int iGranule;
+            if (cursorGranule >= 0 && cursorGranule + 1 < nGranules && nanosecondsTcb >= cursorEnd && nanosecondsTcb < granuleEnd(cursorGranule + 1)) {
+                // Monotonic progression to the next granule.
+                iGranule = cursorGranule + 1;
+            } else {
+                iGranule = findGranule(nanosecondsTcb);
+            }
+            moveCursor(iGranule);
+            t = argument(nanosecondsTcb, iGranule);
+        }
+
+        final int nCoefficients = cursorCoefficients;
+
+        // 0th order Chebyshev.
+        double t0 = 1.0;
+        double x = cursorX[0] * t0;
+        double y = cursorY[0] * t0;
+        double z = cursorZ[0] * t0;
+
+        // 1st order Chebyshev.
+        double t1 = 2.0 * t - 1.0;
+        x += cursorX[1] * t1;
+        y += cursorY[1] * t1;
+        z += cursorZ[1] * t1;
+
+        // Higher orders Chebyshev recursively.
+        double tn;
+        final double tau = 2.0 * t1;
+        for (int i = 2; i < nCoefficients; i++) {
+            tn = tau * t1 - t0;
+            t0 = t1;
+            t1 = tn;
+
+            x += cursorX[i] * tn;
+            y += cursorY[i] * tn;
+            z += cursorZ[i] * tn;
+        }
+
+        out[0] = x;
+        out[1] = y;
+        out[2] = z;
+        return true;
+    }
+
+    /**
+     * Finds the granule for the given in-range time. Equidistant granules are indexed directly, the rest
+     * use a binary search over the granule begin times.
+     */
+    private int findGranule(long nanosecondsTcb) {
+        if (isEquidistant) {
+            int iGranule = (int) ((nanosecondsTcb - nanosecondsTcbBegin) / granuleLength);
+            // Include the end of the last granule.
+            return Math.min(iGranule, nGranules - 1);
+        } else {
+            int low = 0;
+            int high = nGranules;
+            while (high > low + 1) {
+                int mid = low + high >>> 1;
+                if (granuleTimes[mid] <= nanosecondsTcb) {
+                    low = mid;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    private long granuleBegin(int iGranule) {
+        return isEquidistant ? nanosecondsTcbBegin + (long) (iGranule * granuleLength) : granuleTimes[iGranule];
+    }
+
+    private long granuleEnd(int iGranule) {
+        return iGranule == nGranules - 1 ? nanosecondsTcbEnd + 1 : granuleBegin(iGranule + 1);
+    }
+
+    private double argument(long nanosecondsTcb, int iGranule) {
+        if (isEquidistant) {
+            // Computed in such a way as to reduce round-off errors.
+            final long nanosecondsOffset = nanosecondsTcb - nanosecondsTcbBegin;
+            return Math.min(1.0, (nanosecondsOffset - iGranule * granuleLength) / granuleLength);
+        } else {
+            final long low = granuleTimes[iGranule];
+            final long high = granuleTimes[iGranule + 1];
+            return (nanosecondsTcb - low) / (double) (high - low);
+        }
+    }
+
+    /**
+     * Decodes the coefficients of the given granule into the cursor, mapping its page if needed.
+     */
+    private void moveCursor(int iGranule) {
+        final int iPage = iGranule / PAGE_GRANULES;
+        var page = pages[iPage];
+        if (page == null) {
+            page = mapPage(iPage);
+        }
+        int pos = (iGranule % PAGE_GRANULES) * recordSize;
+        final int n = (int) page.getLong(pos);
+        pos += 8;
+        for (int i = 0; i < maxCoefficients; i++) {
+            cursorX[i] = page.getDouble(pos + i * 8);
+            cursorY[i] = page.getDouble(pos + (maxCoefficients + i) * 8);
+            cursorZ[i] = page.getDouble(pos + (2 * maxCoefficients + i) * 8);
+        }
+        cursorCoefficients = n;
+        cursorGranule = iGranule;
+        cursorBegin = granuleBegin(iGranule);
+        cursorEnd = granuleEnd(iGranule);
+    }
+
+    private MappedByteBuffer mapPage(int iPage) {
+        final int first = iPage * PAGE_GRANULES;
+        final int count = Math.min(PAGE_GRANULES, nGranules - first);
+        try {
+            var page = channel.map(FileChannel.MapMode.READ_ONLY, recordsOffset + (long) first * recordSize, (long) count * recordSize);
+            pages[iPage] = page;
+            return page;
+        } catch (IOException e) {
+            throw new RuntimeException("Error mapping Chebyshev coefficients page " + iPage, e);
+        }
+    }
+
+    /**
+     * Closes the underlying file channel.
+     */
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.error(e);
+        }
+    }
+}
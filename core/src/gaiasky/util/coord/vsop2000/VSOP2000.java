@@ -12,6 +12,7 @@ import gaiasky.util.Settings;
 import gaiasky.util.coord.AbstractOrbitCoordinates;
 import gaiasky.util.coord.AstroUtils;
 import gaiasky.util.coord.Coordinates;
+import gaiasky.util.coord.EphemerisService;
 import gaiasky.util.coord.vsop2000.VSOP2000Reader.VSOP2000Coordinate;
 import gaiasky.util.math.Vector3b;
 import net.jafama.FastMath;
@@ -64,6 +65,9 @@ public class VSOP2000 extends AbstractOrbitCoordinates {
      */
     private VSOP2000Coordinate[] data;
 
+    /** Memoised positions. **/
+    private final EphemerisService.Body ephemeris = EphemerisService.instance().register(this::computePosition);
+
     public VSOP2000() {
 
     }
@@ -107,9 +111,14 @@ public class VSOP2000 extends AbstractOrbitCoordinates {
      */
     public void position(Instant date,
                          Vector3b out) {
+        ephemeris.position(date, out);
+    }
+
+    private Vector3b computePosition(Instant date,
+                                     Vector3b out) {
         if (!initialize()) {
             // Something is wrong.
-            return;
+            return null;
         }
 
         // Maximum number of terms to use. Depends on high accuracy setting.
@@ -159,6 +168,7 @@ public class VSOP2000 extends AbstractOrbitCoordinates {
             coordinates[coord] = sum_k * Constants.AU_TO_U;
         }
         out.set(coordinates[1], coordinates[2], coordinates[0]);
+        return out;
     }
 
     // Time since J2000 in Julian years.
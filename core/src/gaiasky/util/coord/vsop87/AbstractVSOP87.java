@@ -13,6 +13,7 @@ import gaiasky.util.Settings;
 import gaiasky.util.coord.AbstractOrbitCoordinates;
 import gaiasky.util.coord.AstroUtils;
 import gaiasky.util.coord.Coordinates;
+import gaiasky.util.coord.EphemerisService;
 import gaiasky.util.math.Vector3b;
 
 import java.time.Instant;
@@ -24,8 +25,11 @@ public abstract class AbstractVSOP87 extends AbstractOrbitCoordinates implements
 
     private static final String dataFile = "$data/default-data/vsop87/vsop87a.bin";
     protected static VSOP87Binary vsop87;
+    /** Per-thread output buffer for the series evaluation. **/
+    private static final ThreadLocal<double[]> dataBuffer = ThreadLocal.withInitial(() -> new double[VSOP87Evaluator.NUM_VARS]);
     private final boolean versionA;
-
+    /** Memoised ecliptic cartesian coordinates. **/
+    private final EphemerisService.Body ephemeris = EphemerisService.instance().register(this::computeEclipticCartesianCoordinatesA);
 
     protected AbstractVSOP87() {
         super();
@@ -47,6 +51,70 @@ public abstract class AbstractVSOP87 extends AbstractOrbitCoordinates implements
 
     public abstract double[] getData(double tau);
 
+    /**
+     * Gets the body of this object in the compiled {@link VSOP87Evaluator}, if any.
+     *
+     * @return The body, or null if this object does not map directly to a body in the evaluator.
+     */
+    protected VSOP87Evaluator.Body getBody() {
+        return null;
+    }
+
+    /**
+     * Evaluates the series at the given time. Objects that map to a body in the compiled evaluator
+     * write the result to the given buffer without allocating. The rest fall back to {@link #getData(double)}.
+     *
+     * @param tau The time in Julian millennia since J2000.
+     * @param out The output buffer, with at least three elements.
+     *
+     * @return The array with the result, or null if the data is not available.
+     */
+    public double[] getData(double tau, double[] out) {
+        var body = getBody();
+        if (body != null && vsop87 != null) {
+            vsop87.getEvaluator().evaluate(body, tau, out, 0);
+            return out;
+        }
+        return getData(tau);
+    }
+
+    /**
+     * Gets the ecliptic cartesian coordinates at many instants with a single batch evaluation of the compiled
+     * evaluator, which is much faster than evaluating each instant separately. Used to sample orbits. This only
+     * works for objects that map to a body in the evaluator, with version A data, and instants within the VSOP87
+     * time range.
+     *
+     * @param dates The instants.
+     * @param n     The number of instants to evaluate.
+     * @param out   The output buffer, of at least 3 * n elements. The coordinates at {@code dates[i]} are stored
+     *              at {@code 3 * i}, in internal units, in the same order as in
+     *              {@link #getEclipticCartesianCoordinates(Instant, Vector3b)}.
+     *
+     * @return Whether the coordinates were computed. If false, the instants must be evaluated one by one.
+     */
+    public boolean getEclipticCartesianCoordinates(Instant[] dates, int n, double[] out) {
+        var body = getBody();
+        if (!versionA || body == null || vsop87 == null) {
+            return false;
+        }
+        final double[] taus = new double[n];
+        for (int i = 0; i < n; i++) {
+            if (Constants.notWithinVSOPTime(dates[i].toEpochMilli())) {
+                return false;
+            }
+            taus[i] = AstroUtils.tau(AstroUtils.getJulianDate(dates[i]));
+        }
+        vsop87.getEvaluator().evaluate(body, taus, n, out);
+        final double factor = Constants.AU_TO_U * scaling;
+        for (int i = 0; i < n * 3; i += 3) {
+            final double x = out[i];
+            out[i] = out[i + 1] * factor;
+            out[i + 1] = out[i + 2] * factor;
+            out[i + 2] = x * factor;
+        }
+        return true;
+    }
+
     @Override
     public Vector3b getEclipticSphericalCoordinates(Instant date, Vector3b out) {
         return versionA ? getEclipticSphericalCoordinatesA(date, out) : getEclipticSphericalCoordinatesB(date, out);
@@ -84,12 +152,16 @@ public abstract class AbstractVSOP87 extends AbstractOrbitCoordinates implements
     }
 
     public Vector3b getEclipticCartesianCoordinatesA(Instant date, Vector3b out) {
+        return ephemeris.position(date, out);
+    }
+
+    private Vector3b computeEclipticCartesianCoordinatesA(Instant date, Vector3b out) {
         if (Constants.notWithinVSOPTime(date.toEpochMilli()))
             return null;
 
         double tau = AstroUtils.tau(AstroUtils.getJulianDateCache(date));
         // For some reason, this returns BLR instead of the more common LBR.
-        double[] XYZ = getData(tau);
+        double[] XYZ = getData(tau, dataBuffer.get());
 
         if (XYZ != null) {
             double X = XYZ[0] * Constants.AU_TO_U * scaling;
@@ -19,4 +19,9 @@ public class EarthVSOP87 extends AbstractVSOP87 {
             return null;
         }
     }
+
+    @Override
+    protected VSOP87Evaluator.Body getBody() {
+        return VSOP87Evaluator.Body.EARTH;
+    }
 }
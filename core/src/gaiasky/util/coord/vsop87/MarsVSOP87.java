@@ -18,4 +18,9 @@ public class MarsVSOP87 extends AbstractVSOP87 {
             return null;
         }
     }
+
+    @Override
+    protected VSOP87Evaluator.Body getBody() {
+        return VSOP87Evaluator.Body.MARS;
+    }
 }
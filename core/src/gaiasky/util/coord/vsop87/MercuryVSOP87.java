@@ -20,4 +20,8 @@ public class MercuryVSOP87 extends AbstractVSOP87 {
         }
     }
 
+    @Override
+    protected VSOP87Evaluator.Body getBody() {
+        return VSOP87Evaluator.Body.MERCURY;
+    }
 }
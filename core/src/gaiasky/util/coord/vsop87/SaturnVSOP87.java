@@ -21,4 +21,8 @@ public class SaturnVSOP87 extends AbstractVSOP87 {
         }
     }
 
+    @Override
+    protected VSOP87Evaluator.Body getBody() {
+        return VSOP87Evaluator.Body.SATURN;
+    }
 }
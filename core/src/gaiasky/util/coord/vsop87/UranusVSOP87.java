@@ -22,4 +22,8 @@ public class UranusVSOP87 extends AbstractVSOP87 {
 
     }
 
+    @Override
+    protected VSOP87Evaluator.Body getBody() {
+        return VSOP87Evaluator.Body.URANUS;
+    }
 }
@@ -36,6 +36,8 @@ public class VSOP87Binary implements IObserver {
     public final String version;
     private final String fileName;
     private double percentSkipped;
+    /** Compiled evaluator for the current truncation, created lazily. **/
+    private volatile VSOP87Evaluator evaluator;
 
     /**
      * Creates a new instance of the VSOP87 binary with the given binary file. Uses all terms (no truncation).
@@ -72,6 +74,47 @@ public class VSOP87Binary implements IObserver {
         this.percentSkipped = percentSkipped;
     }
 
+    public double getPercentSkipped() {
+        return percentSkipped;
+    }
+
+    /**
+     * Gets the compiled evaluator for the current truncation. The evaluator is rebuilt whenever the
+     * truncation changes.
+     *
+     * @return The evaluator.
+     */
+    public VSOP87Evaluator getEvaluator() {
+        var e = evaluator;
+        if (e == null || e.getPercentSkipped() != percentSkipped) {
+            e = new VSOP87Evaluator(this, percentSkipped);
+            evaluator = e;
+        }
+        return e;
+    }
+
+    /**
+     * Gets the term offsets of the given body for the current version.
+     *
+     * @param body The body.
+     *
+     * @return The offsets array.
+     */
+    int[] getOffsets(VSOP87Evaluator.Body body) {
+        return switch (body) {
+            case MERCURY -> offsets_mercury;
+            case VENUS -> offsets_venus;
+            case EARTH -> offsets_earth;
+            case MARS -> offsets_mars;
+            case JUPITER -> offsets_jupiter;
+            case SATURN -> offsets_saturn;
+            case URANUS -> offsets_uranus;
+            case NEPTUNE -> offsets_neptune;
+            case EMB -> offsets_emb;
+            case SUN -> offsets_sun;
+        };
+    }
+
     String guessVersion(String filename) {
         if (filename.contains("vsop87a")) {
             return "vsop87a";
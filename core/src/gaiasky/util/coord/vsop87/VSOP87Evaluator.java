@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2024 Gaia Sky - All rights reserved.
+ *  This file is part of Gaia Sky, which is released under the Mozilla Public License 2.0.
+ *  You may use, distribute and modify this code under the terms of MPL2.
+ *  See the file LICENSE.md in the project root for full license details.
+ */
+
+package gaiasky.util.coord.vsop87;
+
+import net.jafama.FastMath;
+
+/**
+ * Compiled VSOP87 evaluator. All the terms retained after truncation are laid out in three contiguous
+ * primitive arrays (amplitude, phase and frequency), ordered by body, variable and power of time.
+ * The series of each variable is evaluated with Horner's scheme over the powers of time, so no
+ * {@link FastMath#pow(double, double)} calls are needed.
+ * <p>
+ * Only the first three variables of each body (the positions) are compiled. Results are always written
+ * to caller-provided buffers, so evaluations do not allocate. Instances are immutable, and can be shared
+ * between threads.
+ */
+public class VSOP87Evaluator {
+    /** Number of variables per body. **/
+    public static final int NUM_VARS = 3;
+    /** Number of powers of time per variable. **/
+    private static final int NUM_POWERS = 6;
+
+    /**
+     * Bodies that can be evaluated. The first eight are the planets.
+     */
+    public enum Body {
+        MERCURY,
+        VENUS,
+        EARTH,
+        MARS,
+        JUPITER,
+        SATURN,
+        URANUS,
+        NEPTUNE,
+        EMB,
+        SUN;
+
+        /** Number of planets, which come first in the enumeration. **/
+        public static final int NUM_PLANETS = 8;
+    }
+
+    private static final Body[] BODIES = Body.values();
+
+    /** Amplitudes of all retained terms. **/
+    private final double[] a;
+    /** Phases of all retained terms. **/
+    private final double[] b;
+    /** Frequencies of all retained terms. **/
+    private final double[] c;
+    /**
+     * Start index of the terms of each (body, variable, power) series in the term arrays. The series
+     * (body, var, power) spans [start[i], start[i + 1]), with i = (body * NUM_VARS + var) * NUM_POWERS + power.
+     */
+    private final int[] start;
+    /** Fraction of terms skipped in each series, in [0,1]. **/
+    private final double percentSkipped;
+
+    /**
+     * Compiles the given VSOP87 binary data with the given truncation.
+     *
+     * @param binary         The VSOP87 binary data.
+     * @param percentSkipped The fraction of terms to skip in each series, in [0,1].
+     */
+    public VSOP87Evaluator(VSOP87Binary binary, double percentSkipped) {
+        this.percentSkipped = percentSkipped;
+        final int numSeries = BODIES.length * NUM_VARS * NUM_POWERS;
+        this.start = new int[numSeries + 1];
+
+        // First pass, count retained terms.
+        int total = 0;
+        for (var body : BODIES) {
+            int[] offsets = binary.getOffsets(body);
+            for (int var = 0; var < NUM_VARS; var++) {
+                for (int power = 0; power < NUM_POWERS; power++) {
+                    total += retained(offsets, var, power);
+                }
+            }
+        }
+        this.a = new double[total];
+        this.b = new double[total];
+        this.c = new double[total];
+
+        // Second pass, copy terms.
+        final double[] data = binary.data;
+        int idx = 0, series = 0;
+        for (var body : BODIES) {
+            int[] offsets = binary.getOffsets(body);
+            for (int var = 0; var < NUM_VARS; var++) {
+                for (int power = 0; power < NUM_POWERS; power++) {
+                    start[series++] = idx;
+                    int length = length(offsets, var, power);
+                    if (length > 0) {
+                        // Since the terms appear bottom-to-top in the file, we start after the skipped.
+                        int first = (int) (length * percentSkipped);
+                        int o = (offsets[var * NUM_POWERS * 2 + power * 2] + first) * 3;
+                        for (int k = first; k < length; k++) {
+                            a[idx] = data[o];
+                            b[idx] = data[o + 1];
+                            c[idx] = data[o + 2];
+                            idx++;
+                            o += 3;
+                        }
+                    }
+                }
+            }
+        }
+        start[series] = idx;
+    }
+
+    private static int length(int[] offsets, int var, int power) {
+        int i = var * NUM_POWERS * 2 + power * 2 + 1;
+        return i < offsets.length ? offsets[i] : 0;
+    }
+
+    private int retained(int[] offsets, int var, int power) {
+        int length = length(offsets, var, power);
+        return length - (int) (length * percentSkipped);
+    }
+
+    public double getPercentSkipped() {
+        return percentSkipped;
+    }
+
+    /** Total number of retained terms. **/
+    public int getNumTerms() {
+        return a.length;
+    }
+
+    /**
+     * Evaluates the position of one body at the given time.
+     *
+     * @param body   The body.
+     * @param tau    The time in Julian millennia since J2000, see {@link gaiasky.util.coord.AstroUtils#tau(double)}.
+     * @param out    The output buffer, which gets the three variables of the body.
+     * @param offset The offset in the output buffer.
+     */
+    public void evaluate(Body body, double tau, double[] out, int offset) {
+        int series = body.ordinal() * NUM_VARS * NUM_POWERS;
+        for (int var = 0; var < NUM_VARS; var++) {
+            double acc = 0;
+            // Horner's scheme, starting at the highest power.
+            for (int power = NUM_POWERS - 1; power >= 0; power--) {
+                double sum = 0;
+                for (int k = start[series + power], end = start[series + power + 1]; k < end; k++) {
+                    sum += a[k] * FastMath.cos(b[k] + c[k] * tau);
+                }
+                acc = acc * tau + sum;
+            }
+            out[offset + var] = acc;
+            series += NUM_POWERS;
+        }
+    }
+
+    /**
+     * Evaluates the positions of the eight planets, from Mercury to Neptune, at the given time, in a single pass
+     * over the term arrays.
+     *
+     * @param tau The time in Julian millennia since J2000.
+     * @param out The output buffer, of at least 3 * {@link Body#NUM_PLANETS} elements. The position of each planet
+     *            is stored at {@code 3 * body.ordinal()}.
+     */
+    public void evaluatePlanets(double tau, double[] out) {
+        final int numSeries = Body.NUM_PLANETS * NUM_VARS;
+        int series = 0;
+        for (int s = 0; s < numSeries; s++) {
+            double acc = 0;
+            for (int power = NUM_POWERS - 1; power >= 0; power--) {
+                double sum = 0;
+                for (int k = start[series + power], end = start[series + power + 1]; k < end; k++) {
+                    sum += a[k] * FastMath.cos(b[k] + c[k] * tau);
+                }
+                acc = acc * tau + sum;
+            }
+            out[s] = acc;
+            series += NUM_POWERS;
+        }
+    }
+
+    /**
+     * Evaluates the position of one body at many times. The term arrays are traversed once, and each term
+     * is applied to all times, which is the efficient order for orbit sampling.
+     *
+     * @param body The body.
+     * @param taus The times in Julian millennia since J2000.
+     * @param n    The number of times to evaluate.
+     * @param out  The output buffer, of at least 3 * n elements. The position at {@code taus[i]} is stored at {@code 3 * i}.
+     */
+    public void evaluate(Body body, double[] taus, int n, double[] out) {
+        int series = body.ordinal() * NUM_VARS * NUM_POWERS;
+        for (int var = 0; var < NUM_VARS; var++) {
+            for (int i = 0; i < n; i++) {
+                out[i * NUM_VARS + var] = 0;
+            }
+            // Horner's scheme, applied to all times at once.
+            for (int power = NUM_POWERS - 1; power >= 0; power--) {
+                if (power < NUM_POWERS - 1) {
+                    for (int i = 0; i < n; i++) {
+                        out[i * NUM_VARS + var] *= taus[i];
+                    }
+                }
+                for (int k = start[series + power], end = start[series + power + 1]; k < end; k++) {
+                    final double ak = a[k];
+                    final double bk = b[k];
+                    final double ck = c[k];
+                    for (int i = 0; i < n; i++) {
+                        out[i * NUM_VARS + var] += ak * FastMath.cos(bk + ck * taus[i]);
+                    }
+                }
+            }
+            series += NUM_POWERS;
+        }
+    }
+}
@@ -19,6 +19,7 @@ import gaiasky.util.Logger.Log;
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.io.InputStream;
 
 public class OwnPixmapLoader extends PixmapLoader {
     private static final Log logger = Logger.getLogger(OwnPixmapLoader.class);
@@ -33,23 +34,7 @@ public class OwnPixmapLoader extends PixmapLoader {
     public void loadAsync(AssetManager manager, String fileName, FileHandle file, PixmapParameter parameter) {
         if (file.extension().equalsIgnoreCase("jxl")) {
             try {
-                BufferedImage image = ImageIO.read(file.read());
-
-                int w = image.getWidth();
-                int h = image.getHeight();
-                pixmap = new Pixmap(w, h, Format.RGBA8888);
-
-                for (int x = 0; x < w; x++) {
-                    for (int y = 0; y < h; y++) {
-                        int argb = image.getRGB(x, y);
-                        int blue =  argb & 255;
-                        int green = (argb >> 8) & 255;
-                        int red =   (argb >> 16) & 255;
-                        int alpha = (argb >> 24) & 255;
-                        pixmap.setColor(red / 255f, green / 255f, blue/255f, alpha / 255f);
-                        pixmap.drawPixel(x, y);
-                    }
-                }
+                pixmap = readJxl(file);
             } catch (IOException e) {
                 logger.error(e, "Error loading JPEG-XL image.");
             }
@@ -59,6 +44,49 @@ public class OwnPixmapLoader extends PixmapLoader {
         }
     }
 
+    /**
+     * Reads a JPEG-XL image into a new RGBA8888 pixmap. Does not need the GL context.
+     *
+     * @param file The image file.
+     *
+     * @return The pixmap.
+     *
+     * @throws IOException If the image can't be read.
+     */
+    public static Pixmap readJxl(FileHandle file) throws IOException {
+        return readJxl(file.read());
+    }
+
+    /**
+     * Reads a JPEG-XL image from the given stream into a new RGBA8888 pixmap. Does not need the GL context.
+     *
+     * @param stream The stream with the image data.
+     *
+     * @return The pixmap.
+     *
+     * @throws IOException If the image can't be read.
+     */
+    public static Pixmap readJxl(InputStream stream) throws IOException {
+        BufferedImage image = ImageIO.read(stream);
+
+        int w = image.getWidth();
+        int h = image.getHeight();
+        Pixmap pixmap = new Pixmap(w, h, Format.RGBA8888);
+
+        for (int x = 0; x < w; x++) {
+            for (int y = 0; y < h; y++) {
+                int argb = image.getRGB(x, y);
+                int blue =  argb & 255;
+                int green = (argb >> 8) & 255;
+                int red =   (argb >> 16) & 255;
+                int alpha = (argb >> 24) & 255;
+                pixmap.setColor(red / 255f, green / 255f, blue/255f, alpha / 255f);
+                pixmap.drawPixel(x, y);
+            }
+        }
+        return pixmap;
+    }
+
     @Override
     public Pixmap loadSync(AssetManager manager, String fileName, FileHandle file, PixmapParameter parameter) {
         if (this.pixmap != null) {
@@ -541,6 +541,44 @@ public class IntMesh implements Disposable {
         ((VertexBufferObjectInstanced) this.vertices).setInstance(instance, offset, count);
     }
 
+    /**
+     * Updates (a portion of) the per-instance attributes, growing the number of instances if needed. Only the
+     * updated range is sent to the GPU.
+     *
+     * @param targetOffset The offset in number of floats of the instance buffer.
+     * @param instance     The instance data.
+     * @param sourceOffset The offset in number of floats within the instance data.
+     * @param count        The number of floats to update.
+     */
+    public void updateInstanceAttribs(int targetOffset,
+                                      float[] instance,
+                                      int sourceOffset,
+                                      int count) {
+        ((VertexBufferObjectInstanced) this.vertices).updateInstance(targetOffset, instance, sourceOffset, count);
+    }
+
+    /**
+     * Updates (a portion of) the vertices, growing the number of vertices if needed. If the vertex data supports it,
+     * only the updated range is sent to the GPU. Otherwise, all the vertices up to the end of the range are set again,
+     * so the source must have the layout of the whole buffer.
+     *
+     * @param targetOffset The offset in number of floats of the mesh part.
+     * @param source       The vertex data.
+     * @param sourceOffset The offset in number of floats within the source array.
+     * @param count        The number of floats to update.
+     */
+    public IntMesh updateVerticesRange(int targetOffset,
+                                       float[] source,
+                                       int sourceOffset,
+                                       int count) {
+        if (this.vertices instanceof VertexBufferObjectWithVAO vbo) {
+            vbo.updateVerticesRange(targetOffset, source, sourceOffset, count);
+        } else {
+            this.vertices.setVertices(source, sourceOffset - targetOffset, targetOffset + count);
+        }
+        return this;
+    }
+
     /**
      * Sets the indices of this Mesh
      *
@@ -40,6 +40,10 @@ public class VertexBufferObjectInstanced implements IntVertexData {
     int meshVAO = -1;
     IntArray cachedLocationsGlobal = new IntArray();
     IntArray cachedLocationsInstance = new IntArray();
+    /** Range of the instance buffer, in floats, written with {@link #updateInstance(int, float[], int, int)} and not yet sent to the GPU. **/
+    int instanceRangeStart = Integer.MAX_VALUE, instanceRangeEnd = 0;
+    /** Size in bytes of the storage allocated for the instance buffer in the GPU. **/
+    int instanceStorageBytes = 0;
 
     /**
      * Constructs a new interleaved VertexBufferObjectWithVAO.
@@ -117,6 +121,44 @@ public class VertexBufferObjectInstanced implements IntVertexData {
         bufferInstance.position(0);
         bufferInstance.limit(count);
         isDirtyInstance = bufferChanged(byteBufferInstance, isBoundInstance, isDirtyInstance);
+        if (!isDirtyInstance) {
+            instanceStorageBytes = byteBufferInstance.limit();
+        }
+        instanceRangeStart = Integer.MAX_VALUE;
+        instanceRangeEnd = 0;
+    }
+
+    /**
+     * Writes a range of the per-instance attributes, growing the number of instances of the buffer to cover it if needed.
+     * Only the written range is sent to the GPU at the next bind.
+     *
+     * @param targetOffset The offset in number of floats of the instance buffer.
+     * @param vertices     The instance data.
+     * @param sourceOffset The offset in number of floats within the instance data.
+     * @param count        The number of floats to write.
+     */
+    public void updateInstance(int targetOffset, float[] vertices, int sourceOffset, int count) {
+        final int end = targetOffset + count;
+        if (bufferInstance.limit() < end) {
+            bufferInstance.limit(end);
+        }
+        byteBufferInstance.limit(bufferInstance.limit() * 4);
+        final int pos = byteBufferInstance.position();
+        byteBufferInstance.position(targetOffset * 4);
+        BufferUtils.copy(vertices, sourceOffset, count, byteBufferInstance);
+        byteBufferInstance.position(pos);
+        bufferInstance.position(0);
+        instanceRangeStart = Math.min(instanceRangeStart, targetOffset);
+        instanceRangeEnd = Math.max(instanceRangeEnd, end);
+    }
+
+    /**
+     * Gets the number of instances currently in the instance buffer.
+     *
+     * @return The number of instances.
+     */
+    public int getNumInstances() {
+        return bufferInstance.limit() * 4 / instanceAttributes.vertexSize;
     }
 
     @Override
@@ -153,7 +195,14 @@ public class VertexBufferObjectInstanced implements IntVertexData {
 
         // Instance attributes
         bindAttributes(shader, locations, instanceAttributes, instanceBufferHandle, cachedLocationsInstance, 1);
-        isDirtyInstance = bindData(gl, instanceBufferHandle, isDirtyInstance, bufferInstance, byteBufferInstance);
+        if (isDirtyInstance) {
+            isDirtyInstance = bindData(gl, instanceBufferHandle, true, bufferInstance, byteBufferInstance);
+            instanceStorageBytes = byteBufferInstance.limit();
+            instanceRangeStart = Integer.MAX_VALUE;
+            instanceRangeEnd = 0;
+        } else if (instanceRangeEnd > instanceRangeStart) {
+            bindInstanceRange(gl);
+        }
         isBoundInstance = true;
 
     }
@@ -240,6 +289,25 @@ public class VertexBufferObjectInstanced implements IntVertexData {
         return false;
     }
 
+    private void bindInstanceRange(GL20 gl) {
+        gl.glBindBuffer(GL20.GL_ARRAY_BUFFER, instanceBufferHandle);
+        if (instanceStorageBytes < byteBufferInstance.capacity()) {
+            // Allocate the whole storage once. This drops the previous contents, so we send everything again.
+            gl.glBufferData(GL20.GL_ARRAY_BUFFER, byteBufferInstance.capacity(), null, usage);
+            instanceStorageBytes = byteBufferInstance.capacity();
+            instanceRangeStart = 0;
+            instanceRangeEnd = Math.max(instanceRangeEnd, bufferInstance.limit());
+        }
+        final int limit = byteBufferInstance.limit();
+        byteBufferInstance.limit(instanceRangeEnd * 4);
+        byteBufferInstance.position(instanceRangeStart * 4);
+        gl.glBufferSubData(GL20.GL_ARRAY_BUFFER, instanceRangeStart * 4, (instanceRangeEnd - instanceRangeStart) * 4, byteBufferInstance);
+        byteBufferInstance.position(0);
+        byteBufferInstance.limit(limit);
+        instanceRangeStart = Integer.MAX_VALUE;
+        instanceRangeEnd = 0;
+    }
+
     /**
      * Unbinds this VertexBufferObject.
      *
@@ -265,6 +333,7 @@ public class VertexBufferObjectInstanced implements IntVertexData {
     public void invalidate() {
         globalBufferHandle = Gdx.gl30.glGenBuffer();
         createVAO();
+        instanceStorageBytes = 0;
         isDirtyGlobal = true;
     }
 
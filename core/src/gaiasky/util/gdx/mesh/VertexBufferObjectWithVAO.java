@@ -33,6 +33,10 @@ public class VertexBufferObjectWithVAO implements IntVertexData {
     boolean isBound = false;
     int vaoHandle = -1;
     IntArray cachedLocations = new IntArray();
+    /** Range, in floats, written with {@link #updateVerticesRange(int, float[], int, int)} and not yet sent to the GPU. **/
+    int rangeStart = Integer.MAX_VALUE, rangeEnd = 0;
+    /** Size in bytes of the storage allocated for the buffer in the GPU. **/
+    int storageBytes = 0;
 
     /**
      * Constructs a new interleaved VertexBufferObjectWithVAO.
@@ -89,6 +93,7 @@ public class VertexBufferObjectWithVAO implements IntVertexData {
     private void bufferChanged() {
         if (isBound) {
             Gdx.gl20.glBufferData(GL20.GL_ARRAY_BUFFER, byteBuffer.limit(), byteBuffer, usage);
+            storageBytes = byteBuffer.limit();
             isDirty = false;
         }
     }
@@ -99,6 +104,8 @@ public class VertexBufferObjectWithVAO implements IntVertexData {
         BufferUtils.copy(vertices, byteBuffer, count, offset);
         buffer.position(0);
         buffer.limit(count);
+        rangeStart = Integer.MAX_VALUE;
+        rangeEnd = 0;
         bufferChanged();
     }
 
@@ -113,6 +120,30 @@ public class VertexBufferObjectWithVAO implements IntVertexData {
         bufferChanged();
     }
 
+    /**
+     * Writes a range of vertices, growing the number of vertices of the buffer to cover it if needed.
+     * Unlike {@link #updateVertices(int, float[], int, int)}, only the written range is sent to the GPU at the next bind.
+     *
+     * @param targetOffset The offset in number of floats of the buffer.
+     * @param vertices     The vertex data.
+     * @param sourceOffset The offset in number of floats within the vertex data.
+     * @param count        The number of floats to write.
+     */
+    public void updateVerticesRange(int targetOffset, float[] vertices, int sourceOffset, int count) {
+        final int end = targetOffset + count;
+        if (buffer.limit() < end) {
+            buffer.limit(end);
+        }
+        byteBuffer.limit(buffer.limit() * 4);
+        final int pos = byteBuffer.position();
+        byteBuffer.position(targetOffset * 4);
+        BufferUtils.copy(vertices, sourceOffset, count, byteBuffer);
+        byteBuffer.position(pos);
+        buffer.position(0);
+        rangeStart = Math.min(rangeStart, targetOffset);
+        rangeEnd = Math.max(rangeEnd, end);
+    }
+
     /**
      * Binds this VertexBufferObject for rendering via glDrawArrays or glDrawElements
      *
@@ -199,7 +230,27 @@ public class VertexBufferObjectWithVAO implements IntVertexData {
             gl.glBindBuffer(GL20.GL_ARRAY_BUFFER, bufferHandle);
             byteBuffer.limit(buffer.limit() * 4);
             gl.glBufferData(GL20.GL_ARRAY_BUFFER, byteBuffer.limit(), byteBuffer, usage);
+            storageBytes = byteBuffer.limit();
+            rangeStart = Integer.MAX_VALUE;
+            rangeEnd = 0;
             isDirty = false;
+        } else if (rangeEnd > rangeStart) {
+            gl.glBindBuffer(GL20.GL_ARRAY_BUFFER, bufferHandle);
+            if (storageBytes < byteBuffer.capacity()) {
+                // Allocate the whole storage once. This drops the previous contents, so we send everything again.
+                gl.glBufferData(GL20.GL_ARRAY_BUFFER, byteBuffer.capacity(), null, usage);
+                storageBytes = byteBuffer.capacity();
+                rangeStart = 0;
+                rangeEnd = Math.max(rangeEnd, buffer.limit());
+            }
+            final int limit = byteBuffer.limit();
+            byteBuffer.limit(rangeEnd * 4);
+            byteBuffer.position(rangeStart * 4);
+            gl.glBufferSubData(GL20.GL_ARRAY_BUFFER, rangeStart * 4, (rangeEnd - rangeStart) * 4, byteBuffer);
+            byteBuffer.position(0);
+            byteBuffer.limit(limit);
+            rangeStart = Integer.MAX_VALUE;
+            rangeEnd = 0;
         }
     }
 
@@ -227,6 +278,7 @@ public class VertexBufferObjectWithVAO implements IntVertexData {
     public void invalidate() {
         bufferHandle = Gdx.gl30.glGenBuffer();
         createVAO();
+        storageBytes = 0;
         isDirty = true;
     }
 
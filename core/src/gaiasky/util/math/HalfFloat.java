@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2024 Gaia Sky - All rights reserved.
+ *  This file is part of Gaia Sky, which is released under the Mozilla Public License 2.0.
+ *  You may use, distribute and modify this code under the terms of MPL2.
+ *  See the file LICENSE.md in the project root for full license details.
+ */
+
+package gaiasky.util.math;
+
+/**
+ * Conversions between 32-bit floats and IEEE 754 half-precision (binary16) floats, stored in the lower 16 bits
+ * of an integer. Conversions to half precision round to the nearest value, with ties to even, and overflow to infinity.
+ */
+public final class HalfFloat {
+    /** Largest finite half-precision value. **/
+    public static final float MAX_VALUE = 65504f;
+    /** Smallest positive normal half-precision value. **/
+    public static final float MIN_NORMAL = 0x1p-14f;
+
+    private HalfFloat() {
+    }
+
+    /**
+     * Converts the given float to half precision.
+     *
+     * @param value The value.
+     *
+     * @return The half-precision bits, in the lower 16 bits.
+     */
+    public static int fromFloat(float value) {
+        final int bits = Float.floatToRawIntBits(value);
+        final int sign = (bits >>> 16) & 0x8000;
+        final int abs = bits & 0x7fffffff;
+        if (abs >= 0x7f800000) {
+            // Infinity or NaN.
+            return sign | (abs > 0x7f800000 ? 0x7e00 : 0x7c00);
+        }
+        if (abs >= 0x477ff000) {
+            // Rounds to a value over MAX_VALUE.
+            return sign | 0x7c00;
+        }
+        if (abs >= 0x38800000) {
+            // Normal, re-bias exponent and round the mantissa.
+            int h = (abs - 0x38000000) >>> 13;
+            final int rem = abs & 0x1fff;
+            if (rem > 0x1000 || (rem == 0x1000 && (h & 1) != 0)) {
+                h++;
+            }
+            return sign | h;
+        }
+        if (abs < 0x33000000) {
+            // Rounds to zero.
+            return sign;
+        }
+        // Subnormal, in units of 2^-24.
+        final int shift = 126 - (abs >>> 23);
+        final int mantissa = (abs & 0x7fffff) | 0x800000;
+        int h = mantissa >>> shift;
+        final int rem = mantissa & ((1 << shift) - 1);
+        final int half = 1 << (shift - 1);
+        if (rem > half || (rem == half && (h & 1) != 0)) {
+            h++;
+        }
+        return sign | h;
+    }
+
+    /**
+     * Converts the given half-precision value to a float. The conversion is exact.
+     *
+     * @param half The half-precision bits, in the lower 16 bits.
+     *
+     * @return The value.
+     */
+    public static float toFloat(int half) {
+        final int sign = (half & 0x8000) << 16;
+        final int exponent = (half >>> 10) & 0x1f;
+        final int mantissa = half & 0x3ff;
+        if (exponent == 0) {
+            final float v = mantissa * 0x1p-24f;
+            return sign != 0 ? -v : v;
+        }
+        if (exponent == 0x1f) {
+            return Float.intBitsToFloat(sign | 0x7f800000 | (mantissa << 13));
+        }
+        return Float.intBitsToFloat(sign | ((exponent + 112) << 23) | (mantissa << 13));
+    }
+}
@@ -8,6 +8,8 @@ package gaiasky.util.parse;
 
 import net.jafama.FastMath;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
@@ -143,12 +145,28 @@ public final class Parser {
      * invalid input is necessary
      */
     public static double parseDouble(String input) {
+        return parseDouble(input, 0, input.length());
+    }
+
+    /**
+     * Same as {@link Parser#parseDouble(String)}, but parses the characters of the given range of a character
+     * sequence, so that no intermediate string is created. See {@link Parser#asciiView(ByteBuffer)} to parse
+     * numbers straight from a byte buffer.
+     *
+     * @param input The character sequence.
+     * @param start The index of the first character of the number.
+     * @param end   The index after the last character of the number.
+     * @return Parsed double or Double.NaN if the parsing fails
+     */
+    public static double parseDouble(CharSequence input,
+                                     int start,
+                                     int end) {
         double result = 0;
         int pos = 0;
-        int len = input.length();
+        int len = end - start;
         if (len == 0)
             return Double.NaN;
-        char c = input.charAt(0);
+        char c = input.charAt(start);
         double sign = 1;
 
         // skip any starting white space
@@ -156,7 +174,7 @@ public final class Parser {
             ++pos;
             if (pos >= len)
                 return Double.NaN;
-            c = input.charAt(pos);
+            c = input.charAt(start + pos);
         }
 
         // if input looks like N, it probably is
@@ -176,19 +194,19 @@ public final class Parser {
                 return Double.NaN;
         }
 
-        c = input.charAt(pos);
+        c = input.charAt(start + pos);
         if (c == 'I' || c == 'i') // probably inf, let's confirm
         {
             ++pos;
             if (pos >= len)
                 return Double.NaN;
-            c = input.charAt(pos);
+            c = input.charAt(start + pos);
             if (!(c == 'N' || c == 'n'))
                 return Double.NaN;
             ++pos;
             if (pos >= len)
                 return Double.NaN;
-            c = input.charAt(pos);
+            c = input.charAt(start + pos);
             if (!(c == 'F' || c == 'f'))
                 return Double.NaN;
             else {
@@ -203,7 +221,7 @@ public final class Parser {
         {
             if (pos >= len)
                 return sign * result;
-            c = input.charAt(pos++);
+            c = input.charAt(start + pos++);
             if (c < '0' || c > '9')
                 break;
             result = (result * 10.0) + (c - '0');
@@ -216,7 +234,7 @@ public final class Parser {
             return Double.NaN;
         double exp = 0.1;
         while (pos < len) {
-            c = input.charAt(pos++);
+            c = input.charAt(start + pos++);
             if (c < '0' || c > '9') {
                 if (c == 'e' || c == 'E' || c == ' ' || c == '\t' || c == '\r' || c == '\n' || c == '\0') // break on trailing white space or exponent
                     break;
@@ -230,7 +248,7 @@ public final class Parser {
             return sign * result;
 
         int expSign = 1;
-        c = input.charAt(pos);
+        c = input.charAt(start + pos);
 
         // handle both - and + signs
         if (c == '-') {
@@ -250,7 +268,7 @@ public final class Parser {
         {
             if (pos >= len)
                 return sign * result * FastMath.pow(10.0, expSign * expResult);
-            c = input.charAt(pos++);
+            c = input.charAt(start + pos++);
             if (c < '0' || c > '9')
                 break;
             expResult = (expResult * 10.0) + (c - '0');
@@ -261,7 +279,7 @@ public final class Parser {
 
         double expExp = 0.1;
         while (pos < len) {
-            c = input.charAt(pos++);
+            c = input.charAt(start + pos++);
             if (c < '0' || c > '9') {
                 if (c == ' ' || c == '\t' || c == '\r' || c == '\n' || c == '\0') // break on trailing white space or exponent
                     break;
@@ -275,6 +293,49 @@ public final class Parser {
         return sign * result * FastMath.pow(10.0, expSign * expResult);
     }
 
+
+    /**
+     * Gets a view of the given byte buffer as a sequence of ASCII characters, to be used with
+     * {@link Parser#parseDouble(CharSequence, int, int)}. The view uses absolute reads, so the buffer position is
+     * not modified, and its length is the limit of the buffer.
+     *
+     * @param buffer The buffer.
+     * @return The character sequence.
+     */
+    public static CharSequence asciiView(ByteBuffer buffer) {
+        return new AsciiSequence(buffer);
+    }
+
+    private record AsciiSequence(ByteBuffer buffer) implements CharSequence {
+        @Override
+        public int length() {
+            return buffer.limit();
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (buffer.get(index) & 0xff);
+        }
+
+        @Override
+        public CharSequence subSequence(int start,
+                                        int end) {
+            return toString(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return toString(0, length());
+        }
+
+        private String toString(int start,
+                                int end) {
+            final byte[] bytes = new byte[end - start];
+            buffer.get(start, bytes);
+            return new String(bytes, StandardCharsets.ISO_8859_1);
+        }
+    }
+
     /**
      * <p>
      * Quick double string parser that can handle negative and positive doubles
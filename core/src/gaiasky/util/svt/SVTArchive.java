@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2023 Gaia Sky - All rights reserved.
+ *  This file is part of Gaia Sky, which is released under the Mozilla Public License 2.0.
+ *  You may use, distribute and modify this code under the terms of MPL2.
+ *  See the file LICENSE.md in the project root for full license details.
+ */
+
+package gaiasky.util.svt;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Single-file archive with all the tiles of an SVT. The file contains a header, a tile index sorted by
+ * tile key (see {@link SVTQuadtree#key(int, int, int)}), and the compressed tile images, concatenated.
+ * <ul>
+ * <li>Header: magic (int), version (int), number of tiles (int), image format extension (UTF string).</li>
+ * <li>Index: for each tile, key (long), offset in the file (long), and length (int).</li>
+ * <li>Payload: the tile images, in the order of the index.</li>
+ * </ul>
+ * All values are big-endian. The payload is memory-mapped, and tiles are read with positional reads,
+ * so an archive can be read from several threads at once.
+ */
+public class SVTArchive {
+    /** Name of the archive file in the SVT location. **/
+    public static final String FILE_NAME = "tiles.svta";
+    /** Magic number, 'GSVT'. **/
+    public static final int MAGIC = 0x47535654;
+    public static final int VERSION = 1;
+
+    /** Maximum size of each mapped segment. **/
+    private static final long SEGMENT_SIZE = 1L << 30;
+
+    private final Path file;
+    private final String format;
+    private final long[] keys;
+    private final long[] offsets;
+    private final int[] lengths;
+    private final MappedByteBuffer[] segments;
+
+    private SVTArchive(Path file, String format, long[] keys, long[] offsets, int[] lengths, MappedByteBuffer[] segments) {
+        this.file = file;
+        this.format = format;
+        this.keys = keys;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.segments = segments;
+    }
+
+    /**
+     * Opens the given archive, reads its index and maps its contents.
+     *
+     * @param file The archive file.
+     * @return The archive.
+     * @throws IOException If the file can't be read or is not an SVT archive.
+     */
+    public static SVTArchive open(Path file) throws IOException {
+        final String format;
+        final long[] keys, offsets;
+        final int[] lengths;
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not an SVT archive: " + file);
+            }
+            final int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported SVT archive version " + version + ": " + file);
+            }
+            final int n = in.readInt();
+            format = in.readUTF();
+            keys = new long[n];
+            offsets = new long[n];
+            lengths = new int[n];
+            for (int i = 0; i < n; i++) {
+                keys[i] = in.readLong();
+                offsets[i] = in.readLong();
+                lengths[i] = in.readInt();
+                if (i > 0 && keys[i] <= keys[i - 1]) {
+                    throw new IOException("SVT archive index is not sorted: " + file);
+                }
+            }
+        }
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            final var segments = new MappedByteBuffer[(int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+            for (int i = 0; i < segments.length; i++) {
+                final long position = i * SEGMENT_SIZE;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(SEGMENT_SIZE, size - position));
+            }
+            return new SVTArchive(file, format, keys, offsets, lengths, segments);
+        }
+    }
+
+    /**
+     * Writes a new archive with the given tiles.
+     *
+     * @param file   The archive file to write.
+     * @param format The image format extension of the tiles, e.g. "jpg".
+     * @param keys   The tile keys, sorted in ascending order.
+     * @param tiles  The tile image files, in the order of the keys.
+     * @throws IOException If the archive can't be written.
+     */
+    public static void write(Path file, String format, long[] keys, Path[] tiles) throws IOException {
+        final int n = keys.length;
+        final long[] lengths = new long[n];
+        for (int i = 0; i < n; i++) {
+            if (i > 0 && keys[i] <= keys[i - 1]) {
+                throw new IllegalArgumentException("Tile keys must be sorted and unique");
+            }
+            lengths[i] = Files.size(tiles[i]);
+            if (lengths[i] > Integer.MAX_VALUE) {
+                throw new IOException("Tile too large: " + tiles[i]);
+            }
+        }
+        final long headerSize = 4 + 4 + 4 + 2 + format.getBytes(StandardCharsets.UTF_8).length;
+        long offset = headerSize + n * 20L;
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(n);
+            out.writeUTF(format);
+            for (int i = 0; i < n; i++) {
+                out.writeLong(keys[i]);
+                out.writeLong(offset);
+                out.writeInt((int) lengths[i]);
+                offset += lengths[i];
+            }
+            for (int i = 0; i < n; i++) {
+                if (Files.copy(tiles[i], out) != lengths[i]) {
+                    throw new IOException("Tile changed while writing the archive: " + tiles[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the compressed image of the tile with the given key.
+     *
+     * @param key The tile key.
+     * @return The compressed image, or null if the tile is not in the archive.
+     */
+    public byte[] read(long key) {
+        final int i = Arrays.binarySearch(keys, key);
+        if (i < 0) {
+            return null;
+        }
+        final byte[] data = new byte[lengths[i]];
+        long position = offsets[i];
+        int done = 0;
+        while (done < data.length) {
+            final var segment = segments[(int) (position / SEGMENT_SIZE)];
+            final int index = (int) (position % SEGMENT_SIZE);
+            final int n = Math.min(data.length - done, segment.capacity() - index);
+            segment.get(index, data, done, n);
+            done += n;
+            position += n;
+        }
+        return data;
+    }
+
+    public boolean contains(long key) {
+        return Arrays.binarySearch(keys, key) >= 0;
+    }
+
+    /** Number of tiles in the archive. **/
+    public int size() {
+        return keys.length;
+    }
+
+    /** Key of the tile at the given position in the index. **/
+    public long getKey(int index) {
+        return keys[index];
+    }
+
+    /** Image format extension of the tiles. **/
+    public String getFormat() {
+        return format;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+}
@@ -16,6 +16,7 @@ import com.badlogic.gdx.graphics.Texture.TextureFilter;
 import com.badlogic.gdx.graphics.glutils.PixmapTextureData;
 import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.IntMap;
+import com.badlogic.gdx.utils.LongMap;
 import com.badlogic.gdx.utils.TimeUtils;
 import gaiasky.GaiaSky;
 import gaiasky.event.Event;
@@ -36,6 +37,8 @@ import java.util.ArrayDeque;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class SVTManager implements IObserver {
     private static final Log logger = Logger.getLogger(SVTManager.class);
@@ -60,8 +63,6 @@ public class SVTManager implements IObserver {
         return svtSequenceId++;
     }
 
-    private AssetManager manager;
-
     /**
      * Map virtual texture ID to component.
      */
@@ -71,9 +72,13 @@ public class SVTManager implements IObserver {
      */
     private final Array<SVTQuadtreeNode<Path>> observedTiles;
     /**
-     * Maps tile path objects to actual pixmaps.
+     * Byte-bounded cache of decoded tiles, keyed by tile path.
+     */
+    private final SVTTileCache tileCache;
+    /**
+     * Decodes tiles in a dedicated pool.
      */
-    private final Map<String, Pixmap> tilePixmaps;
+    private final SVTTileDecoder tileDecoder;
     /**
      * Tiles queued to be paged in.
      */
@@ -112,76 +117,150 @@ public class SVTManager implements IObserver {
      */
     private FloatBuffer floatBuffer;
 
+    /**
+     * Copy of the last tile detection buffer, decoded in a worker thread.
+     */
+    private float[] detectionPixels;
+    /**
+     * Whether a tile detection buffer is currently being decoded. The copy of the buffer is only
+     * reused when this is false.
+     */
+    private final AtomicBoolean decoding = new AtomicBoolean(false);
+    /**
+     * The deduplicated tiles produced by the last decoding, waiting to be picked up by the GL thread.
+     */
+    private final AtomicReference<Array<SVTQuadtreeNode<Path>>> decodedTiles = new AtomicReference<>();
+
+    // Metrics of the last processing round.
+    private int lastHits, lastMisses, lastDecoded;
+    private long lastDecodeNanos, lastMaxDecodeNanos;
+    private long decodedCount, decodeNanos;
+
     // Are the textures displaying in the UI already?
     private boolean DEBUG_UI_VIEW = false;
 
     public SVTManager() {
         super();
         this.observedTiles = new Array<>(50);
-        this.tilePixmaps = new HashMap<>();
+        final var vtSettings = Settings.settings.scene.renderer.virtualTextures;
+        this.tileCache = new SVTTileCache(vtSettings.decodedCacheSize * 1024L * 1024L);
+        this.tileDecoder = new SVTTileDecoder(vtSettings.decodeThreads);
         this.tileLocation = new HashMap<>();
         this.vtIdMap = new IntMap<>(30);
         this.queuedTiles = new ArrayDeque<>(50);
     }
 
     public void doneLoading(AssetManager manager) {
-        this.manager = manager;
-
         EventManager.instance.subscribe(this, Event.SVT_MATERIAL_INFO);
     }
 
     /**
      * Flushes the current observed tiles queue, and refills it using the data in the given tile detection buffer.
+     * The buffer is copied and decoded in a worker thread, and the resulting tiles are picked up by the next call to
+     * {@link #processObservedTiles()}. If the previous buffer is still being decoded, the given one is dropped.
      *
      * @param tileDetectionBuffer The tile detection buffer data.
+     * @param width               The width of the tile detection buffer, in pixels.
      */
-    public void updateObservedTiles(final FloatBuffer tileDetectionBuffer) {
-        observedTiles.clear();
-        int size = tileDetectionBuffer.capacity() / 4;
-        tileDetectionBuffer.rewind();
-        for (int i = 0; i < size; i++) {
-            // Each pixel has level, x, y, and id.
-            float level = tileDetectionBuffer.get(); // r
-            float x = tileDetectionBuffer.get(); // g
-            float y = tileDetectionBuffer.get(); // b
-            float id = tileDetectionBuffer.get(); // a
-
-            if (id > 0 && vtIdMap.containsKey((int) id)) {
-                var svts = vtIdMap.get((int) id);
-                for (var svt : svts) {
-                    observeSvt(svt, level, x, y);
-                }
-            }
+    public void updateObservedTiles(final FloatBuffer tileDetectionBuffer,
+                                    final int width) {
+        if (!decoding.compareAndSet(false, true)) {
+            tileDetectionBuffer.clear();
+            return;
+        }
+        // Copy the buffer so that the render pass can reuse it right away.
+        final int n = tileDetectionBuffer.capacity();
+        if (detectionPixels == null || detectionPixels.length != n) {
+            detectionPixels = new float[n];
         }
+        tileDetectionBuffer.rewind();
+        tileDetectionBuffer.get(detectionPixels);
         tileDetectionBuffer.clear();
 
-        if (!observedTiles.isEmpty() && cacheBuffer == null) {
-            // Initialize cache buffer.
-            var cacheTextureData = new PixmapTextureData(new Pixmap(CACHE_BUFFER_SIZE, CACHE_BUFFER_SIZE, Format.RGBA8888), Format.RGBA8888, false, false, false);
-            cacheBuffer = new Texture(cacheTextureData);
-            cacheBuffer.setFilter(TextureFilter.Linear, TextureFilter.Linear);
-
-            // Initialize float buffer to draw pixels (1x1 with 4 components per pixel).
-            floatBuffer = BufferUtils.createFloatBuffer(4);
+        // The map may be modified by events while the worker runs.
+        final IntMap<Array<VirtualTextureComponent>> svtMap = new IntMap<>(vtIdMap.size);
+        for (var entry : vtIdMap) {
+            svtMap.put(entry.key, new Array<>(entry.value));
+        }
+        final float[] pixels = detectionPixels;
+        final int subsample = Math.max(1, Settings.settings.scene.renderer.virtualTextures.detectionSubsample);
+        final Runnable job = () -> {
+            try {
+                decodedTiles.set(decodeTiles(pixels, width, subsample, svtMap));
+            } finally {
+                decoding.set(false);
+            }
+        };
+        if (!GaiaSky.instance.getExecutorService().execute(job)) {
+            job.run();
         }
 
         // Process observed tiles.
         processObservedTiles();
-
     }
 
-    private void observeSvt(VirtualTextureComponent svt,
-                            float level,
-                            float x,
-                            float y) {
-        // Initialize tile size first time.
-        if (tileSize < 0) {
-            tileSize = svt.tileSize;
-            // This must be exact, CACHE_BUFFER_SIZE must be divisible by tileSize.
-            cacheSizeInTiles = CACHE_BUFFER_SIZE / tileSize;
-            cacheBufferArray = new SVTQuadtreeNode[cacheSizeInTiles][cacheSizeInTiles];
+    /**
+     * Decodes the given tile detection buffer into the list of observed tiles, without duplicates.
+     * Runs in a worker thread, so it only reads the quadtrees, which are not modified after loading.
+     *
+     * @param pixels    The tile detection buffer data, with level, x, y, and id for each pixel.
+     * @param width     The width of the buffer, in pixels.
+     * @param subsample Decode one in this many pixels, in each dimension.
+     * @param svtMap    Map from virtual texture ID to components.
+     *
+     * @return The observed tiles.
+     */
+    private static Array<SVTQuadtreeNode<Path>> decodeTiles(final float[] pixels,
+                                                           final int width,
+                                                           final int subsample,
+                                                           final IntMap<Array<VirtualTextureComponent>> svtMap) {
+        final Array<SVTQuadtreeNode<Path>> tiles = new Array<>(50);
+        // Tile keys are only unique within a tree.
+        final Map<SVTQuadtree<Path>, LongMap<SVTQuadtreeNode<Path>>> seen = new HashMap<>();
+        final int size = pixels.length / 4;
+        final int w = Math.max(1, Math.min(width, size));
+        final int h = size / w;
+        float lastLevel = -1, lastX = -1, lastY = -1, lastId = -1;
+        for (int row = 0; row < h; row += subsample) {
+            for (int col = 0; col < w; col += subsample) {
+                final int p = (row * w + col) * 4;
+                // Each pixel has level, x, y, and id.
+                final float level = pixels[p]; // r
+                final float x = pixels[p + 1]; // g
+                final float y = pixels[p + 2]; // b
+                final float id = pixels[p + 3]; // a
+                if (id <= 0 || (level == lastLevel && x == lastX && y == lastY && id == lastId)) {
+                    // Neighbouring pixels usually sample the same tile.
+                    continue;
+                }
+                lastLevel = level;
+                lastX = x;
+                lastY = y;
+                lastId = id;
+
+                final var svts = svtMap.get((int) id);
+                if (svts != null) {
+                    for (var svt : svts) {
+                        final var tile = findTile(svt, level, x, y);
+                        if (tile != null) {
+                            final var keys = seen.computeIfAbsent(tile.tree, t -> new LongMap<>());
+                            final long key = tile.getKey();
+                            if (!keys.containsKey(key)) {
+                                keys.put(key, tile);
+                                tiles.add(tile);
+                            }
+                        }
+                    }
+                }
+            }
         }
+        return tiles;
+    }
 
+    private static SVTQuadtreeNode<Path> findTile(VirtualTextureComponent svt,
+                                                  float level,
+                                                  float x,
+                                                  float y) {
         var tile = svt.tree.getTile((int) level, (int) x, (int) y);
         // Try recursive lookup to higher levels.
         // This is useful in incomplete levels.
@@ -193,8 +272,40 @@ public class SVTManager implements IObserver {
                 tile = svt.tree.getTileFromUV(l, uv[0], uv[1]);
             } while (tile == null && l > 0);
         }
-        if (tile != null && !observedTiles.contains(tile, true)) {
-            observedTiles.add(tile);
+        return tile;
+    }
+
+    /**
+     * Replaces the observed tiles with the result of the last decoding, if there is a new one.
+     * Must be called from the GL thread.
+     */
+    private void pickUpDecodedTiles() {
+        final var tiles = decodedTiles.getAndSet(null);
+        if (tiles == null) {
+            return;
+        }
+        observedTiles.clear();
+        observedTiles.addAll(tiles);
+        if (observedTiles.isEmpty()) {
+            return;
+        }
+
+        // Initialize tile size first time.
+        if (tileSize < 0) {
+            tileSize = observedTiles.first().tree.tileSize;
+            // This must be exact, CACHE_BUFFER_SIZE must be divisible by tileSize.
+            cacheSizeInTiles = CACHE_BUFFER_SIZE / tileSize;
+            cacheBufferArray = new SVTQuadtreeNode[cacheSizeInTiles][cacheSizeInTiles];
+        }
+
+        if (cacheBuffer == null) {
+            // Initialize cache buffer.
+            var cacheTextureData = new PixmapTextureData(new Pixmap(CACHE_BUFFER_SIZE, CACHE_BUFFER_SIZE, Format.RGBA8888), Format.RGBA8888, false, false, false);
+            cacheBuffer = new Texture(cacheTextureData);
+            cacheBuffer.setFilter(TextureFilter.Linear, TextureFilter.Linear);
+
+            // Initialize float buffer to draw pixels (1x1 with 4 components per pixel).
+            floatBuffer = BufferUtils.createFloatBuffer(4);
         }
     }
 
@@ -202,63 +313,64 @@ public class SVTManager implements IObserver {
      * Processes the current observed tiles queue.
      */
     public void processObservedTiles() {
+        pickUpDecodedTiles();
+        // Collect the tiles decoded since the last round.
+        tileDecoder.poll(tileCache::put);
+
+        final var prefetch = Settings.settings.scene.renderer.virtualTextures.prefetch;
+        int hits = 0, misses = 0;
         var now = TimeUtils.millis();
         for (var tile : observedTiles) {
             var path = tile.object.toString();
             switch (tile.state) {
-                case STATE_NOT_LOADED -> {
-                    // Load tile.
-                    if (!manager.contains(path)) {
-                        manager.load(path, Pixmap.class);
-                        tile.state = STATE_LOADING;
+                case STATE_NOT_LOADED, STATE_LOADED -> {
+                    if (tileCache.get(path) != null) {
+                        // Decoded tile available, add to the head of the queue.
+                        hits++;
+                        queuedTiles.offerFirst(tile);
+                        tile.state = STATE_QUEUED;
                     } else {
-                        // In case the same SVT is used for multiple channels.
-                        if (tile.state == STATE_NOT_LOADED) {
+                        // Decode tile.
+                        misses++;
+                        if (tileDecoder.request(tile, false)) {
                             tile.state = STATE_LOADING;
                         }
                     }
                 }
                 case STATE_LOADING -> {
                     // Check if done.
-                    if (manager.isLoaded(path)) {
-                        var pixmap = (Pixmap) manager.get(path);
-                        // Rescale if necessary, this should be avoided, as it is SLOW.
-                        if (pixmap.getWidth() != tile.tree.tileSize) {
-                            logger.warn("Rescaling tile: " + tile.toStringShort());
-                            Pixmap aux = new Pixmap(tile.tree.tileSize, tile.tree.tileSize, pixmap.getFormat());
-                            aux.drawPixmap(pixmap,
-                                    0, 0, pixmap.getWidth(), pixmap.getHeight(),
-                                    0, 0, tile.tree.tileSize, tile.tree.tileSize);
-                            manager.unload(path);
-                            pixmap = aux;
-                        }
-                        // Retrieve texture and put in queue.
-                        tilePixmaps.put(path, pixmap);
-                        // Add to head of queue.
+                    if (tileCache.contains(path)) {
                         queuedTiles.offerFirst(tile);
                         tile.state = STATE_QUEUED;
+                    } else if (!tileDecoder.isPending(path)) {
+                        // Decoded and evicted already, or failed.
+                        tile.state = STATE_NOT_LOADED;
                     }
                 }
-                case STATE_LOADED -> {
-                    // Already loaded, just add to the head of the queue.
-                    queuedTiles.offerFirst(tile);
-                    tile.state = STATE_QUEUED;
-                }
                 case STATE_QUEUED, STATE_CACHED -> {
                     // Update last accessed.
                     tile.accessed = now;
                 }
             }
+            if (prefetch) {
+                prefetchAround(tile);
+            }
         }
+        updateMetrics(hits, misses);
 
         int addedTiles = 0;
         int removedTiles = 0;
         SVTQuadtreeNode<Path> tile;
         SVTQuadtreeNode<Path> finalTile = null;
-        while ((tile = queuedTiles.poll()) != null && addedTiles < Settings.settings.scene.renderer.virtualTextures.maxTilesPerFrame) {
+        while (addedTiles < Settings.settings.scene.renderer.virtualTextures.maxTilesPerFrame && (tile = queuedTiles.poll()) != null) {
             finalTile = tile;
             if (tile.state == STATE_QUEUED) {
                 if (!tileLocation.containsKey(tile)) {
+                    if (!tileCache.contains(tile.object.toString())) {
+                        // Evicted while in the queue, decode again.
+                        tile.state = STATE_NOT_LOADED;
+                        continue;
+                    }
                     if (tileLocation.size() < cacheSizeInTiles * cacheSizeInTiles) {
                         // Find first free location in cache.
                         outer1:
@@ -322,6 +434,81 @@ public class SVTManager implements IObserver {
 
     }
 
+    /**
+     * Requests the decoding of the parent and the children of the given tile, if they are not in
+     * the cache of decoded tiles already.
+     *
+     * @param tile The observed tile.
+     */
+    private void prefetchAround(SVTQuadtreeNode<Path> tile) {
+        if (tile.parent != null) {
+            prefetch(tile.parent);
+        }
+        final int level = tile.level + 1;
+        if (level <= tile.tree.depth) {
+            for (int i = 0; i < 4; i++) {
+                final var child = tile.tree.getTile(level, tile.col * 2 + (i & 1), tile.row * 2 + (i >> 1));
+                if (child != null) {
+                    prefetch(child);
+                }
+            }
+        }
+    }
+
+    private void prefetch(SVTQuadtreeNode<Path> tile) {
+        if ((tile.state == STATE_NOT_LOADED || tile.state == STATE_LOADED) && !tileCache.contains(tile.object.toString())) {
+            tileDecoder.request(tile, true);
+        }
+    }
+
+    private void updateMetrics(int hits,
+                               int misses) {
+        final long count = tileDecoder.getDecodedCount();
+        final long nanos = tileDecoder.getDecodeNanos();
+        lastHits = hits;
+        lastMisses = misses;
+        lastDecoded = (int) (count - decodedCount);
+        lastDecodeNanos = nanos - decodeNanos;
+        lastMaxDecodeNanos = tileDecoder.getAndResetMaxDecodeNanos();
+        decodedCount = count;
+        decodeNanos = nanos;
+        if (lastDecoded > 0) {
+            logger.debug(String.format("Tile cache: %d hits, %d misses, %d decoded (avg %.2f ms, max %.2f ms), %d tiles in %.1f MB",
+                    lastHits, lastMisses, lastDecoded, lastDecodeNanos * 1e-6 / lastDecoded, lastMaxDecodeNanos * 1e-6,
+                    tileCache.size(), tileCache.getBytes() / (1024.0 * 1024.0)));
+        }
+    }
+
+    /** Number of observed tiles found in the cache of decoded tiles in the last processing round. **/
+    public int getLastHits() {
+        return lastHits;
+    }
+
+    /** Number of observed tiles that had to be decoded in the last processing round. **/
+    public int getLastMisses() {
+        return lastMisses;
+    }
+
+    /** Number of tiles decoded since the previous processing round, including prefetched tiles. **/
+    public int getLastDecoded() {
+        return lastDecoded;
+    }
+
+    /** Average decode time of the tiles decoded since the previous processing round, in milliseconds. **/
+    public double getLastDecodeLatencyMs() {
+        return lastDecoded > 0 ? lastDecodeNanos * 1e-6 / lastDecoded : 0;
+    }
+
+    /** Maximum decode time of the tiles decoded since the previous processing round, in milliseconds. **/
+    public double getLastMaxDecodeLatencyMs() {
+        return lastMaxDecodeNanos * 1e-6;
+    }
+
+    /** The cache of decoded tiles. **/
+    public SVTTileCache getTileCache() {
+        return tileCache;
+    }
+
     /**
      * Puts the given tile at the given location in the cache buffer.
      *
@@ -339,7 +526,7 @@ public class SVTManager implements IObserver {
         cacheBufferArray[i][j] = tile;
 
         var path = tile.object.toString();
-        var pixmap = tilePixmaps.get(path);
+        var pixmap = tileCache.get(path);
 
         /*
          * Update cache buffer with tile at [x,y].
@@ -458,6 +645,22 @@ public class SVTManager implements IObserver {
         }
     }
 
+    /**
+     * Stops the decoding pool, and releases the decoded tiles and the cache buffer.
+     */
+    public void dispose() {
+        EventManager.instance.removeAllSubscriptions(this);
+        tileDecoder.dispose();
+        tileCache.clear();
+        queuedTiles.clear();
+        observedTiles.clear();
+        tileLocation.clear();
+        if (cacheBuffer != null) {
+            cacheBuffer.dispose();
+            cacheBuffer = null;
+        }
+    }
+
     @Override
     public void notify(Event event,
                        Object source,
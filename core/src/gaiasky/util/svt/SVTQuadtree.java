@@ -47,6 +47,12 @@ public class SVTQuadtree<T> {
      **/
     public Object aux;
 
+    /**
+     * The archive that holds the tile data, if the tiles are packed in a single file.
+     * In that case, the tile objects are virtual paths, and tiles are read from the archive by key.
+     **/
+    public SVTArchive archive;
+
     public SVTQuadtree(String name, int tileSize, int rootPositions) {
         this.name = name;
         this.tileSize = tileSize;
@@ -170,9 +176,37 @@ public class SVTQuadtree<T> {
     }
 
     public long getKey(int level, int col, int row) {
+        return key(level, col, row);
+    }
+
+    /**
+     * Gets the unique 64-bit key of the tile with the given level, column and row. The level takes the
+     * highest bits, so keys sort by level first.
+     *
+     * @param level The level.
+     * @param col   The column.
+     * @param row   The row.
+     * @return The key.
+     */
+    public static long key(int level, int col, int row) {
         return (long) (level) << 45 | (long) col << 26 | (long) row;
     }
 
+    /** Gets the level from the given tile key. **/
+    public static int keyLevel(long key) {
+        return (int) (key >>> 45);
+    }
+
+    /** Gets the column from the given tile key. **/
+    public static int keyCol(long key) {
+        return (int) ((key >>> 26) & 0x7ffffL);
+    }
+
+    /** Gets the row from the given tile key. **/
+    public static int keyRow(long key) {
+        return (int) (key & 0x3ffffffL);
+    }
+
     public long getKey(SVTQuadtreeNode<T> tile) {
         return tile.getKey();
     }
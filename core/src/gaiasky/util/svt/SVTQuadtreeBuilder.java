@@ -30,12 +30,18 @@ public class SVTQuadtreeBuilder {
      *
      * @param name     The name of the tree.
      * @param location The location where the levels are. A directory for each level is expected within this
-     *                 location, with the name "level[num]". Usually, "level0" is mandatory.
+     *                 location, with the name "level[num]". Usually, "level0" is mandatory. If the location
+     *                 contains an archive file ({@link SVTArchive#FILE_NAME}), the tiles are read from it instead.
      * @param tileSize The size (width and height) of each tile in the SVT.
      *
      * @return The SVT quadtree object.
      */
     public SVTQuadtree<Path> build(final String name, final Path location, final int tileSize) {
+        var archiveFile = location.resolve(SVTArchive.FILE_NAME);
+        if (Files.exists(archiveFile)) {
+            return buildFromArchive(name, archiveFile, tileSize);
+        }
+
         var comp = new FilenameComparator();
         var tree = new SVTQuadtree<Path>(name, tileSize, 2);
 
@@ -83,4 +89,42 @@ public class SVTQuadtreeBuilder {
         }
         return tree;
     }
+
+    /**
+     * Creates a new SVT quadtree from the given archive. The tile objects are virtual paths of the form
+     * "[archive]/level[num]/tx_[col]_[row].[ext]", which identify the tiles but do not exist on disk.
+     *
+     * @param name     The name of the tree.
+     * @param file     The archive file.
+     * @param tileSize The size (width and height) of each tile in the SVT.
+     *
+     * @return The SVT quadtree object.
+     */
+    public SVTQuadtree<Path> buildFromArchive(final String name, final Path file, final int tileSize) {
+        logger.info(I18n.msg("notif.loading", "SVT archive: " + file));
+        try {
+            var archive = SVTArchive.open(file);
+            var tree = new SVTQuadtree<Path>(name, tileSize, 2);
+            tree.archive = archive;
+            int depth = 0;
+            // Keys are sorted by level, so parents are always inserted before their children.
+            for (int i = 0; i < archive.size(); i++) {
+                long key = archive.getKey(i);
+                int level = SVTQuadtree.keyLevel(key);
+                int col = SVTQuadtree.keyCol(key);
+                int row = SVTQuadtree.keyRow(key);
+                tree.insert(level, col, row, file.resolve("level" + level).resolve("tx_" + col + "_" + row + "." + archive.getFormat()));
+                depth = Math.max(depth, level);
+            }
+            tree.depth = depth;
+            if (tree.levels[0] == null) {
+                logger.error("Can't initialize SVT without level 0 tiles: " + file);
+                return null;
+            }
+            return tree;
+        } catch (Exception e) {
+            logger.error(e, "Error building SVT quadtree: " + file);
+            return null;
+        }
+    }
 }
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2023 Gaia Sky - All rights reserved.
+ *  This file is part of Gaia Sky, which is released under the Mozilla Public License 2.0.
+ *  You may use, distribute and modify this code under the terms of MPL2.
+ *  See the file LICENSE.md in the project root for full license details.
+ */
+
+package gaiasky.util.svt;
+
+import com.badlogic.gdx.graphics.Pixmap;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least-recently-used cache of decoded SVT tiles, bounded by the total size in bytes of the pixmaps it holds.
+ * Tiles are identified by the path of their file, so that the same tile used by several channels is only decoded
+ * once. Evicted pixmaps are disposed. The cache is not thread-safe, and is meant to be used from the GL thread only.
+ */
+public class SVTTileCache {
+
+    /** Pixmaps in access order, from least to most recently used. **/
+    private final LinkedHashMap<String, Pixmap> pixmaps = new LinkedHashMap<>(64, 0.75f, true);
+    /** Maximum size, in bytes. **/
+    private long maxBytes;
+    /** Current size, in bytes. **/
+    private long bytes = 0;
+    /** Number of pixmaps evicted so far. **/
+    private long evictions = 0;
+    /** Incremented every time a pixmap is added. **/
+    private long generation = 0;
+
+    /**
+     * Creates a new cache with the given budget.
+     *
+     * @param maxBytes The maximum size of the cache, in bytes. The most recently added pixmap is always kept,
+     *                 even if it is larger than the budget.
+     */
+    public SVTTileCache(long maxBytes) {
+        this.maxBytes = Math.max(0, maxBytes);
+    }
+
+    /**
+     * Gets the pixmap of the given tile, and marks it as the most recently used.
+     *
+     * @param path The path of the tile.
+     *
+     * @return The pixmap, or null if it is not in the cache.
+     */
+    public Pixmap get(String path) {
+        return pixmaps.get(path);
+    }
+
+    /**
+     * Checks whether the given tile is in the cache, without modifying the access order.
+     *
+     * @param path The path of the tile.
+     *
+     * @return Whether the tile is in the cache.
+     */
+    public boolean contains(String path) {
+        return pixmaps.containsKey(path);
+    }
+
+    /**
+     * Puts the given pixmap in the cache, and evicts the least recently used pixmaps until the cache
+     * is within budget again.
+     *
+     * @param path   The path of the tile.
+     * @param pixmap The decoded pixmap.
+     */
+    public void put(String path, Pixmap pixmap) {
+        var previous = pixmaps.put(path, pixmap);
+        if (previous != null && previous != pixmap) {
+            bytes -= sizeOf(previous);
+            previous.dispose();
+        }
+        bytes += sizeOf(pixmap);
+        generation++;
+        evict();
+    }
+
+    /**
+     * Removes all pixmaps from the cache, and disposes them.
+     */
+    public void clear() {
+        for (var pixmap : pixmaps.values()) {
+            pixmap.dispose();
+        }
+        pixmaps.clear();
+        bytes = 0;
+    }
+
+    private void evict() {
+        final Iterator<Map.Entry<String, Pixmap>> it = pixmaps.entrySet().iterator();
+        while (bytes > maxBytes && pixmaps.size() > 1 && it.hasNext()) {
+            final var pixmap = it.next().getValue();
+            it.remove();
+            bytes -= sizeOf(pixmap);
+            pixmap.dispose();
+            evictions++;
+        }
+    }
+
+    private static long sizeOf(Pixmap pixmap) {
+        return pixmap.getPixels().capacity();
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = Math.max(0, maxBytes);
+        evict();
+    }
+
+    /** Current size of the cache, in bytes. **/
+    public long getBytes() {
+        return bytes;
+    }
+
+    /** Number of pixmaps in the cache. **/
+    public int size() {
+        return pixmaps.size();
+    }
+
+    /**
+     * Gets the generation of the cache, which changes every time a pixmap is added. Users that cache results
+     * derived from the lookups can use it to know whether new tiles are available.
+     *
+     * @return The generation.
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /** Number of pixmaps evicted so far. **/
+    public long getEvictions() {
+        return evictions;
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2023 Gaia Sky - All rights reserved.
+ *  This file is part of Gaia Sky, which is released under the Mozilla Public License 2.0.
+ *  You may use, distribute and modify this code under the terms of MPL2.
+ *  See the file LICENSE.md in the project root for full license details.
+ */
+
+package gaiasky.util.svt;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.Pixmap;
+import gaiasky.util.Logger;
+import gaiasky.util.Logger.Log;
+import gaiasky.util.gdx.loader.OwnPixmapLoader;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Decodes SVT tiles in a dedicated pool of threads, so that neither the GL thread nor the asset manager
+ * are blocked by large virtual textures. Tiles are read from their files, or from the archive of their tree
+ * if it has one. Tiles that do not match the tile size of their tree are also rescaled in the pool.
+ * Observed tiles are decoded before prefetched ones. Decoded tiles are collected with
+ * {@link #poll(BiConsumer)} from the GL thread.
+ */
+public class SVTTileDecoder {
+    private static final Log logger = Logger.getLogger(SVTTileDecoder.class);
+
+    /** Maximum number of prefetch requests waiting in the queue. Further prefetch requests are dropped. **/
+    private static final int MAX_QUEUED_PREFETCH = 32;
+
+    private final ThreadPoolExecutor pool;
+    /** Paths of the tiles being decoded or waiting to be decoded. **/
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    /** Tasks waiting in the queue, by tile path, so that prefetch requests can be promoted. **/
+    private final Map<String, DecodeTask> queued = new ConcurrentHashMap<>();
+    /** Paths of the tiles that could not be decoded. These are not requested again. **/
+    private final Set<String> failed = ConcurrentHashMap.newKeySet();
+    /** Decoded tiles, waiting to be collected. **/
+    private final Queue<Decoded> decoded = new ConcurrentLinkedQueue<>();
+    /** Sequence number, to keep submission order within a priority. **/
+    private final AtomicLong sequence = new AtomicLong(0);
+    private final AtomicInteger queuedPrefetch = new AtomicInteger(0);
+    private volatile boolean disposed = false;
+
+    // Metrics.
+    private final AtomicLong decodedCount = new AtomicLong(0);
+    private final AtomicLong decodeNanos = new AtomicLong(0);
+    private final AtomicLong maxDecodeNanos = new AtomicLong(0);
+
+    /**
+     * Creates a new decoder.
+     *
+     * @param nThreads The number of decoding threads.
+     */
+    public SVTTileDecoder(int nThreads) {
+        nThreads = Math.max(1, nThreads);
+        pool = new ThreadPoolExecutor(nThreads, nThreads, 0L, TimeUnit.SECONDS, new PriorityBlockingQueue<>());
+        pool.setThreadFactory(new DecoderThreadFactory());
+    }
+
+    /**
+     * Requests the decoding of the given tile. Does nothing if the tile is already pending or has failed before.
+     *
+     * @param tile     The tile.
+     * @param prefetch Whether this is a prefetch request. Prefetch requests are decoded after all observed tiles,
+     *                 and they are dropped if there are too many of them in the queue. An observed request for a
+     *                 tile that is waiting as a prefetch request promotes it.
+     *
+     * @return Whether the tile is pending after the call.
+     */
+    public boolean request(SVTQuadtreeNode<Path> tile, boolean prefetch) {
+        final var path = tile.object.toString();
+        if (failed.contains(path)) {
+            return false;
+        }
+        if (prefetch && queuedPrefetch.get() >= MAX_QUEUED_PREFETCH) {
+            return pending.contains(path);
+        }
+        if (!pending.add(path)) {
+            if (!prefetch) {
+                promote(path);
+            }
+            return true;
+        }
+        submit(new DecodeTask(path, tile.tree.archive, tile.getKey(), tile.tree.tileSize, prefetch, sequence.getAndIncrement()));
+        return true;
+    }
+
+    private void submit(DecodeTask task) {
+        if (task.prefetch) {
+            queuedPrefetch.incrementAndGet();
+        }
+        queued.put(task.path, task);
+        pool.execute(task);
+    }
+
+    /**
+     * Moves the prefetch request of the given tile, if it is still waiting in the queue, to the observed priority.
+     */
+    private void promote(String path) {
+        final var task = queued.get(path);
+        if (task != null && task.prefetch && pool.remove(task)) {
+            // Not started, so it is safe to submit it again.
+            queuedPrefetch.decrementAndGet();
+            queued.remove(path, task);
+            submit(new DecodeTask(path, task.archive, task.key, task.tileSize, false, sequence.getAndIncrement()));
+        }
+    }
+
+    /**
+     * Checks whether the tile with the given path is being decoded or waiting to be decoded.
+     *
+     * @param path The path of the tile.
+     *
+     * @return Whether the tile is pending.
+     */
+    public boolean isPending(String path) {
+        return pending.contains(path);
+    }
+
+    /**
+     * Hands the decoded tiles to the given consumer, and removes them from this decoder.
+     *
+     * @param consumer Receives the path and the pixmap of each decoded tile.
+     *
+     * @return The number of decoded tiles.
+     */
+    public int poll(BiConsumer<String, Pixmap> consumer) {
+        int n = 0;
+        Decoded d;
+        while ((d = decoded.poll()) != null) {
+            consumer.accept(d.path, d.pixmap);
+            n++;
+        }
+        return n;
+    }
+
+    /** Number of tiles decoded so far. **/
+    public long getDecodedCount() {
+        return decodedCount.get();
+    }
+
+    /** Total time spent decoding tiles, in nanoseconds. **/
+    public long getDecodeNanos() {
+        return decodeNanos.get();
+    }
+
+    /**
+     * Gets the maximum decode time of a single tile since the last call, and resets it.
+     *
+     * @return The maximum decode time, in nanoseconds.
+     */
+    public long getAndResetMaxDecodeNanos() {
+        return maxDecodeNanos.getAndSet(0);
+    }
+
+    /** Number of tiles being decoded or waiting to be decoded. **/
+    public int getNumPending() {
+        return pending.size();
+    }
+
+    public void dispose() {
+        disposed = true;
+        pool.shutdownNow();
+        queued.clear();
+        pending.clear();
+        Decoded d;
+        while ((d = decoded.poll()) != null) {
+            d.pixmap.dispose();
+        }
+    }
+
+    private Pixmap decode(String path, SVTArchive archive, long key, int tileSize) throws Exception {
+        Pixmap pixmap;
+        if (archive != null) {
+            // Positional read from the archive.
+            final var data = archive.read(key);
+            if (data == null) {
+                throw new IOException("Tile not found in archive " + archive.getFile() + ": " + path);
+            }
+            pixmap = archive.getFormat().equalsIgnoreCase("jxl") ? OwnPixmapLoader.readJxl(new ByteArrayInputStream(data)) : new Pixmap(data, 0, data.length);
+        } else {
+            final var file = new FileHandle(path);
+            pixmap = file.extension().equalsIgnoreCase("jxl") ? OwnPixmapLoader.readJxl(file) : new Pixmap(file);
+        }
+        // Rescale if necessary, this should be avoided.
+        if (pixmap.getWidth() != tileSize) {
+            logger.warn("Rescaling tile: " + path);
+            final var aux = new Pixmap(tileSize, tileSize, pixmap.getFormat());
+            aux.drawPixmap(pixmap,
+                    0, 0, pixmap.getWidth(), pixmap.getHeight(),
+                    0, 0, tileSize, tileSize);
+            pixmap.dispose();
+            pixmap = aux;
+        }
+        return pixmap;
+    }
+
+    private record Decoded(String path, Pixmap pixmap) {
+    }
+
+    private class DecodeTask implements Runnable, Comparable<DecodeTask> {
+        private final String path;
+        private final SVTArchive archive;
+        private final long key;
+        private final int tileSize;
+        private final boolean prefetch;
+        private final long sequence;
+
+        private DecodeTask(String path, SVTArchive archive, long key, int tileSize, boolean prefetch, long sequence) {
+            this.path = path;
+            this.archive = archive;
+            this.key = key;
+            this.tileSize = tileSize;
+            this.prefetch = prefetch;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            queued.remove(path, this);
+            if (prefetch) {
+                queuedPrefetch.decrementAndGet();
+            }
+            final long start = System.nanoTime();
+            try {
+                final var pixmap = decode(path, archive, key, tileSize);
+                final long elapsed = System.nanoTime() - start;
+                decodedCount.incrementAndGet();
+                decodeNanos.addAndGet(elapsed);
+                maxDecodeNanos.accumulateAndGet(elapsed, Math::max);
+                if (disposed) {
+                    pixmap.dispose();
+                } else {
+                    decoded.add(new Decoded(path, pixmap));
+                }
+            } catch (Exception e) {
+                logger.error(e, "Error decoding tile: " + path);
+                failed.add(path);
+            } finally {
+                pending.remove(path);
+            }
+        }
+
+        @Override
+        public int compareTo(DecodeTask o) {
+            // Observed tiles first, then in submission order.
+            if (prefetch != o.prefetch) {
+                return prefetch ? 1 : -1;
+            }
+            return Long.compare(sequence, o.sequence);
+        }
+    }
+
+    private static class DecoderThreadFactory implements ThreadFactory {
+        private int sequence = 0;
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "gaiasky-svt-decoder-" + sequence);
+            sequence++;
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
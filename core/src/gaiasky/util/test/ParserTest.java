@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2023 Gaia Sky - All rights reserved.
+ *  This file is part of Gaia Sky, which is released under the Mozilla Public License 2.0.
+ *  You may use, distribute and modify this code under the terms of MPL2.
+ *  See the file LICENSE.md in the project root for full license details.
+ */
+
+package gaiasky.util.test;
+
+import gaiasky.util.parse.Parser;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Checks that parsing numbers from a byte buffer gives the same results as parsing them from strings.
+ */
+public class ParserTest {
+    private static final int N_RANDOM = 1000000;
+    private static final String CHARS = "0123456789+-.,eEnNiIfF \t";
+
+    private static int errors = 0;
+
+    public static void check(String input) {
+        // Surround the number with other characters, to check that only the given range is read.
+        final byte[] bytes = ("x9" + input + "7x").getBytes(StandardCharsets.ISO_8859_1);
+        final var chars = Parser.asciiView(ByteBuffer.wrap(bytes));
+        final double expected = Parser.parseDouble(input);
+        final double result = Parser.parseDouble(chars, 2, 2 + input.length());
+        if (Double.compare(expected, result) != 0) {
+            errors++;
+            System.err.println("'" + input + "' - Error: " + result + " != " + expected);
+        }
+    }
+
+    public static void main(String[] args) {
+        // Edge cases.
+        String[] edgeCases = { "", " ", "\t\r\n", "0", "-0", "+0", "1", "-1", "+", "-", ".", ",", "1.", ".5", "-.5",
+                "1,5", "3.14159", "  42  ", "42 ", " -7.25", "1e10", "1E10", "1e", "1e-", "1e+", "1.5e-3", "-2.5E+4",
+                "1.5e3.5", "1.5e3,5", "1.5e3x", "1.5x", "x", "NaN", "nan", "N", "Inf", "-Inf", "+inf", "infinity",
+                "In", "I", "-I", "Ix", "INx", "1.7976931348623157e308", "4.9e-324", "123456789012345678901234567890",
+                "0.000000000000000000001", "1..2", "1.2.3", "--1", "+-1", "1 2", "\0" + "5" };
+        for (String edgeCase : edgeCases) {
+            check(edgeCase);
+        }
+
+        // Random numbers, formatted in different ways.
+        Random rnd = new Random(5522L);
+        for (int i = 0; i < N_RANDOM; i++) {
+            double value = (rnd.nextDouble() - 0.5) * Math.pow(10, rnd.nextInt(40) - 20);
+            switch (i % 4) {
+            case 0 -> check(Double.toString(value));
+            case 1 -> check(String.format("%.6f", value));
+            case 2 -> check(String.format("%.10e", value));
+            default -> check(Long.toString(rnd.nextLong()));
+            }
+        }
+
+        // Random strings of characters that numbers use.
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < N_RANDOM; i++) {
+            sb.setLength(0);
+            int len = rnd.nextInt(12);
+            for (int j = 0; j < len; j++) {
+                sb.append(CHARS.charAt(rnd.nextInt(CHARS.length())));
+            }
+            check(sb.toString());
+        }
+
+        System.out.println(edgeCases.length + 3 * N_RANDOM + " inputs checked, " + errors + " errors");
+    }
+}
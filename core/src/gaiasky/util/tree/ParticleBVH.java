@@ -0,0 +1,568 @@
+/*
+ * Copyright (c) 2023 Gaia Sky - All rights reserved.
+ *  This file is part of Gaia Sky, which is released under the Mozilla Public License 2.0.
+ *  You may use, distribute and modify this code under the terms of MPL2.
+ *  See the file LICENSE.md in the project root for full license details.
+ */
+
+package gaiasky.util.tree;
+
+import gaiasky.scene.api.IParticleRecord;
+import gaiasky.util.math.Vector3d;
+import net.jafama.FastMath;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Bounding volume hierarchy over the particles of a set, used to find the particles close to a ray or to a point
+ * without testing all of them. The hierarchy is built once over the positions at the epoch of the set, by splitting the particles at the
+ * median of the longest axis of their bounds. Each node also keeps the bounds of the proper motions and the largest
+ * radius of its particles, so that the bounds of a node can be grown to any time, and queries stay valid while the
+ * particles move. The particle records are not copied, only their order is kept, so the hierarchy must be rebuilt
+ * if the list of particles changes.
+ */
+public class ParticleBVH {
+    /** Maximum number of particles per leaf. **/
+    private static final int LEAF_SIZE = 32;
+    /** Traversal stack of the queries. Queries must not be nested in the same thread. **/
+    private static final ThreadLocal<int[]> stackBuffer = ThreadLocal.withInitial(() -> new int[64]);
+
+    private final List<IParticleRecord> data;
+    private final IntToDoubleFunction radius;
+    /** Indices of the particles, sorted so that the particles of each node are contiguous. **/
+    private final int[] order;
+
+    // Per node: bounds of the positions (min xyz, max xyz), bounds of the proper motions (min xyz, max xyz), and
+    // largest radius.
+    private double[] bounds;
+    private double[] pmBounds;
+    private double[] maxRadius;
+    // Per node: range of the node in the order array, and index of the first child (the second is next), or -1.
+    private int[] start, end, child;
+    private int numNodes = 0;
+
+    // Positions, proper motions and radii of the particles during the build, in the same order as the order array,
+    // so that the build reads them sequentially.
+    private double[] positions;
+    private float[] motions;
+    private float[] radii;
+
+    /**
+     * Builds a new hierarchy over the given particles.
+     *
+     * @param data   The particles.
+     * @param radius Function that gives the radius of the particle with the given index, in internal units.
+     */
+    public ParticleBVH(List<IParticleRecord> data,
+                       IntToDoubleFunction radius) {
+        this.data = data;
+        this.radius = radius;
+        final int n = data.size();
+        this.order = new int[n];
+        this.positions = new double[n * 3];
+        this.motions = new float[n * 3];
+        this.radii = new float[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+            final IParticleRecord pb = data.get(i);
+            positions[i * 3] = pb.x();
+            positions[i * 3 + 1] = pb.y();
+            positions[i * 3 + 2] = pb.z();
+            if (pb.hasProperMotion()) {
+                motions[i * 3] = (float) pb.pmx();
+                motions[i * 3 + 1] = (float) pb.pmy();
+                motions[i * 3 + 2] = (float) pb.pmz();
+            }
+            final double r = radius.applyAsDouble(i);
+            radii[i] = Double.isFinite(r) ? Math.nextUp((float) r) : 0f;
+        }
+        final int capacity = FastMath.max(1, 2 * ((n + LEAF_SIZE - 1) / LEAF_SIZE));
+        bounds = new double[capacity * 6];
+        pmBounds = new double[capacity * 6];
+        maxRadius = new double[capacity];
+        start = new int[capacity];
+        end = new int[capacity];
+        child = new int[capacity];
+        build(newNode(0, n));
+        positions = null;
+        motions = null;
+        radii = null;
+    }
+
+    /**
+     * Gets the list of particles the hierarchy was built over.
+     *
+     * @return The particles.
+     */
+    public List<IParticleRecord> getData() {
+        return data;
+    }
+
+    /**
+     * Gets the number of particles in the hierarchy.
+     *
+     * @return The number of particles.
+     */
+    public int size() {
+        return order.length;
+    }
+
+    /**
+     * Finds the particles that may be within a given angle of a line, at a given time. A particle at position
+     * <code>p</code>, with radius <code>r</code>, is reported if its distance to the line is at most
+     * <code>tanAngle * |p - origin| + sizeFactor * r</code>. Particles are reported at least once, and the test is
+     * conservative, so the callers still need to check the candidates.
+     *
+     * @param point      A point of the line, in internal units.
+     * @param direction  The direction of the line, normalized.
+     * @param origin     The point the angle is measured from, usually the camera.
+     * @param tanAngle   The tangent of the angle.
+     * @param sizeFactor Factor applied to the radius of the particles.
+     * @param halfLine   Whether only the half-line starting at the point in the given direction is considered.
+     * @param deltaYears The time since the epoch of the particles, in years, to apply the proper motions.
+     * @param consumer   Gets the index of each candidate particle.
+     */
+    public void query(Vector3d point,
+                      Vector3d direction,
+                      Vector3d origin,
+                      double tanAngle,
+                      double sizeFactor,
+                      boolean halfLine,
+                      double deltaYears,
+                      IntConsumer consumer) {
+        if (numNodes == 0 || order.length == 0) {
+            return;
+        }
+        final int[] stack = stackBuffer.get();
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            final int node = stack[--top];
+            final int b = node * 6;
+            // Bounds of the node at the given time.
+            double cx = 0, cy = 0, cz = 0, r2 = 0;
+            for (int k = 0; k < 3; k++) {
+                final double m0 = pmBounds[b + k] * deltaYears;
+                final double m1 = pmBounds[b + 3 + k] * deltaYears;
+                final double lo = bounds[b + k] + FastMath.min(m0, m1);
+                final double hi = bounds[b + 3 + k] + FastMath.max(m0, m1);
+                final double c = (lo + hi) * 0.5;
+                r2 += (hi - lo) * (hi - lo) * 0.25;
+                if (k == 0)
+                    cx = c;
+                else if (k == 1)
+                    cy = c;
+                else
+                    cz = c;
+            }
+            if (!accept(cx, cy, cz, FastMath.sqrt(r2), maxRadius[node], point, direction, origin, tanAngle, sizeFactor, halfLine)) {
+                continue;
+            }
+            if (child[node] >= 0) {
+                if (top + 2 > stack.length) {
+                    // Can't happen with median splits, but stay safe.
+                    for (int i = start[node]; i < end[node]; i++) {
+                        testParticle(order[i], point, direction, origin, tanAngle, sizeFactor, halfLine, deltaYears, consumer);
+                    }
+                } else {
+                    stack[top++] = child[node];
+                    stack[top++] = child[node] + 1;
+                }
+            } else {
+                for (int i = start[node]; i < end[node]; i++) {
+                    testParticle(order[i], point, direction, origin, tanAngle, sizeFactor, halfLine, deltaYears, consumer);
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the particles closest to a point, at a given time, sorted by increasing distance.
+     *
+     * @param point       The point, in internal units.
+     * @param k           The maximum number of particles to find.
+     * @param maxDistance Only particles within this distance of the point are found.
+     * @param deltaYears  The time since the epoch of the particles, in years, to apply the proper motions.
+     * @param filter      Accepts the indices of the particles to consider. May be null.
+     * @param indices     Gets the indices of the particles found. Must hold at least k elements.
+     * @param distances   Gets the distances of the particles found to the point. Must hold at least k elements.
+     *
+     * @return The number of particles found.
+     */
+    public int nearest(Vector3d point,
+                       int k,
+                       double maxDistance,
+                       double deltaYears,
+                       IntPredicate filter,
+                       int[] indices,
+                       double[] distances) {
+        if (numNodes == 0 || order.length == 0 || k <= 0) {
+            return 0;
+        }
+        // Bounded max-heap of the squared distances, so that the farthest particle found is on top.
+        int count = 0;
+        final double maxDistance2 = maxDistance * maxDistance;
+        final int[] stack = stackBuffer.get();
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            final int node = stack[--top];
+            final double bound = count < k ? maxDistance2 : distances[0];
+            if (boxDistance2(node, point, deltaYears) > bound) {
+                continue;
+            }
+            if (child[node] >= 0 && top + 2 <= stack.length) {
+                // Visit the closest child first.
+                final int left = child[node], right = left + 1;
+                if (boxDistance2(left, point, deltaYears) <= boxDistance2(right, point, deltaYears)) {
+                    stack[top++] = right;
+                    stack[top++] = left;
+                } else {
+                    stack[top++] = left;
+                    stack[top++] = right;
+                }
+            } else {
+                for (int i = start[node]; i < end[node]; i++) {
+                    final int index = order[i];
+                    if (filter != null && !filter.test(index)) {
+                        continue;
+                    }
+                    final double d2 = distance2(index, point, deltaYears);
+                    if (count < k) {
+                        if (d2 <= maxDistance2) {
+                            indices[count] = index;
+                            distances[count] = d2;
+                            siftUp(indices, distances, count++);
+                        }
+                    } else if (d2 < distances[0]) {
+                        indices[0] = index;
+                        distances[0] = d2;
+                        siftDown(indices, distances, 0, count);
+                    }
+                }
+            }
+        }
+        // Sort by increasing distance.
+        for (int n = count - 1; n > 0; n--) {
+            swap(indices, distances, 0, n);
+            siftDown(indices, distances, 0, n);
+        }
+        for (int i = 0; i < count; i++) {
+            distances[i] = FastMath.sqrt(distances[i]);
+        }
+        return count;
+    }
+
+    /**
+     * Finds the particles within a distance of a point, at a given time.
+     *
+     * @param point      The point, in internal units.
+     * @param radius     The distance, in internal units.
+     * @param deltaYears The time since the epoch of the particles, in years, to apply the proper motions.
+     * @param consumer   Gets the index of each particle found.
+     */
+    public void within(Vector3d point,
+                       double radius,
+                       double deltaYears,
+                       IntConsumer consumer) {
+        if (numNodes == 0 || order.length == 0) {
+            return;
+        }
+        final double radius2 = radius * radius;
+        final int[] stack = stackBuffer.get();
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            final int node = stack[--top];
+            if (boxDistance2(node, point, deltaYears) > radius2) {
+                continue;
+            }
+            if (child[node] >= 0 && top + 2 <= stack.length) {
+                stack[top++] = child[node];
+                stack[top++] = child[node] + 1;
+            } else {
+                for (int i = start[node]; i < end[node]; i++) {
+                    if (distance2(order[i], point, deltaYears) <= radius2) {
+                        consumer.accept(order[i]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Squared distance from the point to the bounds of the node at the given time, or zero if the point is inside.
+     */
+    private double boxDistance2(int node,
+                                Vector3d point,
+                                double deltaYears) {
+        final int b = node * 6;
+        double d2 = 0;
+        for (int k = 0; k < 3; k++) {
+            final double m0 = pmBounds[b + k] * deltaYears;
+            final double m1 = pmBounds[b + 3 + k] * deltaYears;
+            final double lo = bounds[b + k] + FastMath.min(m0, m1);
+            final double hi = bounds[b + 3 + k] + FastMath.max(m0, m1);
+            final double p = k == 0 ? point.x : k == 1 ? point.y : point.z;
+            final double d = p < lo ? lo - p : p > hi ? p - hi : 0;
+            d2 += d * d;
+        }
+        return d2;
+    }
+
+    private double distance2(int index,
+                             Vector3d point,
+                             double deltaYears) {
+        final IParticleRecord pb = data.get(index);
+        double x = pb.x(), y = pb.y(), z = pb.z();
+        if (pb.hasProperMotion()) {
+            x += pb.pmx() * deltaYears;
+            y += pb.pmy() * deltaYears;
+            z += pb.pmz() * deltaYears;
+        }
+        x -= point.x;
+        y -= point.y;
+        z -= point.z;
+        return x * x + y * y + z * z;
+    }
+
+    private static void siftUp(int[] indices,
+                               double[] keys,
+                               int i) {
+        while (i > 0) {
+            final int parent = (i - 1) >>> 1;
+            if (keys[parent] >= keys[i]) {
+                return;
+            }
+            swap(indices, keys, i, parent);
+            i = parent;
+        }
+    }
+
+    private static void siftDown(int[] indices,
+                                 double[] keys,
+                                 int i,
+                                 int size) {
+        while (true) {
+            final int left = 2 * i + 1;
+            if (left >= size) {
+                return;
+            }
+            int largest = left;
+            if (left + 1 < size && keys[left + 1] > keys[left]) {
+                largest = left + 1;
+            }
+            if (keys[i] >= keys[largest]) {
+                return;
+            }
+            swap(indices, keys, i, largest);
+            i = largest;
+        }
+    }
+
+    private static void swap(int[] indices,
+                             double[] keys,
+                             int i,
+                             int j) {
+        final int index = indices[i];
+        indices[i] = indices[j];
+        indices[j] = index;
+        final double key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+    }
+
+    private void testParticle(int index,
+                              Vector3d point,
+                              Vector3d direction,
+                              Vector3d origin,
+                              double tanAngle,
+                              double sizeFactor,
+                              boolean halfLine,
+                              double deltaYears,
+                              IntConsumer consumer) {
+        final IParticleRecord pb = data.get(index);
+        double x = pb.x(), y = pb.y(), z = pb.z();
+        if (pb.hasProperMotion()) {
+            x += pb.pmx() * deltaYears;
+            y += pb.pmy() * deltaYears;
+            z += pb.pmz() * deltaYears;
+        }
+        if (accept(x, y, z, 0, radius.applyAsDouble(index), point, direction, origin, tanAngle, sizeFactor, halfLine)) {
+            consumer.accept(index);
+        }
+    }
+
+    /**
+     * Tests whether any point of the given sphere, holding particles of up to the given radius, may be close enough
+     * to the line.
+     */
+    private static boolean accept(double cx,
+                                  double cy,
+                                  double cz,
+                                  double sphereRadius,
+                                  double particleRadius,
+                                  Vector3d point,
+                                  Vector3d direction,
+                                  Vector3d origin,
+                                  double tanAngle,
+                                  double sizeFactor,
+                                  boolean halfLine) {
+        final double vx = cx - point.x, vy = cy - point.y, vz = cz - point.z;
+        final double t = vx * direction.x + vy * direction.y + vz * direction.z;
+        if (halfLine && t + sphereRadius < 0) {
+            return false;
+        }
+        final double perp = FastMath.sqrt(FastMath.max(0, vx * vx + vy * vy + vz * vz - t * t)) - sphereRadius;
+        if (perp <= 0) {
+            return true;
+        }
+        final double ox = cx - origin.x, oy = cy - origin.y, oz = cz - origin.z;
+        final double dist = FastMath.sqrt(ox * ox + oy * oy + oz * oz) + sphereRadius;
+        return perp <= tanAngle * dist + sizeFactor * particleRadius;
+    }
+
+    private int newNode(int from,
+                        int to) {
+        final int node = numNodes++;
+        start[node] = from;
+        end[node] = to;
+        child[node] = -1;
+        final int b = node * 6;
+        for (int k = 0; k < 3; k++) {
+            bounds[b + k] = Double.POSITIVE_INFINITY;
+            bounds[b + 3 + k] = Double.NEGATIVE_INFINITY;
+            pmBounds[b + k] = Double.POSITIVE_INFINITY;
+            pmBounds[b + 3 + k] = Double.NEGATIVE_INFINITY;
+        }
+        double rMax = 0;
+        for (int i = from; i < to; i++) {
+            for (int k = 0; k < 3; k++) {
+                // Particles with NaN positions are never hit, and must not spoil the bounds of the others.
+                final double p = positions[i * 3 + k];
+                if (!Double.isNaN(p)) {
+                    bounds[b + k] = FastMath.min(bounds[b + k], p);
+                    bounds[b + 3 + k] = FastMath.max(bounds[b + 3 + k], p);
+                }
+                // Proper motions are kept in single precision, so their bounds are rounded outwards.
+                final float v = motions[i * 3 + k];
+                if (!Float.isNaN(v)) {
+                    pmBounds[b + k] = FastMath.min(pmBounds[b + k], Math.nextDown(v));
+                    pmBounds[b + 3 + k] = FastMath.max(pmBounds[b + 3 + k], Math.nextUp(v));
+                }
+            }
+            rMax = FastMath.max(rMax, radii[i]);
+        }
+        maxRadius[node] = rMax;
+        return node;
+    }
+
+    private void build(int root) {
+        final int[] stack = new int[128];
+        int top = 0;
+        stack[top++] = root;
+        while (top > 0) {
+            final int node = stack[--top];
+            final int from = start[node], to = end[node];
+            if (to - from <= LEAF_SIZE || top + 2 > stack.length) {
+                continue;
+            }
+            // Split at the median of the longest axis.
+            final int b = node * 6;
+            int axis = 0;
+            double longest = -1;
+            for (int k = 0; k < 3; k++) {
+                final double extent = bounds[b + 3 + k] - bounds[b + k];
+                if (extent > longest) {
+                    longest = extent;
+                    axis = k;
+                }
+            }
+            if (!(longest > 0)) {
+                // All particles in the same position, or non-finite bounds.
+                continue;
+            }
+            final int mid = (from + to) >>> 1;
+            select(from, to - 1, mid, axis);
+            if (numNodes + 2 > maxRadius.length) {
+                grow();
+            }
+            final int left = newNode(from, mid);
+            newNode(mid, to);
+            child[node] = left;
+            stack[top++] = left;
+            stack[top++] = left + 1;
+        }
+    }
+
+    /**
+     * Reorders the given range of the particles so that the particle at position k is the one that would be there if
+     * the range was sorted by the given axis, with smaller particles before it and larger ones after it.
+     */
+    private void select(int lo,
+                        int hi,
+                        int k,
+                        int axis) {
+        while (hi > lo) {
+            final double pivot = position((lo + hi) >>> 1, axis);
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (position(i, axis) < pivot)
+                    i++;
+                while (position(j, axis) > pivot)
+                    j--;
+                if (i <= j) {
+                    swap(i, j);
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private double position(int i,
+                            int axis) {
+        final double p = positions[i * 3 + axis];
+        // Non-finite positions go last.
+        return Double.isNaN(p) ? Double.POSITIVE_INFINITY : p;
+    }
+
+    private void swap(int i,
+                      int j) {
+        final int tmp = order[i];
+        order[i] = order[j];
+        order[j] = tmp;
+        for (int k = 0; k < 3; k++) {
+            final double p = positions[i * 3 + k];
+            positions[i * 3 + k] = positions[j * 3 + k];
+            positions[j * 3 + k] = p;
+            final float v = motions[i * 3 + k];
+            motions[i * 3 + k] = motions[j * 3 + k];
+            motions[j * 3 + k] = v;
+        }
+        final float r = radii[i];
+        radii[i] = radii[j];
+        radii[j] = r;
+    }
+
+    private void grow() {
+        final int capacity = maxRadius.length * 2;
+        bounds = Arrays.copyOf(bounds, capacity * 6);
+        pmBounds = Arrays.copyOf(pmBounds, capacity * 6);
+        maxRadius = Arrays.copyOf(maxRadius, capacity);
+        start = Arrays.copyOf(start, capacity);
+        end = Arrays.copyOf(end, capacity);
+        child = Arrays.copyOf(child, capacity);
+    }
+}
@@ -14,7 +14,9 @@ import gaiasky.util.units.Position.PositionType;
 import uk.ac.starlink.table.ColumnInfo;
 import uk.ac.starlink.table.StarTable;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
@@ -187,11 +189,27 @@ public class UCDParser {
      * @param table The {@link StarTable} to parse
      */
     public void parse(StarTable table) {
-        ucdmap.clear();
         int count = table.getColumnCount();
+        List<ColumnInfo> columns = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            columns.add(table.getColumnInfo(i));
+        }
+        parse(columns);
+    }
+
+    /**
+     * Parses the given columns and puts the UCD info
+     * into the ucdmap. The indices of the UCDs are the
+     * positions in the list. The map and all the indices are overwritten.
+     *
+     * @param columns The column descriptions, in table order.
+     */
+    public void parse(List<ColumnInfo> columns) {
+        ucdmap.clear();
+        int count = columns.size();
         for (int i = 0; i < count; i++) {
             // Get column
-            ColumnInfo col = table.getColumnInfo(i);
+            ColumnInfo col = columns.get(i);
 
             // Parse and add
             UCD ucd = new UCD(col.getUCD(), col.getName(), col.getUnitString(), i);